@@ -186,10 +186,17 @@ public class Utils
                 + "	db_name text,\n"
                 + "	tbl_name text,\n"
                 + "	description text,\n"
+                + "	max_versions int,\n"
+                + "	max_version_age bigint,\n"
+                + "	compression text,\n"
                 + "	created_at timestamp,\n"
                 + "	updated_at timestamp,\n"
                 + "	primary key ((db_name), tbl_name)\n"
                 + ");");
+        //sys_tbl may predate version retention
+        addColumnIfMissing(session, "sys_tbl", "max_versions", "int");
+        addColumnIfMissing(session, "sys_tbl", "max_version_age", "bigint");
+        addColumnIfMissing(session, "sys_tbl", "compression", "text");
         executeWithLog(session, "create table IF NOT EXISTS sys_idx (\n"
                 + "	db_name text,\n"
                 + "	tbl_name text,\n"
@@ -198,11 +205,14 @@ public class Utils
                 + "	fields list<text>,\n"
                 + "	fields_type list<text>,\n"
                 + "	only list<text>,\n"
+                + "	storage_mode text,\n"
                 + "     is_active boolean,\n"
                 + "	created_at timestamp,\n"
                 + "	updated_at timestamp,\n"
                 + "	primary key ((db_name), tbl_name, name)\n"
                 + ");");
+        //sys_idx may predate index storage modes
+        addColumnIfMissing(session, "sys_idx", "storage_mode", "text");
         executeWithLog(session, "create table IF NOT EXISTS sys_idx_status (\n"
                 + "     id uuid,\n"
                 + "	db_name text,\n"
@@ -213,12 +223,26 @@ public class Utils
                 + "	started_at timestamp,\n"
                 + "	updated_at timestamp,\n"
                 + "     errors list<text>,\n"
+                + "     error_count bigint,\n"
                 + "     fatal_error text,\n"
+                + "     checkpoints map<text, text>,\n"
+                + "     docs_per_second double,\n"
                 + "	primary key (id)\n"
                 + ");");
+        //sys_idx_status may predate resumable index builds
+        addColumnIfMissing(session, "sys_idx_status", "checkpoints", "map<text, text>");
+        //...and index build throughput and error counts
+        addColumnIfMissing(session, "sys_idx_status", "docs_per_second", "double");
+        addColumnIfMissing(session, "sys_idx_status", "error_count", "bigint");
         executeWithLog(session, "create table IF NOT EXISTS sys_idx_not_done (\n"
                 + "    id uuid primary key\n"
                 + ");");
+        executeWithLog(session, "create table IF NOT EXISTS sys_idx_lease (\n"
+                + "    id uuid,\n"
+                + "    token_range text,\n"
+                + "    owner text,\n"
+                + "    primary key (id, token_range)\n"
+                + ");");
     }
 
     /**
@@ -235,6 +259,24 @@ public class Utils
         initDatabase(dropDb, "{ 'class' : 'SimpleStrategy', 'replication_factor' : 1}", session);
     }
 
+    /**
+     * Adds a column to a table in the docussandra keyspace, if it doesn't
+     * already have it; for upgrading databases that were created by an older
+     * version.
+     *
+     * @param session Cassandra session to use.
+     * @param table Table to add the column to.
+     * @param column Name of the column.
+     * @param type CQL type of the column.
+     */
+    private static void addColumnIfMissing(Session session, String table, String column, String type)
+    {
+        if (session.getCluster().getMetadata().getKeyspace("docussandra").getTable(table).getColumn(column) == null)
+        {
+            executeWithLog(session, "alter table " + table + " add " + column + " " + type + ";");
+        }
+    }
+
     /**
      * Logs a statement, then executes it on the session.
      *
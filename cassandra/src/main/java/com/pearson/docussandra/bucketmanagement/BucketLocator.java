@@ -3,6 +3,7 @@ package com.pearson.docussandra.bucketmanagement;
 
 import com.pearson.docussandra.domain.objects.FieldDataType;
 import com.pearson.docussandra.exception.IndexParseFieldException;
+import java.util.List;
 
 /**
  * Interface for locating buckets for data storage and retrieval.
@@ -22,4 +23,17 @@ public interface BucketLocator
      */
     public Long getBucket(Object bucketingObject, FieldDataType dataType) throws IndexParseFieldException;
 
+    /**
+     * Return every bucket that could contain a value between the lower and
+     * upper bounds (inclusive), in ascending bucket order.
+     *
+     * @param lower lower bound of the range; null if the range is open below
+     * @param upper upper bound of the range; null if the range is open above
+     * @param dataType the Type of data that we are bucketing on.
+     *
+     * @return The buckets that cover the range.
+     * @throws IndexParseFieldException if a bound cannot be converted to the specified dataType.
+     */
+    public List<Long> getBucketsForRange(Object lower, Object upper, FieldDataType dataType) throws IndexParseFieldException;
+
 }
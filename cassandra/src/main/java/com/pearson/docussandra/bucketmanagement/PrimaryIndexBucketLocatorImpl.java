@@ -6,6 +6,7 @@ import com.pearson.docussandra.domain.objects.FieldDataType;
 import com.pearson.docussandra.exception.IndexParseFieldException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -108,9 +109,11 @@ public class PrimaryIndexBucketLocatorImpl implements BucketLocator
     }
 
     /**
-     * Get the next token in the ring for this big int.
+     * Get the index of the next token in the ring for this big int, before
+     * wrapping. An index equal to the number of buckets means the token is past
+     * the last bucket (and wraps around to the first).
      */
-    private Long getClosestBucket(Long bucketingToken, FieldDataType dataType)
+    private int getClosestBucketIndex(Long bucketingToken, FieldDataType dataType)
     {
         int index = Collections.binarySearch(BUCKETS[dataType.getIndexForDataType()], bucketingToken);
 
@@ -119,6 +122,15 @@ public class PrimaryIndexBucketLocatorImpl implements BucketLocator
         {
             index = (index + 1) * -1;//if it is, jump the index + 1 and make it positive
         }
+        return index;
+    }
+
+    /**
+     * Get the next token in the ring for this big int.
+     */
+    private Long getClosestBucket(Long bucketingToken, FieldDataType dataType)
+    {
+        int index = getClosestBucketIndex(bucketingToken, dataType);
 
         // mod if we need to wrap
         index = index % getBUCKETS()[dataType.getIndexForDataType()].size();
@@ -150,13 +162,72 @@ public class PrimaryIndexBucketLocatorImpl implements BucketLocator
             throw new IllegalArgumentException("Data type must be not null");
         }
         //if what is being passed in should be of a certian datatype, but has not yet been converted from the string in the json
-        Object normalizedObject = bucketingObject;
+        Object normalizedObject = normalize(bucketingObject, dataType);
+
+        return getClosestBucket(convertObjectToBucketingToken(normalizedObject, dataType), dataType);
+    }
+
+    /**
+     * Return every bucket that could contain a value between the lower and
+     * upper bounds (inclusive), in ascending bucket order. Since values past
+     * the last bucket wrap around to the first bucket, a range that is open
+     * above (or runs past the last bucket) always includes the first bucket.
+     *
+     * @param lower lower bound of the range; null if the range is open below
+     * @param upper upper bound of the range; null if the range is open above
+     * @param dataType the Type of data that we are bucketing on.
+     *
+     * @return The buckets that cover the range.
+     * @throws IndexParseFieldException if a bound cannot be converted to the
+     * specified dataType.
+     */
+    @Override
+    public List<Long> getBucketsForRange(Object lower, Object upper, FieldDataType dataType) throws IndexParseFieldException
+    {
+        if (dataType == null)
+        {
+            throw new IllegalArgumentException("Data type must be not null");
+        }
+        List<Long> buckets = BUCKETS[dataType.getIndexForDataType()];
+        int start = 0;
+        int end = buckets.size();//past the end; wraps to the first bucket
+        if (lower != null)
+        {
+            start = getClosestBucketIndex(convertObjectToBucketingToken(normalize(lower, dataType), dataType), dataType);
+        }
+        if (upper != null)
+        {
+            end = getClosestBucketIndex(convertObjectToBucketingToken(normalize(upper, dataType), dataType), dataType);
+        }
+        List<Long> toReturn = new ArrayList<>();
+        boolean wraps = end >= buckets.size();
+        if (wraps && start > 0)
+        {
+            toReturn.add(buckets.get(0));//values past the last bucket live here
+        }
+        for (int i = start; i <= Math.min(end, buckets.size() - 1); i++)
+        {
+            toReturn.add(buckets.get(i));
+        }
+        if (toReturn.isEmpty())//range is entirely past the last bucket
+        {
+            toReturn.add(buckets.get(0));
+        }
+        return toReturn;
+    }
+
+    /**
+     * Converts a raw string from a where clause or JSON document into an object
+     * of the specified type; leaves other objects (and strings that should stay
+     * strings) alone.
+     */
+    private Object normalize(Object bucketingObject, FieldDataType dataType) throws IndexParseFieldException
+    {
         if (bucketingObject instanceof String && !(dataType.equals(FieldDataType.TEXT) || dataType.equals(FieldDataType.BINARY)))
         {//if it's a string, but shouldn't be
-            normalizedObject = convertStringToOject((String) normalizedObject, dataType);
+            return convertStringToOject((String) bucketingObject, dataType);
         }
-
-        return getClosestBucket(convertObjectToBucketingToken(normalizedObject, dataType), dataType);
+        return bucketingObject;
     }
 
     /**
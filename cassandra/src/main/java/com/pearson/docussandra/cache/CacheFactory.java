@@ -103,5 +103,6 @@ public class CacheFactory
             Cache c = (Cache)e.nextElement();
             c.removeAll();
         }
+        MetadataRegistry.getInstance().clear();
     }
 }
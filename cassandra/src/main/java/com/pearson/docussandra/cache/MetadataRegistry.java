@@ -0,0 +1,399 @@
+package com.pearson.docussandra.cache;
+
+import com.pearson.docussandra.domain.objects.Database;
+import com.pearson.docussandra.domain.objects.Identifier;
+import com.pearson.docussandra.domain.objects.Index;
+import com.pearson.docussandra.domain.objects.Table;
+import com.pearson.docussandra.persistence.DatabaseRepository;
+import com.pearson.docussandra.persistence.IndexRepository;
+import com.pearson.docussandra.persistence.TableRepository;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process registry of all database, table and index metadata, so the
+ * document and query paths never need a Cassandra round trip to find out what
+ * exists. It is loaded in full at startup from sys_db, sys_tbl and sys_idx and
+ * kept current by the repositories, which update it as part of every metadata
+ * write on this node. Writes made through other nodes are picked up by a
+ * periodic full reload; without one, a table with no indexes is not trusted to
+ * still have none, since there would be nothing to correct that.
+ *
+ * Reads are lock free; writes (which are rare) are serialized so that a reload
+ * that raced with a write on this node is thrown away rather than allowed to
+ * undo it.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class MetadataRegistry
+{
+
+    /**
+     * Default number of seconds between full reloads of the registry.
+     */
+    public static final long DEFAULT_REFRESH_SECONDS = 60;
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MetadataRegistry.class);
+
+    /**
+     * Singleton instance.
+     */
+    private static final MetadataRegistry instance = new MetadataRegistry();
+
+    /**
+     * Current contents of the registry; swapped out whole on a reload.
+     */
+    private volatile Snapshot snapshot = new Snapshot();
+
+    /**
+     * Incremented on every write; a reload only takes effect if no write
+     * happened while it was reading.
+     */
+    private long generation = 0;
+
+    /**
+     * Background reloader; null until started.
+     */
+    private ScheduledExecutorService refresher;
+
+    /**
+     * Number of seconds between background reloads; zero when not reloading.
+     */
+    private volatile long refreshSeconds = 0;
+
+    /**
+     * Everything the registry knows at a point in time. Tables and index lists
+     * are keyed by "database:table".
+     */
+    private static class Snapshot
+    {
+
+        private final Map<String, Database> databases = new ConcurrentHashMap<>();
+        private final Map<String, Table> tables = new ConcurrentHashMap<>();
+        private final Map<String, List<Index>> indexes = new ConcurrentHashMap<>();
+        private final boolean loaded;
+
+        private Snapshot()
+        {
+            this(false);
+        }
+
+        private Snapshot(boolean loaded)
+        {
+            this.loaded = loaded;
+        }
+    }
+
+    /**
+     * Constructor. Private for singleton use.
+     */
+    private MetadataRegistry()
+    {
+        ;
+    }
+
+    /**
+     * Gets the singleton instance of this class.
+     *
+     * @return The registry.
+     */
+    public static MetadataRegistry getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * (Re)loads the entire registry from the database.
+     *
+     * @param databaseRepo Repository to read databases from.
+     * @param tableRepo Repository to read tables from.
+     * @param indexRepo Repository to read indexes from.
+     * @return True if the load took effect; false if a write happened on this
+     * node while it was reading, in which case the current contents are kept.
+     */
+    public boolean load(DatabaseRepository databaseRepo, TableRepository tableRepo, IndexRepository indexRepo)
+    {
+        long startingGeneration;
+        synchronized (this)
+        {
+            startingGeneration = generation;
+        }
+        Snapshot loaded = new Snapshot(true);
+        for (Database database : databaseRepo.readAll())
+        {
+            loaded.databases.put(database.getName(), database);
+        }
+        for (Table table : tableRepo.readAll())
+        {
+            loaded.tables.put(key(table.getDatabaseName(), table.getName()), table);
+        }
+        Map<String, List<Index>> indexes = new ConcurrentHashMap<>();
+        for (String tableKey : loaded.tables.keySet())
+        {
+            indexes.put(tableKey, new ArrayList<Index>());//known tables with no indexes
+        }
+        for (Index index : indexRepo.readAll())
+        {
+            String tableKey = key(index.getDatabaseName(), index.getTableName());
+            List<Index> forTable = indexes.get(tableKey);
+            if (forTable == null)
+            {
+                forTable = new ArrayList<>();
+                indexes.put(tableKey, forTable);
+            }
+            forTable.add(index);
+        }
+        for (Map.Entry<String, List<Index>> entry : indexes.entrySet())
+        {
+            loaded.indexes.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        }
+        synchronized (this)
+        {
+            if (generation != startingGeneration)
+            {
+                logger.debug("Metadata changed during reload; keeping the current registry until the next reload.");
+                return false;
+            }
+            snapshot = loaded;
+        }
+        logger.debug("Metadata registry loaded: " + loaded.databases.size() + " databases, " + loaded.tables.size() + " tables.");
+        return true;
+    }
+
+    /**
+     * Starts reloading the registry in the background, so that metadata
+     * changes made through other nodes are picked up.
+     *
+     * @param databaseRepo Repository to read databases from.
+     * @param tableRepo Repository to read tables from.
+     * @param indexRepo Repository to read indexes from.
+     * @param seconds Number of seconds between reloads; zero or less to never
+     * reload.
+     */
+    public synchronized void startRefresh(final DatabaseRepository databaseRepo, final TableRepository tableRepo, final IndexRepository indexRepo, long seconds)
+    {
+        stopRefresh();
+        if (seconds <= 0)
+        {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "metadata-registry-refresh");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        refresher.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    load(databaseRepo, tableRepo, indexRepo);
+                } catch (Exception e)//keep going; we'll try again next time
+                {
+                    logger.warn("Could not reload the metadata registry.", e);
+                }
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+        refreshSeconds = seconds;
+    }
+
+    /**
+     * Stops the background reload, if it is running.
+     */
+    public synchronized void stopRefresh()
+    {
+        if (refresher != null)
+        {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+        refreshSeconds = 0;
+    }
+
+    /**
+     * @return the number of seconds between background reloads, and so the
+     * longest a metadata change made through another node can go unseen here;
+     * zero if the registry isn't being reloaded
+     */
+    public long getRefreshSeconds()
+    {
+        return refreshSeconds;
+    }
+
+    /**
+     * @return true if the registry has been loaded from the database; until it
+     * has, a miss means "not known yet" rather than "does not exist"
+     */
+    public boolean isLoaded()
+    {
+        return snapshot.loaded;
+    }
+
+    /**
+     * Gets a database.
+     *
+     * @param name Name of the database.
+     * @return The database, or null if it is not in the registry.
+     */
+    public Database getDatabase(String name)
+    {
+        return snapshot.databases.get(name);
+    }
+
+    /**
+     * Gets a table.
+     *
+     * @param id Identifier of the table.
+     * @return The table, or null if it is not in the registry.
+     */
+    public Table getTable(Identifier id)
+    {
+        return snapshot.tables.get(key(id.getDatabaseName(), id.getTableName()));
+    }
+
+    /**
+     * Gets all the indexes on a table.
+     *
+     * @param id Identifier of the table.
+     * @return Unmodifiable list of the table's indexes (possibly empty), or
+     * null if the registry doesn't know the table's indexes.
+     */
+    public List<Index> getIndexes(Identifier id)
+    {
+        List<Index> indexes = snapshot.indexes.get(key(id.getDatabaseName(), id.getTableName()));
+        if (indexes != null && indexes.isEmpty() && refreshSeconds <= 0)
+        {//an index created through another node would never be picked up
+            return null;
+        }
+        return indexes;
+    }
+
+    /**
+     * Adds or replaces a database.
+     *
+     * @param database Database that was created or updated.
+     */
+    public synchronized void putDatabase(Database database)
+    {
+        generation++;
+        snapshot.databases.put(database.getName(), database);
+    }
+
+    /**
+     * Removes a database, along with all its tables and their indexes.
+     *
+     * @param name Name of the database that was deleted.
+     */
+    public synchronized void removeDatabase(String name)
+    {
+        generation++;
+        snapshot.databases.remove(name);
+        String prefix = name + ":";
+        removeByPrefix(snapshot.tables, prefix);
+        removeByPrefix(snapshot.indexes, prefix);
+    }
+
+    /**
+     * Adds or replaces a table.
+     *
+     * @param table Table that was created or updated.
+     */
+    public synchronized void putTable(Table table)
+    {
+        generation++;
+        String tableKey = key(table.getDatabaseName(), table.getName());
+        snapshot.tables.put(tableKey, table);
+        if (!snapshot.indexes.containsKey(tableKey) && snapshot.loaded)
+        {
+            snapshot.indexes.put(tableKey, Collections.<Index>emptyList());//new table; no indexes yet
+        }
+    }
+
+    /**
+     * Removes a table, along with its indexes.
+     *
+     * @param id Identifier of the table that was deleted.
+     */
+    public synchronized void removeTable(Identifier id)
+    {
+        generation++;
+        String tableKey = key(id.getDatabaseName(), id.getTableName());
+        snapshot.tables.remove(tableKey);
+        snapshot.indexes.remove(tableKey);
+    }
+
+    /**
+     * Sets the complete list of indexes on a table.
+     *
+     * @param id Identifier of the table.
+     * @param indexes Every index on the table.
+     */
+    public synchronized void putIndexes(Identifier id, List<Index> indexes)
+    {
+        generation++;
+        snapshot.indexes.put(key(id.getDatabaseName(), id.getTableName()), Collections.unmodifiableList(new ArrayList<>(indexes)));
+    }
+
+    /**
+     * Forgets the indexes on a table, so they will be re-read on next use.
+     *
+     * @param id Identifier of the table.
+     */
+    public synchronized void evictIndexes(Identifier id)
+    {
+        generation++;
+        snapshot.indexes.remove(key(id.getDatabaseName(), id.getTableName()));
+    }
+
+    /**
+     * Empties the registry. For testing use only.
+     */
+    public synchronized void clear()
+    {
+        generation++;
+        snapshot = new Snapshot();
+    }
+
+    /**
+     * Removes every entry whose key starts with the given prefix.
+     */
+    private static void removeByPrefix(Map<String, ?> map, String prefix)
+    {
+        Iterator<String> keys = map.keySet().iterator();
+        while (keys.hasNext())
+        {
+            if (keys.next().startsWith(prefix))
+            {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Key for a table in the registry.
+     */
+    private static String key(String database, String table)
+    {
+        return database + ":" + table;
+    }
+}
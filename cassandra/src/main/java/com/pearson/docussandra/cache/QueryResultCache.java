@@ -0,0 +1,315 @@
+package com.pearson.docussandra.cache;
+
+import com.pearson.docussandra.Utils;
+import com.pearson.docussandra.bucketmanagement.BucketLocator;
+import com.pearson.docussandra.domain.ParsedQuery;
+import com.pearson.docussandra.domain.objects.Index;
+import com.pearson.docussandra.domain.objects.IndexField;
+import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
+import com.pearson.docussandra.exception.IndexParseFieldException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+import org.bson.BSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of query results for tables that have opted in to it. Results are
+ * keyed by the parsed query and its paging parameters.
+ * <p/>
+ * Every (iTable, bucket) pair has a version number that document writes bump
+ * after they have been applied. A cached result remembers the versions of the
+ * buckets it read as they were before the query ran; if any of them has moved
+ * on by the time the result is looked up again, the result is thrown away. This
+ * way a write only invalidates results that read the buckets it touched.
+ * <p/>
+ * Versions are only tracked on this node; writes made through other nodes are
+ * not seen here, so the cache TTL (see ehcache.xml) bounds how stale a result
+ * can get in a cluster.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class QueryResultCache
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryResultCache.class);
+
+    /**
+     * Name of the ehcache cache that holds the results.
+     */
+    public static final String CACHE_NAME = "queryResult";
+
+    private static final QueryResultCache INSTANCE = new QueryResultCache();
+
+    /**
+     * Tables that have results cached, as "database.table".
+     */
+    private volatile Set<String> enabledTables = Collections.emptySet();
+
+    /**
+     * Version of each iTable and (iTable, bucket) pair that has been written
+     * to. Anything not in here is at version 0.
+     */
+    private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong staleResults = new AtomicLong();
+
+    private QueryResultCache()
+    {
+    }
+
+    /**
+     * @return The query result cache for this application.
+     */
+    public static QueryResultCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets which tables have their query results cached. Caching is off for
+     * every table that is not listed.
+     *
+     * @param tables Tables to cache results for, as "database.table".
+     */
+    public void setEnabledTables(Collection<String> tables)
+    {
+        Set<String> toSet = new HashSet<>();
+        for (String table : tables)
+        {
+            if (!table.trim().isEmpty())
+            {
+                toSet.add(table.trim());
+            }
+        }
+        enabledTables = Collections.unmodifiableSet(toSet);
+        logger.info("Query results will be cached for tables: " + enabledTables);
+    }
+
+    /**
+     * Determines if query results are cached for a table.
+     *
+     * @param database Database the table is in.
+     * @param table Table name.
+     * @return True if results are cached for this table.
+     */
+    public boolean isEnabled(String database, String table)
+    {
+        return !enabledTables.isEmpty() && enabledTables.contains(database + "." + table);
+    }
+
+    /**
+     * Starts a cache lookup for a query. The versions of the buckets the query
+     * reads are captured now, so this must be called before the query is run.
+     *
+     * @param query Query that is about to run.
+     * @param buckets Buckets the query reads.
+     * @param limit Limit the query is run with; -1 for none.
+     * @param offset Offset the query is run with.
+     * @param pageToken Page token the query is run with; null for none.
+     * @return A lookup for the query, or null if results for the query's table
+     * are not cached.
+     */
+    public Lookup lookup(ParsedQuery query, List<Long> buckets, int limit, long offset, String pageToken)
+    {
+        Index index = query.getIndex();
+        if (!isEnabled(index.getDatabaseName(), index.getTableName()))
+        {
+            return null;
+        }
+        ArrayList<Object> key = new ArrayList<>();
+        key.add(query.getITable());
+        key.add(query.getWhereClause().getBoundStatementSyntax());
+        key.add(new ArrayList<>(query.getWhereClause().getValues()));
+        key.add(query.getQuery().getColumns() == null ? null : new ArrayList<>(query.getQuery().getColumns()));
+        key.add(limit);
+        key.add(offset);
+        key.add(pageToken);
+        return new Lookup(key, query.getITable(), buckets, currentVersions(query.getITable(), buckets));
+    }
+
+    /**
+     * Invalidates cached results that read the bucket a document is (or was)
+     * stored in for an index. Call after the write has been applied.
+     *
+     * @param index Index the document is stored in.
+     * @param object The document's object.
+     * @param bucketLocator Bucket locator used to store the document.
+     */
+    public void invalidate(Index index, BSONObject object, BucketLocator bucketLocator)
+    {
+        if (!isEnabled(index.getDatabaseName(), index.getTableName()))
+        {
+            return;
+        }
+        String iTable = Utils.calculateITableName(index);
+        IndexField bucketField = index.getFields().get(0);
+        Object bucketValue = object.get(bucketField.getField());
+        if (bucketValue == null)
+        {//the document isn't in this iTable; nothing to invalidate
+            return;
+        }
+        invalidations.incrementAndGet();
+        try
+        {
+            bumpVersion(iTable + ":" + bucketLocator.getBucket(bucketValue, bucketField.getType()));
+        } catch (IndexParseFieldException e)
+        {//shouldn't happen for a document that was just written; play it safe and drop everything for the iTable
+            logger.warn("Could not determine bucket for cache invalidation; invalidating all cached results for: " + iTable, e);
+            bumpVersion(iTable);
+        }
+    }
+
+    /**
+     * Gets hit and miss counts for the cache.
+     *
+     * @return Map of statistic name to value.
+     */
+    public Map<String, Object> getStats()
+    {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        LinkedHashMap<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabledTables", new ArrayList<>(enabledTables));
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0d : (double) hitCount / (hitCount + missCount));
+        stats.put("staleResults", staleResults.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("size", getCache().getSize());
+        return stats;
+    }
+
+    private static Cache getCache()
+    {
+        return CacheFactory.getCache(CACHE_NAME);
+    }
+
+    private long getVersion(String key)
+    {
+        AtomicLong version = versions.get(key);
+        return version == null ? 0 : version.get();
+    }
+
+    private void bumpVersion(String key)
+    {
+        AtomicLong version = versions.get(key);
+        if (version == null)
+        {
+            AtomicLong existing = versions.putIfAbsent(key, version = new AtomicLong());
+            if (existing != null)
+            {
+                version = existing;
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Gets the current versions of an iTable and some of its buckets.
+     *
+     * @return The iTable's version, followed by the version of each bucket.
+     */
+    private long[] currentVersions(String iTable, List<Long> buckets)
+    {
+        long[] toReturn = new long[buckets.size() + 1];
+        toReturn[0] = getVersion(iTable);
+        for (int i = 0; i < buckets.size(); i++)
+        {
+            toReturn[i + 1] = getVersion(iTable + ":" + buckets.get(i));
+        }
+        return toReturn;
+    }
+
+    /**
+     * A single query's trip through the cache: look for a cached result, and
+     * if there isn't one, store the result once the query has run.
+     */
+    public class Lookup
+    {
+
+        private final List<Object> key;
+        private final String iTable;
+        private final List<Long> buckets;
+        private final long[] versions;
+
+        private Lookup(List<Object> key, String iTable, List<Long> buckets, long[] versions)
+        {
+            this.key = key;
+            this.iTable = iTable;
+            this.buckets = buckets;
+            this.versions = versions;
+        }
+
+        /**
+         * Gets the cached result for this query, if there is one that is still
+         * current.
+         *
+         * @return A copy of the cached result, or null if there isn't one.
+         */
+        public QueryResponseWrapper getCached()
+        {
+            Cache c = getCache();
+            Element e = c.get(key);
+            if (e != null)
+            {
+                CachedResult cached = (CachedResult) e.getObjectValue();
+                if (Arrays.equals(cached.versions, versions))
+                {
+                    hits.incrementAndGet();
+                    QueryResponseWrapper result = cached.result;
+                    return new QueryResponseWrapper(result, result.getNumAdditionalResults(), result.getNextPageToken());
+                }
+                staleResults.incrementAndGet();
+                c.remove(key);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+
+        /**
+         * Caches the result of this query.
+         *
+         * @param result Result of running the query.
+         * @return The result passed in.
+         */
+        public QueryResponseWrapper store(QueryResponseWrapper result)
+        {
+            if (Arrays.equals(currentVersions(iTable, buckets), versions))
+            {//don't bother caching something that a write has already made stale
+                getCache().put(new Element(key, new CachedResult(versions, new QueryResponseWrapper(result, result.getNumAdditionalResults(), result.getNextPageToken()))));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A cached result along with the bucket versions it was read at.
+     */
+    private static class CachedResult
+    {
+
+        private final long[] versions;
+        private final QueryResponseWrapper result;
+
+        private CachedResult(long[] versions, QueryResponseWrapper result)
+        {
+            this.versions = versions;
+            this.result = result;
+        }
+    }
+}
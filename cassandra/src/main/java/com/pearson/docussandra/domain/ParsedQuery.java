@@ -15,6 +15,9 @@ import java.util.Objects;
 public class ParsedQuery
 {
 
+    private static final String QUERY_CQL = "select * from %s where bucket = ? AND %s";
+    private static final String QUERY_CQL_LIMIT = "select * from %s where bucket = ? AND %s LIMIT ?";//we use the limit as to not put any more stress on cassandra than we need to (even though our algorithm will discard the data anyway); it is bound so we only prepare one statement per query shape
+
     /**
      * Original query that was passed in.
      */
@@ -36,6 +39,16 @@ public class ParsedQuery
      */
     private String iTable;
 
+    /**
+     * CQL for reading the iTable for this query shape.
+     */
+    private String queryCql;
+
+    /**
+     * CQL for reading the iTable for this query shape, with a bound limit.
+     */
+    private String limitedQueryCql;
+
     /**
      * Constructor.
      *
@@ -50,6 +63,41 @@ public class ParsedQuery
         this.whereClause = whereClause;
         this.index = index;
         this.iTable = Utils.calculateITableName(index);
+        this.queryCql = String.format(QUERY_CQL, iTable, whereClause.getBoundStatementSyntax());
+        this.limitedQueryCql = String.format(QUERY_CQL_LIMIT, iTable, whereClause.getBoundStatementSyntax());
+    }
+
+    /**
+     * Creates a ParsedQuery for another query of the same shape (same fields,
+     * operators and conjunctions; different values) as this one. The index
+     * selection and CQL from this ParsedQuery are reused as-is.
+     *
+     * @param query Original query that was passed in.
+     * @param whereClause Parsed where clause for that query; must have the
+     * same bound statement syntax as this one.
+     * @return A ParsedQuery for the new query.
+     */
+    public ParsedQuery bind(Query query, WhereClause whereClause)
+    {
+        if (!whereClause.getBoundStatementSyntax().equals(this.whereClause.getBoundStatementSyntax()))
+        {
+            throw new IllegalArgumentException("Where clause: " + whereClause.getWhereClause() + " does not match the shape of: " + this.whereClause.getBoundStatementSyntax());
+        }
+        ParsedQuery bound = new ParsedQuery();
+        bound.query = query;
+        bound.whereClause = whereClause;
+        bound.index = index;
+        bound.iTable = iTable;
+        bound.queryCql = queryCql;
+        bound.limitedQueryCql = limitedQueryCql;
+        return bound;
+    }
+
+    /**
+     * Constructor for bind().
+     */
+    private ParsedQuery()
+    {
     }
 
     /**
@@ -126,6 +174,28 @@ public class ParsedQuery
         return "ParsedQuery{" + "query=" + query + ", whereClause=" + whereClause + ", iTable=" + iTable + '}';
     }
 
+    /**
+     * CQL for reading the iTable for this query shape; the bucket is the first
+     * bind variable followed by the where clause values.
+     *
+     * @return the queryCql
+     */
+    public String getQueryCql()
+    {
+        return queryCql;
+    }
+
+    /**
+     * CQL for reading the iTable for this query shape with a limit; the limit
+     * is the last bind variable.
+     *
+     * @return the limitedQueryCql
+     */
+    public String getLimitedQueryCql()
+    {
+        return limitedQueryCql;
+    }
+
     /**
      * Index for this query.
      *
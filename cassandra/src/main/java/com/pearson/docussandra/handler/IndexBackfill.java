@@ -0,0 +1,715 @@
+package com.pearson.docussandra.handler;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Metadata;
+import com.datastax.driver.core.PagingState;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.TokenRange;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.pearson.docussandra.bucketmanagement.PrimaryIndexBucketLocatorImpl;
+import com.pearson.docussandra.cache.MetadataRegistry;
+import com.pearson.docussandra.domain.event.IndexCreatedEvent;
+import com.pearson.docussandra.domain.objects.CompressionCodec;
+import com.pearson.docussandra.domain.objects.Document;
+import com.pearson.docussandra.domain.objects.Index;
+import com.pearson.docussandra.exception.IndexParseException;
+import com.pearson.docussandra.persistence.IndexStatusRepository;
+import com.pearson.docussandra.persistence.helper.DocumentPersistanceUtils;
+import com.pearson.docussandra.persistence.helper.PreparedStatementFactory;
+import com.pearson.docussandra.persistence.impl.DocumentRepositoryImpl;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Backfills a newly created index from the documents already in its table.
+ * The table's token ring is split into sub-ranges, which are scanned in
+ * parallel with driver paging; the iTable writes for each document are issued
+ * asynchronously. How fast documents are indexed, and how many writes are
+ * outstanding at once, is limited by the node's IndexBuildThrottle. Only the
+ * latest version of each document is indexed.
+ *
+ * Each range's progress is checkpointed in the build's status, so a build
+ * that was interrupted (by a restart, say) resumes where it left off. The
+ * checkpoints also carry each range's document and error counts, which are
+ * summed for the build's progress.
+ *
+ * A build can be run on any number of nodes at once. Each node leases the
+ * ranges it scans (see IndexStatusRepository.acquireLease), renewing the
+ * lease as it goes; a range leased by another node is left to that node. If a
+ * node dies, its leases expire and its ranges are picked up, from their
+ * checkpoints, by the next node to run the build.
+ *
+ * Other nodes learn of the new index when they next reload their
+ * MetadataRegistry, and until then write documents without its iTable
+ * entries. So scanning doesn't start until a reload period (this node's, which
+ * is assumed to be the cluster's) has passed since the build started.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class IndexBackfill
+{
+
+    /**
+     * Default number of token sub-ranges scanned at the same time.
+     */
+    public static final int DEFAULT_SCAN_CONCURRENCY = 4;
+
+    /**
+     * Number of rows fetched per page of a range scan; the status is saved
+     * after each page.
+     */
+    public static final int PAGE_SIZE = 1000;
+
+    /**
+     * Number of sub-ranges to aim for per scanning thread, so that one slow or
+     * dense range doesn't leave the other threads idle at the end of a build.
+     */
+    private static final int SPLITS_PER_THREAD = 4;
+
+    /**
+     * Checkpoint of a range whose scan hasn't started.
+     */
+    public static final String NOT_STARTED = "";
+
+    /**
+     * Checkpoint of a range whose scan has finished; followed by the range's
+     * counts.
+     */
+    public static final String DONE = "done";
+
+    /**
+     * Seconds, on top of the metadata reload period, to allow for the reload
+     * itself before scanning starts.
+     */
+    private static final long METADATA_RELOAD_MARGIN_SECONDS = 5;
+
+    /**
+     * Least number of seconds between samples of the build's rate.
+     */
+    private static final long RATE_SAMPLE_SECONDS = 1;
+
+    /**
+     * Weight given to the newest sample in the build's rolling rate.
+     */
+    private static final double RATE_SMOOTHING = 0.2;
+
+    /**
+     * Default number of seconds a range lease lasts without being renewed.
+     */
+    public static final int DEFAULT_LEASE_SECONDS = 60;
+
+    /**
+     * Name of the lease taken while splitting the ring for a new build, so
+     * that only one node does it. It can't be mistaken for a range, as it has
+     * no RANGE_SEPARATOR.
+     */
+    private static final String SPLIT_LEASE = "split";
+
+    private static final String RANGE_SEPARATOR = ":";
+    private static final String CHECKPOINT_SEPARATOR = "|";
+
+    private static final String RANGE_SCAN_CQL = "select * from %s where token(" + DocumentRepositoryImpl.Columns.ID + ") > ? and token(" + DocumentRepositoryImpl.Columns.ID + ") <= ?";
+    private static final String RANGE_SCAN_TO_END_CQL = "select * from %s where token(" + DocumentRepositoryImpl.Columns.ID + ") > ?";
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexBackfill.class);
+
+    private final Session session;
+    private final IndexStatusRepository indexStatusRepo;
+    private final Index index;
+    private final IndexCreatedEvent status;
+    private final int scanConcurrency;
+    private final IndexBuildThrottle throttle;
+
+    /**
+     * Codec the table's documents are compressed with; looked up once for the
+     * whole build.
+     */
+    private final CompressionCodec codec;
+
+    /**
+     * Identifies this node as the holder of a lease.
+     */
+    private final String owner;
+    private final int leaseSeconds;
+
+    /**
+     * When the build's rate was last sampled, and the number of documents
+     * indexed at the time; guarded by status.
+     */
+    private long rateSampledAt = 0;
+    private long rateSampledRecords;
+
+    /**
+     * First iTable write (or scan) failure; once set, the build stops.
+     */
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Constructor.
+     *
+     * @param session Cassandra session to scan and write with.
+     * @param indexStatusRepo Repository to record progress in.
+     * @param index Index to build.
+     * @param status Status of the build; updated as it progresses.
+     * @param scanConcurrency Number of token sub-ranges to scan at the same
+     * time.
+     * @param throttle Limits on the rate of indexing and on outstanding iTable
+     * writes.
+     * @param owner Identifies this node as the holder of range leases; must
+     * be unique across the cluster.
+     * @param leaseSeconds Number of seconds a range lease lasts without being
+     * renewed.
+     */
+    public IndexBackfill(Session session, IndexStatusRepository indexStatusRepo, Index index, IndexCreatedEvent status, int scanConcurrency, IndexBuildThrottle throttle, String owner, int leaseSeconds)
+    {
+        this.session = session;
+        this.indexStatusRepo = indexStatusRepo;
+        this.index = index;
+        this.status = status;
+        this.scanConcurrency = scanConcurrency;
+        this.throttle = throttle;
+        this.codec = IndexMaintainerHelper.getCodec(session, index.getTable());
+        this.owner = owner;
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    /**
+     * Runs the backfill on this node, returning once every range that isn't
+     * leased by another node has been indexed. If the build has checkpoints
+     * from an earlier run (interrupted, or on another node), the ranges are
+     * taken from them and each is resumed from where it left off.
+     *
+     * @return True if every range of the build is done; false if other nodes
+     * still have ranges to finish.
+     * @throws Exception If a range scan or an iTable write failed.
+     */
+    public boolean run() throws Exception
+    {
+        Metadata metadata = session.getCluster().getMetadata();
+        Map<String, String> checkpoints = indexStatusRepo.readCheckpoints(status.getUuid());
+        if (checkpoints.isEmpty())
+        {//a new build; record the ranges so that every node (and a resumed build) scans the same ones
+            if (!indexStatusRepo.acquireLease(status.getUuid(), SPLIT_LEASE, owner, leaseSeconds))
+            {
+                logger.debug("Another node is starting the build of index: " + index.getName() + "; not joining it yet.");
+                return false;
+            }
+            try
+            {
+                checkpoints = indexStatusRepo.readCheckpoints(status.getUuid());//in case another node just finished starting it
+                if (checkpoints.isEmpty())
+                {
+                    for (TokenRange range : splitRing(metadata.getTokenRanges(), scanConcurrency * SPLITS_PER_THREAD))
+                    {
+                        checkpoints.put(toRangeKey(range), NOT_STARTED);
+                    }
+                    indexStatusRepo.saveCheckpoints(status.getUuid(), checkpoints);
+                }
+            } finally
+            {
+                indexStatusRepo.releaseLease(status.getUuid(), SPLIT_LEASE, owner);
+            }
+        } else
+        {
+            logger.info("Joining build of index: " + index.getName() + " from its checkpoints.");
+        }
+        awaitMetadataReload();
+        logger.debug("Backfilling index: " + index.getName() + " from " + checkpoints.size() + " token ranges.");
+        final PreparedStatement rangeStmt = PreparedStatementFactory.getPreparedStatement(String.format(RANGE_SCAN_CQL, index.getTable().toDbTable()), session);
+        final PreparedStatement toEndStmt = PreparedStatementFactory.getPreparedStatement(String.format(RANGE_SCAN_TO_END_CQL, index.getTable().toDbTable()), session);
+        ExecutorService scanners = Executors.newFixedThreadPool(scanConcurrency, new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "index-backfill-" + index.getName() + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try
+        {
+            List<Future<?>> scans = new ArrayList<>(checkpoints.size());
+            for (final Map.Entry<String, String> checkpoint : checkpoints.entrySet())
+            {
+                if (isDone(checkpoint.getValue()))
+                {
+                    continue;
+                }
+                final TokenRange range = fromRangeKey(metadata, checkpoint.getKey());
+                scans.add(scanners.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        leaseAndScanRange(checkpoint.getKey(), range, rangeStmt, toEndStmt);
+                    }
+                }));
+            }
+            for (Future<?> scan : scans)
+            {
+                try
+                {
+                    scan.get();
+                } catch (ExecutionException e)
+                {
+                    failure.compareAndSet(null, e.getCause());
+                }
+            }
+        } finally
+        {
+            scanners.shutdownNow();
+        }
+        boolean complete = updateStatus();//each range waits for its own writes, so there are no stragglers to wait for
+        Throwable t = failure.get();
+        if (t instanceof Exception)
+        {
+            throw (Exception) t;
+        } else if (t != null)
+        {
+            throw new RuntimeException(t);
+        }
+        return complete;
+    }
+
+    /**
+     * Waits until every node should have reloaded its metadata, and so be
+     * maintaining the new index, since the build started. Otherwise a node
+     * could write a document without its iTable entries to a range we have
+     * already scanned. Doesn't wait for a build that started long enough ago.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void awaitMetadataReload() throws InterruptedException
+    {
+        long refreshSeconds = MetadataRegistry.getInstance().getRefreshSeconds();
+        if (refreshSeconds <= 0)
+        {//no reloads, so no period to wait out
+            return;
+        }
+        long wait = status.getDateStarted().getTime() + TimeUnit.SECONDS.toMillis(refreshSeconds + METADATA_RELOAD_MARGIN_SECONDS) - System.currentTimeMillis();
+        if (wait > 0)
+        {
+            logger.info("Waiting " + wait + "ms for every node to pick up index: " + index.getName() + " before backfilling it.");
+            Thread.sleep(wait);
+        }
+    }
+
+    /**
+     * Determines if a range's checkpoint says its scan has finished.
+     *
+     * @param checkpoint The range's checkpoint.
+     * @return True if the range is done.
+     */
+    public static boolean isDone(String checkpoint)
+    {
+        return Checkpoint.parse(checkpoint).done;
+    }
+
+    /**
+     * Splits the token ring into at least the requested number of
+     * non-wrapping sub-ranges.
+     *
+     * @param ring The cluster's token ranges.
+     * @param target Minimum number of sub-ranges to produce.
+     * @return Sub-ranges covering the whole ring.
+     */
+    public static List<TokenRange> splitRing(Set<TokenRange> ring, int target)
+    {
+        int splitsPerRange = Math.max(1, (target + ring.size() - 1) / Math.max(1, ring.size()));
+        List<TokenRange> toReturn = new ArrayList<>();
+        for (TokenRange range : ring)
+        {
+            for (TokenRange split : range.splitEvenly(splitsPerRange))
+            {
+                toReturn.addAll(split.unwrap());
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * Key that a token range's checkpoint is stored under.
+     *
+     * @param range Token range.
+     * @return Key for the range.
+     */
+    public static String toRangeKey(TokenRange range)
+    {
+        return range.getStart().toString() + RANGE_SEPARATOR + range.getEnd().toString();
+    }
+
+    /**
+     * Token range that a checkpoint key refers to.
+     *
+     * @param metadata Cluster metadata, to parse tokens with.
+     * @param key Key created by toRangeKey.
+     * @return The token range.
+     */
+    public static TokenRange fromRangeKey(Metadata metadata, String key)
+    {
+        int separator = key.indexOf(RANGE_SEPARATOR);
+        return metadata.newTokenRange(metadata.newToken(key.substring(0, separator)), metadata.newToken(key.substring(separator + 1)));
+    }
+
+    /**
+     * Leases a token range and, if no other node has it, indexes it from its
+     * current checkpoint on.
+     *
+     * @param key Key the range's checkpoint and lease are stored under.
+     * @param range Range to scan; must not wrap around the ring.
+     * @param rangeStmt Statement to scan a bounded range.
+     * @param toEndStmt Statement to scan a range that runs to the end of the
+     * ring.
+     */
+    private void leaseAndScanRange(String key, TokenRange range, PreparedStatement rangeStmt, PreparedStatement toEndStmt)
+    {
+        if (!indexStatusRepo.acquireLease(status.getUuid(), key, owner, leaseSeconds))
+        {
+            logger.debug("Token range: " + key + " of index: " + index.getName() + " is leased by another node.");
+            return;
+        }
+        try
+        {
+            String checkpoint = indexStatusRepo.readCheckpoints(status.getUuid()).get(key);//the range may have moved on since we last read it
+            if (checkpoint != null && !isDone(checkpoint))
+            {
+                scanRange(key, range, checkpoint, rangeStmt, toEndStmt);
+            }
+        } finally
+        {
+            indexStatusRepo.releaseLease(status.getUuid(), key, owner);
+        }
+    }
+
+    /**
+     * Indexes every document in a token range, from its checkpoint on,
+     * recording a new checkpoint after each page. A checkpoint is only saved
+     * once the page's iTable writes have all succeeded, so resuming from it
+     * never skips a document. The range's lease is renewed at least every
+     * third of its length, and before each checkpoint; if it has been lost to
+     * another node, the scan stops without saving one.
+     *
+     * @param key Key the range's checkpoint is stored under.
+     * @param range Range to scan; must not wrap around the ring.
+     * @param checkpoint Where to start the scan: NOT_STARTED, or a checkpoint
+     * saved by an earlier run.
+     * @param rangeStmt Statement to scan a bounded range.
+     * @param toEndStmt Statement to scan a range that runs to the end of the
+     * ring.
+     */
+    private void scanRange(String key, TokenRange range, String checkpoint, PreparedStatement rangeStmt, PreparedStatement toEndStmt)
+    {
+        BoundStatement bs;
+        if (range.getEnd().compareTo(range.getStart()) <= 0)
+        {//after unwrapping, only a range ending at the minimum token ends "before" it starts; there is no upper bound to query with
+            bs = new BoundStatement(toEndStmt);
+            bs.setToken(0, range.getStart());
+        } else
+        {
+            bs = new BoundStatement(rangeStmt);
+            bs.setToken(0, range.getStart());
+            bs.setToken(1, range.getEnd());
+        }
+        bs.setFetchSize(PAGE_SIZE);
+        Checkpoint progress = Checkpoint.parse(checkpoint);
+        UUID lastId = progress.lastId;
+        if (progress.pagingState != null)
+        {//the paging state picks the scan up after the last page we finished; the id keeps us from indexing an older version of its last document
+            bs.setPagingState(PagingState.fromString(progress.pagingState));
+        }
+        long renewEvery = TimeUnit.SECONDS.toNanos(leaseSeconds) / 3;
+        long renewedAt = System.nanoTime();
+        ResultSet rs = session.execute(throttle.tag(bs));
+        while (failure.get() == null && !rs.isExhausted())//fetches the next page when this one is used up
+        {
+            int available = rs.getAvailableWithoutFetching();
+            List<ResultSetFuture> pageWrites = new ArrayList<>(available);
+            for (int i = 0; i < available; i++)
+            {
+                if (System.nanoTime() - renewedAt > renewEvery)
+                {
+                    if (!renewLease(key))
+                    {
+                        return;
+                    }
+                    renewedAt = System.nanoTime();
+                }
+                Row row = rs.one();
+                UUID id = row.getUUID(DocumentRepositoryImpl.Columns.ID);
+                if (id.equals(lastId))
+                {//an older version of the document we just indexed
+                    continue;
+                }
+                lastId = id;
+                progress.records++;//documents, not versions, to match the size estimate the total comes from
+                throttle.acquireDocument();
+                Document toIndex = DocumentPersistanceUtils.marshalRow(row);
+                toIndex.setTable(index.getTable());
+                ResultSetFuture write = indexDocument(toIndex, progress);
+                if (write != null)
+                {
+                    pageWrites.add(write);
+                }
+            }
+            try
+            {
+                Futures.successfulAsList(pageWrites).get();//failures are recorded by the write callbacks
+            } catch (InterruptedException | ExecutionException e)
+            {
+                failure.compareAndSet(null, e);
+            }
+            if (failure.get() != null)
+            {
+                return;//don't checkpoint past writes that may not have happened
+            }
+            if (!renewLease(key))
+            {
+                return;
+            }
+            renewedAt = System.nanoTime();
+            PagingState pagingState = rs.getExecutionInfo().getPagingState();
+            if (pagingState != null)
+            {
+                progress.pagingState = pagingState.toString();
+                progress.lastId = lastId;
+                indexStatusRepo.saveCheckpoint(status.getUuid(), key, progress.toString());
+            }
+            updateStatus();
+        }
+        if (failure.get() == null && renewLease(key))
+        {
+            progress.done = true;
+            indexStatusRepo.saveCheckpoint(status.getUuid(), key, progress.toString());
+        }
+    }
+
+    /**
+     * Renews this node's lease on a token range.
+     *
+     * @param key Key the range's lease is stored under.
+     * @return True if the lease was renewed; false if it has been lost.
+     */
+    private boolean renewLease(String key)
+    {
+        if (indexStatusRepo.renewLease(status.getUuid(), key, owner, leaseSeconds))
+        {
+            return true;
+        }
+        logger.warn("Lost the lease on token range: " + key + " of index: " + index.getName() + "; leaving it to the node that has it now.");
+        return false;
+    }
+
+    /**
+     * Writes the iTable entry for a single document, asynchronously.
+     *
+     * @param toIndex Document to index.
+     * @param progress Progress of the range the document is in; its error
+     * count is updated if the document can't be indexed.
+     * @return The pending write, or null if the document has nothing to index
+     * or could not be written.
+     */
+    private ResultSetFuture indexDocument(Document toIndex, Checkpoint progress)
+    {
+        BoundStatement statement;
+        try
+        {
+            statement = IndexMaintainerHelper.generateDocumentCreateIndexEntryStatement(session, index, toIndex, PrimaryIndexBucketLocatorImpl.getInstance(), codec);
+        } catch (IndexParseException e)
+        {
+            //we couldn't parse this document for an index; make a note, and move on
+            progress.errors++;
+            recordError(e.toString() + " In document: " + toIndex.toString());//may want to reduce the verbosity here eventually -- or break some meta-data out into columns
+            return null;//we will still call this record "complete" for the sake of time calculation, and percent done
+        }
+        if (statement == null)
+        {
+            return null;//nothing to index in this document
+        }
+        throttle.acquireWrite();
+        ResultSetFuture future;
+        try
+        {
+            future = session.executeAsync(throttle.tag(statement));
+        } catch (RuntimeException e)
+        {
+            throttle.releaseWrite();
+            failure.compareAndSet(null, e);
+            return null;
+        }
+        Futures.addCallback(future, new FutureCallback<ResultSet>()
+        {
+            @Override
+            public void onSuccess(ResultSet result)
+            {
+                throttle.releaseWrite();
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                failure.compareAndSet(null, t);
+                throttle.releaseWrite();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Adds a per-document error to the status's samples, unless it already has
+     * as many as it keeps; the error is counted either way (in the range's
+     * checkpoint). The sample is appended to the stored ones rather than
+     * written over them, so samples recorded by other nodes are kept; nodes
+     * that add samples at the same time can go a little over the limit.
+     *
+     * @param error Error to add.
+     */
+    private void recordError(String error)
+    {
+        synchronized (status)
+        {
+            List<String> errors = status.getErrors();
+            if (errors == null)
+            {
+                errors = new ArrayList<>();
+            }
+            if (errors.size() >= IndexCreatedEvent.MAX_ERROR_SAMPLES)
+            {
+                return;
+            }
+            errors.add(error);
+            status.setErrors(errors);
+        }
+        indexStatusRepo.addErrors(status.getUuid(), Collections.singletonList(error));
+    }
+
+    /**
+     * Saves the current progress of the build: the document and error counts
+     * summed from every range's checkpoint (so they include the work of other
+     * nodes and earlier runs), and a rolling rate. Once every range is done,
+     * the count replaces the estimated total.
+     *
+     * @return True if every range of the build is done.
+     */
+    private boolean updateStatus()
+    {
+        Map<String, String> checkpoints = indexStatusRepo.readCheckpoints(status.getUuid());
+        long records = 0;
+        long errors = 0;
+        boolean done = !checkpoints.isEmpty();
+        for (String checkpoint : checkpoints.values())
+        {
+            Checkpoint progress = Checkpoint.parse(checkpoint);
+            records += progress.records;
+            errors += progress.errors;
+            done &= progress.done;
+        }
+        synchronized (status)
+        {
+            long now = System.nanoTime();
+            if (rateSampledAt == 0)
+            {
+                rateSampledAt = now;
+                rateSampledRecords = records;
+            } else if (now - rateSampledAt >= TimeUnit.SECONDS.toNanos(RATE_SAMPLE_SECONDS))
+            {
+                double sample = Math.max(0, records - rateSampledRecords) * (double) TimeUnit.SECONDS.toNanos(1) / (now - rateSampledAt);
+                double previous = status.getDocsPerSecond();
+                status.setDocsPerSecond(previous > 0 ? RATE_SMOOTHING * sample + (1 - RATE_SMOOTHING) * previous : sample);
+                rateSampledAt = now;
+                rateSampledRecords = records;
+            }
+            status.setRecordsCompleted(records);
+            status.setErrorCount(errors);
+            if (done)
+            {
+                status.setTotalRecords(records);//no longer an estimate
+            }
+            status.setStatusLastUpdatedAt(new Date());
+            indexStatusRepo.update(status);
+        }
+        return done;
+    }
+
+    /**
+     * Progress of the scan of one token range, as stored in its checkpoint:
+     * the number of documents indexed and errors hit so far, and, until the
+     * range is done, where to pick the scan up.
+     */
+    private static class Checkpoint
+    {
+
+        private long records;
+        private long errors;
+        private boolean done;
+        private String pagingState;
+        private UUID lastId;
+
+        /**
+         * Reads a checkpoint; NOT_STARTED (or null) reads as a range with
+         * nothing done yet.
+         */
+        private static Checkpoint parse(String value)
+        {
+            Checkpoint checkpoint = new Checkpoint();
+            if (value == null || NOT_STARTED.equals(value))
+            {
+                return checkpoint;
+            }
+            String[] parts = value.split(Pattern.quote(CHECKPOINT_SEPARATOR));
+            if (DONE.equals(parts[0]))
+            {
+                checkpoint.done = true;
+                if (parts.length == 3)
+                {
+                    checkpoint.records = Long.parseLong(parts[1]);
+                    checkpoint.errors = Long.parseLong(parts[2]);
+                }
+            } else if (parts.length == 4)
+            {
+                checkpoint.records = Long.parseLong(parts[0]);
+                checkpoint.errors = Long.parseLong(parts[1]);
+                checkpoint.pagingState = parts[2];
+                checkpoint.lastId = UUID.fromString(parts[3]);
+            } else if (parts.length == 2)
+            {//saved before checkpoints carried counts
+                checkpoint.pagingState = parts[0];
+                checkpoint.lastId = UUID.fromString(parts[1]);
+            }
+            return checkpoint;
+        }
+
+        @Override
+        public String toString()
+        {
+            if (done)
+            {
+                return DONE + CHECKPOINT_SEPARATOR + records + CHECKPOINT_SEPARATOR + errors;
+            }
+            return records + CHECKPOINT_SEPARATOR + errors + CHECKPOINT_SEPARATOR + pagingState + CHECKPOINT_SEPARATOR + lastId;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.pearson.docussandra.handler;
+
+import com.pearson.docussandra.domain.event.IndexCreatedEvent;
+import com.pearson.docussandra.persistence.IndexRepository;
+import com.pearson.docussandra.persistence.IndexStatusRepository;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads index builds across the cluster. A build starts on the node that
+ * got the request to create the index; every other node finds it here, in
+ * sys_idx_not_done, and joins it by publishing it to its own handler. The
+ * nodes then split the build's token ranges between them with leases.
+ *
+ * The same check resumes builds that were interrupted, such as by a restart
+ * of a node that was running them: once their leases expire, their remaining
+ * ranges are picked up from their checkpoints.
+ *
+ * Builds that failed with a fatal error are not retried until an operator has
+ * dealt with the cause and cleared the error (the fatal_error column of
+ * sys_idx_status).
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class IndexBuildCoordinator
+{
+
+    /**
+     * Default number of seconds between checks for builds to join.
+     */
+    public static final long DEFAULT_PERIOD_SECONDS = 30;
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexBuildCoordinator.class);
+
+    private final IndexRepository indexRepo;
+    private final IndexStatusRepository indexStatusRepo;
+    private final IndexCreatedHandler handler;
+    private ScheduledExecutorService checker;
+
+    /**
+     * Constructor.
+     *
+     * @param indexRepo Index repository.
+     * @param indexStatusRepo Index status repository.
+     * @param handler Handler that runs index builds on this node.
+     */
+    public IndexBuildCoordinator(IndexRepository indexRepo, IndexStatusRepository indexStatusRepo, IndexCreatedHandler handler)
+    {
+        this.indexRepo = indexRepo;
+        this.indexStatusRepo = indexStatusRepo;
+        this.handler = handler;
+    }
+
+    /**
+     * Publishes every build that isn't done, hasn't failed, and isn't already
+     * queued or running on this node, so that this node joins it.
+     *
+     * @return Number of builds joined.
+     */
+    public int joinBuilds()
+    {
+        int joined = 0;
+        for (IndexCreatedEvent status : indexStatusRepo.readAllCurrentlyIndexing())
+        {
+            if (status == null || handler.isBuilding(status.getUuid()) || IndexCreatedHandler.isQueued(status.getUuid()))
+            {
+                continue;
+            }
+            if (status.getFatalError() != null)
+            {
+                logger.debug("Not joining build: " + status.getUuid() + "; it failed and its error hasn't been cleared.");
+                continue;
+            }
+            if (!indexRepo.exists(status.getIndex().getId()))
+            {
+                logger.debug("Not joining build: " + status.getUuid() + "; its index no longer exists.");
+                continue;
+            }
+            logger.debug("Joining build of index: " + status.getIndex().getName() + " (" + status.getUuid() + ").");
+            if (IndexCreatedHandler.publish(status))
+            {
+                joined++;
+            }
+        }
+        return joined;
+    }
+
+    /**
+     * Checks for builds to join now, and then periodically in the background.
+     *
+     * @param periodSeconds Number of seconds between checks.
+     */
+    public synchronized void start(long periodSeconds)
+    {
+        stop();
+        checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "index-build-coordinator");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        checker.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    joinBuilds();
+                } catch (Exception e)//keep going; we'll try again next time
+                {
+                    logger.warn("Could not check for index builds to join.", e);
+                }
+            }
+        }, 0, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops checking for builds to join.
+     */
+    public synchronized void stop()
+    {
+        if (checker != null)
+        {
+            checker.shutdownNow();
+            checker = null;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package com.pearson.docussandra.handler;
+
+import com.codahale.metrics.SlidingTimeWindowReservoir;
+import com.codahale.metrics.Timer;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Host;
+import com.datastax.driver.core.LatencyTracker;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.RateLimiter;
+import com.pearson.docussandra.persistence.impl.IndexStatusRepositoryImpl;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits how hard the index builds running on this node push on Cassandra, so
+ * that they don't starve live traffic on the same cluster and Session. Builds
+ * are held to a rate (documents per second) and a number of outstanding iTable
+ * writes, shared by all the builds on the node.
+ *
+ * Once started, the throttle tracks the latency of the foreground requests
+ * on the Session, that is, all of them except the builds' own scans and iTable
+ * writes (which the builds tag) and their status, checkpoint and lease queries
+ * (see IndexStatusRepositoryImpl.BUILD_CQL). Every second, if the p99 of the
+ * last second's foreground requests is above its target, or there have been
+ * new read, write or client timeouts, both limits are halved; otherwise they
+ * are raised a step at a time back up to their configured maximums.
+ *
+ * All three settings can be changed at runtime.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class IndexBuildThrottle
+{
+
+    /**
+     * Default maximum documents per second; zero means unlimited.
+     */
+    public static final double DEFAULT_MAX_DOCS_PER_SECOND = 0;
+
+    /**
+     * Default maximum number of iTable writes outstanding at the same time.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_WRITES = 64;
+
+    /**
+     * Default foreground p99 request latency, in milliseconds, above which builds back
+     * off.
+     */
+    public static final long DEFAULT_TARGET_P99_MILLIS = 100;
+
+    /**
+     * Lowest rate, in documents per second, that builds are backed off to.
+     */
+    public static final double MIN_DOCS_PER_SECOND = 10;
+
+    /**
+     * Number of seconds between adjustments.
+     */
+    private static final long ADJUST_PERIOD_SECONDS = 1;
+
+    /**
+     * Number of steps it takes the in-flight limit to recover from one write
+     * to its maximum.
+     */
+    private static final int RECOVERY_STEPS = 16;
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexBuildThrottle.class);
+
+    private volatile double maxDocsPerSecond;
+    private volatile int maxInFlightWrites;
+    private volatile long targetP99Millis;
+
+    /**
+     * Current rate limit; zero when unlimited.
+     */
+    private volatile double docsPerSecond;
+
+    /**
+     * Current in-flight write limit.
+     */
+    private volatile int inFlightLimit;
+
+    private volatile RateLimiter rateLimiter;
+    private final ResizableSemaphore writes;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Documents let through so far; used to measure the actual rate.
+     */
+    private final AtomicLong documents = new AtomicLong();
+
+    private volatile double lastP99Millis;
+    private volatile long backoffs;
+    private long lastDocuments;
+    private long lastAdjustNanos = System.nanoTime();
+    private long lastTimeouts;
+    private ScheduledExecutorService adjuster;
+    private Cluster cluster;
+
+    /**
+     * Statements issued by index builds; weak, so tagging them doesn't keep
+     * them around.
+     */
+    private final Set<Statement> buildStatements = Collections.newSetFromMap(new MapMaker().weakKeys().<Statement, Boolean>makeMap());
+
+    /**
+     * Latency of the requests that aren't index builds'.
+     */
+    final ForegroundLatencyTracker foreground = new ForegroundLatencyTracker();
+
+    /**
+     * Tracks the latency and timeouts of every request the driver makes that
+     * isn't an index build's: neither tagged, nor one of the builds' status,
+     * checkpoint and lease queries.
+     */
+    class ForegroundLatencyTracker implements LatencyTracker
+    {
+
+        /**
+         * Only holds the last adjustment period's requests, so the p99 drops
+         * back as soon as a spike is over rather than decaying over minutes.
+         */
+        private final Timer latency = new Timer(new SlidingTimeWindowReservoir(ADJUST_PERIOD_SECONDS, TimeUnit.SECONDS));
+        private final AtomicLong timeouts = new AtomicLong();
+
+        @Override
+        public void update(Host host, Statement statement, Exception exception, long newLatencyNanos)
+        {
+            if (isBuildStatement(statement))
+            {
+                return;
+            }
+            if (exception instanceof OperationTimedOutException || exception instanceof ReadTimeoutException || exception instanceof WriteTimeoutException)
+            {
+                timeouts.incrementAndGet();
+            }
+            latency.update(newLatencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return the p99 latency of foreground requests, in milliseconds
+         */
+        double getP99Millis()
+        {
+            return latency.getSnapshot().get99thPercentile() / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * @return the number of foreground requests that have timed out
+         */
+        long getTimeouts()
+        {
+            return timeouts.get();
+        }
+    }
+
+    /**
+     * Determines if a statement is an index build's.
+     */
+    private boolean isBuildStatement(Statement statement)
+    {
+        if (statement == null)
+        {
+            return false;
+        }
+        if (buildStatements.contains(statement))
+        {
+            return true;
+        }
+        return statement instanceof BoundStatement && IndexStatusRepositoryImpl.BUILD_CQL.contains(((BoundStatement) statement).preparedStatement().getQueryString());
+    }
+
+    /**
+     * Semaphore whose number of permits can be reduced as well as increased.
+     */
+    private static class ResizableSemaphore extends Semaphore
+    {
+
+        private ResizableSemaphore(int permits)
+        {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction)
+        {
+            super.reducePermits(reduction);
+        }
+    }
+
+    /**
+     * Constructor; uses the default settings.
+     */
+    public IndexBuildThrottle()
+    {
+        this(DEFAULT_MAX_DOCS_PER_SECOND, DEFAULT_MAX_IN_FLIGHT_WRITES, DEFAULT_TARGET_P99_MILLIS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxDocsPerSecond Maximum number of documents indexed per second;
+     * zero for unlimited.
+     * @param maxInFlightWrites Maximum number of iTable writes outstanding at
+     * the same time.
+     * @param targetP99Millis Foreground p99 request latency, in milliseconds, above which
+     * builds back off.
+     */
+    public IndexBuildThrottle(double maxDocsPerSecond, int maxInFlightWrites, long targetP99Millis)
+    {
+        checkSettings(maxDocsPerSecond, maxInFlightWrites, targetP99Millis);
+        this.maxDocsPerSecond = maxDocsPerSecond;
+        this.maxInFlightWrites = maxInFlightWrites;
+        this.targetP99Millis = targetP99Millis;
+        this.writes = new ResizableSemaphore(maxInFlightWrites);
+        this.inFlightLimit = maxInFlightWrites;
+        setRate(maxDocsPerSecond);
+    }
+
+    /**
+     * Blocks until the rate limit allows another document to be indexed.
+     */
+    public void acquireDocument()
+    {
+        documents.incrementAndGet();
+        RateLimiter limiter = rateLimiter;
+        if (docsPerSecond > 0 && limiter != null)
+        {
+            limiter.acquire();
+        }
+    }
+
+    /**
+     * Blocks until another iTable write may be issued. Every call must be
+     * matched by a call to releaseWrite once the write completes.
+     */
+    public void acquireWrite()
+    {
+        writes.acquireUninterruptibly();
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * Records that an iTable write has completed.
+     */
+    public void releaseWrite()
+    {
+        inFlight.decrementAndGet();
+        writes.release();
+    }
+
+    /**
+     * Marks a statement as an index build's, so that its latency doesn't count
+     * against the foreground p99. Statements are compared by identity.
+     *
+     * @param statement Statement an index build is about to execute.
+     * @return The statement.
+     */
+    public <T extends Statement> T tag(T statement)
+    {
+        buildStatements.add(statement);
+        return statement;
+    }
+
+    /**
+     * Starts adjusting the limits in the background, based on the latency of
+     * the foreground requests on the given session's cluster.
+     *
+     * @param session Session to watch.
+     */
+    public synchronized void start(final Session session)
+    {
+        stop();
+        cluster = session.getCluster();
+        cluster.register(foreground);
+        adjuster = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, "index-build-throttle");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        adjuster.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    adjust();
+                } catch (Exception e)//keep going; we'll try again next time
+                {
+                    logger.warn("Could not adjust the index build throttle.", e);
+                }
+            }
+        }, ADJUST_PERIOD_SECONDS, ADJUST_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops adjusting the limits; they stay where they are.
+     */
+    public synchronized void stop()
+    {
+        if (adjuster != null)
+        {
+            adjuster.shutdownNow();
+            adjuster = null;
+        }
+        if (cluster != null)
+        {
+            cluster.unregister(foreground);
+            cluster = null;
+        }
+    }
+
+    /**
+     * Adjusts the limits from the foreground latency and timeouts.
+     */
+    private synchronized void adjust()
+    {
+        long now = System.nanoTime();
+        long documentsNow = documents.get();
+        double observedDocsPerSecond = (documentsNow - lastDocuments) * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, now - lastAdjustNanos);
+        lastDocuments = documentsNow;
+        lastAdjustNanos = now;
+        long timeouts = foreground.getTimeouts();
+        long newTimeouts = timeouts - lastTimeouts;
+        lastTimeouts = timeouts;
+        adjust(foreground.getP99Millis(), newTimeouts, observedDocsPerSecond);
+    }
+
+    /**
+     * Adjusts the limits: halves them if Cassandra looks overloaded, otherwise
+     * raises them a step towards their maximums.
+     *
+     * @param p99Millis Current foreground p99 request latency, in
+     * milliseconds.
+     * @param newTimeouts Number of timeouts since the last adjustment.
+     * @param observedDocsPerSecond Rate documents have actually been indexed
+     * at since the last adjustment.
+     */
+    public synchronized void adjust(double p99Millis, long newTimeouts, double observedDocsPerSecond)
+    {
+        lastP99Millis = p99Millis;
+        if (p99Millis > targetP99Millis || newTimeouts > 0)
+        {
+            backoffs++;
+            setInFlightLimit(Math.max(1, inFlightLimit / 2));
+            if (docsPerSecond > 0)
+            {
+                setRate(Math.max(MIN_DOCS_PER_SECOND, docsPerSecond / 2));
+            } else if (observedDocsPerSecond > 0)
+            {//unlimited until now; start from what we were actually doing
+                setRate(Math.max(MIN_DOCS_PER_SECOND, observedDocsPerSecond / 2));
+            }
+            logger.debug("Index builds backing off; p99: " + p99Millis + "ms, new timeouts: " + newTimeouts + ", now " + docsPerSecond + " docs/sec and " + inFlightLimit + " writes in flight.");
+        } else
+        {
+            setInFlightLimit(Math.min(maxInFlightWrites, inFlightLimit + Math.max(1, maxInFlightWrites / RECOVERY_STEPS)));
+            if (docsPerSecond > 0)
+            {
+                if (maxDocsPerSecond > 0)
+                {
+                    setRate(Math.min(maxDocsPerSecond, docsPerSecond + Math.max(MIN_DOCS_PER_SECOND, maxDocsPerSecond / RECOVERY_STEPS)));
+                } else if (observedDocsPerSecond < docsPerSecond / 2)
+                {//the rate limit is no longer what's holding builds back
+                    setRate(0);
+                } else
+                {
+                    setRate(docsPerSecond + Math.max(MIN_DOCS_PER_SECOND, docsPerSecond / RECOVERY_STEPS));
+                }
+            }
+        }
+    }
+
+    /**
+     * Changes the settings. The current limits are reset to the new
+     * maximums.
+     *
+     * @param maxDocsPerSecond Maximum number of documents indexed per second;
+     * zero for unlimited.
+     * @param maxInFlightWrites Maximum number of iTable writes outstanding at
+     * the same time.
+     * @param targetP99Millis Foreground p99 request latency, in milliseconds, above which
+     * builds back off.
+     * @throws IllegalArgumentException If a setting is out of range.
+     */
+    public synchronized void update(double maxDocsPerSecond, int maxInFlightWrites, long targetP99Millis)
+    {
+        checkSettings(maxDocsPerSecond, maxInFlightWrites, targetP99Millis);
+        this.maxDocsPerSecond = maxDocsPerSecond;
+        this.maxInFlightWrites = maxInFlightWrites;
+        this.targetP99Millis = targetP99Millis;
+        setInFlightLimit(maxInFlightWrites);
+        setRate(maxDocsPerSecond);
+        logger.info("Index build throttle set to: " + maxDocsPerSecond + " docs/sec, " + maxInFlightWrites + " writes in flight, " + targetP99Millis + "ms p99 target.");
+    }
+
+    /**
+     * Gets the throttle's settings and current state.
+     *
+     * @return Map of setting or statistic name to value.
+     */
+    public Map<String, Object> getStats()
+    {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxDocsPerSecond", maxDocsPerSecond);
+        stats.put("maxInFlightWrites", maxInFlightWrites);
+        stats.put("targetP99Millis", targetP99Millis);
+        stats.put("docsPerSecond", docsPerSecond);
+        stats.put("inFlightLimit", inFlightLimit);
+        stats.put("inFlightWrites", inFlight.get());
+        stats.put("p99Millis", lastP99Millis);
+        stats.put("backoffs", backoffs);
+        return stats;
+    }
+
+    /**
+     * @return the maximum number of documents indexed per second; zero if
+     * unlimited
+     */
+    public double getMaxDocsPerSecond()
+    {
+        return maxDocsPerSecond;
+    }
+
+    /**
+     * @return the maximum number of iTable writes outstanding at the same time
+     */
+    public int getMaxInFlightWrites()
+    {
+        return maxInFlightWrites;
+    }
+
+    /**
+     * @return the foreground p99 request latency, in milliseconds, above which builds
+     * back off
+     */
+    public long getTargetP99Millis()
+    {
+        return targetP99Millis;
+    }
+
+    /**
+     * @return the current rate limit, in documents per second; zero if
+     * unlimited
+     */
+    public double getDocsPerSecond()
+    {
+        return docsPerSecond;
+    }
+
+    /**
+     * @return the current limit on iTable writes outstanding at the same time
+     */
+    public int getInFlightLimit()
+    {
+        return inFlightLimit;
+    }
+
+    private void setRate(double rate)
+    {
+        if (rate > 0)
+        {
+            if (rateLimiter == null)
+            {
+                rateLimiter = RateLimiter.create(rate);
+            } else
+            {
+                rateLimiter.setRate(rate);
+            }
+        }
+        docsPerSecond = rate;
+    }
+
+    private void setInFlightLimit(int limit)
+    {
+        int change = limit - inFlightLimit;
+        if (change > 0)
+        {
+            writes.release(change);
+        } else if (change < 0)
+        {
+            writes.reducePermits(-change);//writes already in flight finish; new ones wait until we're under the limit
+        }
+        inFlightLimit = limit;
+    }
+
+    private static void checkSettings(double maxDocsPerSecond, int maxInFlightWrites, long targetP99Millis)
+    {
+        if (maxDocsPerSecond < 0)
+        {
+            throw new IllegalArgumentException("maxDocsPerSecond must be zero (unlimited) or more.");
+        }
+        if (maxInFlightWrites < 1)
+        {
+            throw new IllegalArgumentException("maxInFlightWrites must be at least 1.");
+        }
+        if (targetP99Millis < 1)
+        {
+            throw new IllegalArgumentException("targetP99Millis must be at least 1.");
+        }
+    }
+}
@@ -1,25 +1,27 @@
 
 package com.pearson.docussandra.handler;
 
-import com.datastax.driver.core.BoundStatement;
-import com.pearson.docussandra.bucketmanagement.PrimaryIndexBucketLocatorImpl;
-import com.pearson.docussandra.domain.objects.Document;
 import com.pearson.docussandra.domain.objects.Index;
 import com.pearson.docussandra.domain.event.IndexCreatedEvent;
-import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
-import com.pearson.docussandra.exception.IndexParseException;
 import com.pearson.docussandra.persistence.DocumentRepository;
 import com.pearson.docussandra.persistence.IndexRepository;
 import com.pearson.docussandra.persistence.IndexStatusRepository;
+import com.strategicgains.eventing.DomainEvents;
 import com.strategicgains.eventing.EventHandler;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Handles our background indexing tasks.
+ * Handles our background indexing tasks. Any number of nodes can run the same
+ * build at once; they split its token ranges between them with leases (see
+ * IndexBackfill), and whichever node finishes the last range marks the index
+ * active.
  *
  * @author https://github.com/JeffreyDeYoung
  */
@@ -28,17 +30,78 @@ public class IndexCreatedHandler implements EventHandler
 
     private static Logger logger = LoggerFactory.getLogger(IndexCreatedHandler.class);
 
-    private final static int CHUNK = 1000;
-
     private IndexRepository indexRepo;
     private IndexStatusRepository indexStatusRepo;
     private DocumentRepository docRepo;
+    /**
+     * Number of token sub-ranges each index build scans at the same time.
+     */
+    private final int scanConcurrency;
+    /**
+     * Limits shared by the index builds on this node.
+     */
+    private final IndexBuildThrottle throttle;
+    /**
+     * Number of seconds a range lease lasts without being renewed.
+     */
+    private final int leaseSeconds;
+    /**
+     * Identifies this node as the holder of range leases.
+     */
+    private final String nodeId = createNodeId();
+    /**
+     * Index status UUIDs of the builds running on this node.
+     */
+    private final Set<UUID> building = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+    /**
+     * Index status UUIDs of the builds published on this node that haven't
+     * been picked up off the event bus yet.
+     */
+    private static final Set<UUID> queued = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
 
     public IndexCreatedHandler(IndexRepository indexRepo, IndexStatusRepository indexStatusRepo, DocumentRepository docRepo)
+    {
+        this(indexRepo, indexStatusRepo, docRepo, IndexBackfill.DEFAULT_SCAN_CONCURRENCY, new IndexBuildThrottle());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param indexRepo Index repository.
+     * @param indexStatusRepo Index status repository.
+     * @param docRepo Document repository.
+     * @param scanConcurrency Number of token sub-ranges each index build scans
+     * at the same time.
+     * @param throttle Limits on the rate of indexing and on outstanding iTable
+     * writes, shared by all the index builds on this node.
+     */
+    public IndexCreatedHandler(IndexRepository indexRepo, IndexStatusRepository indexStatusRepo, DocumentRepository docRepo, int scanConcurrency, IndexBuildThrottle throttle)
+    {
+        this(indexRepo, indexStatusRepo, docRepo, scanConcurrency, throttle, IndexBackfill.DEFAULT_LEASE_SECONDS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param indexRepo Index repository.
+     * @param indexStatusRepo Index status repository.
+     * @param docRepo Document repository.
+     * @param scanConcurrency Number of token sub-ranges each index build scans
+     * at the same time.
+     * @param throttle Limits on the rate of indexing and on outstanding iTable
+     * writes, shared by all the index builds on this node.
+     * @param leaseSeconds Number of seconds a range lease lasts without being
+     * renewed; a range held by a node that died is picked up by another after
+     * this long.
+     */
+    public IndexCreatedHandler(IndexRepository indexRepo, IndexStatusRepository indexStatusRepo, DocumentRepository docRepo, int scanConcurrency, IndexBuildThrottle throttle, int leaseSeconds)
     {
         this.indexRepo = indexRepo;
         this.indexStatusRepo = indexStatusRepo;
         this.docRepo = docRepo;
+        this.scanConcurrency = scanConcurrency;
+        this.throttle = throttle;
+        this.leaseSeconds = leaseSeconds;
     }
 
     @Override
@@ -52,63 +115,20 @@ public class IndexCreatedHandler implements EventHandler
     {
         logger.debug("Handler received background indexing event: " + event.toString());
         //Thread.sleep(1000);//pause for a second to ensure the iTable gets created before proceeding (Todd: thoughts on this?)
-        IndexCreatedEvent status = null;
+        IndexCreatedEvent status = (IndexCreatedEvent) event;
+        queued.remove(status.getUuid());
+        if (!building.add(status.getUuid()))
+        {
+            logger.debug("Index build: " + status.getUuid() + " is already running on this node.");
+            return;
+        }
         try
         {
-            status = (IndexCreatedEvent) event;
             Index index = indexRepo.read(status.getIndex().getId());
-            long offset = 0;
-            long recordsCompleted = 0;
-            QueryResponseWrapper responseWrapper = docRepo.readAll(index.getDatabaseName(), index.getTableName(), CHUNK, offset);
-            boolean hasMore;
-            if (responseWrapper.isEmpty())
-            {
-                hasMore = false;
-            } else
-            {
-                hasMore = true;
-            }
-            while (hasMore)
+            if (!new IndexBackfill(indexStatusRepo.getSession(), indexStatusRepo, index, status, scanConcurrency, throttle, nodeId, leaseSeconds).run())
             {
-                for (Document toIndex : responseWrapper)
-                {
-                    try
-                    {
-                        //actually index here
-                        BoundStatement statement = IndexMaintainerHelper.generateDocumentCreateIndexEntryStatement(indexStatusRepo.getSession(), index, toIndex, PrimaryIndexBucketLocatorImpl.getInstance());
-                        if (statement != null)
-                        {
-                            indexStatusRepo.getSession().execute(statement);
-                        }
-                        recordsCompleted++;
-                    } catch (IndexParseException e)
-                    {
-                        //we couldn't parse this document for an index; make a note, and move on
-                        recordsCompleted++;//we will still call this record "complete" for the sake of time calculation, and percent done
-                        status.setRecordsCompleted(recordsCompleted);
-                        //this will have to change if threading
-                        List<String> errors = status.getErrors();
-                        if (errors == null)
-                        {
-                            errors = new ArrayList<>();
-                        }
-                        errors.add(e.toString() + " In document: " + toIndex.toString());//may want to reduce the verbosity here eventually -- or break some meta-data out into columns
-                        status.setErrors(errors);
-                        status.setStatusLastUpdatedAt(new Date());
-                        //indexStatusRepo.update(status);//lets not save every time for now
-                    }
-                }
-                offset = offset + CHUNK;
-                //update status
-                status.setRecordsCompleted(recordsCompleted);
-                status.setStatusLastUpdatedAt(new Date());
-                indexStatusRepo.update(status);
-                //get the next chunk
-                responseWrapper = docRepo.readAll(index.getDatabaseName(), index.getTableName(), CHUNK, offset);
-                if (responseWrapper.isEmpty())
-                {
-                    hasMore = false;
-                }
+                logger.debug("Done with our part of the build of index: " + index.getName() + "; other nodes are finishing the rest.");
+                return;
             }
             //update index as done
             index.setActive(true);
@@ -129,11 +149,72 @@ public class IndexCreatedHandler implements EventHandler
             {
                 //intentionally a separate clause so our error prints in case this throws.
                 status.setFatalError(errorMessage + " Please contact a system administrator to resolve this issue.");
-                status.setStatusLastUpdatedAt(new Date());
-                indexStatusRepo.update(status);
+                indexStatusRepo.saveFatalError(status.getUuid(), status.getFatalError());
             }
             throw e;
+        } finally
+        {
+            building.remove(status.getUuid());
+        }
+    }
+
+    /**
+     * Determines if an index build is running on this node.
+     *
+     * @param uuid UUID of the build's index status.
+     * @return True if the build is running here.
+     */
+    public boolean isBuilding(UUID uuid)
+    {
+        return building.contains(uuid);
+    }
+
+    /**
+     * Publishes an index build to the event bus, to be run on this node,
+     * unless it is already waiting there.
+     *
+     * @param status Status of the build.
+     * @return True if the build was published; false if it was already
+     * queued.
+     */
+    public static boolean publish(IndexCreatedEvent status)
+    {
+        if (!queued.add(status.getUuid()))
+        {
+            return false;
+        }
+        DomainEvents.publish(status);
+        return true;
+    }
+
+    /**
+     * Determines if an index build has been published on this node and is
+     * waiting on the event bus, such as behind another build.
+     *
+     * @param uuid UUID of the build's index status.
+     * @return True if the build is queued here.
+     */
+    public static boolean isQueued(UUID uuid)
+    {
+        return queued.contains(uuid);
+    }
+
+    /**
+     * Creates an identifier for this node that is unique across the cluster
+     * (and across restarts, so that a restarted node doesn't think it still
+     * holds the leases it had before).
+     */
+    private static String createNodeId()
+    {
+        String host;
+        try
+        {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e)
+        {
+            host = "unknown";
         }
+        return host + "/" + UUID.randomUUID();
     }
 
 }
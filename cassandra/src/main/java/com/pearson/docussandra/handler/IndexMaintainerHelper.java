@@ -7,17 +7,25 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import com.pearson.docussandra.Utils;
 import com.pearson.docussandra.cache.CacheFactory;
+import com.pearson.docussandra.cache.MetadataRegistry;
+import com.pearson.docussandra.domain.objects.CompressionCodec;
 import com.pearson.docussandra.domain.objects.Document;
 import com.pearson.docussandra.domain.objects.Index;
 import com.pearson.docussandra.domain.objects.IndexField;
+import com.pearson.docussandra.domain.objects.Table;
 import com.pearson.docussandra.exception.IndexParseException;
 import com.pearson.docussandra.exception.IndexParseFieldException;
 import com.pearson.docussandra.persistence.impl.DocumentRepositoryImpl;
 import com.pearson.docussandra.persistence.impl.IndexRepositoryImpl;
+import com.pearson.docussandra.persistence.impl.TableRepositoryImpl;
+import com.pearson.docussandra.persistence.helper.BsonProjection;
+import com.pearson.docussandra.persistence.helper.DocumentCompression;
 import com.pearson.docussandra.persistence.helper.PreparedStatementFactory;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 import org.bson.BSON;
@@ -38,7 +46,9 @@ public class IndexMaintainerHelper
     private static Logger logger = LoggerFactory.getLogger(IndexMaintainerHelper.class);
 
     public static final String ITABLE_INSERT_CQL = "INSERT INTO %s (bucket, id, object, created_at, updated_at, %s) VALUES (?, ?, ?, ?, ?, %s);";
+    public static final String ITABLE_INSERT_REFERENCE_CQL = "INSERT INTO %s (bucket, id, updated_at, %s) VALUES (?, ?, ?, %s);";
     public static final String ITABLE_UPDATE_CQL = "UPDATE %s SET object = ?, updated_at = ? WHERE bucket = ? AND id = ? AND %s;";
+    public static final String ITABLE_TOUCH_CQL = "UPDATE %s SET updated_at = ? WHERE bucket = ? AND id = ? AND %s;";
     public static final String ITABLE_DELETE_CQL = "DELETE FROM %s WHERE bucket = ? AND %s;";
 
     private IndexMaintainerHelper()
@@ -51,11 +61,12 @@ public class IndexMaintainerHelper
         //check for any indices that should exist on this setTable per the index setTable
         List<Index> indices = getIndexForDocument(session, entity);
         ArrayList<BoundStatement> statementList = new ArrayList<>(indices.size());
+        CompressionCodec codec = indices.isEmpty() ? null : getCodec(session, entity.getTable());
         //for each index
         for (Index index : indices)
         {
             //add row to the iTable(s)
-            BoundStatement bs = generateDocumentCreateIndexEntryStatement(session, index, entity, bucketLocator);
+            BoundStatement bs = generateDocumentCreateIndexEntryStatement(session, index, entity, bucketLocator, codec);
             if (bs != null)
             {
                 statementList.add(bs);
@@ -66,6 +77,25 @@ public class IndexMaintainerHelper
     }
 
     public static BoundStatement generateDocumentCreateIndexEntryStatement(Session session, Index index, Document entity, BucketLocator bucketLocator) throws IndexParseException
+    {
+        return generateDocumentCreateIndexEntryStatement(session, index, entity, bucketLocator, getCodec(session, index.getTable()));
+    }
+
+    /**
+     * Generates the statement that creates a document's entry in an index's
+     * iTable.
+     *
+     * @param session Cassandra session for interacting with the database.
+     * @param index Index to create the entry in.
+     * @param entity Document to index.
+     * @param bucketLocator Bucket locator for the iTable.
+     * @param codec Codec the table's documents are compressed with; see
+     * getCodec. Look it up once rather than per index or per document.
+     * @return The statement, or null if the document has nothing to index.
+     * @throws IndexParseException If an indexed field can't be converted to
+     * the index's type.
+     */
+    public static BoundStatement generateDocumentCreateIndexEntryStatement(Session session, Index index, Document entity, BucketLocator bucketLocator, CompressionCodec codec) throws IndexParseException
     {
         //determine which getFields need to write as PKs
         List<IndexField> fieldsData = index.getFields();
@@ -98,15 +128,17 @@ public class IndexMaintainerHelper
         bs.setLong(0, bucketId);
         //set the id
         bs.setUUID(1, entity.getUuid());
-        //set the blob
-        BSONObject bson = (BSONObject) entity.getObject();
-        bs.setBytes(2, ByteBuffer.wrap(BSON.encode(bson)));
-        //set the dates
-        bs.setDate(3, entity.getCreatedAt());
-        bs.setDate(4, entity.getUpdatedAt());
+        int next = 2;
+        if (!index.isReferenceOnly())
+        {
+            //set the blob
+            bs.setBytes(next++, encodeObject(index, entity.getObject(), codec));
+            bs.setDate(next++, entity.getCreatedAt());
+        }
+        bs.setDate(next++, entity.getUpdatedAt());
         for (int i = 0; i < fieldsData.size(); i++)
         {
-            boolean normal = Utils.setField(jsonObject, fieldsData.get(i), bs, i + 5);//offset from the first five non-dynamic getFields
+            boolean normal = Utils.setField(jsonObject, fieldsData.get(i), bs, i + next);//offset from the non-dynamic getFields
             if (!normal)
             {
                 logger.debug("Unable to create index for null field. For index: " + index.toString());//consider reducing this to trace
@@ -120,25 +152,57 @@ public class IndexMaintainerHelper
         return bs;
     }
 
+    /**
+     * Generates the statements needed to bring a document's index entries up
+     * to date after an update. Reads the prior version of the document; use
+     * the overload that takes it if it has already been read.
+     *
+     * @param session Cassandra session for interacting with the database.
+     * @param entity New version of the document.
+     * @param bucketLocator Bucket locator for the iTables.
+     * @return Statements to create, delete and update iTable rows.
+     * @throws IndexParseException If an indexed field can't be converted to
+     * its index's type.
+     */
     public static List<BoundStatement> generateDocumentUpdateIndexEntriesStatements(Session session, Document entity, BucketLocator bucketLocator) throws IndexParseException
+    {
+        return generateDocumentUpdateIndexEntriesStatements(session, entity, getOldObjectForUpdate(session, entity), bucketLocator);
+    }
+
+    /**
+     * Generates the statements needed to bring a document's index entries up
+     * to date after an update. The fields that differ between the two versions
+     * are worked out once; an index with a changed field gets its entry moved
+     * (create the new row, delete the old one), every other index gets its
+     * row updated in place. Even when an iTable holds nothing that changed
+     * (a reference only index, or one whose included fields didn't change),
+     * its row's updated_at is still brought up to date.
+     *
+     * @param session Cassandra session for interacting with the database.
+     * @param entity New version of the document.
+     * @param oldObject Object of the prior version of the document.
+     * @param bucketLocator Bucket locator for the iTables.
+     * @return Statements to create, delete and update iTable rows.
+     * @throws IndexParseException If an indexed field can't be converted to
+     * its index's type.
+     */
+    public static List<BoundStatement> generateDocumentUpdateIndexEntriesStatements(Session session, Document entity, BSONObject oldObject, BucketLocator bucketLocator) throws IndexParseException
     {
         //check for any indices that should exist on this setTable per the index setTable
         List<Index> indices = getIndexForDocument(session, entity);
         ArrayList<BoundStatement> statementList = new ArrayList<>(indices.size());
+        Set<String> changedFields = getChangedFields(oldObject, entity.getObject());
+        CompressionCodec codec = indices.isEmpty() ? null : getCodec(session, entity.getTable());
         //for each index
         for (Index index : indices)
         {
-            //determine which getFields need to use as PKs
-            List<IndexField> fields = index.getFields();
-
             //we need to be able to update indexed fields as well,
             //which will require us to:
             //1. determine if an indexed field has changed
-            BSONObject oldObject = getOldObjectForUpdate(session, entity);
-            if (hasIndexedFieldChanged(oldObject, index, entity))
+            if (hasIndexedFieldChanged(changedFields, index))
             {
                 //2a. if the field has changed, create a new index entry
-                BoundStatement createBS = generateDocumentCreateIndexEntryStatement(session, index, entity, bucketLocator);
+                BoundStatement createBS = generateDocumentCreateIndexEntryStatement(session, index, entity, bucketLocator, codec);
                 if (createBS != null)
                 {
                     statementList.add(createBS);
@@ -150,51 +214,16 @@ public class IndexMaintainerHelper
                     statementList.add(deleteBS);
                 }
             } else
-            {//3. if an indexed field has not changed, do a normal CQL update
-                String finalCQL = getCQLStatementForWhereClauses(ITABLE_UPDATE_CQL, index);
-                PreparedStatement ps = PreparedStatementFactory.getPreparedStatement(finalCQL, session);
-                BoundStatement updateBS = new BoundStatement(ps);
-
-                //set the blob
-                BSONObject bson = (BSONObject) entity.getObject();
-                updateBS.setBytes(0, ByteBuffer.wrap(BSON.encode(bson)));
-                //set the date
-                updateBS.setDate(1, entity.getUpdatedAt());
-                //pull the index getFields out of the document for binding
-                DBObject jsonObject = (DBObject) entity.getObject();
-                //set the bucket
-                Object bucketField = jsonObject.get(fields.get(0).getField());
-                if (bucketField == null)
-                {//we can't even bucket, there isn't a field for this document to index on
-                    break;
-                }
-                Long bucketId;
-                try
-                {
-                    bucketId = bucketLocator.getBucket(bucketField, fields.get(0).getType());
-                } catch (IndexParseFieldException ex)
-                {
-                    throw new IndexParseException(fields.get(0), ex);
-                }
-                if (logger.isTraceEnabled())
-                {
-                    logger.trace("Bucket ID for entity: " + entity.toString() + " for index: " + index.toString() + " is: " + bucketId);
-                }
-                updateBS.setLong(2, bucketId);
-                updateBS.setUUID(3, entity.getUuid());
-                
-                boolean normal = true;
-                for (int i = 0; i < fields.size(); i++)
-                {
-                    normal = Utils.setField(jsonObject, fields.get(i), updateBS, i + 4);//offset from the first four non-dynamic getFields
-                    if (!normal)
-                    {
-                        logger.debug("Unable to update index for null field. For index: " + index.toString());//consider reducing this to trace
-                        //take no action; don't try to update this index; just break out of the loop and go onto the next index
-                        break;
-                    }
+            {
+                BoundStatement updateBS;
+                if (index.isReferenceOnly() || (!index.getIncludeOnly().isEmpty() && !hasIncludedFieldChanged(changedFields, index)))
+                {//3a. the iTable holds nothing that changed; only bring its updated_at up to date
+                    updateBS = generateDocumentUpdateIndexEntryStatement(session, index, entity, bucketLocator, null);
+                } else
+                {//3b. if an indexed field has not changed, do a normal CQL update
+                    updateBS = generateDocumentUpdateIndexEntryStatement(session, index, entity, bucketLocator, encodeObject(index, entity.getObject(), codec));
                 }
-                if (normal)
+                if (updateBS != null)
                 {
                     //add row to the iTable(s)
                     statementList.add(updateBS);
@@ -205,6 +234,70 @@ public class IndexMaintainerHelper
         return statementList;
     }
 
+    /**
+     * Generates a statement to update a document's row in an iTable in place,
+     * for when none of its indexed fields have changed.
+     *
+     * @param session Cassandra session for interacting with the database.
+     * @param index Index whose iTable to update.
+     * @param entity New version of the document.
+     * @param bucketLocator Bucket locator for the iTable.
+     * @param object Blob to store in the row; null to only update its
+     * updated_at.
+     * @return The statement, or null if the document doesn't have all of the
+     * indexed fields.
+     * @throws IndexParseException If the field to bucket on can't be
+     * converted to its index's type.
+     */
+    private static BoundStatement generateDocumentUpdateIndexEntryStatement(Session session, Index index, Document entity, BucketLocator bucketLocator, ByteBuffer object) throws IndexParseException
+    {
+        //determine which getFields need to use as PKs
+        List<IndexField> fields = index.getFields();
+        String finalCQL = getCQLStatementForWhereClauses(object == null ? ITABLE_TOUCH_CQL : ITABLE_UPDATE_CQL, index);
+        PreparedStatement ps = PreparedStatementFactory.getPreparedStatement(finalCQL, session);
+        BoundStatement updateBS = new BoundStatement(ps);
+        int i = 0;
+        if (object != null)
+        {
+            //set the blob
+            updateBS.setBytes(i++, object);
+        }
+        //set the date
+        updateBS.setDate(i++, entity.getUpdatedAt());
+        //pull the index getFields out of the document for binding
+        DBObject jsonObject = (DBObject) entity.getObject();
+        //set the bucket
+        Object bucketField = jsonObject.get(fields.get(0).getField());
+        if (bucketField == null)
+        {//we can't even bucket, there isn't a field for this document to index on
+            return null;
+        }
+        Long bucketId;
+        try
+        {
+            bucketId = bucketLocator.getBucket(bucketField, fields.get(0).getType());
+        } catch (IndexParseFieldException ex)
+        {
+            throw new IndexParseException(fields.get(0), ex);
+        }
+        if (logger.isTraceEnabled())
+        {
+            logger.trace("Bucket ID for entity: " + entity.toString() + " for index: " + index.toString() + " is: " + bucketId);
+        }
+        updateBS.setLong(i++, bucketId);
+        updateBS.setUUID(i++, entity.getUuid());
+        for (IndexField field : fields)
+        {
+            if (!Utils.setField(jsonObject, field, updateBS, i++))
+            {
+                logger.debug("Unable to update index for null field. For index: " + index.toString());//consider reducing this to trace
+                //take no action; don't try to update this index
+                return null;
+            }
+        }
+        return updateBS;
+    }
+
     public static List<BoundStatement> generateDocumentDeleteIndexEntriesStatements(Session session, Document entity, BucketLocator bucketLocator) throws IndexParseException
     {
         //check for any indices that should exist on this setTable per the index setTable
@@ -318,6 +411,123 @@ public class IndexMaintainerHelper
         return false;
     }
 
+    /**
+     * Determines which top level fields differ between two versions of a
+     * document, including fields that were added or removed.
+     *
+     * @param oldObject The old BSON object.
+     * @param newObject The new BSON object.
+     * @return Names of the fields that differ.
+     */
+    public static Set<String> getChangedFields(BSONObject oldObject, BSONObject newObject)
+    {
+        Set<String> changed = new HashSet<>();
+        for (String field : newObject.keySet())
+        {
+            Object newValue = newObject.get(field);
+            Object oldValue = oldObject.get(field);
+            if (newValue == null ? oldValue != null : !newValue.equals(oldValue))
+            {
+                changed.add(field);
+            }
+        }
+        for (String field : oldObject.keySet())
+        {
+            if (!newObject.containsField(field) && oldObject.get(field) != null)
+            {
+                changed.add(field);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Determines if any of an index's fields are among the fields that
+     * changed in an update.
+     *
+     * @param changedFields Fields that changed; see getChangedFields.
+     * @param index Index containing the fields to check for changes.
+     * @return True if an indexed field has changed.
+     */
+    public static boolean hasIndexedFieldChanged(Set<String> changedFields, Index index)
+    {
+        for (IndexField indexField : index.getFields())
+        {
+            if (changedFields.contains(indexField.getField()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines if any of the fields an index stores (its includeOnly list)
+     * are among the fields that changed in an update. Changes are only known
+     * by top level field, so a nested field ("address.city") counts as changed
+     * whenever its top level field does.
+     *
+     * @param changedFields Fields that changed; see getChangedFields.
+     * @param index Index containing the included fields to check for changes.
+     * @return True if an included field has changed, or if the index stores
+     * the whole document and anything changed.
+     */
+    public static boolean hasIncludedFieldChanged(Set<String> changedFields, Index index)
+    {
+        if (index.getIncludeOnly().isEmpty())
+        {
+            return !changedFields.isEmpty();
+        }
+        for (String included : index.getIncludeOnly())
+        {
+            if (changedFields.contains(included.trim().split("\\.")[0]))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Serializes the part of a document that an index's iTable stores: the
+     * whole thing, or just its includeOnly fields if it has any. Compressed
+     * the same way as the table's documents.
+     *
+     * @param index Index whose iTable is being written.
+     * @param object Document object to store.
+     * @param codec Codec the table's documents are compressed with.
+     * @return Blob to store in the iTable's object column.
+     */
+    private static ByteBuffer encodeObject(Index index, BSONObject object, CompressionCodec codec)
+    {
+        ByteBuffer bson = ByteBuffer.wrap(BSON.encode(object));
+        BsonProjection included = BsonProjection.forColumns(index.getIncludeOnly());
+        if (included != null)
+        {
+            bson = included.project(bson);
+        }
+        return DocumentCompression.compress(bson, codec);
+    }
+
+    /**
+     * Gets the codec a table's documents, and so its iTable rows, are
+     * compressed with. Comes from the MetadataRegistry; the table is only
+     * read from the database if the registry doesn't have it yet.
+     *
+     * @param session Cassandra session for looking up the table.
+     * @param table Table to get the codec of.
+     * @return The table's codec; NONE if the table can't be found.
+     */
+    public static CompressionCodec getCodec(Session session, Table table)
+    {
+        Table known = MetadataRegistry.getInstance().getTable(table.getId());
+        if (known != null)
+        {
+            return known.getCompression();
+        }
+        return DocumentCompression.getCodec(new TableRepositoryImpl(session), table);
+    }
+
     //only public for testing
     public static BSONObject getOldObjectForUpdate(Session session, Document entity)
     {
@@ -335,7 +545,7 @@ public class IndexMaintainerHelper
      */
     public static String getCQLStatementForInsert(Index index)
     {
-        String key = index.getDatabaseName() + ":" + index.getTableName() + ":" + index.getName();
+        String key = index.getDatabaseName() + ":" + index.getTableName() + ":" + index.getName() + ":" + index.getStorageMode();
         Cache iTableCQLCache = CacheFactory.getCache("iTableInsertCQL");
         //synchronized (CacheSynchronizer.getLockingObject(key, "iTableInsertCQL"))
         //{
@@ -378,7 +588,7 @@ public class IndexMaintainerHelper
             fieldValueInsertSyntax.append("?");
         }
         //create final CQL statement for adding a row to an iTable(s)
-        return String.format(ITABLE_INSERT_CQL, iTableToUpdate, fieldNamesInsertSyntax, fieldValueInsertSyntax);
+        return String.format(index.isReferenceOnly() ? ITABLE_INSERT_REFERENCE_CQL : ITABLE_INSERT_CQL, iTableToUpdate, fieldNamesInsertSyntax, fieldValueInsertSyntax);
     }
 
     /**
@@ -0,0 +1,539 @@
+package com.pearson.docussandra.handler;
+
+import com.pearson.docussandra.domain.objects.Document;
+import com.pearson.docussandra.plugininterfaces.Notification;
+import com.pearson.docussandra.plugininterfaces.NotifierPlugin;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers document mutation notifications to NotifierPlugins off the request
+ * thread. Each plugin gets its own bounded queue and its own worker thread, so
+ * a slow plugin only holds up its own notifications; each plugin sees
+ * notifications in the order they were dispatched.
+ * <p/>
+ * What happens when a plugin's queue is full depends on the overflow policy:
+ * BLOCK makes the writing request wait for room, DROP discards the
+ * notification (and counts it), and SPILL appends it to a file that the worker
+ * replays, in order, once it has caught up with its queue.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class NotifierDispatcher
+{
+
+    private static final Logger logger = LoggerFactory.getLogger(NotifierDispatcher.class);
+
+    /**
+     * Default number of notifications each plugin's queue holds.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    /**
+     * How long a worker waits for a notification before checking its spill
+     * file and whether it has been shut down.
+     */
+    private static final long POLL_MILLIS = 500;
+
+    /**
+     * What to do with a notification when a plugin's queue is full.
+     */
+    public enum OverflowPolicy
+    {
+
+        /**
+         * Wait for room in the queue; the write that caused the notification
+         * waits with it.
+         */
+        BLOCK,
+        /**
+         * Discard the notification.
+         */
+        DROP,
+        /**
+         * Append the notification to a file on local disk, to be delivered
+         * once the plugin catches up.
+         */
+        SPILL
+    }
+
+    /**
+     * One worker per plugin.
+     */
+    private final List<Worker> workers = new ArrayList<>();
+
+    /**
+     * Constructor; blocks when a queue is full.
+     *
+     * @param plugins Plugins to notify.
+     */
+    public NotifierDispatcher(List<NotifierPlugin> plugins)
+    {
+        this(plugins, DEFAULT_QUEUE_SIZE, OverflowPolicy.BLOCK, new File(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * Constructor. Starts a worker thread for each plugin.
+     *
+     * @param plugins Plugins to notify.
+     * @param queueSize Number of notifications each plugin's queue holds.
+     * @param policy What to do with a notification when a plugin's queue is
+     * full.
+     * @param spillDirectory Directory for spill files; only used by the SPILL
+     * policy. Notifications spilled by a previous run that were never
+     * delivered are delivered first.
+     */
+    public NotifierDispatcher(List<NotifierPlugin> plugins, int queueSize, OverflowPolicy policy, File spillDirectory)
+    {
+        for (int i = 0; i < plugins.size(); i++)
+        {
+            Worker worker = new Worker(plugins.get(i), i, queueSize, policy, spillDirectory);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues a notification for every plugin.
+     *
+     * @param type Type of mutation.
+     * @param document Document in its post-mutation state; null for a delete.
+     */
+    public void dispatch(NotifierPlugin.MutateType type, Document document)
+    {
+        if (workers.isEmpty())
+        {
+            return;
+        }
+        Notification notification = new Notification(type, document, System.currentTimeMillis());
+        for (Worker worker : workers)
+        {
+            worker.enqueue(notification);
+        }
+    }
+
+    /**
+     * Gets queue depth, delivery lag and delivery counts for each plugin.
+     *
+     * @return Stats, by plugin name.
+     */
+    public Map<String, Object> getStats()
+    {
+        LinkedHashMap<String, Object> stats = new LinkedHashMap<>();
+        for (Worker worker : workers)
+        {
+            stats.put(worker.plugin.getPluginName(), worker.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Stops the workers. Notifications still queued are not delivered;
+     * spilled ones stay on disk for the next run.
+     */
+    public void shutdown()
+    {
+        for (Worker worker : workers)
+        {
+            worker.shutdown();
+        }
+    }
+
+    /**
+     * Serializes a notification as a single line of a spill file: timestamp,
+     * type and, unless it's a delete, the document's table, id, dates and
+     * JSON, tab separated.
+     *
+     * @param notification Notification to serialize.
+     * @return The line, without a line terminator.
+     */
+    //only public for testing
+    public static String toSpillLine(Notification notification)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(notification.getTimestamp()).append('\t').append(notification.getType().name());
+        Document document = notification.getDocument();
+        if (document != null)
+        {
+            sb.append('\t').append(document.getDatabaseName())
+                    .append('\t').append(document.getTableName())
+                    .append('\t').append(document.getUuid())
+                    .append('\t').append(document.getCreatedAt() == null ? "" : String.valueOf(document.getCreatedAt().getTime()))
+                    .append('\t').append(document.getUpdatedAt() == null ? "" : String.valueOf(document.getUpdatedAt().getTime()))
+                    .append('\t').append(document.getObjectAsString());//the JSON serializer escapes tabs and newlines
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads a notification back from a line of a spill file.
+     *
+     * @param line Line written by toSpillLine.
+     * @return The notification.
+     */
+    //only public for testing
+    public static Notification fromSpillLine(String line)
+    {
+        String[] parts = line.split("\t", 8);
+        long timestamp = Long.parseLong(parts[0]);
+        NotifierPlugin.MutateType type = NotifierPlugin.MutateType.valueOf(parts[1]);
+        if (parts.length < 8)
+        {
+            return new Notification(type, null, timestamp);
+        }
+        Document document = new Document();
+        document.setTable(parts[2], parts[3]);
+        document.setUuid(UUID.fromString(parts[4]));
+        document.setCreatedAt(parts[5].isEmpty() ? null : new Date(Long.parseLong(parts[5])));
+        document.setUpdatedAt(parts[6].isEmpty() ? null : new Date(Long.parseLong(parts[6])));
+        document.setObjectAsString(parts[7]);
+        return new Notification(type, document, timestamp);
+    }
+
+    /**
+     * Delivers notifications to a single plugin.
+     */
+    private static class Worker extends Thread
+    {
+
+        private final NotifierPlugin plugin;
+        private final BlockingQueue<Notification> queue;
+        private final OverflowPolicy policy;
+
+        /**
+         * File spilled notifications are appended to.
+         */
+        private final File spillFile;
+        /**
+         * A spill file that is being (or, after a crash, was being) replayed.
+         */
+        private final File replayFile;
+
+        /**
+         * Guards the spill state; the request threads write the spill file,
+         * the worker rotates it out to replay it.
+         */
+        private final Object spillLock = new Object();
+        private boolean spilling = false;
+        private long spillFileCount = 0;
+        private Writer spillWriter;
+
+        private final AtomicLong spilled = new AtomicLong();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile long lastDeliveryLagMillis = 0;
+        private volatile long maxDeliveryLagMillis = 0;
+        private volatile boolean running = true;
+
+        private Worker(NotifierPlugin plugin, int number, int queueSize, OverflowPolicy policy, File spillDirectory)
+        {
+            super("notifier-" + number + "-" + plugin.getPluginName());
+            setDaemon(true);
+            this.plugin = plugin;
+            this.queue = new ArrayBlockingQueue<>(queueSize);
+            this.policy = policy;
+            String fileName = "docussandra-notifier-" + number + "-" + plugin.getClass().getName();
+            this.spillFile = new File(spillDirectory, fileName + ".spill");
+            this.replayFile = new File(spillDirectory, fileName + ".replay");
+            recoverSpillFiles();//before we're started, so no new notification can get ahead of them
+        }
+
+        private void enqueue(Notification notification)
+        {
+            switch (policy)
+            {
+                case DROP:
+                    if (!queue.offer(notification))
+                    {
+                        drop(notification);
+                    }
+                    break;
+                case SPILL:
+                    synchronized (spillLock)
+                    {
+                        //once we've started spilling, keep spilling until the file has been replayed, so order is kept
+                        if (spilling || !queue.offer(notification))
+                        {
+                            spilling = true;
+                            spill(notification);
+                        }
+                    }
+                    break;
+                case BLOCK:
+                default:
+                    try
+                    {
+                        queue.put(notification);
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        drop(notification);
+                    }
+                    break;
+            }
+        }
+
+        private void drop(Notification notification)
+        {
+            if (dropped.incrementAndGet() == 1)
+            {
+                logger.warn("Notification queue for plugin: " + plugin.getPluginName() + " is full; dropping notifications. First dropped: " + notification);
+            }
+        }
+
+        /**
+         * Appends a notification to the spill file; must hold the spill lock.
+         */
+        private void spill(Notification notification)
+        {
+            try
+            {
+                if (spillWriter == null)
+                {
+                    spillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile, true), StandardCharsets.UTF_8));
+                }
+                spillWriter.write(toSpillLine(notification));
+                spillWriter.write('\n');
+                spillWriter.flush();
+                spillFileCount++;
+                spilled.incrementAndGet();
+            } catch (IOException e)
+            {
+                logger.error("Could not spill notification for plugin: " + plugin.getPluginName() + " to: " + spillFile, e);
+                drop(notification);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            if (replayFile.exists())
+            {
+                replay(replayFile);
+            }
+            while (running)
+            {
+                try
+                {
+                    Notification first = queue.poll();
+                    if (first == null)
+                    {
+                        if (replaySpill())
+                        {
+                            continue;
+                        }
+                        first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        if (first == null)
+                        {
+                            continue;
+                        }
+                    }
+                    List<Notification> batch = new ArrayList<>();
+                    batch.add(first);
+                    queue.drainTo(batch, plugin.getMaxBatchSize() - 1);
+                    deliver(batch);
+                } catch (InterruptedException e)
+                {
+                    running = false;
+                } catch (RuntimeException e)
+                {
+                    logger.error("Unexpected error delivering notifications to plugin: " + plugin.getPluginName(), e);
+                }
+            }
+        }
+
+        /**
+         * Picks up spill files left behind by a previous run: one that was
+         * being replayed is replayed first, when the worker starts, then one
+         * that was being written becomes the current spill file. Until both
+         * have been replayed, new notifications are spilled after them, so
+         * they are delivered in order.
+         */
+        private void recoverSpillFiles()
+        {
+            boolean replaying = replayFile.exists();
+            boolean spilled = spillFile.exists();
+            if (replaying || spilled)
+            {
+                synchronized (spillLock)
+                {
+                    spilling = true;
+                    if (spilled)
+                    {
+                        spillFileCount++;//we don't know how many; replaySpill only needs to know there are some
+                    }
+                }
+            }
+        }
+
+        /**
+         * Once the queue is empty, replays everything spilled so far. New
+         * notifications keep going to a fresh spill file in the meantime, and
+         * are replayed on the next call; only when a call finds nothing spilled
+         * do notifications go back to the queue.
+         *
+         * @return True if anything was replayed.
+         */
+        private boolean replaySpill()
+        {
+            synchronized (spillLock)
+            {
+                if (!spilling)
+                {
+                    return false;
+                }
+                if (spillFileCount == 0)
+                {
+                    spilling = false;
+                    return false;
+                }
+                try
+                {
+                    if (spillWriter != null)
+                    {
+                        spillWriter.close();
+                    }
+                } catch (IOException e)
+                {
+                    logger.warn("Could not close spill file: " + spillFile, e);
+                }
+                spillWriter = null;
+                spillFileCount = 0;
+                if (!spillFile.renameTo(replayFile))
+                {
+                    logger.error("Could not move spill file: " + spillFile + " to: " + replayFile + " for replay; spilled notifications for plugin: " + plugin.getPluginName() + " are stuck.");
+                    spilling = false;
+                    return false;
+                }
+            }
+            replay(replayFile);
+            return true;
+        }
+
+        /**
+         * Delivers the notifications in a spill file, then deletes it.
+         */
+        private void replay(File file)
+        {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)))
+            {
+                List<Notification> batch = new ArrayList<>();
+                String line;
+                while ((line = reader.readLine()) != null)
+                {
+                    if (line.isEmpty())
+                    {
+                        continue;
+                    }
+                    batch.add(fromSpillLine(line));
+                    if (batch.size() >= plugin.getMaxBatchSize())
+                    {
+                        deliver(batch);
+                        spilled.addAndGet(-batch.size());
+                        batch = new ArrayList<>();
+                    }
+                }
+                if (!batch.isEmpty())
+                {
+                    deliver(batch);
+                    spilled.addAndGet(-batch.size());
+                }
+            } catch (IOException | RuntimeException e)
+            {
+                logger.error("Could not replay spilled notifications for plugin: " + plugin.getPluginName() + " from: " + file, e);
+            }
+            if (!file.delete())
+            {
+                logger.warn("Could not delete replayed spill file: " + file);
+            }
+            if (spilled.get() < 0)
+            {//files from a previous run weren't counted going in
+                spilled.set(0);
+            }
+        }
+
+        private void deliver(List<Notification> batch)
+        {
+            try
+            {
+                if (batch.size() == 1)
+                {
+                    Notification notification = batch.get(0);
+                    plugin.doNotify(notification.getType(), notification.getDocument());
+                } else
+                {
+                    plugin.doNotifyBatch(batch);
+                }
+                delivered.addAndGet(batch.size());
+            } catch (RuntimeException e)
+            {
+                failed.addAndGet(batch.size());
+                logger.error("Plugin: " + plugin.getPluginName() + " failed to handle " + batch.size() + " notification(s).", e);
+            }
+            long lag = System.currentTimeMillis() - batch.get(batch.size() - 1).getTimestamp();
+            lastDeliveryLagMillis = lag;
+            if (lag > maxDeliveryLagMillis)
+            {
+                maxDeliveryLagMillis = lag;
+            }
+        }
+
+        private Map<String, Object> getStats()
+        {
+            LinkedHashMap<String, Object> stats = new LinkedHashMap<>();
+            Notification oldest = queue.peek();
+            stats.put("overflowPolicy", policy.name());
+            stats.put("queueDepth", queue.size());
+            stats.put("queueCapacity", queue.size() + queue.remainingCapacity());
+            stats.put("spilled", spilled.get());
+            stats.put("oldestQueuedAgeMillis", oldest == null ? 0 : System.currentTimeMillis() - oldest.getTimestamp());
+            stats.put("lastDeliveryLagMillis", lastDeliveryLagMillis);
+            stats.put("maxDeliveryLagMillis", maxDeliveryLagMillis);
+            stats.put("delivered", delivered.get());
+            stats.put("failed", failed.get());
+            stats.put("dropped", dropped.get());
+            return stats;
+        }
+
+        private void shutdown()
+        {
+            running = false;
+            interrupt();
+            synchronized (spillLock)
+            {
+                try
+                {
+                    if (spillWriter != null)
+                    {
+                        spillWriter.close();
+                        spillWriter = null;
+                    }
+                } catch (IOException e)
+                {
+                    logger.warn("Could not close spill file: " + spillFile, e);
+                }
+            }
+        }
+    }
+}
@@ -4,6 +4,10 @@ package com.pearson.docussandra.persistence;
 import com.pearson.docussandra.domain.objects.Document;
 import com.pearson.docussandra.domain.objects.Identifier;
 import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.bson.BSONObject;
 
 /**
  *
@@ -14,6 +18,17 @@ public interface DocumentRepository
 
     Document create(Document entity);
 
+    /**
+     * Creates many new documents at once, without checking whether they
+     * already exist. Documents that fail are reported rather than failing the
+     * whole call.
+     *
+     * @param entities Documents to create; must have newly generated ids.
+     * @return The reason each document that could not be created failed, by
+     * its position in entities.
+     */
+    Map<Integer, Throwable> createBulk(List<Document> entities);
+
     void delete(Document entity);
 
     void delete(Identifier id);
@@ -22,8 +37,45 @@ public interface DocumentRepository
 
     Document read(Identifier identifier);
 
+    /**
+     * Reads the version of a document that was current at a point in time.
+     *
+     * @param identifier Identifier of the document.
+     * @param asOf Point in time to read the document as of.
+     * @return The newest version of the document written at or before asOf.
+     */
+    Document readAsOf(Identifier identifier, Date asOf);
+
+    /**
+     * Reads the versions of a document written in a time range, newest first.
+     *
+     * @param identifier Identifier of the document.
+     * @param from Oldest version to return (inclusive); null for no lower
+     * bound.
+     * @param to Newest version to return (inclusive); null for no upper bound.
+     * @param limit Maximum number of versions to return.
+     * @param pageToken Token from a previous page of versions to continue
+     * from; null for the first page.
+     * @return The versions, along with a token for the next page if there are
+     * more.
+     */
+    QueryResponseWrapper readVersions(Identifier identifier, Date from, Date to, int limit, String pageToken);
+
     QueryResponseWrapper readAll(String database, String tableString, int limit, long offset);
 
     Document update(Document entity);
 
+    /**
+     * Applies a JSON merge patch (RFC 7386) to a stored document. Only the
+     * index entries the patch actually affects are rewritten; a patch that
+     * doesn't change anything writes nothing.
+     *
+     * @param old Currently stored version of the document, as read by the
+     * caller.
+     * @param patch The merge patch to apply.
+     * @return The patched document, or old itself if the patch didn't change
+     * anything.
+     */
+    Document patch(Document old, BSONObject patch);
+
 }
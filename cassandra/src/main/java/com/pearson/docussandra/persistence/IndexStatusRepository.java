@@ -5,6 +5,7 @@ import com.datastax.driver.core.Session;
 import com.pearson.docussandra.domain.objects.Identifier;
 import com.pearson.docussandra.domain.event.IndexCreatedEvent;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -38,6 +39,68 @@ public interface IndexStatusRepository
 
     Session getSession();
 
+    /**
+     * Reads the scan checkpoints of an index build, so that an interrupted
+     * build can pick up where it left off.
+     *
+     * @param uuid UUID of the index status.
+     * @return Checkpoint of each token range of the build, keyed by range;
+     * empty if the build hasn't recorded any.
+     */
+    Map<String, String> readCheckpoints(UUID uuid);
+
+    /**
+     * Records the checkpoints of every token range of an index build.
+     *
+     * @param uuid UUID of the index status.
+     * @param checkpoints Checkpoint of each token range, keyed by range.
+     */
+    void saveCheckpoints(UUID uuid, Map<String, String> checkpoints);
+
+    /**
+     * Records the checkpoint of one token range of an index build.
+     *
+     * @param uuid UUID of the index status.
+     * @param range Token range the checkpoint is for.
+     * @param checkpoint How far the scan of the range has gotten.
+     */
+    void saveCheckpoint(UUID uuid, String range, String checkpoint);
+
+    /**
+     * Takes a lease on one token range of an index build, so that no other
+     * node scans it at the same time. The lease expires on its own if it isn't
+     * renewed, so the range of a node that dies is freed up for another.
+     *
+     * @param uuid UUID of the index status.
+     * @param range Token range to lease.
+     * @param owner Identifier of the node taking the lease.
+     * @param seconds Number of seconds until the lease expires.
+     * @return True if the lease was taken; false if another node holds it.
+     */
+    boolean acquireLease(UUID uuid, String range, String owner, int seconds);
+
+    /**
+     * Extends a lease taken with acquireLease.
+     *
+     * @param uuid UUID of the index status.
+     * @param range Token range the lease is on.
+     * @param owner Identifier of the node holding the lease.
+     * @param seconds Number of seconds from now until the lease expires.
+     * @return True if the lease was extended; false if this node no longer
+     * holds it.
+     */
+    boolean renewLease(UUID uuid, String range, String owner, int seconds);
+
+    /**
+     * Gives up a lease taken with acquireLease. Does nothing if this node no
+     * longer holds it.
+     *
+     * @param uuid UUID of the index status.
+     * @param range Token range the lease is on.
+     * @param owner Identifier of the node holding the lease.
+     */
+    void releaseLease(UUID uuid, String range, String owner);
+
     /**
      * Reads an IndexCreatedEvent by UUID.
      *
@@ -67,11 +130,33 @@ public interface IndexStatusRepository
      */
     List<IndexCreatedEvent> readAllCurrentlyIndexing();
 
+    /**
+     * Records that an index build failed. The build won't be picked up again
+     * until an operator clears the fatal error.
+     *
+     * @param uuid UUID of the index status.
+     * @param fatalError Description of the failure.
+     */
+    void saveFatalError(UUID uuid, String fatalError);
+
+    /**
+     * Adds samples of per-document errors to an index status, after the ones
+     * already recorded (possibly by other nodes).
+     *
+     * @param uuid UUID of the index status.
+     * @param errors Errors to add.
+     */
+    void addErrors(UUID uuid, List<String> errors);
+
     /**
      * Updates the status for an IndexCreatedEvent in the database. Take note:
-     * only a few getFields are updatable: numberOfRecordsCompleted,
-     * statusLastUpdatedAt, and error. This is a logical decision; there should
-     * not be a reason to update any other fields. This will also mark the
+     * only the progress fields are updatable: recordsCompleted, totalRecords
+     * (an estimate until the build is done), docsPerSecond,
+     * statusLastUpdatedAt and errorCount. This is a logical decision; there
+     * should not be a reason to update any other fields. Errors and the fatal
+     * error are written with addErrors and saveFatalError, so that a node's
+     * progress update never overwrites what another node recorded. This will
+     * also mark the
      * record as done indexing or not as appropriate.
      *
      * @param entity The IndexCreatedEvent to update with the proper fields
@@ -2,7 +2,9 @@
 package com.pearson.docussandra.persistence;
 
 import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.pearson.docussandra.domain.ParsedQuery;
+import com.pearson.docussandra.domain.objects.QueryExplanation;
 import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
 import com.pearson.docussandra.exception.IndexParseException;
 
@@ -40,4 +42,57 @@ public interface QueryRepository
      */
     public QueryResponseWrapper query(ParsedQuery query, int limit, long offset) throws IndexParseException;
 
+    /**
+     * Do a query with limit and offset without blocking the calling thread
+     * while Cassandra executes it.
+     *
+     * @param query ParsedQuery to execute.
+     * @param limit Maximum number of results to return.
+     * @param offset Number of records at the beginning of the results to
+     * discard.
+     * @return A future that will complete with the query response.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    public ListenableFuture<QueryResponseWrapper> queryAsync(ParsedQuery query, int limit, long offset) throws IndexParseException;
+
+    /**
+     * Do a query that returns a single page of results. The returned
+     * QueryResponseWrapper contains a page token if there may be more results.
+     *
+     * @param query ParsedQuery to execute.
+     * @param limit Maximum number of results to return.
+     * @param pageToken Token returned with the previous page; null for the
+     * first page.
+     * @return A query response.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    public QueryResponseWrapper query(ParsedQuery query, int limit, String pageToken) throws IndexParseException;
+
+    /**
+     * Do a query that returns a single page of results without blocking the
+     * calling thread while Cassandra executes it.
+     *
+     * @param query ParsedQuery to execute.
+     * @param limit Maximum number of results to return.
+     * @param pageToken Token returned with the previous page; null for the
+     * first page.
+     * @return A future that will complete with the query response.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    public ListenableFuture<QueryResponseWrapper> queryAsync(ParsedQuery query, int limit, String pageToken) throws IndexParseException;
+
+    /**
+     * Runs a query with limit and offset and describes how it was run instead
+     * of returning its results. Never served from the query result cache.
+     *
+     * @param query ParsedQuery to explain.
+     * @param limit Maximum number of results to return.
+     * @param offset Number of records at the beginning of the results to
+     * discard.
+     * @param trace True to have Cassandra trace each statement.
+     * @return A description of how the query was run.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    public QueryExplanation explain(ParsedQuery query, int limit, long offset, boolean trace) throws IndexParseException;
+
 }
@@ -16,6 +16,15 @@ public interface TableRepository
 
     long countTableSize(String database, String tableName);
 
+    /**
+     * Estimates the number of documents in a table, without scanning it.
+     *
+     * @param database Name of the database.
+     * @param tableName Name of the table.
+     * @return Estimated number of documents in the table.
+     */
+    long estimateTableSize(String database, String tableName);
+
     Table create(Table entity);
 
     void delete(Table entity);
@@ -26,6 +35,14 @@ public interface TableRepository
 
     Table read(Identifier identifier);
 
+    /**
+     * Same as read, but will read from the cache if available.
+     *
+     * @param identifier Identifier of the table to read.
+     * @return The table.
+     */
+    Table readCached(Identifier identifier);
+
     List<Table> readAll(Identifier id);
 
     List<Table> readAll();
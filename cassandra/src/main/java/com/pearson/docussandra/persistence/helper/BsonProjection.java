@@ -0,0 +1,246 @@
+package com.pearson.docussandra.persistence.helper;
+
+import com.pearson.docussandra.domain.objects.RawBsonObject;
+import com.pearson.docussandra.domain.seralization.BsonReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.bson.BSON;
+import org.bson.BSONObject;
+
+/**
+ * Extracts a subset of fields from a serialized BSON document without
+ * decoding the rest of it.
+ * <p/>
+ * The document bytes are scanned element by element; elements that were not
+ * requested are skipped by their encoded length, and the requested ones are
+ * copied into a new, smaller BSON document, which is the only thing that gets
+ * (lazily) decoded. Columns may use dot notation ("address.city") to pick fields out of
+ * embedded documents.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class BsonProjection
+{
+
+    /**
+     * UTF-8 encoded names of the requested fields at this level of the
+     * document; we match against the raw bytes so skipped fields never have
+     * their names decoded.
+     */
+    private final List<byte[]> names = new ArrayList<>();
+    /**
+     * Projection to apply to each requested field; null means the whole field
+     * was requested. Corresponds to names.
+     */
+    private final List<BsonProjection> children = new ArrayList<>();
+
+    private BsonProjection()
+    {
+    }
+
+    /**
+     * Creates a projection for a list of columns.
+     *
+     * @param columns Columns to extract; may use dot notation for fields in
+     * embedded documents.
+     * @return A projection for the columns, or null if no columns were
+     * specified, meaning the whole document is wanted.
+     */
+    public static BsonProjection forColumns(List<String> columns)
+    {
+        if (columns == null || columns.isEmpty())
+        {
+            return null;
+        }
+        BsonProjection root = new BsonProjection();
+        for (String column : columns)
+        {
+            if (column == null || column.trim().isEmpty())
+            {
+                continue;
+            }
+            BsonProjection current = root;
+            String[] path = column.trim().split("\\.");
+            for (int i = 0; i < path.length && current != null; i++)
+            {
+                current = current.add(path[i], i == path.length - 1);
+            }
+        }
+        return root.names.isEmpty() ? null : root;
+    }
+
+    /**
+     * Adds a field to this projection.
+     *
+     * @param name Name of the field.
+     * @param whole True if the whole field is wanted, false if only some of
+     * its fields will be.
+     * @return The projection for the field's embedded document, or null if the
+     * whole field is (now) included.
+     */
+    private BsonProjection add(String name, boolean whole)
+    {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < names.size(); i++)
+        {
+            if (Arrays.equals(names.get(i), bytes))
+            {
+                if (whole)
+                {
+                    children.set(i, null);
+                }
+                return children.get(i);
+            }
+        }
+        BsonProjection child = whole ? null : new BsonProjection();
+        names.add(bytes);
+        children.add(child);
+        return child;
+    }
+
+    /**
+     * Decodes only the projected fields of a BSON document.
+     *
+     * @param bson Serialized BSON document; its position is not modified.
+     * @return A BSONObject containing only the projected fields that were
+     * present in the document.
+     */
+    public BSONObject decode(ByteBuffer bson)
+    {
+        return new RawBsonObject(project(bson));
+    }
+
+    /**
+     * Copies only the projected fields of a BSON document into a new,
+     * serialized BSON document.
+     *
+     * @param bson Serialized BSON document; its position is not modified.
+     * @return A serialized BSON document containing only the projected fields
+     * that were present in the document.
+     */
+    public ByteBuffer project(ByteBuffer bson)
+    {
+        ByteBuffer in = bson.slice().order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer out = ByteBuffer.allocate(in.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        project(in, 0, out);
+        out.flip();
+        return out;
+    }
+
+    /**
+     * Determines if everything a projection asks for is contained in the
+     * fields another projection kept.
+     *
+     * @param kept Projection that was applied to a stored document; null if
+     * the whole document was stored.
+     * @param requested Projection that is being asked for; null for the whole
+     * document.
+     * @return True if applying requested to a document stored with kept gives
+     * the same result as applying it to the whole document.
+     */
+    public static boolean covers(BsonProjection kept, BsonProjection requested)
+    {
+        if (kept == null)
+        {
+            return true;
+        }
+        if (requested == null)
+        {
+            return false;
+        }
+        for (int i = 0; i < requested.names.size(); i++)
+        {
+            int match = -1;
+            for (int j = 0; j < kept.names.size() && match == -1; j++)
+            {
+                if (Arrays.equals(kept.names.get(j), requested.names.get(i)))
+                {
+                    match = j;
+                }
+            }
+            if (match == -1 || !covers(kept.children.get(match), requested.children.get(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the projected elements of the document that starts at start in
+     * the input to the output, as a complete BSON document.
+     */
+    private void project(ByteBuffer in, int start, ByteBuffer out)
+    {
+        int end = start + in.getInt(start) - 1;//position of the trailing 0x00
+        int outStart = out.position();
+        out.putInt(0);//length; filled in below
+        int pos = start + 4;
+        while (pos < end)
+        {
+            int elementStart = pos;
+            byte type = in.get(pos++);
+            int nameStart = pos;
+            int nameEnd = BsonReader.cstringEnd(in, pos);
+            pos = nameEnd + 1;
+            int valueStart = pos;
+            int valueEnd = valueStart + BsonReader.valueLength(in, type, valueStart);
+            int match = indexOf(in, nameStart, nameEnd);
+            if (match != -1)
+            {
+                BsonProjection child = children.get(match);
+                if (child == null)
+                {
+                    copy(in, elementStart, valueEnd, out);
+                } else if (type == BSON.OBJECT)
+                {
+                    copy(in, elementStart, valueStart, out);
+                    child.project(in, valueStart, out);
+                }
+            }
+            pos = valueEnd;
+        }
+        out.put((byte) 0);
+        out.putInt(outStart, out.position() - outStart);
+    }
+
+    /**
+     * Finds the requested field whose name matches the bytes between start
+     * and end in the input.
+     *
+     * @return The index of the field in names, or -1 if it wasn't requested.
+     */
+    private int indexOf(ByteBuffer in, int start, int end)
+    {
+        int length = end - start;
+        for (int i = 0; i < names.size(); i++)
+        {
+            byte[] name = names.get(i);
+            if (name.length != length)
+            {
+                continue;
+            }
+            int j = 0;
+            while (j < length && name[j] == in.get(start + j))
+            {
+                j++;
+            }
+            if (j == length)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void copy(ByteBuffer in, int start, int end, ByteBuffer out)
+    {
+        ByteBuffer element = in.duplicate();
+        element.limit(end).position(start);
+        out.put(element);
+    }
+}
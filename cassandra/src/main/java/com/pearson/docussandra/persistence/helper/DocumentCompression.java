@@ -0,0 +1,261 @@
+package com.pearson.docussandra.persistence.helper;
+
+import com.pearson.docussandra.domain.objects.CompressionCodec;
+import com.pearson.docussandra.domain.objects.Table;
+import com.pearson.docussandra.exception.ItemNotFoundException;
+import com.pearson.docussandra.persistence.TableRepository;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Compresses and decompresses stored document blobs.
+ * <p/>
+ * A compressed blob starts with an eight byte header: 'D', 'Z', the codec's
+ * id, 0xFF, then the uncompressed length as a big endian int. A plain BSON
+ * document starts with its own length as a little endian int, so a fourth
+ * byte of 0xFF would make that length negative; no BSON document can be
+ * mistaken for a compressed one. That lets old, uncompressed rows and new,
+ * compressed ones live in the same table.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class DocumentCompression
+{
+
+    /**
+     * Length of the header in front of a compressed blob.
+     */
+    public static final int HEADER_LENGTH = 8;
+
+    private static final byte MAGIC_1 = 'D';
+    private static final byte MAGIC_2 = 'Z';
+    private static final byte MARKER = (byte) 0xFF;
+
+    /**
+     * LZ4 implementation to use; the native one if it is available.
+     */
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private DocumentCompression()
+    {
+    }
+
+    /**
+     * Gets the codec a table's documents are written with.
+     *
+     * @param tableRepo Repository to look the table up in; the lookup is
+     * cached.
+     * @param table Table the documents belong to.
+     * @return The table's codec; NONE if the table can't be found.
+     */
+    public static CompressionCodec getCodec(TableRepository tableRepo, Table table)
+    {
+        try
+        {
+            return tableRepo.readCached(table.getId()).getCompression();
+        } catch (ItemNotFoundException e)
+        {
+            return CompressionCodec.NONE;
+        }
+    }
+
+    /**
+     * Compresses a serialized BSON document. If compressing doesn't make it
+     * any smaller it is returned as is, so readers don't pay to inflate it.
+     *
+     * @param bson Serialized BSON document; its position is not modified.
+     * @param codec Codec to compress with.
+     * @return The blob to store.
+     */
+    public static ByteBuffer compress(ByteBuffer bson, CompressionCodec codec)
+    {
+        if (codec == null || codec == CompressionCodec.NONE)
+        {
+            return bson;
+        }
+        int length = bson.remaining();
+        byte[] in = toArray(bson);
+        byte[] out;
+        int compressedLength;
+        switch (codec)
+        {
+            case DEFLATE:
+                //deflate output can be slightly larger than its input; we give up in that case anyway
+                out = new byte[HEADER_LENGTH + length];
+                compressedLength = deflate(in, length, out);
+                break;
+            case SNAPPY:
+                out = new byte[HEADER_LENGTH + Snappy.maxCompressedLength(length)];
+                try
+                {
+                    compressedLength = Snappy.compress(in, 0, length, out, HEADER_LENGTH);
+                } catch (IOException e)
+                {
+                    throw new IllegalStateException("Could not compress document with snappy.", e);
+                }
+                break;
+            case LZ4:
+                LZ4Compressor compressor = LZ4.fastCompressor();
+                out = new byte[HEADER_LENGTH + compressor.maxCompressedLength(length)];
+                compressedLength = compressor.compress(in, 0, length, out, HEADER_LENGTH, out.length - HEADER_LENGTH);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported codec: " + codec);
+        }
+        if (compressedLength < 0 || HEADER_LENGTH + compressedLength >= length)
+        {
+            return bson;
+        }
+        ByteBuffer compressed = ByteBuffer.wrap(out, 0, HEADER_LENGTH + compressedLength);
+        compressed.put(MAGIC_1).put(MAGIC_2).put(codec.getId()).put(MARKER).putInt(length);
+        compressed.rewind();
+        return compressed;
+    }
+
+    /**
+     * Deflates a document into out, after the header.
+     *
+     * @return The compressed length, or -1 if it didn't fit in out.
+     */
+    private static int deflate(byte[] in, int length, byte[] out)
+    {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try
+        {
+            deflater.setInput(in, 0, length);
+            deflater.finish();
+            int compressedLength = deflater.deflate(out, HEADER_LENGTH, out.length - HEADER_LENGTH);
+            return deflater.finished() ? compressedLength : -1;
+        } finally
+        {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses a stored document blob; blobs that were not compressed are
+     * returned as is.
+     *
+     * @param blob Stored blob; its position is not modified.
+     * @return The serialized BSON document.
+     * @throws IllegalStateException If the blob is compressed with an unknown
+     * codec, or is corrupt.
+     */
+    public static ByteBuffer decompress(ByteBuffer blob)
+    {
+        if (!isCompressed(blob))
+        {
+            return blob;
+        }
+        int start = blob.position();
+        CompressionCodec codec = CompressionCodec.forId(blob.get(start + 2));
+        if (codec == null || codec == CompressionCodec.NONE)
+        {
+            throw new IllegalStateException("Stored document is compressed with an unknown codec: " + blob.get(start + 2));
+        }
+        int length = blob.getInt(start + 4);
+        ByteBuffer payload = blob.duplicate();
+        payload.position(start + HEADER_LENGTH);
+        byte[] in = toArray(payload);
+        byte[] out = new byte[length];
+        switch (codec)
+        {
+            case DEFLATE:
+                inflate(in, out);
+                break;
+            case SNAPPY:
+                try
+                {
+                    if (Snappy.uncompress(in, 0, in.length, out, 0) != length)
+                    {
+                        throw new IllegalStateException("Stored document is corrupt; it did not decompress to its recorded length.");
+                    }
+                } catch (IOException e)
+                {
+                    throw new IllegalStateException("Stored document is corrupt.", e);
+                }
+                break;
+            case LZ4:
+                try
+                {
+                    if (LZ4.fastDecompressor().decompress(in, 0, out, 0, length) != in.length)
+                    {
+                        throw new IllegalStateException("Stored document is corrupt; it did not decompress to its recorded length.");
+                    }
+                } catch (LZ4Exception e)
+                {
+                    throw new IllegalStateException("Stored document is corrupt.", e);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Stored document is compressed with an unknown codec: " + codec);
+        }
+        return ByteBuffer.wrap(out);
+    }
+
+    /**
+     * Inflates a deflated document into out, which must be exactly its
+     * uncompressed length.
+     */
+    private static void inflate(byte[] in, byte[] out)
+    {
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput(in);
+            if (inflater.inflate(out) != out.length || !inflater.finished())
+            {
+                throw new IllegalStateException("Stored document is corrupt; it did not decompress to its recorded length.");
+            }
+        } catch (DataFormatException e)
+        {
+            throw new IllegalStateException("Stored document is corrupt.", e);
+        } finally
+        {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Determines if a stored blob was compressed.
+     *
+     * @param blob Stored blob; its position is not modified.
+     * @return True if the blob starts with a compression header.
+     */
+    public static boolean isCompressed(ByteBuffer blob)
+    {
+        int start = blob.position();
+        return blob.remaining() >= HEADER_LENGTH
+                && blob.get(start) == MAGIC_1
+                && blob.get(start + 1) == MAGIC_2
+                && blob.get(start + 3) == MARKER;
+    }
+
+    /**
+     * Gets the remaining bytes of a buffer as an array, without copying if
+     * the buffer is backed by exactly that array.
+     */
+    private static byte[] toArray(ByteBuffer buffer)
+    {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length)
+        {
+            return buffer.array();
+        }
+        if (buffer.hasArray())
+        {
+            int offset = buffer.arrayOffset() + buffer.position();
+            return Arrays.copyOfRange(buffer.array(), offset, offset + buffer.remaining());
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
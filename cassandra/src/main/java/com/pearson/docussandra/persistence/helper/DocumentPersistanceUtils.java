@@ -1,16 +1,16 @@
 
 package com.pearson.docussandra.persistence.helper;
 
+import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.pearson.docussandra.domain.objects.Document;
 import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
+import com.pearson.docussandra.domain.objects.RawBsonObject;
 import com.pearson.docussandra.persistence.impl.DocumentRepositoryImpl;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
-import org.bson.BSON;
-import org.bson.BSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +32,20 @@ public class DocumentPersistanceUtils
      * @return A document based on the provided row.
      */
     public static Document marshalRow(Row row)
+    {
+        return marshalRow(row, null);
+    }
+
+    /**
+     * Marshals a Cassandra row into a Document object, decoding only the
+     * fields of the stored object that are part of the projection.
+     *
+     * @param row Row to marshal.
+     * @param projection Fields of the stored object to decode; null for the
+     * whole object.
+     * @return A document based on the provided row.
+     */
+    public static Document marshalRow(Row row, BsonProjection projection)
     {
         if (row == null)
         {
@@ -39,13 +53,22 @@ public class DocumentPersistanceUtils
         }
         Document d = new Document();
         d.setUuid(row.getUUID(DocumentRepositoryImpl.Columns.ID));
+        if (!row.getColumnDefinitions().contains(DocumentRepositoryImpl.Columns.OBJECT))
+        {//a row from a reference only iTable; all we have is which document it is
+            d.setUpdatedAt(row.getDate(DocumentRepositoryImpl.Columns.UPDATED_AT));
+            return d;
+        }
         ByteBuffer b = row.getBytes(DocumentRepositoryImpl.Columns.OBJECT);
-        if (b != null && b.hasArray())
+        if (b != null)
         {
-            byte[] result = new byte[b.remaining()];
-            b.get(result);
-            BSONObject o = BSON.decode(result);
-            d.setObject(o);
+            b = DocumentCompression.decompress(b);
+        }
+        if (b != null && projection != null)
+        {
+            d.setObject(projection.decode(b));
+        } else if (b != null)
+        {//decoded lazily, if at all; serializing it to JSON reads the bytes directly
+            d.setObject(new RawBsonObject(b));
         }
         d.setCreatedAt(row.getDate(DocumentRepositoryImpl.Columns.CREATED_AT));
         d.setUpdatedAt(row.getDate(DocumentRepositoryImpl.Columns.UPDATED_AT));
@@ -62,10 +85,41 @@ public class DocumentPersistanceUtils
      * calling application or user.
      */
     public static QueryResponseWrapper parseResultSetWithLimitAndOffset(ResultSet results, int limit, long offset)
+    {
+        return parseResultSetWithLimitAndOffset(results.iterator(), limit, offset, null);
+    }
+
+    /**
+     * Parses a result set into a QueryResponseWrapper.
+     *
+     * @param results ResultSet to parse.
+     * @param limit Limit at which to stop parsing the results.
+     * @param offset Offest at which to start parsing the results.
+     * @param projection Fields of each stored object to decode; null for the
+     * whole object.
+     * @return a Populated QueryResponseWrapper that can be returned to a
+     * calling application or user.
+     */
+    public static QueryResponseWrapper parseResultSetWithLimitAndOffset(ResultSet results, int limit, long offset, BsonProjection projection)
+    {
+        return parseResultSetWithLimitAndOffset(results.iterator(), limit, offset, projection);
+    }
+
+    /**
+     * Parses rows into a QueryResponseWrapper.
+     *
+     * @param ite Rows to parse.
+     * @param limit Limit at which to stop parsing the results.
+     * @param offset Offest at which to start parsing the results.
+     * @param projection Fields of each stored object to decode; null for the
+     * whole object.
+     * @return a Populated QueryResponseWrapper that can be returned to a
+     * calling application or user.
+     */
+    public static QueryResponseWrapper parseResultSetWithLimitAndOffset(Iterator<Row> ite, int limit, long offset, BsonProjection projection)
     {
         long maxIndex = offset + limit;
         ArrayList<Document> toReturn = new ArrayList<>(limit);
-        Iterator<Row> ite = results.iterator();
         long offsetCounter = 0;
         Long additionalResults = 0L;
         while (ite.hasNext())
@@ -77,7 +131,7 @@ public class DocumentPersistanceUtils
                 break; //we are done; don't bother processing anymore, it's not going to be used anyway
             } else if (offsetCounter >= offset)
             {
-                toReturn.add(DocumentPersistanceUtils.marshalRow(row));
+                toReturn.add(DocumentPersistanceUtils.marshalRow(row, projection));
             } else
             {
                 if (logger.isTraceEnabled())
@@ -90,4 +144,34 @@ public class DocumentPersistanceUtils
         return new QueryResponseWrapper(toReturn, additionalResults);
     }
 
+    /**
+     * Parses a single driver page of a result set into a QueryResponseWrapper.
+     * Only the rows that have already been fetched are read, so this never
+     * triggers another round trip to Cassandra. The driver's paging state is
+     * returned as the next page token.
+     *
+     * @param results ResultSet to parse; the statement should have had its
+     * fetch size set to the limit.
+     * @param limit Maximum number of results to parse.
+     * @param projection Fields of each stored object to decode; null for the
+     * whole object.
+     * @return a Populated QueryResponseWrapper that can be returned to a
+     * calling application or user.
+     */
+    public static QueryResponseWrapper parseResultSetPage(ResultSet results, int limit, BsonProjection projection)
+    {
+        int available = Math.min(limit, results.getAvailableWithoutFetching());
+        ArrayList<Document> toReturn = new ArrayList<>(available);
+        for (int i = 0; i < available; i++)
+        {
+            toReturn.add(DocumentPersistanceUtils.marshalRow(results.one(), projection));
+        }
+        PagingState pagingState = results.getExecutionInfo().getPagingState();
+        if (pagingState == null)
+        {
+            return new QueryResponseWrapper(toReturn, 0L);
+        }
+        return new QueryResponseWrapper(toReturn, null, pagingState.toString());
+    }
+
 }
@@ -0,0 +1,230 @@
+package com.pearson.docussandra.persistence.helper;
+
+import com.datastax.driver.core.Row;
+import com.pearson.docussandra.domain.objects.FieldDataType;
+import com.pearson.docussandra.domain.objects.Index;
+import com.pearson.docussandra.domain.objects.IndexField;
+import com.pearson.docussandra.persistence.impl.DocumentRepositoryImpl;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Orders iTable rows the way Cassandra clusters them within a bucket: by each
+ * indexed field in turn, then by document id. Used to merge rows that were
+ * read from more than one bucket.
+ * <p/>
+ * Values are compared the way Cassandra compares them, which isn't always the
+ * way Java does: blobs and text compare as unsigned bytes, and uuids compare by
+ * version, then by timestamp (for time based uuids), then as unsigned bytes.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class ITableRowComparator implements Comparator<Row>
+{
+
+    /**
+     * Index that the rows were read from.
+     */
+    private final Index index;
+
+    /**
+     * True if the rows were read in reverse clustering order (ORDER BY ...
+     * DESC).
+     */
+    private final boolean descending;
+
+    /**
+     * Constructor.
+     *
+     * @param index Index that the rows were read from.
+     * @param descending True if the rows were read in reverse clustering order
+     * (ORDER BY ... DESC).
+     */
+    public ITableRowComparator(Index index, boolean descending)
+    {
+        this.index = index;
+        this.descending = descending;
+    }
+
+    @Override
+    public int compare(Row one, Row two)
+    {
+        int result = compareAscending(one, two);
+        return descending ? -result : result;
+    }
+
+    /**
+     * Compares two rows in clustering order.
+     */
+    private int compareAscending(Row one, Row two)
+    {
+        for (IndexField field : index.getFields())
+        {
+            int result = compareValues(getValue(one, field), getValue(two, field));
+            if (result != 0)
+            {
+                return result;
+            }
+        }
+        return compareValues(one.getUUID(DocumentRepositoryImpl.Columns.ID), two.getUUID(DocumentRepositoryImpl.Columns.ID));
+    }
+
+    /**
+     * Compares two column values; nulls sort first.
+     */
+    private static int compareValues(Comparable one, Comparable two)
+    {
+        if (one == null)
+        {
+            return two == null ? 0 : -1;
+        } else if (two == null)
+        {
+            return 1;
+        }
+        if (one instanceof UUID)
+        {
+            return compareUUIDs((UUID) one, (UUID) two);
+        } else if (one instanceof ByteBuffer)
+        {
+            return compareUnsigned((ByteBuffer) one, (ByteBuffer) two);
+        } else if (one instanceof String)
+        {
+            return compareCodePoints((String) one, (String) two);
+        }
+        return one.compareTo(two);
+    }
+
+    /**
+     * Compares two uuids the way Cassandra's uuid type does: by version, then by
+     * timestamp if both are time based, then as unsigned bytes.
+     * UUID.compareTo compares the two halves as signed longs, which doesn't
+     * match.
+     *
+     * @param one First uuid.
+     * @param two Second uuid.
+     * @return Negative, zero, or positive as one sorts before, with, or after
+     * two.
+     */
+    //only public for testing
+    public static int compareUUIDs(UUID one, UUID two)
+    {
+        int result = Integer.compare(one.version(), two.version());
+        if (result != 0)
+        {
+            return result;
+        }
+        if (one.version() == 1)
+        {
+            result = Long.compare(one.timestamp(), two.timestamp());
+            if (result != 0)
+            {
+                return result;
+            }
+        }
+        result = compareUnsigned(one.getMostSignificantBits(), two.getMostSignificantBits());
+        if (result != 0)
+        {
+            return result;
+        }
+        return compareUnsigned(one.getLeastSignificantBits(), two.getLeastSignificantBits());
+    }
+
+    /**
+     * Compares two buffers as unsigned bytes, the way Cassandra compares
+     * blobs. ByteBuffer.compareTo compares signed bytes, which doesn't match.
+     *
+     * @param one First buffer.
+     * @param two Second buffer.
+     * @return Negative, zero, or positive as one sorts before, with, or after
+     * two.
+     */
+    //only public for testing
+    public static int compareUnsigned(ByteBuffer one, ByteBuffer two)
+    {
+        int length = Math.min(one.remaining(), two.remaining());
+        for (int i = 0; i < length; i++)
+        {
+            int result = (one.get(one.position() + i) & 0xFF) - (two.get(two.position() + i) & 0xFF);
+            if (result != 0)
+            {
+                return result;
+            }
+        }
+        return one.remaining() - two.remaining();
+    }
+
+    /**
+     * Compares two longs as unsigned values.
+     */
+    private static int compareUnsigned(long one, long two)
+    {
+        return Long.compare(one + Long.MIN_VALUE, two + Long.MIN_VALUE);
+    }
+
+    /**
+     * Compares two strings by code point, which is the order Cassandra gives
+     * their UTF-8 bytes. String.compareTo compares UTF-16 chars, which puts
+     * characters outside the basic multilingual plane before some that are
+     * inside it.
+     */
+    private static int compareCodePoints(String one, String two)
+    {
+        int i = 0;
+        int j = 0;
+        while (i < one.length() && j < two.length())
+        {
+            int a = one.codePointAt(i);
+            int b = two.codePointAt(j);
+            if (a != b)
+            {
+                return Integer.compare(a, b);
+            }
+            i += Character.charCount(a);
+            j += Character.charCount(b);
+        }
+        return (one.length() - i) - (two.length() - j);
+    }
+
+    /**
+     * Pulls the value of an indexed field out of an iTable row.
+     *
+     * @param row Row to read from.
+     * @param field Indexed field to read.
+     * @return The value of that field, as the driver returns it.
+     */
+    private static Comparable getValue(Row row, IndexField field)
+    {
+        String column = field.getField();
+        if (row.isNull(column))
+        {
+            return null;
+        }
+        FieldDataType type = field.getType();
+        if (type.equals(FieldDataType.BINARY))
+        {
+            return row.getBytes(column);
+        } else if (type.equals(FieldDataType.BOOLEAN))
+        {
+            return row.getBool(column);
+        } else if (type.equals(FieldDataType.DATE_TIME) || type.equals(FieldDataType.TIMEPOINT))
+        {
+            return row.getDate(column);
+        } else if (type.equals(FieldDataType.DOUBLE))
+        {
+            return row.getDouble(column);
+        } else if (type.equals(FieldDataType.INTEGER))
+        {
+            return row.getInt(column);
+        } else if (type.equals(FieldDataType.UUID))
+        {
+            return row.getUUID(column);
+        } else if (type.equals(FieldDataType.LONG))
+        {
+            return row.getLong(column);
+        } else
+        {
+            return row.getString(column);
+        }
+    }
+}
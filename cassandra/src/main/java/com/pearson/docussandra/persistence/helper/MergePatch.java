@@ -0,0 +1,72 @@
+package com.pearson.docussandra.persistence.helper;
+
+import java.util.List;
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+
+/**
+ * Applies a JSON merge patch (RFC 7386) to a document.
+ * <p/>
+ * Fields in the patch replace the same fields in the document; a null removes
+ * the field; an object is merged into the document's object of the same name
+ * (recursively, by the same rules). Arrays are not merged, they replace the
+ * document's value wholesale.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class MergePatch
+{
+
+    private MergePatch()
+    {
+    }
+
+    /**
+     * Applies a merge patch to a document. The document is not modified;
+     * fields the patch doesn't touch are shared with the result rather than
+     * copied.
+     *
+     * @param target Document to patch; null is treated as an empty document.
+     * @param patch The patch to apply.
+     * @return A new document with the patch applied.
+     */
+    public static BSONObject apply(BSONObject target, BSONObject patch)
+    {
+        BasicBSONObject result = new BasicBSONObject();
+        if (target != null)
+        {
+            for (String field : target.keySet())
+            {
+                result.put(field, target.get(field));
+            }
+        }
+        for (String field : patch.keySet())
+        {
+            Object value = patch.get(field);
+            if (value == null)
+            {
+                result.removeField(field);
+            } else if (isObject(value))
+            {
+                Object existing = result.get(field);
+                result.put(field, apply(isObject(existing) ? (BSONObject) existing : null, (BSONObject) value));
+            } else
+            {
+                result.put(field, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Determines if a value is an embedded document; BSON arrays are
+     * BSONObjects too, but are not merged.
+     *
+     * @param value Value to check.
+     * @return True if the value is an embedded document.
+     */
+    public static boolean isObject(Object value)
+    {
+        return value instanceof BSONObject && !(value instanceof List);
+    }
+}
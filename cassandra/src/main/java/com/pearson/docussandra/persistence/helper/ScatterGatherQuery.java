@@ -0,0 +1,250 @@
+package com.pearson.docussandra.persistence.helper;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the same query against several iTable buckets and merges the results
+ * back into a single ordered stream of rows.
+ * <p/>
+ * Buckets are queried in the order they were added, a window of at most
+ * maxConcurrency at a time: ascending bucket order for an ascending query,
+ * descending for a descending one. Because every bucket after the first holds
+ * a range of values that sorts strictly after the buckets before it, once the
+ * completed buckets have produced enough rows we know the remaining buckets
+ * can't contribute to the result and we stop dispatching queries. The wrap
+ * around bucket is the exception (it holds both the lowest values and the
+ * values past the last bucket), so it is added first and its rows never
+ * count toward stopping early.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class ScatterGatherQuery
+{
+
+    private final Session session;
+    private final Comparator<Row> order;
+    private final int maxConcurrency;
+    private final List<Statement> statements = new ArrayList<>();
+    private final List<Boolean> countsTowardLimit = new ArrayList<>();
+    private final AtomicLong rowsRead = new AtomicLong();
+    private volatile List<ResultSet> results = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param session Session to run the bucket queries on.
+     * @param order Order in which to merge rows from different buckets; should
+     * match the order the bucket statements return their rows in (the
+     * clustering order of the iTable, or its reverse for ORDER BY ... DESC).
+     * @param maxConcurrency Maximum number of bucket queries to run at once.
+     */
+    public ScatterGatherQuery(Session session, Comparator<Row> order, int maxConcurrency)
+    {
+        if (maxConcurrency < 1)
+        {
+            throw new IllegalArgumentException("Concurrency must be at least one.");
+        }
+        this.session = session;
+        this.order = order;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Adds a bucket to query. Buckets must be added in the order their rows
+     * are merged in: ascending bucket order for an ascending query, descending
+     * for a descending one, with the wrap around bucket first either way.
+     *
+     * @param statement Statement that reads the bucket.
+     * @param countsTowardLimit False if rows from this bucket might sort after
+     * rows from later buckets (the wrap-around bucket); such buckets are still
+     * merged, but can't be used to decide to stop early.
+     */
+    public void addBucket(Statement statement, boolean countsTowardLimit)
+    {
+        statements.add(statement);
+        this.countsTowardLimit.add(countsTowardLimit);
+    }
+
+    /**
+     * Executes the bucket queries.
+     *
+     * @param maxRows Maximum number of rows that will be read from the merged
+     * result; -1 for no limit.
+     * @return A future that completes with an iterator over the merged rows, in
+     * order, containing at most maxRows rows. Iterating may block on further
+     * driver pages if the bucket statements did not fetch all of their rows in
+     * the first page, so only consume it off of driver threads in that case.
+     */
+    public ListenableFuture<Iterator<Row>> execute(long maxRows)
+    {
+        rowsRead.set(0);
+        SettableFuture<Iterator<Row>> result = SettableFuture.create();
+        dispatchWindow(0, new ArrayList<ResultSet>(statements.size()), 0, maxRows, result);
+        return result;
+    }
+
+    /**
+     * @return the number of rows Cassandra returned for the buckets that were
+     * queried, in their first pages, whether or not the merge used them; only
+     * complete once the future returned by execute has completed
+     */
+    public long getRowsRead()
+    {
+        return rowsRead.get();
+    }
+
+    /**
+     * @return the result sets of the buckets that were queried, in the order
+     * they were added; buckets that weren't needed are left off the end. Only
+     * set once the future returned by execute has completed.
+     */
+    public List<ResultSet> getResults()
+    {
+        return results;
+    }
+
+    /**
+     * Runs the next window of bucket queries, then either dispatches the
+     * following window or completes the result.
+     */
+    private void dispatchWindow(final int from, final List<ResultSet> completed, final long rowsSoFar, final long maxRows, final SettableFuture<Iterator<Row>> result)
+    {
+        final int to = Math.min(from + maxConcurrency, statements.size());
+        List<ResultSetFuture> window = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++)
+        {
+            window.add(session.executeAsync(statements.get(i)));
+        }
+        Futures.addCallback(Futures.allAsList(window), new FutureCallback<List<ResultSet>>()
+        {
+            @Override
+            public void onSuccess(List<ResultSet> sets)
+            {
+                long rows = rowsSoFar;
+                for (int i = 0; i < sets.size(); i++)
+                {
+                    ResultSet rs = sets.get(i);
+                    completed.add(rs);
+                    rowsRead.addAndGet(rs.getAvailableWithoutFetching());
+                    if (countsTowardLimit.get(from + i))
+                    {
+                        rows += rs.getAvailableWithoutFetching();
+                    }
+                }
+                if (to < statements.size() && (maxRows == -1 || rows < maxRows))
+                {
+                    try
+                    {
+                        dispatchWindow(to, completed, rows, maxRows, result);
+                    } catch (RuntimeException e)
+                    {
+                        result.setException(e);
+                    }
+                } else
+                {
+                    results = completed;
+                    result.set(new MergingIterator(completed, order, maxRows));
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                result.setException(t);
+            }
+        });
+    }
+
+    /**
+     * K-way merge over a set of individually ordered result sets. Stops once
+     * maxRows rows have been returned.
+     */
+    private static class MergingIterator implements Iterator<Row>
+    {
+
+        private final PriorityQueue<Head> heads;
+        private final long maxRows;
+        private long returned = 0;
+
+        MergingIterator(List<ResultSet> sets, final Comparator<Row> order, long maxRows)
+        {
+            this.maxRows = maxRows;
+            this.heads = new PriorityQueue<>(Math.max(1, sets.size()), new Comparator<Head>()
+            {
+                @Override
+                public int compare(Head one, Head two)
+                {
+                    return order.compare(one.row, two.row);
+                }
+            });
+            for (ResultSet rs : sets)
+            {
+                Iterator<Row> rows = rs.iterator();
+                if (rows.hasNext())
+                {
+                    heads.add(new Head(rows.next(), rows));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return !heads.isEmpty() && (maxRows == -1 || returned < maxRows);
+        }
+
+        @Override
+        public Row next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            Head head = heads.poll();
+            Row toReturn = head.row;
+            if (head.rest.hasNext())
+            {
+                heads.add(new Head(head.rest.next(), head.rest));
+            }
+            returned++;
+            return toReturn;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Next unmerged row from a bucket, along with the rest of that bucket.
+     */
+    private static class Head
+    {
+
+        private final Row row;
+        private final Iterator<Row> rest;
+
+        Head(Row row, Iterator<Row> rest)
+        {
+            this.row = row;
+            this.rest = rest;
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.pearson.docussandra.cache.MetadataRegistry;
 import com.pearson.docussandra.domain.objects.Database;
 import com.pearson.docussandra.domain.objects.Identifier;
 import com.pearson.docussandra.domain.objects.Table;
@@ -78,6 +79,7 @@ public class DatabaseRepositoryImpl extends AbstractCRUDRepository<Database> imp
         BoundStatement bs = new BoundStatement(createStmt);
         bindCreate(bs, entity);
         getSession().execute(bs);
+        MetadataRegistry.getInstance().putDatabase(entity);
         return entity;
     }
 
@@ -87,6 +89,11 @@ public class DatabaseRepositoryImpl extends AbstractCRUDRepository<Database> imp
         BoundStatement bs = new BoundStatement(updateStmt);
         bindUpdate(bs, entity);
         getSession().execute(bs);
+        Database updated = read(entity.getId());//re-read; the update doesn't carry every column
+        if (updated != null)
+        {
+            MetadataRegistry.getInstance().putDatabase(updated);
+        }
         return entity;
     }
 
@@ -151,6 +158,7 @@ public class DatabaseRepositoryImpl extends AbstractCRUDRepository<Database> imp
         BoundStatement bs = new BoundStatement(deleteStmt);
         bindIdentifier(bs, identifier);
         getSession().execute(bs);
+        MetadataRegistry.getInstance().removeDatabase(identifier.getDatabaseName());
         cascadeDelete(identifier);
     }
 
@@ -2,27 +2,51 @@ package com.pearson.docussandra.persistence.impl;
 
 import com.datastax.driver.core.BatchStatement;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import org.bson.BSON;
+import org.bson.BSONObject;
 
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.pearson.docussandra.bucketmanagement.PrimaryIndexBucketLocatorImpl;
+import com.pearson.docussandra.cache.QueryResultCache;
+import com.pearson.docussandra.domain.objects.CompressionCodec;
 import com.pearson.docussandra.domain.objects.Document;
 import com.pearson.docussandra.domain.objects.DocumentIdentifier;
 import com.pearson.docussandra.domain.objects.Identifier;
+import com.pearson.docussandra.domain.objects.Index;
 import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
 import com.pearson.docussandra.domain.objects.Table;
 import com.pearson.docussandra.exception.DuplicateItemException;
 import com.pearson.docussandra.exception.IndexParseException;
 import com.pearson.docussandra.exception.InvalidObjectIdException;
+import com.pearson.docussandra.exception.InvalidPageTokenException;
 import com.pearson.docussandra.exception.ItemNotFoundException;
 import com.pearson.docussandra.handler.IndexMaintainerHelper;
 import com.pearson.docussandra.persistence.DocumentRepository;
+import com.pearson.docussandra.persistence.TableRepository;
+import com.pearson.docussandra.persistence.helper.DocumentCompression;
 import com.pearson.docussandra.persistence.helper.DocumentPersistanceUtils;
+import com.pearson.docussandra.persistence.helper.MergePatch;
 import com.pearson.docussandra.persistence.helper.PreparedStatementFactory;
 import com.pearson.docussandra.persistence.parent.AbstractCRUDRepository;
 import org.slf4j.Logger;
@@ -47,25 +71,84 @@ public class DocumentRepositoryImpl extends AbstractCRUDRepository<Document> imp
     }
 
     private static final String EXISTENCE_CQL = "select count(*) from %s where %s = ?";
-    private static final String READ_CQL = "select * from %s where %s = ? ORDER BY updated_at DESC";
+    private static final String READ_CQL = "select * from %s where %s = ? ORDER BY updated_at DESC LIMIT 1";
+    private static final String READ_VERSIONS_CQL = "select updated_at from %s where %s = ? LIMIT ?";
+    private static final String READ_VERSIONS_BEFORE_CQL = "select updated_at from %s where %s = ? and updated_at < ? LIMIT ?";
+    private static final String DELETE_VERSION_CQL = "delete from %s where %s = ? and updated_at = ?";
+    private static final String READ_AS_OF_CQL = "select * from %s where %s = ? and updated_at <= ? LIMIT 1";
+    private static final String READ_VERSION_RANGE_CQL = "select * from %s where %s = ? and updated_at >= ? and updated_at <= ? LIMIT ?";
     private static final String READ_ALL_CQL = "select * from %s LIMIT %d";
 
     private static final String DELETE_CQL = "delete from %s where %s = ?";
     //private static final String UPDATE_CQL = "update %s set object = ?, updated_at = ? where %s = ?";
     private static final String CREATE_CQL = "insert into %s (%s, object, created_at, updated_at) values (?, ?, ?, ?)";
 
+    /**
+     * Default number of writes that a bulk create will have outstanding at the
+     * same time.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_BULK_WRITES = 64;
+
+    /**
+     * Maximum number of iTable rows in a single bulk create batch. All rows in
+     * a batch are in the same partition, so this only limits batch size.
+     */
+    private static final int MAX_BULK_BATCH_STATEMENTS = 100;
+
+    /**
+     * Most expired versions of a document that a single update prunes; any
+     * more are left for later updates. Keeps the read behind each prune to a
+     * single bounded page however large the document's partition has grown.
+     */
+    private static final int MAX_VERSIONS_PRUNED = 100;
+
+    /**
+     * Runs version pruning off the driver's I/O threads.
+     */
+    private static final ExecutorService PRUNE_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, "document-version-pruner");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
     private final BucketLocator bucketLocator;
+    private final TableRepository tableRepo;
     private static Logger logger = LoggerFactory.getLogger(DocumentRepositoryImpl.class);
 
+    /**
+     * Maximum number of writes that a bulk create will have outstanding at the
+     * same time.
+     */
+    private final int maxInFlightBulkWrites;
+
     /**
      * Constructor.
      *
      * @param session
      */
     public DocumentRepositoryImpl(Session session)
+    {
+        this(session, DEFAULT_MAX_IN_FLIGHT_BULK_WRITES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param session Database session.
+     * @param maxInFlightBulkWrites Maximum number of writes that a bulk create
+     * will have outstanding at the same time.
+     */
+    public DocumentRepositoryImpl(Session session, int maxInFlightBulkWrites)
     {
         super(session);
         this.bucketLocator = PrimaryIndexBucketLocatorImpl.getInstance();
+        this.maxInFlightBulkWrites = maxInFlightBulkWrites;
+        this.tableRepo = new TableRepositoryImpl(session);
     }
 
     @Override
@@ -91,6 +174,7 @@ public class DocumentRepositoryImpl extends AbstractCRUDRepository<Document> imp
                 batch.add(boundIndexStatement);//the index creates
             }
             getSession().execute(batch);
+            invalidateCachedQueries(entity, null);
             return entity;
         } catch (IndexParseException e)
         {
@@ -98,6 +182,169 @@ public class DocumentRepositoryImpl extends AbstractCRUDRepository<Document> imp
         }
     }
 
+    /**
+     * Creates many new documents at once. Instead of a logged batch per
+     * document, the document rows are written first (each is its own
+     * partition), then the iTable rows of the documents that made it are
+     * grouped into unlogged batches by iTable bucket, so every batch goes to a
+     * single partition. Writes are issued asynchronously with at most
+     * maxInFlightBulkWrites outstanding.
+     * <p/>
+     * As the writes aren't atomic, a document whose iTable rows fail has
+     * already been written; it is deleted again (along with whatever index
+     * entries it got) before being reported as failed, so that retrying it
+     * doesn't leave a duplicate behind.
+     *
+     * @param entities Documents to create; must have newly generated ids, as
+     * existence isn't checked.
+     * @return The reason each document that could not be created failed, by
+     * its position in entities.
+     */
+    @Override
+    public Map<Integer, Throwable> createBulk(List<Document> entities)
+    {
+        Map<Integer, Throwable> errors = new ConcurrentHashMap<>();
+        List<BulkWrite> documentWrites = new ArrayList<>(entities.size());
+        List<List<BoundStatement>> indexStatements = new ArrayList<>(entities.size());
+        for (int i = 0; i < entities.size(); i++)
+        {
+            Document entity = entities.get(i);
+            try
+            {
+                indexStatements.add(IndexMaintainerHelper.generateDocumentCreateIndexEntriesStatements(getSession(), entity, bucketLocator));
+            } catch (IndexParseException e)
+            {
+                indexStatements.add(null);
+                errors.put(i, e);
+                continue;
+            }
+            PreparedStatement createStmt = PreparedStatementFactory.getPreparedStatement(String.format(CREATE_CQL, entity.getTable().toDbTable(), Columns.ID), getSession());
+            BoundStatement bs = new BoundStatement(createStmt);
+            bindCreate(bs, entity);
+            BulkWrite write = new BulkWrite();
+            write.add(bs, i);
+            documentWrites.add(write);
+        }
+        executeBulkWrites(documentWrites, errors);
+        Set<Integer> notWritten = new HashSet<>(errors.keySet());
+        //now the iTable rows, for the documents that made it
+        List<BulkWrite> iTableWrites = new ArrayList<>();
+        Map<String, BulkWrite> openBatches = new HashMap<>();
+        for (int i = 0; i < entities.size(); i++)
+        {
+            if (errors.containsKey(i))
+            {
+                continue;
+            }
+            for (BoundStatement indexStatement : indexStatements.get(i))
+            {
+                String partition = indexStatement.preparedStatement().getQueryString() + ":" + indexStatement.getLong(0);//iTable inserts bind the bucket first
+                BulkWrite batch = openBatches.get(partition);
+                if (batch == null || batch.size() >= MAX_BULK_BATCH_STATEMENTS)
+                {
+                    batch = new BulkWrite();
+                    openBatches.put(partition, batch);
+                    iTableWrites.add(batch);
+                }
+                batch.add(indexStatement, i);
+            }
+        }
+        executeBulkWrites(iTableWrites, errors);
+        for (int i = 0; i < entities.size(); i++)
+        {
+            if (notWritten.contains(i))
+            {
+                continue;
+            }
+            if (errors.containsKey(i))
+            {//the document row made it, but not all of its index entries did
+                undoCreate(entities.get(i));
+            }
+            invalidateCachedQueries(entities.get(i), null);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Bulk created " + (entities.size() - errors.size()) + " of " + entities.size() + " documents using " + documentWrites.size() + " document writes and " + iTableWrites.size() + " iTable batches.");
+        }
+        return errors;
+    }
+
+    /**
+     * Removes a document that createBulk wrote, but couldn't write all of the
+     * index entries of, along with the index entries it did write. If the
+     * index entries can't be worked out, the document row is removed anyway.
+     *
+     * @param entity Document to remove.
+     */
+    private void undoCreate(Document entity)
+    {
+        PreparedStatement deleteStmt = PreparedStatementFactory.getPreparedStatement(String.format(DELETE_CQL, entity.getTable().toDbTable(), Columns.ID), getSession());
+        BoundStatement bs = new BoundStatement(deleteStmt);
+        bindIdentifier(bs, entity.getId());
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.LOGGED);
+        batch.add(bs);
+        try
+        {
+            batch.addAll(IndexMaintainerHelper.generateDocumentDeleteIndexEntriesStatements(getSession(), entity, bucketLocator));
+        } catch (IndexParseException | RuntimeException e)//a missing iTable fails to prepare
+        {
+            logger.warn("Could not remove the index entries of partially created document: " + entity.getId() + "; removing the document only.", e);
+            batch = new BatchStatement(BatchStatement.Type.LOGGED);
+            batch.add(bs);
+        }
+        try
+        {
+            getSession().execute(batch);
+        } catch (RuntimeException e)
+        {
+            logger.error("Could not remove partially created document: " + entity.getId() + "; it is stored without some of its index entries.", e);
+        }
+    }
+
+    /**
+     * Executes bulk writes asynchronously, with at most maxInFlightBulkWrites
+     * outstanding, and waits for all of them to finish.
+     *
+     * @param writes Writes to execute.
+     * @param errors Map to record the failure of each document in a failed
+     * write in.
+     */
+    private void executeBulkWrites(List<BulkWrite> writes, final Map<Integer, Throwable> errors)
+    {
+        final Semaphore inFlight = new Semaphore(maxInFlightBulkWrites);
+        for (final BulkWrite write : writes)
+        {
+            inFlight.acquireUninterruptibly();
+            ResultSetFuture future;
+            try
+            {
+                future = getSession().executeAsync(write.toStatement());
+            } catch (RuntimeException e)
+            {
+                inFlight.release();
+                write.fail(errors, e);
+                continue;
+            }
+            Futures.addCallback(future, new FutureCallback<ResultSet>()
+            {
+                @Override
+                public void onSuccess(ResultSet result)
+                {
+                    inFlight.release();
+                }
+
+                @Override
+                public void onFailure(Throwable t)
+                {
+                    write.fail(errors, t);
+                    inFlight.release();
+                }
+            });
+        }
+        //wait for the stragglers
+        inFlight.acquireUninterruptibly(maxInFlightBulkWrites);
+    }
+
     @Override
     public Document read(Identifier identifier)
     {
@@ -117,6 +364,71 @@ public class DocumentRepositoryImpl extends AbstractCRUDRepository<Document> imp
         return item;
     }
 
+    @Override
+    public Document readAsOf(Identifier identifier, Date asOf)
+    {
+        Table table = identifier.getTable();
+        PreparedStatement readStmt = PreparedStatementFactory.getPreparedStatement(String.format(READ_AS_OF_CQL, table.toDbTable(), Columns.ID), getSession());
+
+        BoundStatement bs = new BoundStatement(readStmt);
+        bs.bind(new DocumentIdentifier(identifier).getUUID(), asOf);
+        Document item = DocumentPersistanceUtils.marshalRow(getSession().execute(bs).one());
+
+        if (item == null)
+        {
+            throw new ItemNotFoundException("No version of ID: " + identifier.toString() + " exists as of: " + asOf.getTime());
+        }
+        item.setTable(table);
+        return item;
+    }
+
+    @Override
+    public QueryResponseWrapper readVersions(Identifier identifier, Date from, Date to, int limit, String pageToken)
+    {
+        Date upper = to == null ? new Date(Long.MAX_VALUE) : to;
+        if (pageToken != null)
+        {//the token is the timestamp of the last version on the previous page; continue with the one before it
+            long last;
+            try
+            {
+                last = Long.parseLong(pageToken);
+            } catch (NumberFormatException e)
+            {
+                throw new InvalidPageTokenException("Invalid version page token: " + pageToken, e);
+            }
+            if (last - 1 < upper.getTime())
+            {
+                upper = new Date(last - 1);
+            }
+        }
+        Table table = identifier.getTable();
+        PreparedStatement readStmt = PreparedStatementFactory.getPreparedStatement(String.format(READ_VERSION_RANGE_CQL, table.toDbTable(), Columns.ID), getSession());
+        BoundStatement bs = new BoundStatement(readStmt);
+        bs.bind(new DocumentIdentifier(identifier).getUUID(), from == null ? new Date(Long.MIN_VALUE) : from, upper, limit + 1);//one extra so we know if there is another page
+        List<Document> versions = new ArrayList<>(limit);
+        boolean more = false;
+        for (Row row : getSession().execute(bs))
+        {
+            if (versions.size() == limit)
+            {
+                more = true;
+                break;
+            }
+            Document version = DocumentPersistanceUtils.marshalRow(row);
+            version.setTable(table);
+            versions.add(version);
+        }
+        if (versions.isEmpty() && from == null && to == null && pageToken == null)
+        {
+            throw new ItemNotFoundException("ID not found: " + identifier.toString());
+        }
+        if (more)
+        {
+            return new QueryResponseWrapper(versions, null, String.valueOf(versions.get(versions.size() - 1).getUpdatedAt().getTime()));
+        }
+        return new QueryResponseWrapper(versions, 0L);
+    }
+
     @Override
     public QueryResponseWrapper readAll(String database, String tableString, int limit, long offset)
     {
@@ -136,6 +448,34 @@ public class DocumentRepositoryImpl extends AbstractCRUDRepository<Document> imp
     public Document update(Document entity)
     {
         Document old = read(entity.getId()); //will throw exception of doc is not found
+        return update(entity, old);
+    }
+
+    @Override
+    public Document patch(Document old, BSONObject patch)
+    {
+        BSONObject patched = MergePatch.apply(old.getObject(), patch);
+        if (IndexMaintainerHelper.getChangedFields(old.getObject(), patched).isEmpty())
+        {//nothing changed; don't write anything
+            return old;
+        }
+        Document entity = new Document();
+        entity.setTable(old.getTable());
+        entity.setUuid(old.getUuid());
+        entity.setObject(patched);
+        return update(entity, old);
+    }
+
+    /**
+     * Writes a new version of a document over the one that is stored, along
+     * with the index entries that need to change.
+     *
+     * @param entity New version of the document.
+     * @param old Currently stored version of the document.
+     * @return The updated document.
+     */
+    private Document update(Document entity, Document old)
+    {
         entity.setCreatedAt(old.getCreatedAt());//copy over the original create date
         Table table = entity.getTable();
         PreparedStatement updateStmt = PreparedStatementFactory.getPreparedStatement(String.format(CREATE_CQL, table.toDbTable(), Columns.ID), getSession());
@@ -146,12 +486,14 @@ public class DocumentRepositoryImpl extends AbstractCRUDRepository<Document> imp
         batch.add(bs);//the actual update
         try
         {
-            List<BoundStatement> indexStatements = IndexMaintainerHelper.generateDocumentUpdateIndexEntriesStatements(getSession(), entity, bucketLocator);
+            List<BoundStatement> indexStatements = IndexMaintainerHelper.generateDocumentUpdateIndexEntriesStatements(getSession(), entity, old.getObject(), bucketLocator);//reuse the read above rather than reading again per index
             for (BoundStatement boundIndexStatement : indexStatements)
             {
                 batch.add(boundIndexStatement);//the index updates
             }
             getSession().execute(batch);
+            invalidateCachedQueries(entity, old.getObject());
+            pruneVersions(entity);
             return entity;
         } catch (IndexParseException e)
         {
@@ -179,6 +521,7 @@ public class DocumentRepositoryImpl extends AbstractCRUDRepository<Document> imp
                     batch.add(boundIndexStatement);//the index deletes
                 }
                 getSession().execute(batch);
+                invalidateCachedQueries(entity, null);
             } catch (IndexParseException e)
             {
                 throw new RuntimeException(e);//this shouldn't actually happen outside of tests
@@ -213,6 +556,7 @@ public class DocumentRepositoryImpl extends AbstractCRUDRepository<Document> imp
                     batch.add(boundIndexStatement);//the index deletes
                 }
                 getSession().execute(batch);
+                invalidateCachedQueries(entity, null);
             } catch (IndexParseException e)
             {
                 throw new RuntimeException(e);//this shouldn't actually happen outside of tests
@@ -246,10 +590,189 @@ public class DocumentRepositoryImpl extends AbstractCRUDRepository<Document> imp
         bs.bind(docId.getUUID());
     }
 
+    /**
+     * Invalidates any cached query results that read the iTable buckets a
+     * write touched. Call after the write has been applied.
+     *
+     * @param entity Document that was written.
+     * @param oldObject The document's object before an update, as its index
+     * entries may have moved to other buckets; null for creates and deletes.
+     */
+    private void invalidateCachedQueries(Document entity, BSONObject oldObject)
+    {
+        QueryResultCache cache = QueryResultCache.getInstance();
+        Table table = entity.getTable();
+        if (!cache.isEnabled(table.getDatabaseName(), table.getName()))
+        {
+            return;
+        }
+        for (Index index : IndexMaintainerHelper.getIndexForDocument(getSession(), entity))
+        {
+            cache.invalidate(index, entity.getObject(), bucketLocator);
+            if (oldObject != null)
+            {
+                cache.invalidate(index, oldObject, bucketLocator);
+            }
+        }
+    }
+
+    /**
+     * Removes the versions of a document that its table's retention policy no
+     * longer keeps. Only reads the versions it might remove (along with the
+     * ones it keeps, for a version limit), at most MAX_VERSIONS_PRUNED of them
+     * at a time. Runs in the background; if it fails the extra versions just
+     * stay around until the next update prunes them.
+     *
+     * @param entity Document that was just updated.
+     */
+    private void pruneVersions(final Document entity)
+    {
+        final Table table;
+        try
+        {
+            table = tableRepo.readCached(entity.getTable().getId());
+        } catch (ItemNotFoundException e)
+        {//no metadata for the table; nothing to enforce
+            return;
+        }
+        if (!table.hasVersionRetention())
+        {
+            return;
+        }
+        String dbTable = entity.getTable().toDbTable();
+        //prepare up front; we don't want to block the driver's threads preparing in the callback
+        final PreparedStatement deleteStmt = PreparedStatementFactory.getPreparedStatement(String.format(DELETE_VERSION_CQL, dbTable, Columns.ID), getSession());
+        final long now = System.currentTimeMillis();
+        BoundStatement bs;
+        int limit;
+        if (table.getMaxVersions() > 0)
+        {//the versions we keep, then a batch of the ones past the limit
+            limit = table.getMaxVersions() + MAX_VERSIONS_PRUNED;
+            bs = new BoundStatement(PreparedStatementFactory.getPreparedStatement(String.format(READ_VERSIONS_CQL, dbTable, Columns.ID), getSession()));
+            bs.bind(entity.getUuid(), limit);
+        } else
+        {//only the versions old enough to expire; the one just written never is
+            limit = MAX_VERSIONS_PRUNED;
+            bs = new BoundStatement(PreparedStatementFactory.getPreparedStatement(String.format(READ_VERSIONS_BEFORE_CQL, dbTable, Columns.ID), getSession()));
+            bs.bind(entity.getUuid(), new Date(now - (table.getMaxVersionAge() * 1000)), limit);
+        }
+        bs.setFetchSize(limit);//one page, so reading the rows never blocks on a fetch
+        Futures.addCallback(getSession().executeAsync(bs), new FutureCallback<ResultSet>()
+        {
+            @Override
+            public void onSuccess(ResultSet rows)
+            {
+                List<Date> versions = new ArrayList<>();
+                for (Row row : rows)
+                {
+                    versions.add(row.getDate(Columns.UPDATED_AT));
+                }
+                List<Date> expired = table.getMaxVersions() > 0 ? getExpiredVersions(versions, table.getMaxVersions(), table.getMaxVersionAge(), now) : versions;
+                if (expired.isEmpty())
+                {
+                    return;
+                }
+                BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);//all in the document's partition
+                for (Date version : expired)
+                {
+                    batch.add(new BoundStatement(deleteStmt).bind(entity.getUuid(), version));
+                }
+                Futures.addCallback(getSession().executeAsync(batch), new FutureCallback<ResultSet>()
+                {
+                    @Override
+                    public void onSuccess(ResultSet result)
+                    {
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t)
+                    {
+                        logger.warn("Could not prune old versions of document: " + entity.getId(), t);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                logger.warn("Could not read versions of document for pruning: " + entity.getId(), t);
+            }
+        }, PRUNE_EXECUTOR);
+    }
+
+    /**
+     * Determines which versions of a document fall outside a retention
+     * policy. The newest version is always kept.
+     *
+     * @param versions Version timestamps of the document, newest first.
+     * @param maxVersions Number of versions to keep; 0 for no limit.
+     * @param maxVersionAge Age in seconds after which versions are removed; 0
+     * for no limit.
+     * @param now Current time, in milliseconds.
+     * @return Timestamps of the versions to remove.
+     */
+    //only public for testing
+    public static List<Date> getExpiredVersions(List<Date> versions, int maxVersions, long maxVersionAge, long now)
+    {
+        List<Date> expired = new ArrayList<>();
+        long oldestAllowed = maxVersionAge > 0 ? now - (maxVersionAge * 1000) : Long.MIN_VALUE;
+        for (int i = 1; i < versions.size(); i++)//skip the current version
+        {
+            Date version = versions.get(i);
+            if ((maxVersions > 0 && i >= maxVersions) || version.getTime() < oldestAllowed)
+            {
+                expired.add(version);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Statements for a single partition that are written together during a
+     * bulk create, along with the documents they belong to.
+     */
+    private static class BulkWrite
+    {
+
+        private final List<BoundStatement> statements = new ArrayList<>();
+        private final List<Integer> documents = new ArrayList<>();
+
+        private void add(BoundStatement statement, int document)
+        {
+            statements.add(statement);
+            documents.add(document);
+        }
+
+        private int size()
+        {
+            return statements.size();
+        }
+
+        private Statement toStatement()
+        {
+            if (statements.size() == 1)
+            {
+                return statements.get(0);
+            }
+            BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            batch.addAll(statements);
+            return batch;
+        }
+
+        private void fail(Map<Integer, Throwable> errors, Throwable t)
+        {
+            for (Integer document : documents)
+            {
+                errors.put(document, t);
+            }
+        }
+    }
+
     private void bindCreate(BoundStatement bs, Document entity)
     {
+        CompressionCodec codec = DocumentCompression.getCodec(tableRepo, entity.getTable());
         bs.bind(entity.getUuid(),
-                ByteBuffer.wrap(BSON.encode(entity.getObject())),
+                DocumentCompression.compress(ByteBuffer.wrap(BSON.encode(entity.getObject())), codec),
                 entity.getCreatedAt(),
                 entity.getUpdatedAt());
     }
@@ -45,6 +45,12 @@ public class ITableRepositoryImpl implements ITableRepository
      */
     private static final String TABLE_CREATE_CQL = "CREATE TABLE IF NOT EXISTS %s (bucket bigint, id uuid, object blob, created_at timestamp, updated_at timestamp, %s, PRIMARY KEY ((bucket), %s));";
 
+    /**
+     * CQL statement for dynamically creating an iTable for an index that only
+     * stores references to documents.
+     */
+    private static final String REFERENCE_TABLE_CREATE_CQL = "CREATE TABLE IF NOT EXISTS %s (bucket bigint, id uuid, updated_at timestamp, %s, PRIMARY KEY ((bucket), %s));";
+
     /**
      * CQL statement for deleting an iTable (or for that matter, any setTable).
      */
@@ -154,7 +160,7 @@ public class ITableRepositoryImpl implements ITableRepository
         {
             primaryKeyCreateStatement.append(", ").append("id");
         }
-        String finalStatement = String.format(TABLE_CREATE_CQL, newTableName, fieldCreateStatement, primaryKeyCreateStatement);
+        String finalStatement = String.format(index.isReferenceOnly() ? REFERENCE_TABLE_CREATE_CQL : TABLE_CREATE_CQL, newTableName, fieldCreateStatement, primaryKeyCreateStatement);
         logger.debug("For index: " + index.toString() + ", the table create SQL is: " + finalStatement);
         return finalStatement;
     }
@@ -9,21 +9,20 @@ import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
-import com.pearson.docussandra.cache.CacheFactory;
 import com.pearson.docussandra.cache.CacheSynchronizer;
+import com.pearson.docussandra.cache.MetadataRegistry;
 import com.pearson.docussandra.domain.objects.FieldDataType;
 import com.pearson.docussandra.domain.objects.Identifier;
 import com.pearson.docussandra.domain.objects.Index;
 import com.pearson.docussandra.domain.objects.IndexField;
 import com.pearson.docussandra.domain.objects.IndexIdentifier;
+import com.pearson.docussandra.domain.objects.IndexStorageMode;
 import com.pearson.docussandra.domain.objects.Table;
 import com.pearson.docussandra.exception.ItemNotFoundException;
 import com.pearson.docussandra.persistence.ITableRepository;
 import com.pearson.docussandra.persistence.IndexRepository;
 import com.pearson.docussandra.persistence.helper.PreparedStatementFactory;
 import com.pearson.docussandra.persistence.parent.AbstractCRUDRepository;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +56,7 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
         static final String FIELDS = "fields";
         static final String FIELDS_TYPE = "fields_type";
         static final String ONLY = "only";
+        static final String STORAGE_MODE = "storage_mode";
         static final String CREATED_AT = "created_at";
         static final String UPDATED_AT = "updated_at";
         static final String IS_ACTIVE = "is_active";
@@ -64,11 +64,12 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
 
     private static final String IDENTITY_CQL = " where db_name = ? and tbl_name = ? and name = ?";
     private static final String EXISTENCE_CQL = "select count(*) from %s" + IDENTITY_CQL;
-    private static final String CREATE_CQL = "insert into %s (%s, db_name, tbl_name, is_unique, fields, fields_type, only, is_active, created_at, updated_at) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) IF NOT EXISTS";
+    private static final String CREATE_CQL = "insert into %s (%s, db_name, tbl_name, is_unique, fields, fields_type, only, storage_mode, is_active, created_at, updated_at) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) IF NOT EXISTS";
     private static final String READ_CQL = "select * from %s" + IDENTITY_CQL;
     private static final String DELETE_CQL = "delete from %s" + IDENTITY_CQL;
     private static final String MARK_ACTIVE_CQL = "update %s set is_active = true" + IDENTITY_CQL;
     private static final String READ_ALL_CQL = "select * from %s where db_name = ? and tbl_name = ?";
+    private static final String READ_EVERY_INDEX_CQL = "select * from %s";
     private static final String READ_ALL_COUNT_CQL = "select count(*) from %s where db_name = ? and tbl_name = ?";
 
     private PreparedStatement existStmt;
@@ -77,6 +78,7 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
     private PreparedStatement deleteStmt;
     private PreparedStatement markActiveStmt;
     private PreparedStatement readAllStmt;
+    private PreparedStatement readEveryIndexStmt;
     private PreparedStatement readAllCountStmt;
 
     private ITableRepository iTableRepo;
@@ -104,6 +106,7 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
         deleteStmt = PreparedStatementFactory.getPreparedStatement(String.format(DELETE_CQL, getTable()), getSession());
         markActiveStmt = PreparedStatementFactory.getPreparedStatement(String.format(MARK_ACTIVE_CQL, getTable()), getSession());
         readAllStmt = PreparedStatementFactory.getPreparedStatement(String.format(READ_ALL_CQL, getTable()), getSession());
+        readEveryIndexStmt = PreparedStatementFactory.getPreparedStatement(String.format(READ_EVERY_INDEX_CQL, getTable()), getSession());
         readAllCountStmt = PreparedStatementFactory.getPreparedStatement(String.format(READ_ALL_COUNT_CQL, getTable()), getSession());
     }
 
@@ -144,21 +147,7 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
         BoundStatement bs = new BoundStatement(createStmt);
         bindCreate(bs, entity);
         getSession().execute(bs);
-        //maintain cache  
-        try//we do this in a try/catch because we don't want to cause an app error if this fails
-        {
-            Cache c = CacheFactory.getCache("index");
-            String key = entity.getDatabaseName() + ":" + entity.getTableName();
-            synchronized (CacheSynchronizer.getLockingObject(key, Index.class))
-            {
-                List<Index> currentIndex = this.readAll(entity.getId());
-                Element e = new Element(key, currentIndex);
-                c.put(e);
-            }
-        } catch (Exception e)
-        {
-            logger.error("Could not update index cache upon index create.", e);
-        }
+        refreshRegistry(entity.getId(), "create");
         iTableRepo.createITable(entity);
         //-----check to see if it is correct, suggest the user delete and try again if it's not -- probably
         //-----automatically re-index; hard to actually do, it would need a different name if the index was in use -- probably not
@@ -177,6 +166,7 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
         BoundStatement bs = new BoundStatement(markActiveStmt);
         bindIdentifier(bs, entity.getId());
         getSession().execute(bs);
+        refreshRegistry(entity.getId(), "activation");
     }
 
     @Override
@@ -191,27 +181,7 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
         BoundStatement bs = new BoundStatement(deleteStmt);
         bindIdentifier(bs, id);
         getSession().execute(bs);
-        //maintain cache
-        try//we do this in a try/catch because we don't want to cause an app error if this fails
-        {
-            Cache c = CacheFactory.getCache("index");
-            String key = id.getDatabaseName() + ":" + id.getTableName();
-            synchronized (CacheSynchronizer.getLockingObject(key, Index.class))
-            {
-                List<Index> currentIndex = this.readAll(id);
-                if (!currentIndex.isEmpty())
-                {
-                    Element e = new Element(key, currentIndex);
-                    c.put(e);
-                } else
-                {
-                    c.put(null);
-                }
-            }
-        } catch (Exception e)
-        {
-            logger.error("Could not update index cache upon index delete.", e);
-        }
+        refreshRegistry(id, "delete");
         cascadeDelete(new IndexIdentifier(id));
         //TODO: delete the index status (IndexCreationEvents) (or at least mark it permantly inactive/disabled with a new timestamp, ensuring that /index_status won't return it) and halt any active indexing to save processor time -- issue https://github.com/PearsonEducation/Docussandra/issues/3
     }
@@ -233,44 +203,37 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
     @Override
     public List<Index> readAll()
     {
-        throw new UnsupportedOperationException("Call not valid for this class.");
+        BoundStatement bs = new BoundStatement(readEveryIndexStmt);
+        return (marshalAll(getSession().execute(bs)));
     }
 
     /**
-     * Same as readAll, but will read from the cache if available.
+     * Same as readAll, but will read from the MetadataRegistry if available.
+     * Writes made on this node update the registry directly; changes made
+     * through other nodes are picked up when the registry is next reloaded.
      *
      * @return
      */
     @Override
     public List<Index> readAllCached(Identifier id)
     {
-        String key = id.getDatabaseName() + ":" + id.getTableName();
-        //logger.info("Reading all indexes from cache for " + key);
-        Cache c = CacheFactory.getCache("index");
-//        synchronized (CacheSynchronizer.getLockingObject(key, Index.class))
-//        {
-        Element e = c.get(key);
-        if (e == null || e.getObjectValue() == null)//if its not set, or set, but null, re-read
+        List<Index> all = MetadataRegistry.getInstance().getIndexes(id);
+        if (all == null)
         {
-            List<Index> all = readAll(id);
-            if (all != null && !all.isEmpty())//don't store empty or null index lists; could cause problems if an index gets created and we are not treating it as created
+            synchronized (CacheSynchronizer.getLockingObject(id.getDatabaseName() + ":" + id.getTableName(), Index.class))
             {
-                e = new Element(key, all);
-                c.put(e);
-            } else
-            {
-                return all;//it's empty or null; just return it now and not mess with the cache
+                all = MetadataRegistry.getInstance().getIndexes(id);//another thread may have just read it
+                if (all == null)
+                {
+                    all = readAll(id);
+                    MetadataRegistry.getInstance().putIndexes(id, all);
+                }
             }
-        } else
+        } else if (logger.isTraceEnabled())
         {
-            if (logger.isTraceEnabled())
-            {
-                logger.trace("Pulling Index from Cache: " + e.getObjectValue().toString());
-            }
+            logger.trace("Pulling Index from MetadataRegistry: " + all.toString());
         }
-        return (List<Index>) e.getObjectValue();
-        //}
-        //return readAll(database, table);
+        return all;
     }
 
     @Override
@@ -281,6 +244,28 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
         return (getSession().execute(bs).one().getLong(0));
     }
 
+    /**
+     * Re-reads all the indexes on a table into the MetadataRegistry after one
+     * of them has changed.
+     *
+     * @param id Identifier of the changed index (or its table).
+     * @param action What changed, for logging.
+     */
+    private void refreshRegistry(Identifier id, String action)
+    {
+        try//we do this in a try/catch because we don't want to cause an app error if this fails
+        {
+            synchronized (CacheSynchronizer.getLockingObject(id.getDatabaseName() + ":" + id.getTableName(), Index.class))
+            {
+                MetadataRegistry.getInstance().putIndexes(id, readAll(id));
+            }
+        } catch (Exception e)
+        {
+            logger.error("Could not update the metadata registry upon index " + action + ".", e);
+            MetadataRegistry.getInstance().evictIndexes(id);//so we re-read on next use rather than serve a stale list
+        }
+    }
+
     private void cascadeDelete(IndexIdentifier id)
     {
         logger.info("Cleaning up ITables for index: " + id.getDatabaseName() + "/" + id.getTableName() + "/" + id.getIndexName());
@@ -300,6 +285,7 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
                 entity.getFieldsValues(),
                 entity.getFieldsTypes(),
                 entity.getIncludeOnly(),
+                entity.getStorageMode().name(),
                 entity.isActive(),
                 entity.getCreatedAt(),
                 entity.getUpdatedAt());
@@ -341,6 +327,8 @@ public class IndexRepositoryImpl extends AbstractCRUDRepository<Index> implement
         }
         i.setFields(indexFields);
         i.setIncludeOnly(row.getList(Columns.ONLY, String.class));
+        String storageMode = row.getString(Columns.STORAGE_MODE);
+        i.setStorageMode(storageMode == null ? IndexStorageMode.FULL : IndexStorageMode.valueOf(storageMode));//indexes from before storage modes are full
         i.setActive(row.getBool(Columns.IS_ACTIVE));
         i.setCreatedAt(row.getDate(Columns.CREATED_AT));
         i.setUpdatedAt(row.getDate(Columns.UPDATED_AT));
@@ -2,8 +2,15 @@ package com.pearson.docussandra.persistence.impl;
 
 import com.datastax.driver.core.BatchStatement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
@@ -23,8 +30,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Repository for interacting with the sys_idx_status and sys_idx_not_done
- * tables.
+ * Repository for interacting with the sys_idx_status, sys_idx_not_done and
+ * sys_idx_lease tables.
  *
  * @author https://github.com/JeffreyDeYoung
  */
@@ -49,6 +56,7 @@ public class IndexStatusRepositoryImpl extends AbstractCRUDRepository<IndexCreat
 
         public static final String BY_ID = "sys_idx_status";
         public static final String BY_NOT_DONE = "sys_idx_not_done";
+        public static final String LEASES = "sys_idx_lease";
     }
 
     /**
@@ -67,29 +75,59 @@ public class IndexStatusRepositoryImpl extends AbstractCRUDRepository<IndexCreat
         static final String UPDATED_AT = "updated_at";
         static final String FATAL_ERROR = "fatal_error";
         static final String ERRORS = "errors";
+        static final String ERROR_COUNT = "error_count";
+        static final String DOCS_PER_SECOND = "docs_per_second";
+        static final String CHECKPOINTS = "checkpoints";
+        static final String TOKEN_RANGE = "token_range";
+        static final String OWNER = "owner";
+        static final String APPLIED = "[applied]";
     }
 
     private static final String IDENTITY_CQL = " where id = ?";
     private static final String EXISTENCE_CQL = "select count(*) from " + Tables.BY_ID + IDENTITY_CQL;
     private static final String DELETE_FROM_NOT_DONE = "delete from " + Tables.BY_NOT_DONE + IDENTITY_CQL;
-    private static final String CREATE_CQL = "insert into " + Tables.BY_ID + " (" + Columns.ID + ", " + Columns.DATABASE + ", " + Columns.TABLE + ", " + Columns.INDEX_NAME + ", " + Columns.RECORDS_COMPLETED + ", " + Columns.TOTAL_RECORDS + ", " + Columns.STARTED_AT + ", " + Columns.UPDATED_AT + ", " + Columns.ERRORS + ", " + Columns.FATAL_ERROR + ") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) IF NOT EXISTS";
+    private static final String CREATE_CQL = "insert into " + Tables.BY_ID + " (" + Columns.ID + ", " + Columns.DATABASE + ", " + Columns.TABLE + ", " + Columns.INDEX_NAME + ", " + Columns.RECORDS_COMPLETED + ", " + Columns.TOTAL_RECORDS + ", " + Columns.STARTED_AT + ", " + Columns.UPDATED_AT + ", " + Columns.ERRORS + ", " + Columns.ERROR_COUNT + ", " + Columns.FATAL_ERROR + ", " + Columns.DOCS_PER_SECOND + ") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) IF NOT EXISTS";
     private static final String READ_CQL = "select * from " + Tables.BY_ID + IDENTITY_CQL;
-    private static final String UPDATE_CQL = "update " + Tables.BY_ID + " set " + Columns.RECORDS_COMPLETED + " = ?, " + Columns.UPDATED_AT + " = ?, " + Columns.ERRORS + " = ?, " + Columns.FATAL_ERROR + " = ?" + IDENTITY_CQL;
+    private static final String UPDATE_CQL = "update " + Tables.BY_ID + " set " + Columns.RECORDS_COMPLETED + " = ?, " + Columns.TOTAL_RECORDS + " = ?, " + Columns.UPDATED_AT + " = ?, " + Columns.ERROR_COUNT + " = ?, " + Columns.DOCS_PER_SECOND + " = ?" + IDENTITY_CQL;
+    private static final String SAVE_FATAL_ERROR_CQL = "update " + Tables.BY_ID + " set " + Columns.FATAL_ERROR + " = ?, " + Columns.UPDATED_AT + " = ?" + IDENTITY_CQL;
+    private static final String ADD_ERRORS_CQL = "update " + Tables.BY_ID + " set " + Columns.ERRORS + " = " + Columns.ERRORS + " + ?" + IDENTITY_CQL;
+    private static final String READ_CHECKPOINTS_CQL = "select " + Columns.CHECKPOINTS + " from " + Tables.BY_ID + IDENTITY_CQL;
+    private static final String SAVE_CHECKPOINTS_CQL = "update " + Tables.BY_ID + " set " + Columns.CHECKPOINTS + " = ?" + IDENTITY_CQL;
+    private static final String SAVE_CHECKPOINT_CQL = "update " + Tables.BY_ID + " set " + Columns.CHECKPOINTS + "[?] = ?" + IDENTITY_CQL;
+    private static final String LEASE_WHERE_CQL = " where " + Columns.ID + " = ? and " + Columns.TOKEN_RANGE + " = ?";
+    private static final String ACQUIRE_LEASE_CQL = "insert into " + Tables.LEASES + " (" + Columns.ID + ", " + Columns.TOKEN_RANGE + ", " + Columns.OWNER + ") values (?, ?, ?) IF NOT EXISTS using ttl ?";
+    private static final String RENEW_LEASE_CQL = "update " + Tables.LEASES + " using ttl ? set " + Columns.OWNER + " = ?" + LEASE_WHERE_CQL + " IF " + Columns.OWNER + " = ?";
+    private static final String RELEASE_LEASE_CQL = "delete from " + Tables.LEASES + LEASE_WHERE_CQL + " IF " + Columns.OWNER + " = ?";
     private static final String MARK_INDEXING_CQL = "insert into " + Tables.BY_NOT_DONE + "(" + Columns.ID + ") values (?) IF NOT EXISTS";
 
     private static final String READ_ALL_CQL = "select * from " + Tables.BY_ID;
     private static final String READ_ALL_CURRENTLY_INDEXING_CQL = "select * from " + Tables.BY_NOT_DONE;
+
+    /**
+     * Queries that only index builds run: their progress updates, errors,
+     * checkpoints and leases. IndexBuildThrottle leaves them out of the
+     * foreground latency.
+     */
+    public static final Set<String> BUILD_CQL = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(UPDATE_CQL, SAVE_FATAL_ERROR_CQL, ADD_ERRORS_CQL, READ_CHECKPOINTS_CQL, SAVE_CHECKPOINTS_CQL, SAVE_CHECKPOINT_CQL, ACQUIRE_LEASE_CQL, RENEW_LEASE_CQL, RELEASE_LEASE_CQL)));
     private static final String IS_CURRENTLY_INDEXING_CQL = "select count(*) from " + Tables.BY_NOT_DONE + IDENTITY_CQL;//records that are currently indexing (not yet done)
 
     private PreparedStatement existStmt;
     private PreparedStatement readStmt;
     private PreparedStatement createStmt;
     private PreparedStatement updateStmt;
+    private PreparedStatement saveFatalErrorStmt;
+    private PreparedStatement addErrorsStmt;
     private PreparedStatement readAllStmt;
     private PreparedStatement markIndexingStmt;
     private PreparedStatement readAllCurrentlyIndexingStmt;
     private PreparedStatement deleteFromNotDoneStmt;
     private PreparedStatement isCurrentlyIndexingStmt;
+    private PreparedStatement readCheckpointsStmt;
+    private PreparedStatement saveCheckpointsStmt;
+    private PreparedStatement saveCheckpointStmt;
+    private PreparedStatement acquireLeaseStmt;
+    private PreparedStatement renewLeaseStmt;
+    private PreparedStatement releaseLeaseStmt;
 
     /**
      * Constructor.
@@ -112,11 +150,19 @@ public class IndexStatusRepositoryImpl extends AbstractCRUDRepository<IndexCreat
         readStmt = PreparedStatementFactory.getPreparedStatement(READ_CQL, getSession());
         createStmt = PreparedStatementFactory.getPreparedStatement(CREATE_CQL, getSession());
         updateStmt = PreparedStatementFactory.getPreparedStatement(UPDATE_CQL, getSession());
+        saveFatalErrorStmt = PreparedStatementFactory.getPreparedStatement(SAVE_FATAL_ERROR_CQL, getSession());
+        addErrorsStmt = PreparedStatementFactory.getPreparedStatement(ADD_ERRORS_CQL, getSession());
         readAllStmt = PreparedStatementFactory.getPreparedStatement(READ_ALL_CQL, getSession());
         readAllCurrentlyIndexingStmt = PreparedStatementFactory.getPreparedStatement(READ_ALL_CURRENTLY_INDEXING_CQL, getSession());
         deleteFromNotDoneStmt = PreparedStatementFactory.getPreparedStatement(DELETE_FROM_NOT_DONE, getSession());
         markIndexingStmt = PreparedStatementFactory.getPreparedStatement(MARK_INDEXING_CQL, getSession());
         isCurrentlyIndexingStmt = PreparedStatementFactory.getPreparedStatement(IS_CURRENTLY_INDEXING_CQL, getSession());
+        readCheckpointsStmt = PreparedStatementFactory.getPreparedStatement(READ_CHECKPOINTS_CQL, getSession());
+        saveCheckpointsStmt = PreparedStatementFactory.getPreparedStatement(SAVE_CHECKPOINTS_CQL, getSession());
+        saveCheckpointStmt = PreparedStatementFactory.getPreparedStatement(SAVE_CHECKPOINT_CQL, getSession());
+        acquireLeaseStmt = PreparedStatementFactory.getPreparedStatement(ACQUIRE_LEASE_CQL, getSession());
+        renewLeaseStmt = PreparedStatementFactory.getPreparedStatement(RENEW_LEASE_CQL, getSession());
+        releaseLeaseStmt = PreparedStatementFactory.getPreparedStatement(RELEASE_LEASE_CQL, getSession());
     }
 
     /**
@@ -192,9 +238,13 @@ public class IndexStatusRepositoryImpl extends AbstractCRUDRepository<IndexCreat
 
     /**
      * Updates the status for an IndexCreatedEvent in the database. Take note:
-     * only a few getFields are updatable: numberOfRecordsCompleted,
-     * statusLastUpdatedAt, and error. This is a logical decision; there should
-     * not be a reason to update any other getFields. This will also mark the
+     * only the progress fields are updatable: recordsCompleted, totalRecords
+     * (an estimate until the build is done), docsPerSecond,
+     * statusLastUpdatedAt and errorCount. This is a logical decision; there
+     * should not be a reason to update any other getFields. Errors and the
+     * fatal error are written with addErrors and saveFatalError, so that a
+     * node's progress update never overwrites what another node recorded.
+     * This will also mark the
      * record as done indexing or not as appropriate.
      *
      * @param entity The IndexCreatedEvent to update with the proper getFields
@@ -217,6 +267,22 @@ public class IndexStatusRepositoryImpl extends AbstractCRUDRepository<IndexCreat
         return entity;
     }
 
+    @Override
+    public void saveFatalError(UUID uuid, String fatalError)
+    {
+        BoundStatement bs = new BoundStatement(saveFatalErrorStmt);
+        bs.bind(fatalError, new Date(), uuid);
+        getSession().execute(bs);
+    }
+
+    @Override
+    public void addErrors(UUID uuid, List<String> errors)
+    {
+        BoundStatement bs = new BoundStatement(addErrorsStmt);
+        bs.bind(errors, uuid);
+        getSession().execute(bs);
+    }
+
     @Override
     public void delete(Identifier id)
     {
@@ -292,6 +358,59 @@ public class IndexStatusRepositoryImpl extends AbstractCRUDRepository<IndexCreat
         return toReturn;
     }
 
+    @Override
+    public Map<String, String> readCheckpoints(UUID uuid)
+    {
+        BoundStatement bs = new BoundStatement(readCheckpointsStmt);
+        bindUUIDWhere(bs, uuid);
+        Row row = getSession().execute(bs).one();
+        if (row == null)
+        {
+            return new HashMap<>();
+        }
+        return new HashMap<>(row.getMap(Columns.CHECKPOINTS, String.class, String.class));
+    }
+
+    @Override
+    public void saveCheckpoints(UUID uuid, Map<String, String> checkpoints)
+    {
+        BoundStatement bs = new BoundStatement(saveCheckpointsStmt);
+        bs.bind(checkpoints, uuid);
+        getSession().execute(bs);
+    }
+
+    @Override
+    public void saveCheckpoint(UUID uuid, String range, String checkpoint)
+    {
+        BoundStatement bs = new BoundStatement(saveCheckpointStmt);
+        bs.bind(range, checkpoint, uuid);
+        getSession().execute(bs);
+    }
+
+    @Override
+    public boolean acquireLease(UUID uuid, String range, String owner, int seconds)
+    {
+        BoundStatement bs = new BoundStatement(acquireLeaseStmt);
+        bs.bind(uuid, range, owner, seconds);
+        return getSession().execute(bs).one().getBool(Columns.APPLIED);
+    }
+
+    @Override
+    public boolean renewLease(UUID uuid, String range, String owner, int seconds)
+    {
+        BoundStatement bs = new BoundStatement(renewLeaseStmt);
+        bs.bind(seconds, owner, uuid, range, owner);
+        return getSession().execute(bs).one().getBool(Columns.APPLIED);
+    }
+
+    @Override
+    public void releaseLease(UUID uuid, String range, String owner)
+    {
+        BoundStatement bs = new BoundStatement(releaseLeaseStmt);
+        bs.bind(uuid, range, owner);
+        getSession().execute(bs);
+    }
+
     /**
      * Determines if a index is currently indexing or not. Not presently used,
      * but the method should work.
@@ -323,15 +442,18 @@ public class IndexStatusRepositoryImpl extends AbstractCRUDRepository<IndexCreat
                 entity.getDateStarted(),
                 entity.getStatusLastUpdatedAt(),
                 entity.getErrors(),
-                entity.getFatalError());
+                entity.getErrorCount(),
+                entity.getFatalError(),
+                entity.getDocsPerSecond());
     }
 
     private void bindUpdate(BoundStatement bs, IndexCreatedEvent entity)
     {
         bs.bind(entity.getRecordsCompleted(),
+                entity.getTotalRecords(),
                 entity.getStatusLastUpdatedAt(),
-                entity.getErrors(),
-                entity.getFatalError(),
+                entity.getErrorCount(),
+                entity.getDocsPerSecond(),
                 entity.getUuid());
     }
 
@@ -384,6 +506,8 @@ public class IndexStatusRepositoryImpl extends AbstractCRUDRepository<IndexCreat
         IndexCreatedEvent i = new IndexCreatedEvent(row.getUUID(Columns.ID), row.getDate(Columns.STARTED_AT), row.getDate(Columns.UPDATED_AT), toUse, row.getLong(Columns.TOTAL_RECORDS), row.getLong(Columns.RECORDS_COMPLETED));
         i.setFatalError(row.getString(Columns.FATAL_ERROR));
         i.setErrors(row.getList(Columns.ERRORS, String.class));
+        i.setErrorCount(row.getLong(Columns.ERROR_COUNT));
+        i.setDocsPerSecond(row.getDouble(Columns.DOCS_PER_SECOND));
         i.calculateValues();
         return i;
     }
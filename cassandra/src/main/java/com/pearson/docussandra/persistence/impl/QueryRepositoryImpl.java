@@ -1,22 +1,50 @@
 package com.pearson.docussandra.persistence.impl;
 
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.PagingState;
 import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.QueryTrace;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.exceptions.PagingStateException;
 import com.pearson.docussandra.Utils;
 import com.pearson.docussandra.bucketmanagement.PrimaryIndexBucketLocatorImpl;
+import com.pearson.docussandra.cache.QueryResultCache;
 import com.pearson.docussandra.domain.objects.Document;
 import com.pearson.docussandra.domain.ParsedQuery;
+import com.pearson.docussandra.domain.objects.Index;
+import com.pearson.docussandra.domain.objects.IndexField;
+import com.pearson.docussandra.domain.objects.QueryExplanation;
 import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
+import com.pearson.docussandra.domain.objects.WhereLiteral;
+import com.pearson.docussandra.domain.objects.WherePredicate;
 import com.pearson.docussandra.exception.IndexParseException;
 import com.pearson.docussandra.exception.IndexParseFieldException;
+import com.pearson.docussandra.exception.InvalidPageTokenException;
 import com.pearson.docussandra.persistence.QueryRepository;
+import com.pearson.docussandra.persistence.helper.BsonProjection;
 import com.pearson.docussandra.persistence.helper.DocumentPersistanceUtils;
+import com.pearson.docussandra.persistence.helper.ITableRowComparator;
 import com.pearson.docussandra.persistence.helper.PreparedStatementFactory;
+import com.pearson.docussandra.persistence.helper.ScatterGatherQuery;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.pearson.docussandra.bucketmanagement.BucketLocator;
@@ -31,52 +59,309 @@ public class QueryRepositoryImpl implements QueryRepository
 
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private static final String QUERY_CQL = "select * from %s where bucket = ? AND %s";
-    private static final String QUERY_CQL_LIMIT = "select * from %s where bucket = ? AND %s LIMIT %s";//we use the limit as to not put any more stress on cassandra than we need to (even though our algorithm will discard the data anyway)
+    /**
+     * Default number of buckets that a range query will read at the same time.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_BUCKET_QUERIES = 8;
+
+    /**
+     * Reads the latest version of a document that an iTable row pointed at,
+     * for queries the iTable doesn't cover.
+     */
+    private static final String REFERENCE_READ_CQL = "select * from %s where id = ? ORDER BY updated_at DESC LIMIT 1";
+
+    /**
+     * Decodes and projects query results once the driver hands them back, so
+     * that work stays off the driver's I/O threads.
+     */
+    private static final ExecutorService RESULT_EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory()
+    {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread t = new Thread(r, "query-results-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
 
     private BucketLocator ibl;
 
     private Session session;
 
+    /**
+     * Maximum number of buckets that a range query will read at the same time.
+     */
+    private final int maxConcurrentBucketQueries;
+
     public QueryRepositoryImpl(Session session)
+    {
+        this(session, DEFAULT_MAX_CONCURRENT_BUCKET_QUERIES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param session Database session.
+     * @param maxConcurrentBucketQueries Maximum number of buckets that a range
+     * query will read at the same time.
+     */
+    public QueryRepositoryImpl(Session session, int maxConcurrentBucketQueries)
     {
         this.session = session;
+        this.maxConcurrentBucketQueries = maxConcurrentBucketQueries;
         ibl = PrimaryIndexBucketLocatorImpl.getInstance();
     }
 
-    private BoundStatement generateQueryStatement(ParsedQuery query, long maxIndex) throws IndexParseException
+    /**
+     * Determines which buckets a query needs to read. An equality predicate on
+     * the first indexed field pins the query to a single bucket, an IN
+     * predicate to the buckets of each of its values; range predicates are
+     * mapped to every bucket between their bounds.
+     *
+     * @param query ParsedQuery to locate buckets for.
+     * @return The buckets to read, in ascending bucket order.
+     * @throws IndexParseException If a where clause value can't be converted
+     * to the type of the indexed field.
+     */
+    private List<Long> locateBuckets(ParsedQuery query) throws IndexParseException
+    {
+        IndexField bucketField = query.getIndex().getFields().get(0);
+        String lower = null;
+        String upper = null;
+        try
+        {
+            for (WherePredicate predicate : query.getWhereClause().getPredicates())
+            {
+                if (!predicate.getField().equals(bucketField.getField()))
+                {
+                    continue;
+                }
+                String value = predicate.getLiterals().get(0).getValue();
+                switch (predicate.getOperator())
+                {
+                    case "=":
+                        return Collections.singletonList(ibl.getBucket(value, bucketField.getType()));
+                    case "IN":
+                        TreeSet<Long> buckets = new TreeSet<>();
+                        for (WhereLiteral literal : predicate.getLiterals())
+                        {
+                            buckets.add(ibl.getBucket(literal.getValue(), bucketField.getType()));
+                        }
+                        return new ArrayList<>(buckets);
+                    case ">":
+                    case ">=":
+                        lower = value;
+                        break;
+                    case "<":
+                    case "<=":
+                        upper = value;
+                        break;
+                    default://some operator we can't bucket on; we will have to look everywhere
+                        break;
+                }
+            }
+            return ibl.getBucketsForRange(lower, upper, bucketField.getType());
+        } catch (IndexParseFieldException ex)
+        {
+            throw new IndexParseException(bucketField, ex);
+        }
+    }
+
+    private BoundStatement generateQueryStatement(ParsedQuery query, Long bucket, long maxIndex) throws IndexParseException
     {
         String finalQuery;
-        //format QUERY_CQL
+        //the CQL is generated once per query shape
         if (maxIndex == -1)//no artifical limit
         {
-            finalQuery = String.format(QUERY_CQL, query.getITable(), query.getWhereClause().getBoundStatementSyntax());
+            finalQuery = query.getQueryCql();
         } else //with a limit
         {
-            finalQuery = String.format(QUERY_CQL_LIMIT, query.getITable(), query.getWhereClause().getBoundStatementSyntax(), maxIndex);
+            finalQuery = query.getLimitedQueryCql();
         }
         //run query
         PreparedStatement ps = PreparedStatementFactory.getPreparedStatement(finalQuery, getSession());
         BoundStatement bs = new BoundStatement(ps);
         //set the bucket
-        Long bucket;
-        try
-        {
-            bucket = PrimaryIndexBucketLocatorImpl.getInstance().getBucket(query.getWhereClause().getValues().get(0), query.getIndex().getFields().get(0).getType());
-        } catch (IndexParseFieldException ex)
-        {
-            throw new IndexParseException(query.getIndex().getFields().get(0), ex);
-        }
         bs.setLong(0, bucket);
         int i = 1;
+        List<String> fields = query.getWhereClause().getBindFields();
         for (String bindValue : query.getWhereClause().getValues())
         {
-            Utils.setField(bindValue, query.getIndex().getFields().get(i - 1), bs, i);
+            Utils.setField(bindValue, getIndexField(query, fields.get(i - 1)), bs, i);
             i++;
         }
+        if (maxIndex != -1)
+        {
+            bs.setInt(i, (int) Math.min(Integer.MAX_VALUE, maxIndex));
+        }
+        return bs;
+    }
+
+    /**
+     * Finds the index field definition for a field in the where clause, so we
+     * bind the value with the right type even if the where clause lists the
+     * fields in a different order than the index does.
+     */
+    private IndexField getIndexField(ParsedQuery query, String fieldName)
+    {
+        for (IndexField field : query.getIndex().getFields())
+        {
+            if (field.getField().equals(fieldName))
+            {
+                return field;
+            }
+        }
+        throw new IllegalStateException("Field: " + fieldName + " is not part of index: " + query.getIndex().getName());
+    }
+
+    /**
+     * Generates a statement that fetches a single driver page of results,
+     * resuming from the page token if one is provided.
+     *
+     * @param query ParsedQuery to execute.
+     * @param bucket Bucket to read.
+     * @param limit Page size.
+     * @param pageToken Token returned with the previous page; null for the
+     * first page.
+     * @return A bound statement ready to execute.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    private BoundStatement generatePagedQueryStatement(ParsedQuery query, Long bucket, int limit, String pageToken) throws IndexParseException
+    {
+        BoundStatement bs = generateQueryStatement(query, bucket, -1);
+        bs.setFetchSize(limit);
+        if (pageToken != null)
+        {
+            try
+            {
+                bs.setPagingState(PagingState.fromString(pageToken));
+            } catch (PagingStateException e)
+            {
+                throw new InvalidPageTokenException("Page token is not valid for this query: " + pageToken, e);
+            }
+        }
         return bs;
     }
 
+    /**
+     * Reads every bucket that a range query covers, merged in clustering
+     * order (or its reverse, if the query orders descending).
+     *
+     * @param query ParsedQuery to execute.
+     * @param buckets Buckets to read, in ascending bucket order.
+     * @param maxRows Maximum number of rows needed from the merged results; -1
+     * for all of them.
+     * @return A future that completes with the merged rows.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    private ListenableFuture<Iterator<Row>> scatterGather(ParsedQuery query, List<Long> buckets, long maxRows) throws IndexParseException
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Range query: " + query.getWhereClause().getWhereClause() + " spans " + buckets.size() + " buckets.");
+        }
+        return createScatterGather(query, orderBuckets(query, buckets), maxRows, false).execute(maxRows);
+    }
+
+    /**
+     * Sets up the scatter/gather read of the buckets that a range query
+     * covers.
+     *
+     * @param query ParsedQuery to execute.
+     * @param orderedBuckets Buckets to read, in the order returned by
+     * orderBuckets.
+     * @param maxRows Maximum number of rows needed from the merged results; -1
+     * for all of them.
+     * @param trace True to have Cassandra trace each statement.
+     * @return The scatter/gather query, ready to execute.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    private ScatterGatherQuery createScatterGather(ParsedQuery query, List<Long> orderedBuckets, long maxRows, boolean trace) throws IndexParseException
+    {
+        ScatterGatherQuery scatter = new ScatterGatherQuery(session, new ITableRowComparator(query.getIndex(), query.getWhereClause().isDescending()), maxConcurrentBucketQueries);
+        Long wrapBucket = getWrapBucket(query);
+        for (Long bucket : orderedBuckets)
+        {
+            BoundStatement bs = generateQueryStatement(query, bucket, maxRows);
+            if (maxRows != -1)
+            {//no single bucket needs to give us more than the whole query does; get it all in one page
+                bs.setFetchSize((int) Math.min(Integer.MAX_VALUE, maxRows));
+            }
+            if (trace)
+            {
+                bs.enableTracing();
+            }
+            scatter.addBucket(bs, !bucket.equals(wrapBucket));
+        }
+        return scatter;
+    }
+
+    /**
+     * Gets the wrap around bucket for the type of a query's first indexed
+     * field.
+     */
+    private static Long getWrapBucket(ParsedQuery query)
+    {
+        return PrimaryIndexBucketLocatorImpl.getBUCKETS()[query.getIndex().getFields().get(0).getType().getIndexForDataType()].get(0);
+    }
+
+    /**
+     * Puts the buckets a range query covers in the order a scatter/gather
+     * merge has to read them.
+     */
+    private static List<Long> orderBuckets(ParsedQuery query, List<Long> buckets)
+    {
+        return orderBuckets(buckets, getWrapBucket(query), query.getWhereClause().isDescending());
+    }
+
+    /**
+     * Puts buckets in the order a scatter/gather merge has to read them: the
+     * wrap around bucket first (it holds both the lowest values and the
+     * values past the last bucket), then the rest in the direction of the
+     * query.
+     *
+     * @param buckets Buckets to read, in ascending bucket order.
+     * @param wrapBucket The first bucket for the indexed field's type.
+     * @param descending True if the query orders descending.
+     * @return The buckets in the order to read them.
+     */
+    //only public for testing
+    public static List<Long> orderBuckets(List<Long> buckets, Long wrapBucket, boolean descending)
+    {
+        List<Long> ordered = new ArrayList<>(buckets);
+        if (descending)
+        {
+            Collections.reverse(ordered);
+        }
+        if (ordered.remove(wrapBucket))
+        {
+            ordered.add(0, wrapBucket);
+        }
+        return ordered;
+    }
+
+    /**
+     * Waits on a future from the async query path, unwrapping any failure.
+     */
+    private static <T> T await(ListenableFuture<T> future)
+    {
+        try
+        {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
     /**
      * Do a query without limit or offset.
      *
@@ -87,17 +372,32 @@ public class QueryRepositoryImpl implements QueryRepository
     @Override
     public QueryResponseWrapper query(ParsedQuery query) throws IndexParseException
     {
-        //run the query
-        ResultSet results = session.execute(generateQueryStatement(query, -1));
+        List<Long> buckets = locateBuckets(query);
+        QueryResultCache.Lookup cacheLookup = QueryResultCache.getInstance().lookup(query, buckets, -1, 0, null);
+        QueryResponseWrapper cached = getCached(cacheLookup);
+        if (cached != null)
+        {
+            return cached;
+        }
+        Iterator<Row> ite;
+        if (buckets.size() == 1)
+        {
+            //run the query
+            ResultSet results = session.execute(generateQueryStatement(query, buckets.get(0), -1));
+            ite = results.iterator();
+        } else
+        {
+            ite = await(scatterGather(query, buckets, -1));
+        }
         //process result(s)
+        BsonProjection projection = BsonProjection.forColumns(query.getQuery().getColumns());
         ArrayList<Document> toReturn = new ArrayList<>();
-        Iterator<Row> ite = results.iterator();
         while (ite.hasNext())
         {
             Row row = ite.next();
-            toReturn.add(DocumentPersistanceUtils.marshalRow(row));
+            toReturn.add(DocumentPersistanceUtils.marshalRow(row, projection));
         }
-        return new QueryResponseWrapper(toReturn, 0l);
+        return cache(cacheLookup, await(resolveDocuments(query, Futures.immediateFuture(new QueryResponseWrapper(toReturn, 0l)))));
     }
 
     /**
@@ -113,10 +413,418 @@ public class QueryRepositoryImpl implements QueryRepository
     @Override
     public QueryResponseWrapper query(ParsedQuery query, int limit, long offset) throws IndexParseException
     {
+        List<Long> buckets = locateBuckets(query);
+        QueryResultCache.Lookup cacheLookup = QueryResultCache.getInstance().lookup(query, buckets, limit, offset, null);
+        QueryResponseWrapper cached = getCached(cacheLookup);
+        if (cached != null)
+        {
+            return cached;
+        }
+        if (buckets.size() > 1)
+        {
+            return cache(cacheLookup, await(queryAsync(query, buckets, limit, offset)));
+        }
         //run the query
         long maxIndex = offset + limit;
-        ResultSet results = session.execute(generateQueryStatement(query, maxIndex + 1));//we do one plus here so we know if there are additional results
-        return DocumentPersistanceUtils.parseResultSetWithLimitAndOffset(results, limit, offset);
+        ResultSet results = session.execute(generateQueryStatement(query, buckets.get(0), maxIndex + 1));//we do one plus here so we know if there are additional results
+        QueryResponseWrapper page = DocumentPersistanceUtils.parseResultSetWithLimitAndOffset(results, limit, offset, BsonProjection.forColumns(query.getQuery().getColumns()));
+        return cache(cacheLookup, await(resolveDocuments(query, Futures.immediateFuture(page))));
+    }
+
+    /**
+     * Do a query with limit and offset without blocking the calling thread
+     * while Cassandra executes it.
+     *
+     * @param query ParsedQuery to execute.
+     * @param limit Maximum number of results to return.
+     * @param offset Number of records at the beginning of the results to
+     * discard.
+     * @return A future that will complete with the query response once the
+     * driver has returned the results.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    @Override
+    public ListenableFuture<QueryResponseWrapper> queryAsync(ParsedQuery query, final int limit, final long offset) throws IndexParseException
+    {
+        List<Long> buckets = locateBuckets(query);
+        QueryResultCache.Lookup cacheLookup = QueryResultCache.getInstance().lookup(query, buckets, limit, offset, null);
+        QueryResponseWrapper cached = getCached(cacheLookup);
+        if (cached != null)
+        {
+            return Futures.immediateFuture(cached);
+        }
+        return cache(cacheLookup, queryAsync(query, buckets, limit, offset));
+    }
+
+    private ListenableFuture<QueryResponseWrapper> queryAsync(ParsedQuery query, List<Long> buckets, final int limit, final long offset) throws IndexParseException
+    {
+        long maxIndex = offset + limit;
+        final BsonProjection projection = BsonProjection.forColumns(query.getQuery().getColumns());
+        if (buckets.size() > 1)
+        {
+            return resolveDocuments(query, Futures.transform(scatterGather(query, buckets, maxIndex + 1), new Function<Iterator<Row>, QueryResponseWrapper>()
+            {
+                @Override
+                public QueryResponseWrapper apply(Iterator<Row> rows)
+                {
+                    return DocumentPersistanceUtils.parseResultSetWithLimitAndOffset(rows, limit, offset, projection);
+                }
+            }, RESULT_EXECUTOR));
+        }
+        BoundStatement bs = generateQueryStatement(query, buckets.get(0), maxIndex + 1);//we do one plus here so we know if there are additional results
+        //make sure every row we need comes back in the first page, so parsing
+        //the results never waits on another round trip
+        bs.setFetchSize((int) Math.min(Integer.MAX_VALUE, maxIndex + 1));
+        ResultSetFuture results = session.executeAsync(bs);
+        return resolveDocuments(query, Futures.transform(results, new Function<ResultSet, QueryResponseWrapper>()
+        {
+            @Override
+            public QueryResponseWrapper apply(ResultSet results)
+            {
+                return DocumentPersistanceUtils.parseResultSetWithLimitAndOffset(results, limit, offset, projection);
+            }
+        }, RESULT_EXECUTOR));
+    }
+
+    /**
+     * Do a query that returns a single page of results. The returned
+     * QueryResponseWrapper contains a page token if there may be more results;
+     * passing that token back in fetches the next page without re-reading the
+     * previous ones. Range queries that span more than one bucket don't
+     * support page tokens and return their first page without one.
+     *
+     * @param query ParsedQuery to execute.
+     * @param limit Maximum number of results to return.
+     * @param pageToken Token returned with the previous page; null for the
+     * first page.
+     * @return A query response.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    @Override
+    public QueryResponseWrapper query(ParsedQuery query, int limit, String pageToken) throws IndexParseException
+    {
+        List<Long> buckets = locateBuckets(query);
+        if (buckets.size() > 1)
+        {
+            checkNoPageToken(pageToken);
+        }
+        QueryResultCache.Lookup cacheLookup = QueryResultCache.getInstance().lookup(query, buckets, limit, 0, pageToken);
+        QueryResponseWrapper cached = getCached(cacheLookup);
+        if (cached != null)
+        {
+            return cached;
+        }
+        if (buckets.size() > 1)
+        {
+            return cache(cacheLookup, await(queryAsync(query, buckets, limit, 0)));
+        }
+        ResultSet results = session.execute(generatePagedQueryStatement(query, buckets.get(0), limit, pageToken));
+        QueryResponseWrapper page = DocumentPersistanceUtils.parseResultSetPage(results, limit, BsonProjection.forColumns(query.getQuery().getColumns()));
+        if (page.getNextPageToken() != null)
+        {
+            ResultSet probe = session.execute(generatePagedQueryStatement(query, buckets.get(0), 1, page.getNextPageToken()));
+            page = checkForMorePages(page, probe);
+        }
+        return cache(cacheLookup, await(resolveDocuments(query, Futures.immediateFuture(page))));
+    }
+
+    /**
+     * Do a query that returns a single page of results without blocking the
+     * calling thread while Cassandra executes it.
+     *
+     * @param query ParsedQuery to execute.
+     * @param limit Maximum number of results to return.
+     * @param pageToken Token returned with the previous page; null for the
+     * first page.
+     * @return A future that will complete with the query response.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    @Override
+    public ListenableFuture<QueryResponseWrapper> queryAsync(final ParsedQuery query, final int limit, String pageToken) throws IndexParseException
+    {
+        final List<Long> buckets = locateBuckets(query);
+        if (buckets.size() > 1)
+        {
+            checkNoPageToken(pageToken);
+        }
+        QueryResultCache.Lookup cacheLookup = QueryResultCache.getInstance().lookup(query, buckets, limit, 0, pageToken);
+        QueryResponseWrapper cached = getCached(cacheLookup);
+        if (cached != null)
+        {
+            return Futures.immediateFuture(cached);
+        }
+        if (buckets.size() > 1)
+        {
+            return cache(cacheLookup, queryAsync(query, buckets, limit, 0));
+        }
+        final BsonProjection projection = BsonProjection.forColumns(query.getQuery().getColumns());
+        ResultSetFuture results = session.executeAsync(generatePagedQueryStatement(query, buckets.get(0), limit, pageToken));
+        return cache(cacheLookup, resolveDocuments(query, Futures.transform(results, new AsyncFunction<ResultSet, QueryResponseWrapper>()
+        {
+            @Override
+            public ListenableFuture<QueryResponseWrapper> apply(ResultSet results) throws Exception
+            {
+                final QueryResponseWrapper page = DocumentPersistanceUtils.parseResultSetPage(results, limit, projection);
+                if (page.getNextPageToken() == null)
+                {
+                    return Futures.immediateFuture(page);
+                }
+                ResultSetFuture probe = session.executeAsync(generatePagedQueryStatement(query, buckets.get(0), 1, page.getNextPageToken()));
+                return Futures.transform(probe, new Function<ResultSet, QueryResponseWrapper>()
+                {
+                    @Override
+                    public QueryResponseWrapper apply(ResultSet probe)
+                    {
+                        return checkForMorePages(page, probe);
+                    }
+                }, RESULT_EXECUTOR);
+            }
+        }, RESULT_EXECUTOR)));
+    }
+
+    /**
+     * Determines if the iTable a query reads holds everything the query
+     * returns: it does unless the index is reference only, or it stores only
+     * some fields (includeOnly) and the query asks for others.
+     *
+     * @param query Query to check.
+     * @return True if the query can be answered from its iTable alone.
+     */
+    private static boolean isCoveredByITable(ParsedQuery query)
+    {
+        Index index = query.getIndex();
+        if (index.isReferenceOnly())
+        {
+            return false;
+        }
+        return BsonProjection.covers(BsonProjection.forColumns(index.getIncludeOnly()), BsonProjection.forColumns(query.getQuery().getColumns()));
+    }
+
+    /**
+     * Queries that their iTable doesn't cover get back only which documents
+     * matched (and possibly some of their fields); this fetches the documents
+     * themselves from the main document table, in parallel, keeping the order
+     * and paging information of the iTable results. Documents that were
+     * deleted since the iTable was read are dropped. Queries the iTable covers
+     * are returned as is.
+     *
+     * @param query Query that produced the results.
+     * @param results Results read from the query's iTable.
+     * @return A future that completes with the resolved results.
+     */
+    private ListenableFuture<QueryResponseWrapper> resolveDocuments(ParsedQuery query, ListenableFuture<QueryResponseWrapper> results)
+    {
+        if (isCoveredByITable(query))
+        {
+            return results;
+        }
+        //prepared here rather than on the driver thread the results complete on
+        final PreparedStatement ps = PreparedStatementFactory.getPreparedStatement(String.format(REFERENCE_READ_CQL, query.getIndex().getTable().toDbTable()), session);
+        final BsonProjection projection = BsonProjection.forColumns(query.getQuery().getColumns());
+        return Futures.transform(results, new AsyncFunction<QueryResponseWrapper, QueryResponseWrapper>()
+        {
+            @Override
+            public ListenableFuture<QueryResponseWrapper> apply(QueryResponseWrapper references) throws Exception
+            {
+                return resolveDocuments(ps, projection, references);
+            }
+        }, RESULT_EXECUTOR);
+    }
+
+    private ListenableFuture<QueryResponseWrapper> resolveDocuments(PreparedStatement ps, final BsonProjection projection, final QueryResponseWrapper references)
+    {
+        List<ListenableFuture<ResultSet>> reads = new ArrayList<>(references.size());
+        for (Document reference : references)
+        {
+            reads.add(session.executeAsync(ps.bind(reference.getUuid())));
+        }
+        return Futures.transform(Futures.allAsList(reads), new Function<List<ResultSet>, QueryResponseWrapper>()
+        {
+            @Override
+            public QueryResponseWrapper apply(List<ResultSet> results)
+            {
+                ArrayList<Document> documents = new ArrayList<>(results.size());
+                for (ResultSet result : results)
+                {
+                    Row row = result.one();
+                    if (row != null)
+                    {
+                        documents.add(DocumentPersistanceUtils.marshalRow(row, projection));
+                    }
+                }
+                return new QueryResponseWrapper(documents, references.getNumAdditionalResults(), references.getNextPageToken());
+            }
+        }, RESULT_EXECUTOR);
+    }
+
+    /**
+     * Runs a query with limit and offset and describes how it was run instead
+     * of returning its results. The buckets are read the same way a query
+     * reads them, so a range query spanning several buckets stops reading once
+     * it has enough rows; rows read is everything Cassandra handed back for
+     * the buckets that were read, including rows the merge dropped, and
+     * there is a trace for each of those buckets only. Never served from the
+     * query result cache.
+     *
+     * @param query ParsedQuery to explain.
+     * @param limit Maximum number of results to return.
+     * @param offset Number of records at the beginning of the results to
+     * discard.
+     * @param trace True to have Cassandra trace each statement.
+     * @return A description of how the query was run. The index candidates
+     * are left for the caller to fill in.
+     * @throws IndexParseException If the query is not on a valid index.
+     */
+    @Override
+    public QueryExplanation explain(ParsedQuery query, int limit, long offset, boolean trace) throws IndexParseException
+    {
+        List<Long> buckets = locateBuckets(query);
+        long maxIndex = offset + limit;
+        QueryExplanation explanation = new QueryExplanation();
+        explanation.setWhere(query.getWhereClause().getWhereClause());
+        explanation.setIndex(query.getIndex().getName());
+        explanation.setITable(query.getITable());
+        explanation.setBuckets(buckets);
+        explanation.setCql(query.getLimitedQueryCql());
+        explanation.setBoundValues(new ArrayList<>(query.getWhereClause().getValues()));
+        explanation.setLimit(limit);
+        explanation.setOffset(offset);
+        long rowsRead;
+        long merged;//rows the merge kept, including the one extra row we read to detect more results
+        List<Long> orderedBuckets;
+        List<ResultSet> results;
+        long start = System.currentTimeMillis();
+        if (buckets.size() > 1)
+        {
+            orderedBuckets = orderBuckets(query, buckets);
+            ScatterGatherQuery scatter = createScatterGather(query, orderedBuckets, maxIndex + 1, trace);
+            Iterator<Row> rows = await(scatter.execute(maxIndex + 1));
+            merged = 0;
+            while (rows.hasNext())
+            {
+                rows.next();
+                merged++;
+            }
+            rowsRead = scatter.getRowsRead();
+            results = scatter.getResults();
+        } else
+        {
+            orderedBuckets = buckets;
+            BoundStatement bs = generateQueryStatement(query, buckets.get(0), maxIndex + 1);
+            bs.setFetchSize((int) Math.min(Integer.MAX_VALUE, maxIndex + 1));
+            if (trace)
+            {
+                bs.enableTracing();
+            }
+            ResultSet rs = session.execute(bs);
+            rowsRead = rs.getAvailableWithoutFetching();
+            merged = rowsRead;
+            results = Collections.singletonList(rs);
+        }
+        explanation.setElapsedMillis(System.currentTimeMillis() - start);
+        if (trace)
+        {
+            for (int i = 0; i < results.size(); i++)
+            {
+                for (ExecutionInfo info : results.get(i).getAllExecutionInfo())
+                {
+                    explanation.getTraces().add(toTrace(orderedBuckets.get(i), info.getQueryTrace()));
+                }
+            }
+        }
+        explanation.setRowsRead(rowsRead);
+        merged = Math.min(merged, maxIndex);
+        explanation.setRowsSkipped(Math.min(merged, offset));
+        explanation.setRowsReturned(Math.max(0, merged - offset));
+        return explanation;
+    }
+
+    /**
+     * Converts a driver query trace to our own representation.
+     */
+    private static QueryExplanation.Trace toTrace(Long bucket, QueryTrace queryTrace)
+    {
+        QueryExplanation.Trace trace = new QueryExplanation.Trace(queryTrace.getTraceId().toString(), bucket, queryTrace.getDurationMicros());
+        for (QueryTrace.Event event : queryTrace.getEvents())
+        {
+            trace.getEvents().add(new QueryExplanation.TraceEvent(event.getDescription(), String.valueOf(event.getSource()), event.getSourceElapsedMicros(), event.getThreadName()));
+        }
+        return trace;
+    }
+
+    /**
+     * Gets a cached result for a query.
+     *
+     * @param cacheLookup Cache lookup for the query; null if results for its
+     * table are not cached.
+     * @return The cached result, or null if there isn't one.
+     */
+    private static QueryResponseWrapper getCached(QueryResultCache.Lookup cacheLookup)
+    {
+        return cacheLookup == null ? null : cacheLookup.getCached();
+    }
+
+    /**
+     * Caches the result of a query, if results for its table are cached.
+     *
+     * @param cacheLookup Cache lookup for the query; null if results for its
+     * table are not cached.
+     * @param result Result of the query.
+     * @return The result passed in.
+     */
+    private static QueryResponseWrapper cache(QueryResultCache.Lookup cacheLookup, QueryResponseWrapper result)
+    {
+        return cacheLookup == null ? result : cacheLookup.store(result);
+    }
+
+    /**
+     * Caches the result of an async query once it completes, if results for
+     * its table are cached.
+     */
+    private static ListenableFuture<QueryResponseWrapper> cache(final QueryResultCache.Lookup cacheLookup, ListenableFuture<QueryResponseWrapper> result)
+    {
+        if (cacheLookup == null)
+        {
+            return result;
+        }
+        return Futures.transform(result, new Function<QueryResponseWrapper, QueryResponseWrapper>()
+        {
+            @Override
+            public QueryResponseWrapper apply(QueryResponseWrapper response)
+            {
+                return cacheLookup.store(response);
+            }
+        }, RESULT_EXECUTOR);
+    }
+
+    /**
+     * Page tokens come from a single bucket's paging state, so they can't be
+     * used to resume a query that spans several buckets.
+     */
+    private void checkNoPageToken(String pageToken)
+    {
+        if (pageToken != null)
+        {
+            throw new InvalidPageTokenException("Page tokens are not supported for range queries that span multiple buckets; page with an offset instead.");
+        }
+    }
+
+    /**
+     * Cassandra hands back a paging state whenever a page is full, even if
+     * nothing follows it. We probe for a single row past the page so callers
+     * get an accurate "no more results" on the last page.
+     *
+     * @param page Page of results that was returned with a page token.
+     * @param probe Result of reading one row from that page token.
+     * @return The page, without its token if the probe found nothing.
+     */
+    private QueryResponseWrapper checkForMorePages(QueryResponseWrapper page, ResultSet probe)
+    {
+        if (probe.getAvailableWithoutFetching() == 0 && probe.getExecutionInfo().getPagingState() == null)
+        {
+            return new QueryResponseWrapper(page, 0L);
+        }
+        return page;
     }
 
     /**
@@ -1,16 +1,22 @@
 package com.pearson.docussandra.persistence.impl;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
 import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Metadata;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.SimpleStatement;
 import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.Token;
+import com.datastax.driver.core.exceptions.DriverException;
+import com.pearson.docussandra.cache.MetadataRegistry;
+import com.pearson.docussandra.domain.objects.CompressionCodec;
 import com.pearson.docussandra.domain.objects.Identifier;
 import com.pearson.docussandra.domain.objects.Index;
 import com.pearson.docussandra.domain.objects.Table;
@@ -41,19 +47,24 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
         static final String NAME = "tbl_name";
         static final String DATABASE = "db_name";
         static final String DESCRIPTION = "description";
+        static final String MAX_VERSIONS = "max_versions";
+        static final String MAX_VERSION_AGE = "max_version_age";
+        static final String COMPRESSION = "compression";
         static final String CREATED_AT = "created_at";
         static final String UPDATED_AT = "updated_at";
     }
 
     private static final String IDENTITY_CQL = " where " + Columns.DATABASE + " = ? and " + Columns.NAME + " = ?";
     private static final String EXISTENCE_CQL = "select count(*) from %s" + IDENTITY_CQL;
-    private static final String CREATE_CQL = "insert into %s (%s, " + Columns.DATABASE + ", " + Columns.DESCRIPTION + ", " + Columns.CREATED_AT + ", " + Columns.UPDATED_AT + ") values (?, ?, ?, ?, ?) IF NOT EXISTS";
+    private static final String CREATE_CQL = "insert into %s (%s, " + Columns.DATABASE + ", " + Columns.DESCRIPTION + ", " + Columns.MAX_VERSIONS + ", " + Columns.MAX_VERSION_AGE + ", " + Columns.COMPRESSION + ", " + Columns.CREATED_AT + ", " + Columns.UPDATED_AT + ") values (?, ?, ?, ?, ?, ?, ?, ?) IF NOT EXISTS";
     private static final String READ_CQL = "select * from %s" + IDENTITY_CQL;
     private static final String DELETE_CQL = "delete from %s" + IDENTITY_CQL;
-    private static final String UPDATE_CQL = "update %s set " + Columns.DESCRIPTION + " = ?, " + Columns.UPDATED_AT + " = ?" + IDENTITY_CQL;
+    private static final String UPDATE_CQL = "update %s set " + Columns.DESCRIPTION + " = ?, " + Columns.MAX_VERSIONS + " = ?, " + Columns.MAX_VERSION_AGE + " = ?, " + Columns.COMPRESSION + " = ?, " + Columns.UPDATED_AT + " = ?" + IDENTITY_CQL;
     private static final String READ_ALL_CQL = "select * from %s where " + Columns.DATABASE + " = ?";
+    private static final String READ_EVERY_TABLE_CQL = "select * from %s";
     private static final String READ_ALL_COUNT_CQL = "select count(*) from %s where " + Columns.DATABASE + " = ?";
     private static final String READ_COUNT_TABLE_SIZE_CQL = "select count(*) from %s";
+    private static final String READ_SIZE_ESTIMATES_CQL = "select range_start, range_end, partitions_count from system.size_estimates where keyspace_name = ? and table_name = ?";
 
     private static final String CREATE_DOC_TABLE_CQL = "create table %s"
             + " (id uuid, object blob, " + Columns.CREATED_AT + " timestamp, " + Columns.UPDATED_AT + " timestamp,"
@@ -67,6 +78,7 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
     private PreparedStatement deleteStmt;
     private PreparedStatement updateStmt;
     private PreparedStatement readAllStmt;
+    private PreparedStatement readEveryTableStmt;
     private PreparedStatement readAllCountStmt;
 
     private IndexRepositoryImpl indexRepo;
@@ -86,6 +98,7 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
         deleteStmt = PreparedStatementFactory.getPreparedStatement(String.format(DELETE_CQL, getTable()), getSession());
         updateStmt = PreparedStatementFactory.getPreparedStatement(String.format(UPDATE_CQL, getTable()), getSession());
         readAllStmt = PreparedStatementFactory.getPreparedStatement(String.format(READ_ALL_CQL, getTable()), getSession());
+        readEveryTableStmt = PreparedStatementFactory.getPreparedStatement(String.format(READ_EVERY_TABLE_CQL, getTable()), getSession());
         readAllCountStmt = PreparedStatementFactory.getPreparedStatement(String.format(READ_ALL_COUNT_CQL, getTable()), getSession());
     }
 
@@ -120,6 +133,26 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
         return response;
     }
 
+    /**
+     * Same as read, but will read from the MetadataRegistry if available.
+     * Writes made on this node update the registry directly; changes made
+     * through other nodes are picked up when the registry is next reloaded.
+     *
+     * @param identifier Identifier of the table to read.
+     * @return The table.
+     */
+    @Override
+    public Table readCached(Identifier identifier)
+    {
+        Table table = MetadataRegistry.getInstance().getTable(identifier);
+        if (table == null)
+        {
+            table = read(identifier);//throws if it doesn't exist
+            MetadataRegistry.getInstance().putTable(table);
+        }
+        return table;
+    }
+
     @Override
     public Table create(Table entity)
     {
@@ -131,6 +164,7 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
         BoundStatement bs = new BoundStatement(createStmt);
         bindCreate(bs, entity);
         getSession().execute(bs);
+        MetadataRegistry.getInstance().putTable(entity);
         return entity;
     }
 
@@ -140,6 +174,7 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
         BoundStatement bs = new BoundStatement(updateStmt);
         bindUpdate(bs, entity);
         getSession().execute(bs);
+        MetadataRegistry.getInstance().putTable(read(entity.getId()));//re-read; the update doesn't carry every column
         return entity;
     }
 
@@ -153,6 +188,7 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
         BoundStatement bs = new BoundStatement(deleteStmt);
         bindIdentifier(bs, entity.getId());
         getSession().execute(bs);
+        MetadataRegistry.getInstance().removeTable(entity.getId());
         cascadeDelete(entity.getId());
     }
 
@@ -166,6 +202,7 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
         BoundStatement bs = new BoundStatement(deleteStmt);
         bindIdentifier(bs, id);
         getSession().execute(bs);
+        MetadataRegistry.getInstance().removeTable(id);
         cascadeDelete(id);
     }
 
@@ -180,7 +217,8 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
     @Override
     public List<Table> readAll()
     {
-        throw new UnsupportedOperationException("Not valid for this class.");
+        BoundStatement bs = new BoundStatement(readEveryTableStmt);
+        return (marshalAll(getSession().execute(bs)));
     }
 
     @Override
@@ -199,6 +237,84 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
         return (getSession().execute(bs).one().getLong(0));
     }
 
+    /**
+     * Estimates the number of documents in a table from Cassandra's
+     * system.size_estimates, rather than counting them. The estimates are
+     * recorded periodically by each node, for the token ranges it holds, so
+     * the connected node's estimates are scaled up to the whole ring. Falls
+     * back to countTableSize if there are no estimates (as for a new or very
+     * small table, or a Cassandra version that doesn't record them).
+     *
+     * @param database Name of the database.
+     * @param tableName Name of the table.
+     * @return Estimated number of documents in the table.
+     */
+    @Override
+    public long estimateTableSize(String database, String tableName)
+    {
+        String keyspace = getSession().getLoggedKeyspace();
+        if (keyspace != null)
+        {
+            try
+            {
+                PreparedStatement readSizeEstimatesStmt = PreparedStatementFactory.getPreparedStatement(READ_SIZE_ESTIMATES_CQL, getSession());
+                BoundStatement bs = new BoundStatement(readSizeEstimatesStmt);
+                bs.bind(keyspace, database + "_" + tableName);
+                Metadata metadata = getSession().getCluster().getMetadata();
+                long partitions = 0;
+                double ringFraction = 0;
+                for (Row row : getSession().execute(bs))
+                {
+                    partitions += row.getLong("partitions_count");
+                    ringFraction += ringFraction(metadata.newToken(row.getString("range_start")), metadata.newToken(row.getString("range_end")));
+                }
+                if (partitions > 0 && ringFraction > 0)
+                {
+                    return Math.round(partitions / Math.min(1d, ringFraction));
+                }
+            } catch (DriverException | IllegalArgumentException e)
+            {
+                logger.debug("Could not read size estimates for table: " + database + "_" + tableName + "; counting it instead.", e);
+            }
+        }
+        return countTableSize(database, tableName);
+    }
+
+    /**
+     * Determines what fraction of the token ring a range covers.
+     *
+     * @param start Start of the range (exclusive).
+     * @param end End of the range (inclusive).
+     * @return Fraction of the ring, or 0 if it can't be determined for this
+     * partitioner.
+     */
+    private static double ringFraction(Token start, Token end)
+    {
+        BigInteger from;
+        BigInteger to;
+        BigInteger ringSize;
+        if (start.getValue() instanceof Long)
+        {//Murmur3Partitioner
+            from = BigInteger.valueOf((Long) start.getValue());
+            to = BigInteger.valueOf((Long) end.getValue());
+            ringSize = BigInteger.ONE.shiftLeft(64);
+        } else if (start.getValue() instanceof BigInteger)
+        {//RandomPartitioner
+            from = (BigInteger) start.getValue();
+            to = (BigInteger) end.getValue();
+            ringSize = BigInteger.ONE.shiftLeft(127);
+        } else
+        {
+            return 0;
+        }
+        BigInteger width = to.subtract(from);
+        if (width.signum() <= 0)
+        {//wraps around the ring
+            width = width.add(ringSize);
+        }
+        return width.doubleValue() / ringSize.doubleValue();
+    }
+
     private void cascadeDelete(Identifier id)
     {
         String dbName = id.getDatabaseName();
@@ -219,6 +335,9 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
         bs.bind(entity.getName(),
                 entity.getDatabase().getName(),
                 entity.getDescription(),
+                entity.getMaxVersions(),
+                entity.getMaxVersionAge(),
+                entity.getCompression().name(),
                 entity.getCreatedAt(),
                 entity.getUpdatedAt());
     }
@@ -226,6 +345,9 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
     private void bindUpdate(BoundStatement bs, Table entity)
     {
         bs.bind(entity.getDescription(),
+                entity.getMaxVersions(),
+                entity.getMaxVersionAge(),
+                entity.getCompression().name(),
                 entity.getUpdatedAt(),
                 entity.getDatabase().getName(),
                 entity.getName());
@@ -255,6 +377,10 @@ public class TableRepositoryImpl extends AbstractCRUDRepository<Table> implement
         c.setName(row.getString(Columns.NAME));
         c.setDatabaseByString(row.getString(Columns.DATABASE));
         c.setDescription(row.getString(Columns.DESCRIPTION));
+        c.setMaxVersions(row.getInt(Columns.MAX_VERSIONS));//0 (keep everything) if not set
+        c.setMaxVersionAge(row.getLong(Columns.MAX_VERSION_AGE));
+        String compression = row.getString(Columns.COMPRESSION);
+        c.setCompression(compression == null ? CompressionCodec.NONE : CompressionCodec.valueOf(compression));//tables that predate compression aren't compressed
         c.setCreatedAt(row.getDate(Columns.CREATED_AT));
         c.setUpdatedAt(row.getDate(Columns.UPDATED_AT));
         return c;
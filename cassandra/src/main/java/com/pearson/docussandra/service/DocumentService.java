@@ -1,18 +1,28 @@
 package com.pearson.docussandra.service;
 
-import com.pearson.docussandra.cache.CacheFactory;
+import com.pearson.docussandra.domain.objects.BulkIngestResult;
 import com.pearson.docussandra.domain.objects.Document;
 import com.pearson.docussandra.domain.objects.Identifier;
+import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
 import com.pearson.docussandra.exception.IndexParseException;
 import com.pearson.docussandra.exception.ItemNotFoundException;
+import com.pearson.docussandra.handler.NotifierDispatcher;
 import com.pearson.docussandra.persistence.DocumentRepository;
 import com.pearson.docussandra.persistence.TableRepository;
 import com.pearson.docussandra.plugininterfaces.NotifierPlugin;
+import com.mongodb.util.JSON;
+import com.mongodb.util.JSONParseException;
+import com.pearson.docussandra.persistence.helper.MergePatch;
 import com.strategicgains.syntaxe.ValidationEngine;
+import com.strategicgains.syntaxe.ValidationException;
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import net.sf.ehcache.Cache;
-import net.sf.ehcache.Element;
+import org.bson.BSONObject;
 
 /**
  * Service for CRUD operations on documents.
@@ -22,6 +32,11 @@ import net.sf.ehcache.Element;
 public class DocumentService
 {
 
+    /**
+     * Number of documents that a bulk create writes at a time.
+     */
+    private static final int BULK_CHUNK_SIZE = 1000;
+
     /**
      * Table repository for interacting with Tables.
      */
@@ -32,29 +47,38 @@ public class DocumentService
     private DocumentRepository docRepo;
 
     /**
-     * Cache of our tables so we can avoid hitting the DB as frequently.
+     * Delivers notifications of document mutations to the notifier plugins.
      */
-    private final Cache tableCache = CacheFactory.getCache("tableExist");
+    private NotifierDispatcher notifierDispatcher;
 
     /**
-     * Plugins that will be notified upon any document mutation.
+     * Constructor. Plugins are notified through a dispatcher with the default
+     * queue size that blocks when a plugin's queue is full.
+     *
+     * @param databaseRepository Database repository to use.
+     * @param documentRepository Document repository to use.
+     * @param plugins List of plugins that should be notified of any document
+     * creation or mutation.
      */
-    private ArrayList<NotifierPlugin> plugins;
+    public DocumentService(TableRepository databaseRepository, DocumentRepository documentRepository, ArrayList<NotifierPlugin> plugins)
+    {
+        this(databaseRepository, documentRepository, new NotifierDispatcher(plugins));
+    }
 
     /**
      * Constructor.
      *
      * @param databaseRepository Database repository to use.
      * @param documentRepository Document repository to use.
-     * @param plugins List of plugins that should be notified of any document
-     * creation or mutation.
+     * @param notifierDispatcher Dispatcher for notifying plugins of any
+     * document creation or mutation.
      */
-    public DocumentService(TableRepository databaseRepository, DocumentRepository documentRepository, ArrayList<NotifierPlugin> plugins)
+    public DocumentService(TableRepository databaseRepository, DocumentRepository documentRepository, NotifierDispatcher notifierDispatcher)
     {
         super();
         this.docRepo = documentRepository;
         this.tableRepo = databaseRepository;
-        this.plugins = plugins;
+        this.notifierDispatcher = notifierDispatcher;
     }
 
     /**
@@ -93,6 +117,94 @@ public class DocumentService
         }
     }
 
+    /**
+     * Creates a document for every line of newline delimited JSON. Each
+     * document gets a newly generated id. Lines are parsed and written in
+     * chunks, so only a chunk's worth of documents is held in memory at once.
+     * Blank lines are skipped; lines that fail (bad JSON or a write error) are
+     * reported in the result and don't stop the rest from being created.
+     *
+     * @param database Database to insert the documents into.
+     * @param table Table to insert the documents into.
+     * @param lines Reader for the newline delimited JSON.
+     * @return Counts of lines read and documents created, and the errors of
+     * lines that failed.
+     * @throws IOException If the lines can't be read.
+     */
+    public BulkIngestResult bulkCreate(String database, String table, BufferedReader lines) throws IOException
+    {
+        verifyTable(database, table);
+        BulkIngestResult result = new BulkIngestResult();
+        List<Document> chunk = new ArrayList<>(BULK_CHUNK_SIZE);
+        List<Long> chunkLines = new ArrayList<>(BULK_CHUNK_SIZE);
+        long lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null)
+        {
+            lineNumber++;
+            if (line.trim().isEmpty())
+            {
+                continue;
+            }
+            result.lineRead();
+            try
+            {
+                Document doc = new Document();
+                doc.setTable(database, table);
+                doc.setObjectAsString(line);
+                doc.setUuid(UUID.randomUUID());
+                ValidationEngine.validateAndThrow(doc);
+                chunk.add(doc);
+                chunkLines.add(lineNumber);
+            } catch (RuntimeException e)
+            {
+                result.addError(lineNumber, getErrorMessage(e));
+                continue;
+            }
+            if (chunk.size() == BULK_CHUNK_SIZE)
+            {
+                createChunk(chunk, chunkLines, result);
+                chunk.clear();
+                chunkLines.clear();
+            }
+        }
+        createChunk(chunk, chunkLines, result);
+        return result;
+    }
+
+    /**
+     * Writes one chunk of a bulk create.
+     *
+     * @param chunk Documents to create.
+     * @param chunkLines Line number of each document.
+     * @param result Result to record the outcome of each document in.
+     */
+    private void createChunk(List<Document> chunk, List<Long> chunkLines, BulkIngestResult result)
+    {
+        if (chunk.isEmpty())
+        {
+            return;
+        }
+        Map<Integer, Throwable> errors = docRepo.createBulk(chunk);
+        for (int i = 0; i < chunk.size(); i++)
+        {
+            Throwable error = errors.get(i);
+            if (error == null)
+            {
+                result.documentCreated();
+                notifyAllPlugins(NotifierPlugin.MutateType.CREATE, chunk.get(i));
+            } else
+            {
+                result.addError(chunkLines.get(i), getErrorMessage(error));
+            }
+        }
+    }
+
+    private static String getErrorMessage(Throwable t)
+    {
+        return t.getMessage() != null ? t.getMessage() : t.getClass().getSimpleName();
+    }
+
     /**
      * Reads a document out of the database.
      *
@@ -107,6 +219,42 @@ public class DocumentService
         return docRepo.read(id);
     }
 
+    /**
+     * Reads the version of a document that was current at a point in time.
+     *
+     * @param database The database to read from.
+     * @param table The table to read from.
+     * @param id The identifier of the document you are trying to read.
+     * @param asOf Point in time to read the document as of.
+     * @return The newest version of the document written at or before asOf.
+     */
+    public Document readAsOf(String database, String table, Identifier id, Date asOf)
+    {
+        verifyTable(database, table);
+        return docRepo.readAsOf(id, asOf);
+    }
+
+    /**
+     * Reads the versions of a document written in a time range, newest first.
+     *
+     * @param database The database to read from.
+     * @param table The table to read from.
+     * @param id The identifier of the document you are trying to read.
+     * @param from Oldest version to return (inclusive); null for no lower
+     * bound.
+     * @param to Newest version to return (inclusive); null for no upper bound.
+     * @param limit Maximum number of versions to return.
+     * @param pageToken Token from a previous page of versions to continue
+     * from; null for the first page.
+     * @return The versions, along with a token for the next page if there are
+     * more.
+     */
+    public QueryResponseWrapper readVersions(String database, String table, Identifier id, Date from, Date to, int limit, String pageToken)
+    {
+        verifyTable(database, table);
+        return docRepo.readVersions(id, from, to, limit, pageToken);
+    }
+
 //	public List<Document> readAll(String database, String table)
 //	{
 //		verifyTable(database, table);
@@ -130,6 +278,54 @@ public class DocumentService
         notifyAllPlugins(NotifierPlugin.MutateType.UPDATE, entity);
     }
 
+    /**
+     * Applies a JSON merge patch (RFC 7386) to a document.
+     *
+     * @param database Database in which the document resides.
+     * @param table Table in which the document resides.
+     * @param id Id of the document to patch.
+     * @param json The merge patch, as a JSON object.
+     * @return The patched document.
+     * @throws IndexParseException If the patched document contains a field
+     * that should be indexable, but isn't for some reason (probably the wrong
+     * datatype).
+     */
+    public Document patch(String database, String table, Identifier id, String json) throws IndexParseException
+    {
+        verifyTable(database, table);
+        Object patch;
+        try
+        {
+            patch = JSON.parse(json);
+        } catch (JSONParseException e)
+        {
+            throw new ValidationException("Patch is not valid JSON: " + e.getMessage());
+        }
+        if (!MergePatch.isObject(patch))
+        {
+            throw new ValidationException("Patch must be a JSON object.");
+        }
+        try
+        {
+            Document old = docRepo.read(id); //will throw exception of doc is not found
+            Document patched = docRepo.patch(old, (BSONObject) patch);
+            if (patched != old)
+            {//a patch that changed nothing wrote nothing, so there is nothing to tell the plugins
+                notifyAllPlugins(NotifierPlugin.MutateType.UPDATE, patched);
+            }
+            return patched;
+        } catch (RuntimeException e)//the framework does not allow us to throw the IndexParseException directly from the repository layer
+        {
+            if (e.getCause() != null && e.getCause() instanceof IndexParseException)
+            {
+                throw (IndexParseException) e.getCause();
+            } else
+            {
+                throw e;
+            }
+        }
+    }
+
     /**
      * Deletes a document.
      * @param database Database in which the document you are trying to delete resides.
@@ -151,17 +347,12 @@ public class DocumentService
      */
     private void verifyTable(String database, String table) throws ItemNotFoundException
     {
-        String key = database + table;
         Identifier tableId = new Identifier(database, table);
-//        synchronized (CacheSynchronizer.getLockingObject(key, "tableExist"))
-//        {
-        Element e = tableCache.get(key);
-        if (e == null || e.getObjectValue() == null)//if its not set, or set, but null, re-read
+        try
         {
-            //not cached; let's read it                        
-            e = new Element(key, (Boolean) tableRepo.exists(tableId));
-        }
-        if (!(Boolean) e.getObjectValue())
+            //served from the MetadataRegistry; only goes to the DB for a table this node hasn't seen
+            tableRepo.readCached(tableId);
+        } catch (ItemNotFoundException e)
         {
             throw new ItemNotFoundException("Table not found: " + tableId.toString());
         }
@@ -169,16 +360,14 @@ public class DocumentService
 
     /**
      * Method to notify all the Notifier plugins that a specific mutation has
-     * occurred.
+     * occurred. The plugins are called asynchronously; this only queues the
+     * notification.
      *
      * @param type Type of mutation.
      * @param document Document in it's present post-mutation state.
      */
     private void notifyAllPlugins(NotifierPlugin.MutateType type, Document document)
     {
-        for (NotifierPlugin plugin : plugins)
-        {
-            plugin.doNotify(type, document);
-        }
+        notifierDispatcher.dispatch(type, document);
     }
 }
@@ -6,10 +6,10 @@ import com.pearson.docussandra.domain.objects.Identifier;
 import com.pearson.docussandra.domain.objects.Index;
 import com.pearson.docussandra.domain.event.IndexCreatedEvent;
 import com.pearson.docussandra.exception.ItemNotFoundException;
+import com.pearson.docussandra.handler.IndexCreatedHandler;
 import com.pearson.docussandra.persistence.IndexRepository;
 import com.pearson.docussandra.persistence.IndexStatusRepository;
 import com.pearson.docussandra.persistence.TableRepository;
-import com.strategicgains.eventing.DomainEvents;
 import com.strategicgains.syntaxe.ValidationEngine;
 import java.util.Date;
 import java.util.UUID;
@@ -80,13 +80,13 @@ public class IndexService
         index.setActive(false);//we default to not active when being created; we don't allow the user to change this; only the app can change this
         logger.debug("Creating index: " + index.toString());
         Index created = indexesRepo.create(index);
-        long dataSize = tablesRepo.countTableSize(index.getDatabaseName(), index.getTableName());
+        long dataSize = tablesRepo.estimateTableSize(index.getDatabaseName(), index.getTableName());
         Date now = new Date();
         UUID uuid = UUID.randomUUID();//TODO: is this right?
         IndexCreatedEvent toReturn = new IndexCreatedEvent(uuid, now, now, created, dataSize, 0l);
         statusRepo.create(toReturn);
         toReturn.calculateValues();
-        DomainEvents.publish(toReturn);
+        IndexCreatedHandler.publish(toReturn);
         return toReturn;
     }
 
@@ -14,7 +14,9 @@ import com.pearson.docussandra.persistence.IndexRepository;
 import com.pearson.docussandra.persistence.impl.IndexRepositoryImpl;
 import com.pearson.docussandra.persistence.helper.PreparedStatementFactory;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.Element;
 import org.slf4j.Logger;
@@ -31,10 +33,28 @@ public class ParsedQueryFactory
     private static final Logger logger = LoggerFactory.getLogger(PreparedStatementFactory.class);
 
     /**
-     * Gets a parsed query for the passed in parameters. If the ParsedQuery
-     * requested has already been created on this app node, it will retrieve it
-     * from a cache instead of recreating it. Use this method instead of
-     * parseQuery if a cached copy is acceptable (almost always).
+     * The index has exactly the fields the query is on.
+     */
+    public static final String EXACT_MATCH = "EXACT";
+
+    /**
+     * The index has all of the fields the query is on (including its first
+     * field, which we bucket on), plus some others.
+     */
+    public static final String PARTIAL_MATCH = "PARTIAL";
+
+    /**
+     * The index can't be used for the query.
+     */
+    public static final String NO_MATCH = "UNUSABLE";
+
+    /**
+     * Gets a parsed query for the passed in parameters. If a query of the same
+     * shape (same fields, operators and conjunctions, regardless of values)
+     * has already been parsed on this app node, the index selection and CQL
+     * are retrieved from a cache and only the values of this query are bound.
+     * Use this method instead of parseQuery if a cached copy is acceptable
+     * (almost always).
      *
      * @param db Database that the query will run against
      * @param toParse Query to be parsed.
@@ -52,7 +72,9 @@ public class ParsedQueryFactory
         {
             throw new IllegalArgumentException("Query cannot be null.");
         }
-        final String key = db + ":" + toParse.getTable() + ":" + toParse.getWhere();
+        //the where clause still needs to be parsed for its values, but it's cheap compared to index selection
+        WhereClause where = new WhereClause(toParse.getWhere());
+        final String key = db + ":" + toParse.getTable() + ":" + where.getBoundStatementSyntax();
         //StopWatch pull = new StopWatch();
         //pull.start();
         Cache c = CacheFactory.getCache("parsedQuery");
@@ -66,15 +88,17 @@ public class ParsedQueryFactory
             logger.debug("Creating new ParsedQuery for: " + key);
             //StopWatch sw = new StopWatch();
             //sw.start();
-            e = new Element(key, parseQuery(db, toParse, session));
+            ParsedQuery parsed = parseQuery(db, toParse, where, session);
+            e = new Element(key, parsed);
             c.put(e);
             //sw.stop();
             //logger.debug("Time to create a new parsed query: " + sw.getTime());
+            return parsed;
         } else
         {
             logger.trace("Pulling ParsedQuery from Cache: " + e.getObjectValue().toString());
         }
-        return (ParsedQuery) e.getObjectValue();
+        return ((ParsedQuery) e.getObjectValue()).bind(toParse, where);
         //}
     }
 
@@ -91,7 +115,21 @@ public class ParsedQueryFactory
     public static ParsedQuery parseQuery(String db, Query toParse, Session session) throws FieldNotIndexedException
     {
         //let's parse the where clause so we know what we are actually searching for
-        WhereClause where = new WhereClause(toParse.getWhere());
+        return parseQuery(db, toParse, new WhereClause(toParse.getWhere()), session);
+    }
+
+    /**
+     * Parses a query whose where clause has already been parsed.
+     *
+     * @param db Database that the query will run against
+     * @param toParse Query to be parsed.
+     * @param where Parsed where clause of the query.
+     * @param session Database session.
+     * @return A ParsedQuery object for the query.
+     * @throws FieldNotIndexedException
+     */
+    private static ParsedQuery parseQuery(String db, Query toParse, WhereClause where, Session session) throws FieldNotIndexedException
+    {
         //determine if the query is valid; in other words is it searching on valid getFields that we have indexed
         List<String> fieldsToQueryOn = where.getFields();
         IndexRepository indexRepo = new IndexRepositoryImpl(session);
@@ -101,7 +139,7 @@ public class ParsedQueryFactory
         {
             //if (index.isActive())//only use active indexes
             //{
-            if (Utils.equalLists(index.getFieldsValues(), fieldsToQueryOn))
+            if (isExactMatch(index, fieldsToQueryOn))
             {
                 indexToUse = index;//we have a perfect match; the index matches the query exactly
                 break;
@@ -115,13 +153,8 @@ public class ParsedQueryFactory
             {
                 //if (index.isActive())//only use active indexes
                 //{
-                //make a copy of the fieldsToQueryOn so we don't mutate the original
-                ArrayList<String> fieldsToQueryOnCopy = new ArrayList<>(fieldsToQueryOn);
-                ArrayList<String> indexFields = new ArrayList<>(index.getFieldsValues());//make a copy here too
-                fieldsToQueryOnCopy.removeAll(indexFields);//we remove all the getFields we have, from the getFields we want
-                //if there are not any getFields left in getFields we want
-                if (fieldsToQueryOnCopy.isEmpty() && fieldsToQueryOn.contains(indexFields.get(0)))
-                {//second clause in this statement is what ensure we have a primary index; see above.
+                if (isPartialMatch(index, fieldsToQueryOn))
+                {
                     //we have an index that will work (even though we have extra getFields in it)
                     indexToUse = index;
                     break;
@@ -137,4 +170,59 @@ public class ParsedQueryFactory
         return toReturn;
     }
 
+    /**
+     * Describes how each index on a table matches a query, for explaining a
+     * query's index selection. The query uses the first EXACT match if there
+     * is one, otherwise the first PARTIAL match.
+     *
+     * @param db Database that the query will run against
+     * @param toParse Query to describe.
+     * @param session Database session.
+     * @return Map of index name to EXACT_MATCH, PARTIAL_MATCH or NO_MATCH, in
+     * the order the indexes are considered.
+     */
+    public static Map<String, String> describeIndexCandidates(String db, Query toParse, Session session)
+    {
+        List<String> fieldsToQueryOn = new WhereClause(toParse.getWhere()).getFields();
+        IndexRepository indexRepo = new IndexRepositoryImpl(session);
+        Map<String, String> toReturn = new LinkedHashMap<>();
+        for (Index index : indexRepo.readAllCached(new Identifier(db, toParse.getTable())))
+        {
+            if (isExactMatch(index, fieldsToQueryOn))
+            {
+                toReturn.put(index.getName(), EXACT_MATCH);
+            } else if (isPartialMatch(index, fieldsToQueryOn))
+            {
+                toReturn.put(index.getName(), PARTIAL_MATCH);
+            } else
+            {
+                toReturn.put(index.getName(), NO_MATCH);
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * Determines if an index is on exactly the fields a query is on.
+     */
+    private static boolean isExactMatch(Index index, List<String> fieldsToQueryOn)
+    {
+        return Utils.equalLists(index.getFieldsValues(), fieldsToQueryOn);
+    }
+
+    /**
+     * Determines if an index has every field a query is on, including the
+     * index's first field.
+     */
+    private static boolean isPartialMatch(Index index, List<String> fieldsToQueryOn)
+    {
+        //make a copy of the fieldsToQueryOn so we don't mutate the original
+        ArrayList<String> fieldsToQueryOnCopy = new ArrayList<>(fieldsToQueryOn);
+        ArrayList<String> indexFields = new ArrayList<>(index.getFieldsValues());//make a copy here too
+        fieldsToQueryOnCopy.removeAll(indexFields);//we remove all the getFields we have, from the getFields we want
+        //if there are not any getFields left in getFields we want
+        //second clause in this statement is what ensure we have a primary index; see above.
+        return fieldsToQueryOnCopy.isEmpty() && fieldsToQueryOn.contains(indexFields.get(0));
+    }
+
 }
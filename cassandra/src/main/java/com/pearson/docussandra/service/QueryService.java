@@ -1,14 +1,29 @@
 package com.pearson.docussandra.service;
 
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.pearson.docussandra.cache.MetadataRegistry;
 import com.pearson.docussandra.domain.ParsedQuery;
+import com.pearson.docussandra.domain.objects.BatchQueryResult;
 import com.pearson.docussandra.domain.objects.Identifier;
 import com.pearson.docussandra.domain.objects.Query;
+import com.pearson.docussandra.domain.objects.QueryExplanation;
 import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
 import com.pearson.docussandra.exception.FieldNotIndexedException;
 import com.pearson.docussandra.exception.IndexParseException;
+import com.pearson.docussandra.exception.InvalidObjectIdException;
+import com.pearson.docussandra.exception.InvalidPageTokenException;
+import com.pearson.docussandra.exception.ItemNotFoundException;
 import com.pearson.docussandra.persistence.DatabaseRepository;
 import com.pearson.docussandra.persistence.QueryRepository;
 import com.pearson.docussandra.persistence.TableRepository;
+import com.strategicgains.syntaxe.ValidationException;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Service for performing a query.
@@ -17,6 +32,9 @@ import com.pearson.docussandra.persistence.TableRepository;
  */
 public class QueryService
 {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryService.class);
+
     /**
      * Query Repository for accessing the database.
      */
@@ -74,21 +92,221 @@ public class QueryService
         return queries.query(parsedQuery, limit, offset);
     }
 
+    /**
+     * Does a query with limit and offset without blocking the calling thread
+     * while the query executes. Query parsing (which is cached) still happens
+     * on the calling thread, so parse errors are thrown immediately.
+     *
+     * @param toQuery Query perform.
+     * @param limit max number of results to return
+     * @param offset offset of the query results
+     * @return A future that will complete with a query response object
+     * containing a list of documents and some metadata about the query.
+     * @throws FieldNotIndexedException If the field that was attempted to be
+     * queried on is not part of an index.
+     * @throws IndexParseException If the field that was attempted to be queried
+     * on was not in a recognized format.
+     */
+    public ListenableFuture<QueryResponseWrapper> queryAsync(Query toQuery, int limit, long offset) throws IndexParseException, FieldNotIndexedException
+    {
+        ParsedQuery parsedQuery = ParsedQueryFactory.getParsedQuery(toQuery.getDatabase(), toQuery, queries.getSession());
+        return queries.queryAsync(parsedQuery, limit, offset);
+    }
+
+    /**
+     * Does a query for a single page of results, resuming from a page token.
+     *
+     * @param toQuery Query perform.
+     * @param limit max number of results to return
+     * @param pageToken token returned with the previous page of results; null
+     * for the first page
+     * @return A query response object containing a list of documents, and a
+     * token for the next page if there may be more results.
+     * @throws FieldNotIndexedException If the field that was attempted to be
+     * queried on is not part of an index.
+     * @throws IndexParseException If the field that was attempted to be queried
+     * on was not in a recognized format.
+     */
+    public QueryResponseWrapper query(Query toQuery, int limit, String pageToken) throws IndexParseException, FieldNotIndexedException
+    {
+        ParsedQuery parsedQuery = ParsedQueryFactory.getParsedQuery(toQuery.getDatabase(), toQuery, queries.getSession());
+        return queries.query(parsedQuery, limit, pageToken);
+    }
+
+    /**
+     * Does a query for a single page of results, resuming from a page token,
+     * without blocking the calling thread while the query executes.
+     *
+     * @param toQuery Query perform.
+     * @param limit max number of results to return
+     * @param pageToken token returned with the previous page of results; null
+     * for the first page
+     * @return A future that will complete with a query response object.
+     * @throws FieldNotIndexedException If the field that was attempted to be
+     * queried on is not part of an index.
+     * @throws IndexParseException If the field that was attempted to be queried
+     * on was not in a recognized format.
+     */
+    public ListenableFuture<QueryResponseWrapper> queryAsync(Query toQuery, int limit, String pageToken) throws IndexParseException, FieldNotIndexedException
+    {
+        ParsedQuery parsedQuery = ParsedQueryFactory.getParsedQuery(toQuery.getDatabase(), toQuery, queries.getSession());
+        return queries.queryAsync(parsedQuery, limit, pageToken);
+    }
+
+    /**
+     * Does a query for a single page of results without blocking the calling
+     * thread, paged by page token if one is given and by offset otherwise. An
+     * empty page token asks for token paging from the first page. Without a
+     * token the first page is a single read of limit + 1 rows, rather than a
+     * page plus a probe for more, so plain queries stay as cheap as they were.
+     *
+     * @param toQuery Query perform.
+     * @param limit max number of results to return
+     * @param offset offset of the query results; ignored with a page token
+     * @param pageToken token returned with the previous page of results; empty
+     * for the first page of token paging; null for offset paging
+     * @return A future that will complete with a query response object.
+     * @throws FieldNotIndexedException If the field that was attempted to be
+     * queried on is not part of an index.
+     * @throws IndexParseException If the field that was attempted to be queried
+     * on was not in a recognized format.
+     */
+    public ListenableFuture<QueryResponseWrapper> queryAsync(Query toQuery, int limit, long offset, String pageToken) throws IndexParseException, FieldNotIndexedException
+    {
+        if (pageToken != null)
+        {//costs the same no matter how deep we are
+            return queryAsync(toQuery, limit, pageToken.isEmpty() ? null : pageToken);
+        }
+        return queryAsync(toQuery, limit, offset);
+    }
+
+    /**
+     * Runs a query with limit and offset and describes how it was planned and
+     * run instead of returning its results.
+     *
+     * @param toQuery Query to explain.
+     * @param limit max number of results to return
+     * @param offset offset of the query results
+     * @param trace True to include a Cassandra trace of each statement.
+     * @return A description of the query's plan and execution.
+     * @throws FieldNotIndexedException If the field that was attempted to be
+     * queried on is not part of an index.
+     * @throws IndexParseException If the field that was attempted to be queried
+     * on was not in a recognized format.
+     */
+    public QueryExplanation explain(Query toQuery, int limit, long offset, boolean trace) throws IndexParseException, FieldNotIndexedException
+    {
+        ParsedQuery parsedQuery = ParsedQueryFactory.getParsedQuery(toQuery.getDatabase(), toQuery, queries.getSession());
+        QueryExplanation explanation = queries.explain(parsedQuery, limit, offset, trace);
+        explanation.setCandidateIndexes(ParsedQueryFactory.describeIndexCandidates(toQuery.getDatabase(), toQuery, queries.getSession()));
+        explanation.setIndexMatch(explanation.getCandidateIndexes().get(explanation.getIndex()));
+        return explanation;
+    }
+
+    /**
+     * Runs a batch of independent queries against a database concurrently.
+     * Each query is paged by its own limit and either its page token or its
+     * offset, just as if it had been run on its own. A query that fails does
+     * not fail the batch; its error is returned in its place instead.
+     *
+     * @param db Database to query.
+     * @param toQuery Queries to perform.
+     * @return A future that will complete with one result per query, in the
+     * same order as the queries. The future itself does not fail.
+     */
+    public ListenableFuture<List<BatchQueryResult>> batchQueryAsync(String db, List<Query> toQuery)
+    {
+        List<ListenableFuture<BatchQueryResult>> results = new ArrayList<>(toQuery.size());
+        for (Query query : toQuery)
+        {//kick them all off before waiting on any of them
+            query.setDatabase(db);
+            results.add(batchQueryAsync(query));
+        }
+        return Futures.allAsList(results);
+    }
+
+    /**
+     * Runs a single query from a batch, capturing any failure in its result.
+     *
+     * @param query Query to perform.
+     * @return A future that will complete with the query's result; it does
+     * not fail.
+     */
+    private ListenableFuture<BatchQueryResult> batchQueryAsync(final Query query)
+    {
+        final SettableFuture<BatchQueryResult> toReturn = SettableFuture.create();
+        ListenableFuture<QueryResponseWrapper> future;
+        try
+        {
+            future = queryAsync(query, query.getLimit(), query.getOffset(), query.getPageToken());
+        } catch (Exception e)
+        {//planning failed; no need to go to the database
+            toReturn.set(toBatchError(query, e));
+            return toReturn;
+        }
+        Futures.addCallback(future, new FutureCallback<QueryResponseWrapper>()
+        {
+            @Override
+            public void onSuccess(QueryResponseWrapper result)
+            {
+                int status = result.getNumAdditionalResults() == null ? 206 : 200;//partial content if there is more to get
+                toReturn.set(new BatchQueryResult(query, status, result));
+            }
+
+            @Override
+            public void onFailure(Throwable t)
+            {
+                toReturn.set(toBatchError(query, t));
+            }
+        });
+        return toReturn;
+    }
+
+    /**
+     * Converts the failure of a query in a batch to a result with the HTTP
+     * status the query would have failed with had it been run on its own.
+     */
+    private BatchQueryResult toBatchError(Query query, Throwable t)
+    {
+        int status;
+        if (t instanceof IndexParseException || t instanceof FieldNotIndexedException
+                || t instanceof InvalidPageTokenException || t instanceof ValidationException
+                || t instanceof InvalidObjectIdException)
+        {
+            status = 400;
+        } else if (t instanceof ItemNotFoundException)
+        {
+            status = 404;
+        } else
+        {
+            logger.error("Problem running batch query: " + query.toString(), t);
+            status = 500;
+        }
+        return new BatchQueryResult(query, status, t.getMessage());
+    }
+
     /**
      * method to check if the database provided in the query url exists
      * */
     public boolean checkDatabase(Identifier id){
-        boolean dbExists;
-        dbExists=databases.exists(id);
-        return dbExists;
+        if (MetadataRegistry.getInstance().getDatabase(id.getDatabaseName()) != null)
+        {
+            return true;
+        }
+        return databases.exists(id);
     }
 
     /**
      * method to check if the table provided in the query url exists
      * */
     public boolean checkTable(Identifier id){
-        boolean dbExists;
-        dbExists=tables.exists(id);
-        return dbExists;
+        try
+        {
+            tables.readCached(id);
+            return true;
+        } catch (ItemNotFoundException e)
+        {
+            return false;
+        }
     }
 }
@@ -7,6 +7,7 @@ import java.io.IOException;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.UUID;
 
 import org.junit.Test;
@@ -63,6 +64,36 @@ public class PrimaryIndexBucketLocatorImplTest
         assertNotEquals(bucket1, bucket2);
 
     }
+    /**
+     * Test that a range maps to every bucket between its bounds.
+     */
+    @Test
+    public void testGetBucketsForRangeInteger() throws IndexParseFieldException, IOException
+    {
+        PrimaryIndexBucketLocatorImpl locator = PrimaryIndexBucketLocatorImpl.getInstance();
+        Long lowBucket = locator.getBucket(-1000, FieldDataType.INTEGER);
+        Long highBucket = locator.getBucket(1000, FieldDataType.INTEGER);
+        List<Long> buckets = locator.getBucketsForRange("-1000", "1000", FieldDataType.INTEGER);
+        assertEquals(lowBucket, buckets.get(0));
+        assertEquals(highBucket, buckets.get(buckets.size() - 1));
+        for (int i = 1; i < buckets.size(); i++)
+        {
+            assertTrue("Buckets not in ascending order.", buckets.get(i - 1) < buckets.get(i));
+        }
+        //a single value is a single bucket
+        buckets = locator.getBucketsForRange(5, 5, FieldDataType.INTEGER);
+        assertEquals(1, buckets.size());
+        assertEquals(locator.getBucket(5, FieldDataType.INTEGER), buckets.get(0));
+        //open above includes the wrap around bucket
+        List<Long> allBuckets = PrimaryIndexBucketLocatorImpl.getBUCKETS()[FieldDataType.INTEGER.getIndexForDataType()];
+        buckets = locator.getBucketsForRange(1000, null, FieldDataType.INTEGER);
+        assertEquals(allBuckets.get(0), buckets.get(0));
+        assertEquals(allBuckets.get(allBuckets.size() - 1), buckets.get(buckets.size() - 1));
+        assertTrue(buckets.contains(highBucket));
+        //fully open is every bucket
+        assertEquals(allBuckets, locator.getBucketsForRange(null, null, FieldDataType.INTEGER));
+    }
+
 //    /**
 //     * test to test out the bucket distribution of the string
 //     */
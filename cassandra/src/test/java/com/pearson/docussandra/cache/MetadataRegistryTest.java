@@ -0,0 +1,156 @@
+package com.pearson.docussandra.cache;
+
+import com.pearson.docussandra.domain.objects.Database;
+import com.pearson.docussandra.domain.objects.Identifier;
+import com.pearson.docussandra.domain.objects.Index;
+import com.pearson.docussandra.domain.objects.Table;
+import com.pearson.docussandra.testhelper.Fixtures;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class MetadataRegistryTest
+{
+
+    private final MetadataRegistry instance = MetadataRegistry.getInstance();
+
+    public MetadataRegistryTest()
+    {
+    }
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+        instance.clear();
+    }
+
+    @After
+    public void tearDown()
+    {
+        instance.clear();
+    }
+
+    /**
+     * Test of putTable and getTable methods, of class MetadataRegistry.
+     */
+    @Test
+    public void testPutTable()
+    {
+        System.out.println("putTable");
+        Table table = Fixtures.createTestTable();
+        assertNull(instance.getTable(table.getId()));
+        instance.putTable(table);
+        assertEquals(table, instance.getTable(table.getId()));
+        assertEquals(table, instance.getTable(new Identifier(table.getDatabaseName(), table.getName())));
+        assertNull(instance.getIndexes(table.getId()));//not loaded, so we don't know it has no indexes
+    }
+
+    /**
+     * Test of putIndexes and getIndexes methods, of class MetadataRegistry.
+     */
+    @Test
+    public void testPutIndexes()
+    {
+        System.out.println("putIndexes");
+        Index index = Fixtures.createTestIndexOneField();
+        Identifier tableId = index.getTable().getId();
+        instance.putIndexes(tableId, Arrays.asList(index));
+        List<Index> result = instance.getIndexes(tableId);
+        assertEquals(Arrays.asList(index), result);
+        try
+        {
+            result.add(Fixtures.createTestIndexTwoField());
+            fail("The registry's lists should not be modifiable.");
+        } catch (UnsupportedOperationException e)
+        {
+            //expected
+        }
+        instance.evictIndexes(tableId);
+        assertNull(instance.getIndexes(tableId));
+    }
+
+    /**
+     * Test of getIndexes method, of class MetadataRegistry, for a table with
+     * no indexes; the empty list is only trusted while the registry is being
+     * reloaded, since nothing else would pick up an index created through
+     * another node.
+     */
+    @Test
+    public void testGetIndexesEmpty()
+    {
+        System.out.println("getIndexesEmpty");
+        Identifier tableId = Fixtures.createTestTable().getId();
+        instance.putIndexes(tableId, Collections.<Index>emptyList());
+        assertEquals(0, instance.getRefreshSeconds());
+        assertNull(instance.getIndexes(tableId));
+        instance.startRefresh(null, null, null, 3600);//never actually reloads during the test
+        try
+        {
+            assertEquals(3600, instance.getRefreshSeconds());
+            assertTrue(instance.getIndexes(tableId).isEmpty());
+        } finally
+        {
+            instance.stopRefresh();
+        }
+        assertEquals(0, instance.getRefreshSeconds());
+    }
+
+    /**
+     * Test of removeDatabase method, of class MetadataRegistry; the
+     * database's tables and indexes go with it.
+     */
+    @Test
+    public void testRemoveDatabase()
+    {
+        System.out.println("removeDatabase");
+        Database database = Fixtures.createTestDatabase();
+        Table table = Fixtures.createTestTable();
+        Index index = Fixtures.createTestIndexOneField();
+        Table otherTable = Fixtures.createTestWorldBankTable();
+        instance.putDatabase(database);
+        instance.putTable(table);
+        instance.putIndexes(table.getId(), Arrays.asList(index));
+        instance.putTable(otherTable);
+        assertEquals(database, instance.getDatabase(database.getName()));
+        instance.removeDatabase(database.getName());
+        assertNull(instance.getDatabase(database.getName()));
+        assertNull(instance.getTable(table.getId()));
+        assertNull(instance.getIndexes(table.getId()));
+        assertEquals(otherTable, instance.getTable(otherTable.getId()));
+    }
+
+    /**
+     * Test of removeTable method, of class MetadataRegistry.
+     */
+    @Test
+    public void testRemoveTable()
+    {
+        System.out.println("removeTable");
+        Table table = Fixtures.createTestTable();
+        instance.putTable(table);
+        instance.putIndexes(table.getId(), Arrays.asList(Fixtures.createTestIndexOneField()));
+        instance.removeTable(table.getId());
+        assertNull(instance.getTable(table.getId()));
+        assertNull(instance.getIndexes(table.getId()));
+    }
+}
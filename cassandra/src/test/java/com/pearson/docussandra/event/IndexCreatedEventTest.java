@@ -202,6 +202,27 @@ public class IndexCreatedEventTest
         assertEquals(2, result, 2);
     }
 
+    /**
+     * Test of getEta method, of class IndexCreatedEvent, for a build with a
+     * rolling rate; the ETA comes from the rate rather than the average since
+     * the build started.
+     */
+    @Test
+    public void testGetEtaFromRate()
+    {
+        System.out.println("getEtaFromRate");
+        IndexCreatedEvent instance = Fixtures.createTestIndexCreationStatus();
+        instance.setDateStarted(new Date(System.currentTimeMillis() - 60000));//ten docs a second on average
+        instance.setRecordsCompleted(500);
+        instance.setDocsPerSecond(100);
+        instance.calculateValues();
+        assertEquals(5, instance.getEta());
+        instance.setRecordsCompleted(1200);//the total was an underestimate
+        instance.calculateValues();
+        assertEquals(100, instance.getPercentComplete(), 0.0);
+        assertEquals(0, instance.getEta());
+    }
+
     /**
      * Test of getIndex method, of class IndexCreatedEvent.
      */
@@ -0,0 +1,83 @@
+package com.pearson.docussandra.handler;
+
+import com.pearson.docussandra.Utils;
+import com.pearson.docussandra.cache.CacheFactory;
+import com.pearson.docussandra.domain.event.IndexCreatedEvent;
+import com.pearson.docussandra.domain.objects.Index;
+import com.pearson.docussandra.persistence.impl.DocumentRepositoryImpl;
+import com.pearson.docussandra.persistence.impl.IndexRepositoryImpl;
+import com.pearson.docussandra.persistence.impl.IndexStatusRepositoryImpl;
+import com.pearson.docussandra.testhelper.Fixtures;
+import java.util.Date;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class IndexBuildCoordinatorTest
+{
+
+    private Fixtures f;
+
+    private IndexRepositoryImpl indexRepo;
+    private IndexStatusRepositoryImpl statusRepo;
+    private DocumentRepositoryImpl docRepo;
+
+    public IndexBuildCoordinatorTest() throws Exception
+    {
+        f = Fixtures.getInstance(true);
+    }
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        Utils.initDatabaseSingleReplication(true, f.getSession());//hard clear of the test tables, including any unfinished builds
+        Thread.sleep(5000);
+        CacheFactory.clearAllCaches();
+        f.insertDatabase(Fixtures.createTestDatabase());
+        f.insertTable(Fixtures.createTestTable());
+        indexRepo = new IndexRepositoryImpl(f.getSession());
+        statusRepo = new IndexStatusRepositoryImpl(f.getSession());
+        docRepo = new DocumentRepositoryImpl(f.getSession());
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test of joinBuilds method, of class IndexBuildCoordinator; a build that
+     * failed is left alone until its error is cleared.
+     */
+    @Test
+    public void testJoinBuildsSkipsFailedBuilds()
+    {
+        System.out.println("joinBuildsSkipsFailedBuilds");
+        Index index = Fixtures.createTestIndexOneField();
+        f.insertIndex(index);
+        IndexCreatedEvent status = new IndexCreatedEvent(UUID.randomUUID(), new Date(), new Date(), index, 10, 0);
+        status.setFatalError("Could not complete indexing event for index: '" + index.getName() + "'.");
+        statusRepo.create(status);
+        IndexBuildCoordinator instance = new IndexBuildCoordinator(indexRepo, statusRepo, new IndexCreatedHandler(indexRepo, statusRepo, docRepo));
+        assertEquals(0, instance.joinBuilds());
+        assertFalse(IndexCreatedHandler.isQueued(status.getUuid()));
+    }
+}
@@ -0,0 +1,212 @@
+package com.pearson.docussandra.handler;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.SimpleStatement;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.pearson.docussandra.persistence.helper.PreparedStatementFactory;
+import com.pearson.docussandra.persistence.impl.IndexStatusRepositoryImpl;
+import com.pearson.docussandra.testhelper.Fixtures;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class IndexBuildThrottleTest
+{
+
+    public IndexBuildThrottleTest()
+    {
+    }
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test of adjust method, of class IndexBuildThrottle; limits are halved
+     * while latency is over target, and recover to their maximums once it
+     * isn't.
+     */
+    @Test
+    public void testAdjustLatency()
+    {
+        System.out.println("adjustLatency");
+        IndexBuildThrottle instance = new IndexBuildThrottle(1000, 64, 100);
+        instance.adjust(250, 0, 1000);
+        assertEquals(32, instance.getInFlightLimit());
+        assertEquals(500, instance.getDocsPerSecond(), 0.001);
+        instance.adjust(250, 0, 500);
+        assertEquals(16, instance.getInFlightLimit());
+        assertEquals(250, instance.getDocsPerSecond(), 0.001);
+        for (int i = 0; i < 100; i++)
+        {
+            instance.adjust(50, 0, 250);
+        }
+        assertEquals(64, instance.getInFlightLimit());
+        assertEquals(1000, instance.getDocsPerSecond(), 0.001);
+        assertEquals(2L, instance.getStats().get("backoffs"));
+    }
+
+    /**
+     * Test of adjust method, of class IndexBuildThrottle; timeouts back off
+     * even when latency is fine, and an unlimited rate backs off from the rate
+     * actually observed.
+     */
+    @Test
+    public void testAdjustTimeouts()
+    {
+        System.out.println("adjustTimeouts");
+        IndexBuildThrottle instance = new IndexBuildThrottle();
+        assertEquals(0, instance.getDocsPerSecond(), 0.001);
+        instance.adjust(10, 3, 4000);
+        assertEquals(IndexBuildThrottle.DEFAULT_MAX_IN_FLIGHT_WRITES / 2, instance.getInFlightLimit());
+        assertEquals(2000, instance.getDocsPerSecond(), 0.001);
+        for (int i = 0; i < 20; i++)
+        {
+            instance.adjust(10, 3, 0);
+        }
+        assertEquals(1, instance.getInFlightLimit());
+        assertEquals(IndexBuildThrottle.MIN_DOCS_PER_SECOND, instance.getDocsPerSecond(), 0.001);
+        instance.adjust(10, 0, 0);//healthy, and the rate isn't what's limiting us
+        assertEquals(0, instance.getDocsPerSecond(), 0.001);
+    }
+
+    /**
+     * Test of tag method, of class IndexBuildThrottle; the latency and
+     * timeouts of statements tagged as the builds' own don't count as
+     * foreground.
+     */
+    @Test
+    public void testForegroundLatency()
+    {
+        System.out.println("foregroundLatency");
+        IndexBuildThrottle instance = new IndexBuildThrottle();
+        Statement scan = instance.tag(new SimpleStatement("select * from docussandra.sys_idx_status"));
+        instance.foreground.update(null, scan, new OperationTimedOutException(null), TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, instance.foreground.getP99Millis(), 0.001);
+        assertEquals(0, instance.foreground.getTimeouts());
+        instance.foreground.update(null, new SimpleStatement("select * from docussandra.sys_idx_status"), null, TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(5, instance.foreground.getP99Millis(), 0.5);
+        assertEquals(0, instance.foreground.getTimeouts());
+    }
+
+    /**
+     * Test of the foreground latency, of class IndexBuildThrottle; a spike
+     * stops counting once it is older than one adjustment period.
+     */
+    @Test
+    public void testForegroundLatencyWindow() throws Exception
+    {
+        System.out.println("foregroundLatencyWindow");
+        IndexBuildThrottle instance = new IndexBuildThrottle();
+        instance.foreground.update(null, new SimpleStatement("select * from docussandra.sys_idx_status"), null, TimeUnit.SECONDS.toNanos(2));
+        assertEquals(2000, instance.foreground.getP99Millis(), 1);
+        Thread.sleep(1500);
+        assertEquals(0, instance.foreground.getP99Millis(), 0.001);
+    }
+
+    /**
+     * Test of the foreground latency, of class IndexBuildThrottle; the builds'
+     * status, checkpoint and lease queries don't count as foreground, even
+     * untagged.
+     */
+    @Test
+    public void testForegroundLatencyBuildStatus() throws Exception
+    {
+        System.out.println("foregroundLatencyBuildStatus");
+        Session session = Fixtures.getInstance().getSession();
+        IndexBuildThrottle instance = new IndexBuildThrottle();
+        for (String cql : IndexStatusRepositoryImpl.BUILD_CQL)
+        {
+            BoundStatement bs = new BoundStatement(PreparedStatementFactory.getPreparedStatement(cql, session));
+            instance.foreground.update(null, bs, new OperationTimedOutException(null), TimeUnit.SECONDS.toNanos(2));
+        }
+        assertEquals(0, instance.foreground.getP99Millis(), 0.001);
+        assertEquals(0, instance.foreground.getTimeouts());
+    }
+
+    /**
+     * Test of update method, of class IndexBuildThrottle.
+     */
+    @Test
+    public void testUpdate()
+    {
+        System.out.println("update");
+        IndexBuildThrottle instance = new IndexBuildThrottle();
+        instance.adjust(500, 0, 100);
+        instance.update(200, 8, 50);
+        Map<String, Object> stats = instance.getStats();
+        assertEquals(200d, stats.get("maxDocsPerSecond"));
+        assertEquals(8, stats.get("maxInFlightWrites"));
+        assertEquals(50L, stats.get("targetP99Millis"));
+        assertEquals(200d, stats.get("docsPerSecond"));
+        assertEquals(8, stats.get("inFlightLimit"));
+        try
+        {
+            instance.update(200, 0, 50);
+            fail("An in-flight limit of zero should not be allowed.");
+        } catch (IllegalArgumentException e)
+        {
+            //expected
+        }
+        assertEquals(8, instance.getMaxInFlightWrites());
+    }
+
+    /**
+     * Test of acquireWrite and releaseWrite methods, of class
+     * IndexBuildThrottle; a reduced limit applies once writes already in
+     * flight have finished.
+     */
+    @Test
+    public void testWriteLimit() throws Exception
+    {
+        System.out.println("writeLimit");
+        final IndexBuildThrottle instance = new IndexBuildThrottle(0, 2, 100);
+        instance.acquireWrite();
+        instance.acquireWrite();
+        assertEquals(2, instance.getStats().get("inFlightWrites"));
+        instance.update(0, 1, 100);
+        instance.releaseWrite();
+        Thread waiter = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                instance.acquireWrite();
+            }
+        });
+        waiter.start();
+        waiter.join(200);
+        assertTrue(waiter.isAlive());//one still in flight, with a limit of one
+        instance.releaseWrite();
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        assertEquals(1, instance.getStats().get("inFlightWrites"));
+    }
+}
@@ -1,6 +1,7 @@
 
 package com.pearson.docussandra.handler;
 
+import com.datastax.driver.core.TokenRange;
 import com.pearson.docussandra.Utils;
 import com.pearson.docussandra.cache.CacheFactory;
 import com.pearson.docussandra.domain.event.IndexCreatedEvent;
@@ -15,7 +16,9 @@ import com.pearson.docussandra.persistence.impl.IndexStatusRepositoryImplTest;
 import com.pearson.docussandra.testhelper.Fixtures;
 import java.io.IOException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.json.simple.parser.ParseException;
 import org.junit.After;
@@ -208,4 +211,139 @@ public class IndexCreatedHandlerTest
         assertNotNull(readIndex);
         assertTrue(readIndex.isActive());
     }
+
+    /**
+     * Test of handle method, of class IndexCreatedHandler, with many token
+     * ranges scanned at once and few writes in flight; every document with the
+     * indexed field should end up in the iTable exactly once.
+     */
+    @Test
+    public void testHandleWithDataParallel() throws Exception
+    {
+        System.out.println("handleWithDataParallel");
+        //datasetup
+        Database testDb = Fixtures.createTestWorldBankDatabase();
+        Table testTable = Fixtures.createTestWorldBankTable();
+        f.insertDatabase(testDb);
+        f.insertTable(testTable);
+        List<Document> docs = Fixtures.getBulkDocumentsByLine("/world_bank_short.txt", testTable);
+        f.insertDocuments(docs);
+        long expectedEntries = 0;
+        for (Document doc : docs)
+        {
+            if (doc.getObject().get("countryshortname") != null)
+            {
+                expectedEntries++;
+            }
+        }
+
+        Index countryName = Fixtures.createTestBankIndexCountryName();
+        f.insertIndex(countryName);
+
+        IndexCreatedEvent entity = new IndexCreatedEvent(UUID.randomUUID(), new Date(), new Date(), countryName, docs.size(), 0);
+        statusRepo.create(entity);
+        //end data setup
+        IndexCreatedHandler instance = new IndexCreatedHandler(indexRepo, statusRepo, docRepo, 8, new IndexBuildThrottle(0, 2, IndexBuildThrottle.DEFAULT_TARGET_P99_MILLIS));
+        //call
+        instance.handle(entity);
+        //verify
+        IndexCreatedEvent storedStatus = statusRepo.read(entity.getUuid());
+        assertTrue(storedStatus.isDoneIndexing());
+        assertEquals(docs.size(), storedStatus.getRecordsCompleted());
+        long iTableEntries = f.getSession().execute("select count(*) from " + Utils.calculateITableName(countryName)).one().getLong(0);
+        assertEquals(expectedEntries, iTableEntries);
+    }
+
+    /**
+     * Test of handle method, of class IndexCreatedHandler, for a build that
+     * was interrupted; ranges checkpointed as done are not scanned again.
+     */
+    @Test
+    public void testHandleResumesFromCheckpoints() throws Exception
+    {
+        System.out.println("handleResumesFromCheckpoints");
+        //datasetup
+        Database testDb = Fixtures.createTestWorldBankDatabase();
+        Table testTable = Fixtures.createTestWorldBankTable();
+        f.insertDatabase(testDb);
+        f.insertTable(testTable);
+        List<Document> docs = Fixtures.getBulkDocumentsByLine("/world_bank_short.txt", testTable);
+        f.insertDocuments(docs);
+
+        Index countryName = Fixtures.createTestBankIndexCountryName();
+        f.insertIndex(countryName);
+
+        IndexCreatedEvent entity = new IndexCreatedEvent(UUID.randomUUID(), new Date(), new Date(), countryName, docs.size(), 0);
+        statusRepo.create(entity);
+        Map<String, String> checkpoints = new HashMap<>();
+        for (TokenRange range : IndexBackfill.splitRing(f.getSession().getCluster().getMetadata().getTokenRanges(), 16))
+        {
+            checkpoints.put(IndexBackfill.toRangeKey(range), IndexBackfill.DONE);//as if the previous run got all the way through before it died
+        }
+        statusRepo.saveCheckpoints(entity.getUuid(), checkpoints);
+        //end data setup
+        IndexCreatedHandler instance = new IndexCreatedHandler(indexRepo, statusRepo, docRepo);
+        //call
+        instance.handle(entity);
+        //verify
+        IndexCreatedEvent storedStatus = statusRepo.read(entity.getUuid());
+        assertTrue(storedStatus.isDoneIndexing());
+        assertTrue(statusRepo.readAllCurrentlyIndexing().isEmpty());
+        long iTableEntries = f.getSession().execute("select count(*) from " + Utils.calculateITableName(countryName)).one().getLong(0);
+        assertEquals(0, iTableEntries);//nothing was left to scan
+    }
+
+    /**
+     * Test of handle method, of class IndexCreatedHandler, for a build shared
+     * with another node; a range leased by the other node is left to it, and
+     * the index is only marked active once every range is done.
+     */
+    @Test
+    public void testHandleSharedWithAnotherNode() throws Exception
+    {
+        System.out.println("handleSharedWithAnotherNode");
+        //datasetup
+        Database testDb = Fixtures.createTestWorldBankDatabase();
+        Table testTable = Fixtures.createTestWorldBankTable();
+        f.insertDatabase(testDb);
+        f.insertTable(testTable);
+        List<Document> docs = Fixtures.getBulkDocumentsByLine("/world_bank_short.txt", testTable);
+        f.insertDocuments(docs);
+
+        Index countryName = Fixtures.createTestBankIndexCountryName();
+        f.insertIndex(countryName);
+
+        IndexCreatedEvent entity = new IndexCreatedEvent(UUID.randomUUID(), new Date(), new Date(), countryName, docs.size(), 0);
+        statusRepo.create(entity);
+        Map<String, String> checkpoints = new HashMap<>();
+        for (TokenRange range : IndexBackfill.splitRing(f.getSession().getCluster().getMetadata().getTokenRanges(), 16))
+        {
+            checkpoints.put(IndexBackfill.toRangeKey(range), IndexBackfill.NOT_STARTED);
+        }
+        statusRepo.saveCheckpoints(entity.getUuid(), checkpoints);
+        String otherNodesRange = checkpoints.keySet().iterator().next();
+        assertTrue(statusRepo.acquireLease(entity.getUuid(), otherNodesRange, "otherNode", 60));
+        //end data setup
+        IndexCreatedHandler instance = new IndexCreatedHandler(indexRepo, statusRepo, docRepo);
+        //call
+        instance.handle(entity);
+        //verify
+        Map<String, String> stored = statusRepo.readCheckpoints(entity.getUuid());
+        assertEquals(IndexBackfill.NOT_STARTED, stored.get(otherNodesRange));
+        for (Map.Entry<String, String> checkpoint : stored.entrySet())
+        {
+            if (!checkpoint.getKey().equals(otherNodesRange))
+            {
+                assertTrue(IndexBackfill.isDone(checkpoint.getValue()));
+            }
+        }
+        assertFalse(statusRepo.read(entity.getUuid()).isDoneIndexing());
+        assertFalse(statusRepo.readAllCurrentlyIndexing().isEmpty());
+        //the other node finishes its range
+        statusRepo.saveCheckpoint(entity.getUuid(), otherNodesRange, IndexBackfill.DONE);
+        statusRepo.releaseLease(entity.getUuid(), otherNodesRange, "otherNode");
+        instance.handle(entity);
+        assertTrue(statusRepo.read(entity.getUuid()).isDoneIndexing());
+        assertTrue(statusRepo.readAllCurrentlyIndexing().isEmpty());
+    }
 }
@@ -5,6 +5,7 @@ import com.pearson.docussandra.bucketmanagement.PrimaryIndexBucketLocatorImpl;
 import com.pearson.docussandra.cache.CacheFactory;
 import com.pearson.docussandra.domain.objects.Document;
 import com.pearson.docussandra.domain.objects.Index;
+import com.pearson.docussandra.domain.objects.IndexStorageMode;
 import com.pearson.docussandra.domain.objects.Table;
 import com.pearson.docussandra.exception.IndexParseException;
 import com.pearson.docussandra.persistence.impl.DocumentRepositoryImpl;
@@ -12,8 +13,12 @@ import com.pearson.docussandra.persistence.impl.IndexRepositoryImpl;
 import com.pearson.docussandra.persistence.impl.TableRepositoryImpl;
 import com.pearson.docussandra.testhelper.Fixtures;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import org.bson.BSON;
+import org.bson.BSONObject;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -222,6 +227,33 @@ public class IndexMaintainerHelperTest
          assertEquals("UPDATE mydb_mytable_myindexwithtwofields SET object = ?, updated_at = ? WHERE bucket = ? AND id = ? AND myindexedfield1 = ? AND myindexedfield2 = ?;", two.preparedStatement().getQueryString());
     }
 
+    /**
+     * Test of generateDocumentUpdateIndexEntriesStatements method, of class
+     * IndexMaintainerHelper, for a reference only index; with no indexed field
+     * changed, only the row's updated_at is written.
+     */
+    @Test
+    public void testGenerateDocumentUpdateIndexEntriesStatementsReferenceOnly() throws IndexParseException
+    {
+        System.out.println("generateDocumentUpdateIndexEntriesStatementsReferenceOnly");
+        indexRepo.delete(index2);
+        index2.setStorageMode(IndexStorageMode.REFERENCE);
+        indexRepo.create(index2);
+        CacheFactory.clearAllCaches();
+        Document entity = Fixtures.createTestDocument2();
+        tableRepo.create(table);//create the table so we have a place to store the test data
+        docRepo.create(entity);//insert a document so we have something to reference
+        List<BoundStatement> result = IndexMaintainerHelper.generateDocumentUpdateIndexEntriesStatements(f.getSession(), entity, PrimaryIndexBucketLocatorImpl.getInstance());
+        assertEquals(2, result.size());//one for each of our indices
+        BoundStatement two = result.get(1);
+        for (int i = 0; i < 5; i++)
+        {
+            assertTrue(two.isSet(i));// 0 is the date, 1 is the bucket, 2 is the id, 3 and 4 are indexed fields
+        }
+        assertEquals(entity.getUpdatedAt(), two.getDate(0));
+        assertEquals("UPDATE mydb_mytable_myindexwithtwofields SET updated_at = ? WHERE bucket = ? AND id = ? AND myindexedfield1 = ? AND myindexedfield2 = ?;", two.preparedStatement().getQueryString());
+    }
+
     /**
      * Test of generateDocumentUpdateIndexEntriesStatements method, of class
      * IndexMaintainerHelper.
@@ -526,6 +558,25 @@ public class IndexMaintainerHelperTest
         assertEquals(expResult, result);
     }
 
+    /**
+     * Test of generateCQLStatementForInsert method, of class
+     * IndexMaintainerHelper, for a reference only index.
+     */
+    @Test
+    public void testGenerateCQLStatementForInsertReferenceOnly()
+    {
+        System.out.println("generateCQLStatementForInsertReferenceOnly");
+        index1.setStorageMode(IndexStorageMode.REFERENCE);
+        String expResult = "INSERT INTO mydb_mytable_myindexwithonefield (bucket, id, updated_at, myindexedfield) VALUES (?, ?, ?, ?);";
+        String result = IndexMaintainerHelper.getCQLStatementForInsert(index1);
+        assertEquals(expResult, result);
+        //the full statement is cached separately and unaffected
+        index1.setStorageMode(IndexStorageMode.FULL);
+        expResult = "INSERT INTO mydb_mytable_myindexwithonefield (bucket, id, object, created_at, updated_at, myindexedfield) VALUES (?, ?, ?, ?, ?, ?);";
+        result = IndexMaintainerHelper.getCQLStatementForInsert(index1);
+        assertEquals(expResult, result);
+    }
+
     /**
      * Test of generateCQLStatementForWhereClauses method, of class
      * IndexMaintainerHelper.
@@ -577,4 +628,61 @@ public class IndexMaintainerHelperTest
         assertEquals(true, result);
     }
 
+    /**
+     * Test of getChangedFields and hasIndexedFieldChanged(Set, Index) methods,
+     * of class IndexMaintainerHelper.
+     */
+    @Test
+    public void testGetChangedFields()
+    {
+        System.out.println("getChangedFields");
+        Document old = new Document();
+        old.setObjectAsString("{'greeting':'hello', 'myindexedfield': 'this is my field', 'myindexedfield1':'my second field', 'gone':'bye'}");
+        Document entity = new Document();
+        entity.setObjectAsString("{'greeting':'hola', 'myindexedfield': 'this is my field', 'myindexedfield1':'my second field', 'myindexedfield2':'my third field'}");
+        BSONObject oldObject = old.getObject();
+        Set<String> result = IndexMaintainerHelper.getChangedFields(oldObject, entity.getObject());
+        assertEquals(3, result.size());
+        assertTrue(result.contains("greeting"));//changed
+        assertTrue(result.contains("myindexedfield2"));//added
+        assertTrue(result.contains("gone"));//removed
+        assertFalse(IndexMaintainerHelper.hasIndexedFieldChanged(result, index1));
+        assertTrue(IndexMaintainerHelper.hasIndexedFieldChanged(result, index2));
+        assertTrue(IndexMaintainerHelper.getChangedFields(oldObject, oldObject).isEmpty());
+    }
+
+    /**
+     * Test of hasIncludedFieldChanged method, of class IndexMaintainerHelper.
+     */
+    @Test
+    public void testHasIncludedFieldChanged()
+    {
+        System.out.println("hasIncludedFieldChanged");
+        Set<String> changed = new HashSet<>(Arrays.asList("greeting"));
+        assertTrue(IndexMaintainerHelper.hasIncludedFieldChanged(changed, index1));//stores everything
+        index1.setIncludeOnly(Arrays.asList("title", "summary"));
+        assertFalse(IndexMaintainerHelper.hasIncludedFieldChanged(changed, index1));
+        changed.add("summary");
+        assertTrue(IndexMaintainerHelper.hasIncludedFieldChanged(changed, index1));
+    }
+
+    /**
+     * Test of hasIncludedFieldChanged method, of class IndexMaintainerHelper,
+     * for an update that only changes a nested included field.
+     */
+    @Test
+    public void testHasIncludedFieldChangedNested()
+    {
+        System.out.println("hasIncludedFieldChangedNested");
+        Document old = new Document();
+        old.setObjectAsString("{'title':'home', 'address': {'city':'Denver', 'zip':'80202'}}");
+        Document entity = new Document();
+        entity.setObjectAsString("{'title':'home', 'address': {'city':'Boulder', 'zip':'80202'}}");
+        Set<String> changed = IndexMaintainerHelper.getChangedFields(old.getObject(), entity.getObject());
+        index1.setIncludeOnly(Arrays.asList("title", "address.city"));
+        assertTrue(IndexMaintainerHelper.hasIncludedFieldChanged(changed, index1));
+        index1.setIncludeOnly(Arrays.asList("title"));
+        assertFalse(IndexMaintainerHelper.hasIncludedFieldChanged(changed, index1));
+    }
+
 }
@@ -0,0 +1,256 @@
+package com.pearson.docussandra.handler;
+
+import com.pearson.docussandra.domain.objects.Document;
+import com.pearson.docussandra.plugininterfaces.Notification;
+import com.pearson.docussandra.plugininterfaces.NotifierPlugin;
+import com.pearson.docussandra.testhelper.Fixtures;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class NotifierDispatcherTest
+{
+
+    private NotifierDispatcher instance;
+
+    public NotifierDispatcherTest()
+    {
+    }
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (instance != null)
+        {
+            instance.shutdown();
+        }
+    }
+
+    /**
+     * Plugin that records what it was sent; it won't return from its first
+     * call until released, and signals blocked once that call has started.
+     */
+    private static class RecordingPlugin extends NotifierPlugin
+    {
+
+        private final int maxBatchSize;
+        private final CountDownLatch release;
+        private final CountDownLatch done;
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final List<NotifierPlugin.MutateType> received = Collections.synchronizedList(new ArrayList<NotifierPlugin.MutateType>());
+        private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+        private RecordingPlugin(int maxBatchSize, CountDownLatch release, int expected)
+        {
+            this.maxBatchSize = maxBatchSize;
+            this.release = release;
+            this.done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void doNotify(MutateType type, Document document)
+        {
+            doNotifyBatch(Arrays.asList(new Notification(type, document, 0)));
+        }
+
+        @Override
+        public void doNotifyBatch(List<Notification> notifications)
+        {
+            blocked.countDown();
+            try
+            {
+                release.await();
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            batchSizes.add(notifications.size());
+            for (Notification notification : notifications)
+            {
+                received.add(notification.getType());
+                done.countDown();
+            }
+        }
+
+        @Override
+        public int getMaxBatchSize()
+        {
+            return maxBatchSize;
+        }
+
+        @Override
+        public String getPluginName()
+        {
+            return "recording";
+        }
+    }
+
+    /**
+     * Test of dispatch method, of class NotifierDispatcher; notifications that
+     * pile up while the plugin is busy are delivered in order, in batches.
+     */
+    @Test
+    public void testDispatchBatched() throws Exception
+    {
+        System.out.println("dispatchBatched");
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingPlugin plugin = new RecordingPlugin(10, release, 4);
+        instance = new NotifierDispatcher(Arrays.<NotifierPlugin>asList(plugin));
+        instance.dispatch(NotifierPlugin.MutateType.CREATE, Fixtures.createTestDocument());
+        assertTrue(plugin.blocked.await(10, TimeUnit.SECONDS));//the worker has picked up the first one and is blocked on it
+        instance.dispatch(NotifierPlugin.MutateType.UPDATE, Fixtures.createTestDocument());
+        instance.dispatch(NotifierPlugin.MutateType.UPDATE, Fixtures.createTestDocument());
+        instance.dispatch(NotifierPlugin.MutateType.DELETE, null);
+        release.countDown();
+        assertTrue(plugin.done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(NotifierPlugin.MutateType.CREATE, NotifierPlugin.MutateType.UPDATE, NotifierPlugin.MutateType.UPDATE, NotifierPlugin.MutateType.DELETE), plugin.received);
+        assertEquals(Arrays.asList(1, 3), plugin.batchSizes);
+    }
+
+    /**
+     * Test of dispatch method, of class NotifierDispatcher, with the DROP
+     * overflow policy.
+     */
+    @Test
+    public void testDispatchDrop() throws Exception
+    {
+        System.out.println("dispatchDrop");
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingPlugin plugin = new RecordingPlugin(1, release, 2);
+        instance = new NotifierDispatcher(Arrays.<NotifierPlugin>asList(plugin), 1, NotifierDispatcher.OverflowPolicy.DROP, null);
+        instance.dispatch(NotifierPlugin.MutateType.CREATE, null);
+        assertTrue(plugin.blocked.await(10, TimeUnit.SECONDS));//worker is now blocked on the first; the queue holds one more
+        instance.dispatch(NotifierPlugin.MutateType.UPDATE, null);
+        instance.dispatch(NotifierPlugin.MutateType.DELETE, null);//dropped
+        Map<String, Object> stats = (Map<String, Object>) instance.getStats().get("recording");
+        assertEquals(1, stats.get("queueDepth"));
+        assertEquals(1L, stats.get("dropped"));
+        release.countDown();
+        assertTrue(plugin.done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(NotifierPlugin.MutateType.CREATE, NotifierPlugin.MutateType.UPDATE), plugin.received);
+    }
+
+    /**
+     * Test of dispatch method, of class NotifierDispatcher, with the SPILL
+     * overflow policy; spilled notifications are delivered after the queued
+     * ones, in order.
+     */
+    @Test
+    public void testDispatchSpill() throws Exception
+    {
+        System.out.println("dispatchSpill");
+        File spillDirectory = new File(System.getProperty("java.io.tmpdir"), "notifier-test-" + System.nanoTime());
+        assertTrue(spillDirectory.mkdirs());
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingPlugin plugin = new RecordingPlugin(1, release, 4);
+        instance = new NotifierDispatcher(Arrays.<NotifierPlugin>asList(plugin), 1, NotifierDispatcher.OverflowPolicy.SPILL, spillDirectory);
+        instance.dispatch(NotifierPlugin.MutateType.CREATE, Fixtures.createTestDocument());
+        assertTrue(plugin.blocked.await(10, TimeUnit.SECONDS));
+        instance.dispatch(NotifierPlugin.MutateType.UPDATE, Fixtures.createTestDocument());//queued
+        instance.dispatch(NotifierPlugin.MutateType.UPDATE, Fixtures.createTestDocument());//spilled
+        instance.dispatch(NotifierPlugin.MutateType.DELETE, null);//spilled
+        Map<String, Object> stats = (Map<String, Object>) instance.getStats().get("recording");
+        assertEquals(2L, stats.get("spilled"));
+        release.countDown();
+        assertTrue(plugin.done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(NotifierPlugin.MutateType.CREATE, NotifierPlugin.MutateType.UPDATE, NotifierPlugin.MutateType.UPDATE, NotifierPlugin.MutateType.DELETE), plugin.received);
+        for (File file : spillDirectory.listFiles())
+        {
+            file.delete();
+        }
+        spillDirectory.delete();
+    }
+
+    /**
+     * Test of dispatch method, of class NotifierDispatcher, with spill files
+     * left behind by a previous run; they are delivered before anything new,
+     * in order.
+     */
+    @Test
+    public void testDispatchRecoverSpill() throws Exception
+    {
+        System.out.println("dispatchRecoverSpill");
+        File spillDirectory = new File(System.getProperty("java.io.tmpdir"), "notifier-test-" + System.nanoTime());
+        assertTrue(spillDirectory.mkdirs());
+        String fileName = "docussandra-notifier-0-" + RecordingPlugin.class.getName();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(spillDirectory, fileName + ".replay")), StandardCharsets.UTF_8))
+        {
+            writer.write(NotifierDispatcher.toSpillLine(new Notification(NotifierPlugin.MutateType.CREATE, Fixtures.createTestDocument(), 1L)) + "\n");
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(spillDirectory, fileName + ".spill")), StandardCharsets.UTF_8))
+        {
+            writer.write(NotifierDispatcher.toSpillLine(new Notification(NotifierPlugin.MutateType.UPDATE, Fixtures.createTestDocument(), 2L)) + "\n");
+        }
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingPlugin plugin = new RecordingPlugin(1, release, 3);
+        instance = new NotifierDispatcher(Arrays.<NotifierPlugin>asList(plugin), 10, NotifierDispatcher.OverflowPolicy.SPILL, spillDirectory);
+        assertTrue(plugin.blocked.await(10, TimeUnit.SECONDS));//replaying the previous run's replay file
+        instance.dispatch(NotifierPlugin.MutateType.DELETE, null);//the queue has room, but the previous run's spill file comes first
+        release.countDown();
+        assertTrue(plugin.done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(NotifierPlugin.MutateType.CREATE, NotifierPlugin.MutateType.UPDATE, NotifierPlugin.MutateType.DELETE), plugin.received);
+        for (File file : spillDirectory.listFiles())
+        {
+            file.delete();
+        }
+        spillDirectory.delete();
+    }
+
+    /**
+     * Test of toSpillLine and fromSpillLine methods, of class
+     * NotifierDispatcher.
+     */
+    @Test
+    public void testSpillLine()
+    {
+        System.out.println("spillLine");
+        Document document = Fixtures.createTestDocument();
+        document.setObjectAsString("{\"greeting\": \"hello\\tthere\\nfriend\"}");
+        Notification notification = new Notification(NotifierPlugin.MutateType.UPDATE, document, 12345L);
+        String line = NotifierDispatcher.toSpillLine(notification);
+        assertFalse(line.contains("\n"));
+        Notification result = NotifierDispatcher.fromSpillLine(line);
+        assertEquals(NotifierPlugin.MutateType.UPDATE, result.getType());
+        assertEquals(12345L, result.getTimestamp());
+        assertEquals(document.getId(), result.getDocument().getId());
+        assertEquals(document.getObject(), result.getDocument().getObject());
+        assertEquals(document.getUpdatedAt(), result.getDocument().getUpdatedAt());
+        result = NotifierDispatcher.fromSpillLine(NotifierDispatcher.toSpillLine(new Notification(NotifierPlugin.MutateType.DELETE, null, 1L)));
+        assertEquals(NotifierPlugin.MutateType.DELETE, result.getType());
+        assertNull(result.getDocument());
+    }
+}
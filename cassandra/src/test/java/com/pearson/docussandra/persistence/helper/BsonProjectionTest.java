@@ -0,0 +1,137 @@
+package com.pearson.docussandra.persistence.helper;
+
+import com.mongodb.util.JSON;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class BsonProjectionTest
+{
+
+    private static final String DOC = "{\"greeting\":\"hello\", \"count\": 5, \"big\": 12345678901, \"ratio\": 0.5, \"flag\": true, \"nothing\": null,"
+            + " \"tags\": [\"a\", \"b\"], \"address\": {\"city\": \"Denver\", \"zip\": \"80202\", \"geo\": {\"lat\": 39.7, \"lon\": -104.9}}, \"last\": \"field\"}";
+
+    public BsonProjectionTest()
+    {
+    }
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    private static ByteBuffer encode(String json)
+    {
+        return ByteBuffer.wrap(BSON.encode((BSONObject) JSON.parse(json)));
+    }
+
+    /**
+     * Test of forColumns method, of class BsonProjection.
+     */
+    @Test
+    public void testForColumnsNone()
+    {
+        System.out.println("testForColumnsNone");
+        assertNull(BsonProjection.forColumns(null));
+        assertNull(BsonProjection.forColumns(new ArrayList<String>()));
+        assertNull(BsonProjection.forColumns(Arrays.asList(" ")));
+    }
+
+    /**
+     * Test of decode method, of class BsonProjection.
+     */
+    @Test
+    public void testDecodeTopLevel()
+    {
+        System.out.println("testDecodeTopLevel");
+        ByteBuffer bson = encode(DOC);
+        int position = bson.position();
+        BsonProjection instance = BsonProjection.forColumns(Arrays.asList("greeting", "big", "tags", "last", "notthere"));
+        BSONObject result = instance.decode(bson);
+        assertEquals(4, result.keySet().size());
+        assertEquals("hello", result.get("greeting"));
+        assertEquals(12345678901L, result.get("big"));
+        assertEquals(Arrays.asList("a", "b"), result.get("tags"));
+        assertEquals("field", result.get("last"));
+        assertFalse(result.containsField("count"));
+        assertEquals(position, bson.position());//buffer is untouched
+    }
+
+    /**
+     * Test of decode method, of class BsonProjection.
+     */
+    @Test
+    public void testDecodeEmbedded()
+    {
+        System.out.println("testDecodeEmbedded");
+        BsonProjection instance = BsonProjection.forColumns(Arrays.asList("address.city", "address.geo.lon", "flag"));
+        BSONObject result = instance.decode(encode(DOC));
+        assertEquals(2, result.keySet().size());
+        assertEquals(true, result.get("flag"));
+        BSONObject address = (BSONObject) result.get("address");
+        assertEquals(2, address.keySet().size());
+        assertEquals("Denver", address.get("city"));
+        BSONObject geo = (BSONObject) address.get("geo");
+        assertEquals(1, geo.keySet().size());
+        assertEquals(-104.9, geo.get("lon"));
+    }
+
+    /**
+     * Test of decode method, of class BsonProjection.
+     */
+    @Test
+    public void testDecodeWholeParent()
+    {
+        System.out.println("testDecodeWholeParent");
+        List<String> columns = Arrays.asList("address.city", "address");
+        BSONObject result = BsonProjection.forColumns(columns).decode(encode(DOC));
+        BSONObject address = (BSONObject) result.get("address");
+        assertEquals(3, address.keySet().size());
+    }
+
+    /**
+     * Test of covers method, of class BsonProjection.
+     */
+    @Test
+    public void testCovers()
+    {
+        System.out.println("testCovers");
+        BsonProjection kept = BsonProjection.forColumns(Arrays.asList("greeting", "address.city", "address.geo"));
+        assertTrue(BsonProjection.covers(null, null));
+        assertTrue(BsonProjection.covers(null, kept));
+        assertFalse(BsonProjection.covers(kept, null));
+        assertTrue(BsonProjection.covers(kept, BsonProjection.forColumns(Arrays.asList("greeting"))));
+        assertTrue(BsonProjection.covers(kept, BsonProjection.forColumns(Arrays.asList("address.city", "address.geo.lat"))));
+        assertFalse(BsonProjection.covers(kept, BsonProjection.forColumns(Arrays.asList("greeting", "count"))));
+        assertFalse(BsonProjection.covers(kept, BsonProjection.forColumns(Arrays.asList("address"))));
+        assertFalse(BsonProjection.covers(kept, BsonProjection.forColumns(Arrays.asList("address.zip"))));
+    }
+}
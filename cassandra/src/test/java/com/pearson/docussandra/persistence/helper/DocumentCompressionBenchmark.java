@@ -0,0 +1,102 @@
+package com.pearson.docussandra.persistence.helper;
+
+import com.mongodb.util.JSON;
+import com.pearson.docussandra.domain.objects.CompressionCodec;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures what document compression costs in CPU against what it saves in
+ * bytes. Not run as part of the unit tests; run the main method (from the
+ * test classpath) to get the time to compress and decompress a document of
+ * each size with each codec. The stored size of each document is printed
+ * during setup, so the two can be read side by side.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentCompressionBenchmark
+{
+
+    /**
+     * Number of records in the document's array; each is about 150 bytes of
+     * BSON.
+     */
+    @Param(
+            {
+                "1", "10", "100", "1000"
+            })
+    public int records;
+
+    @Param(
+            {
+                "NONE", "DEFLATE", "SNAPPY", "LZ4"
+            })
+    public CompressionCodec codec;
+
+    private ByteBuffer bson;
+    private ByteBuffer stored;
+
+    @Setup
+    public void setUp()
+    {
+        StringBuilder sb = new StringBuilder("{\"records\": [");
+        for (int i = 0; i < records; i++)
+        {
+            if (i != 0)
+            {
+                sb.append(", ");
+            }
+            sb.append("{\"id\": ").append(i)
+                    .append(", \"title\": \"Introduction to Chapter ").append(i).append("\"")
+                    .append(", \"status\": \"PUBLISHED\", \"author\": {\"givenName\": \"Jane\", \"familyName\": \"Doe\"}")
+                    .append(", \"tags\": [\"textbook\", \"course-material\"]}");
+        }
+        sb.append("]}");
+        bson = ByteBuffer.wrap(BSON.encode((BSONObject) JSON.parse(sb.toString())));
+        stored = DocumentCompression.compress(bson, codec);
+        System.out.println(codec + " " + records + " records: " + bson.remaining() + " bytes of BSON stored in " + stored.remaining() + " bytes");
+    }
+
+    @Benchmark
+    public ByteBuffer compress()
+    {
+        return DocumentCompression.compress(bson, codec);
+    }
+
+    @Benchmark
+    public ByteBuffer decompress()
+    {
+        return DocumentCompression.decompress(stored);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(DocumentCompressionBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,152 @@
+package com.pearson.docussandra.persistence.helper;
+
+import com.mongodb.util.JSON;
+import com.pearson.docussandra.domain.objects.CompressionCodec;
+import java.nio.ByteBuffer;
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class DocumentCompressionTest
+{
+
+    public DocumentCompressionTest()
+    {
+    }
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    private static ByteBuffer verboseDocument()
+    {
+        StringBuilder sb = new StringBuilder("{\"items\": [");
+        for (int i = 0; i < 50; i++)
+        {
+            if (i != 0)
+            {
+                sb.append(", ");
+            }
+            sb.append("{\"description\": \"This is a fairly verbose description of item number ").append(i).append("\", \"status\": \"ACTIVE\"}");
+        }
+        sb.append("]}");
+        return ByteBuffer.wrap(BSON.encode((BSONObject) JSON.parse(sb.toString())));
+    }
+
+    /**
+     * Test of compress and decompress methods, of class DocumentCompression.
+     */
+    @Test
+    public void testRoundTrip()
+    {
+        System.out.println("roundTrip");
+        ByteBuffer bson = verboseDocument();
+        ByteBuffer compressed = DocumentCompression.compress(bson, CompressionCodec.DEFLATE);
+        assertTrue(DocumentCompression.isCompressed(compressed));
+        assertTrue(compressed.remaining() < bson.remaining());
+        assertEquals(0, bson.position());//input untouched
+        assertEquals(bson, DocumentCompression.decompress(compressed));
+    }
+
+    /**
+     * Test of compress and decompress methods, of class DocumentCompression,
+     * with snappy.
+     */
+    @Test
+    public void testRoundTripSnappy()
+    {
+        System.out.println("roundTripSnappy");
+        ByteBuffer bson = verboseDocument();
+        ByteBuffer compressed = DocumentCompression.compress(bson, CompressionCodec.SNAPPY);
+        assertTrue(DocumentCompression.isCompressed(compressed));
+        assertEquals(CompressionCodec.SNAPPY.getId(), compressed.get(2));
+        assertTrue(compressed.remaining() < bson.remaining());
+        assertEquals(0, bson.position());//input untouched
+        assertEquals(bson, DocumentCompression.decompress(compressed));
+    }
+
+    /**
+     * Test of compress and decompress methods, of class DocumentCompression,
+     * with LZ4.
+     */
+    @Test
+    public void testRoundTripLz4()
+    {
+        System.out.println("roundTripLz4");
+        ByteBuffer bson = verboseDocument();
+        ByteBuffer compressed = DocumentCompression.compress(bson, CompressionCodec.LZ4);
+        assertTrue(DocumentCompression.isCompressed(compressed));
+        assertEquals(CompressionCodec.LZ4.getId(), compressed.get(2));
+        assertTrue(compressed.remaining() < bson.remaining());
+        assertEquals(0, bson.position());//input untouched
+        assertEquals(bson, DocumentCompression.decompress(compressed));
+    }
+
+    /**
+     * Test of compress method, of class DocumentCompression, when the codec is
+     * NONE or compressing doesn't help.
+     */
+    @Test
+    public void testCompressNotWorthIt()
+    {
+        System.out.println("compressNotWorthIt");
+        ByteBuffer bson = verboseDocument();
+        assertSame(bson, DocumentCompression.compress(bson, CompressionCodec.NONE));
+        ByteBuffer tiny = ByteBuffer.wrap(BSON.encode((BSONObject) JSON.parse("{\"a\": 1}")));
+        for (CompressionCodec codec : CompressionCodec.values())
+        {
+            assertSame(tiny, DocumentCompression.compress(tiny, codec));
+        }
+    }
+
+    /**
+     * Test of decompress method, of class DocumentCompression, with a blob
+     * written before compression existed.
+     */
+    @Test
+    public void testDecompressUncompressed()
+    {
+        System.out.println("decompressUncompressed");
+        ByteBuffer bson = verboseDocument();
+        assertFalse(DocumentCompression.isCompressed(bson));
+        assertSame(bson, DocumentCompression.decompress(bson));
+    }
+
+    /**
+     * Test of decompress method, of class DocumentCompression, with a header
+     * naming a codec we don't know.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testDecompressUnknownCodec()
+    {
+        System.out.println("decompressUnknownCodec");
+        ByteBuffer compressed = DocumentCompression.compress(verboseDocument(), CompressionCodec.DEFLATE);
+        compressed.put(2, (byte) 99);
+        DocumentCompression.decompress(compressed);
+    }
+}
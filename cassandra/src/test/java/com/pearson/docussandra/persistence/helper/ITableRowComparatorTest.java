@@ -0,0 +1,91 @@
+package com.pearson.docussandra.persistence.helper;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class ITableRowComparatorTest
+{
+
+    public ITableRowComparatorTest()
+    {
+    }
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    /**
+     * Test of compareUUIDs method, of class ITableRowComparator.
+     */
+    @Test
+    public void testCompareUUIDs()
+    {
+        System.out.println("compareUUIDs");
+        //UUID.compareTo compares signed halves, so it puts this one first; Cassandra compares unsigned bytes
+        UUID high = UUID.fromString("f0000000-0000-4000-8000-000000000000");
+        UUID low = UUID.fromString("10000000-0000-4000-8000-000000000000");
+        assertTrue(high.compareTo(low) < 0);
+        assertTrue(ITableRowComparator.compareUUIDs(high, low) > 0);
+        assertTrue(ITableRowComparator.compareUUIDs(low, high) < 0);
+        assertEquals(0, ITableRowComparator.compareUUIDs(low, UUID.fromString(low.toString())));
+        //time based uuids compare by timestamp, even though the low bits of the timestamp come first
+        UUID earlier = UUID.fromString("ffffffff-0000-1000-8000-000000000000");
+        UUID later = UUID.fromString("00000000-0001-1000-8000-000000000000");
+        assertTrue(ITableRowComparator.compareUUIDs(earlier, later) < 0);
+        //different versions compare by version first
+        assertTrue(ITableRowComparator.compareUUIDs(earlier, low) < 0);
+    }
+
+    /**
+     * Test of compareUnsigned method, of class ITableRowComparator.
+     */
+    @Test
+    public void testCompareUnsigned()
+    {
+        System.out.println("compareUnsigned");
+        ByteBuffer high = ByteBuffer.wrap(new byte[]
+        {
+            (byte) 0xF0, 0x01
+        });
+        ByteBuffer low = ByteBuffer.wrap(new byte[]
+        {
+            0x10, 0x01
+        });
+        assertTrue(high.compareTo(low) < 0);//signed
+        assertTrue(ITableRowComparator.compareUnsigned(high, low) > 0);
+        assertTrue(ITableRowComparator.compareUnsigned(low, high) < 0);
+        //a prefix sorts first
+        ByteBuffer prefix = ByteBuffer.wrap(new byte[]
+        {
+            0x10
+        });
+        assertTrue(ITableRowComparator.compareUnsigned(prefix, low) < 0);
+        assertEquals(0, ITableRowComparator.compareUnsigned(low, low.duplicate()));
+    }
+}
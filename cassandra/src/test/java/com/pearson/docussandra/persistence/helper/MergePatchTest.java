@@ -0,0 +1,84 @@
+package com.pearson.docussandra.persistence.helper;
+
+import com.mongodb.util.JSON;
+import org.bson.BSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class MergePatchTest
+{
+
+    public MergePatchTest()
+    {
+    }
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    private static BSONObject parse(String json)
+    {
+        return (BSONObject) JSON.parse(json);
+    }
+
+    /**
+     * Test of apply method, of class MergePatch.
+     */
+    @Test
+    public void testApply()
+    {
+        System.out.println("apply");
+        BSONObject target = parse("{\"title\": \"Goodbye!\", \"author\": {\"givenName\": \"John\", \"familyName\": \"Doe\"}, \"tags\": [\"example\", \"sample\"], \"content\": \"This will be unchanged\"}");
+        BSONObject patch = parse("{\"title\": \"Hello!\", \"phoneNumber\": \"+01-123-456-7890\", \"author\": {\"familyName\": null}, \"tags\": [\"example\"]}");
+        BSONObject expResult = parse("{\"title\": \"Hello!\", \"author\": {\"givenName\": \"John\"}, \"tags\": [\"example\"], \"content\": \"This will be unchanged\", \"phoneNumber\": \"+01-123-456-7890\"}");
+        BSONObject result = MergePatch.apply(target, patch);
+        assertEquals(expResult, result);
+        //the target should be left alone
+        assertEquals("Goodbye!", target.get("title"));
+        assertEquals("Doe", ((BSONObject) target.get("author")).get("familyName"));
+    }
+
+    /**
+     * Test of apply method, of class MergePatch, with the RFC 7386 appendix
+     * cases that apply to documents.
+     */
+    @Test
+    public void testApplyRfcExamples()
+    {
+        System.out.println("applyRfcExamples");
+        assertEquals(parse("{\"a\":\"c\"}"), MergePatch.apply(parse("{\"a\":\"b\"}"), parse("{\"a\":\"c\"}")));
+        assertEquals(parse("{\"a\":\"b\", \"b\":\"c\"}"), MergePatch.apply(parse("{\"a\":\"b\"}"), parse("{\"b\":\"c\"}")));
+        assertEquals(parse("{}"), MergePatch.apply(parse("{\"a\":\"b\"}"), parse("{\"a\":null}")));
+        assertEquals(parse("{\"b\":\"c\"}"), MergePatch.apply(parse("{\"a\":\"b\", \"b\":\"c\"}"), parse("{\"a\":null}")));
+        assertEquals(parse("{\"a\":\"c\"}"), MergePatch.apply(parse("{\"a\":[\"b\"]}"), parse("{\"a\":\"c\"}")));
+        assertEquals(parse("{\"a\":[\"c\"]}"), MergePatch.apply(parse("{\"a\":\"c\"}"), parse("{\"a\":[\"c\"]}")));
+        assertEquals(parse("{\"a\": {\"b\":\"d\"}}"), MergePatch.apply(parse("{\"a\": {\"b\":\"c\"}}"), parse("{\"a\": {\"b\":\"d\", \"c\":null}}")));
+        assertEquals(parse("{\"a\": [1]}"), MergePatch.apply(parse("{\"a\": [{\"b\":\"c\"}]}"), parse("{\"a\": [1]}")));
+        assertEquals(parse("{\"e\":null, \"a\":1}"), MergePatch.apply(parse("{\"e\":null}"), parse("{\"a\":1}")));
+        assertEquals(parse("{\"a\": {\"bb\": {}}}"), MergePatch.apply(parse("{}"), parse("{\"a\": {\"bb\": {\"ccc\": null}}}")));
+    }
+}
@@ -1,6 +1,7 @@
 
 package com.pearson.docussandra.persistence.impl;
 
+import com.mongodb.util.JSON;
 import com.pearson.docussandra.cache.CacheFactory;
 import com.pearson.docussandra.domain.objects.Database;
 import com.pearson.docussandra.domain.objects.Document;
@@ -9,9 +10,15 @@ import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
 import com.pearson.docussandra.domain.objects.Table;
 import com.pearson.docussandra.exception.ItemNotFoundException;
 import com.pearson.docussandra.persistence.DocumentRepository;
+import com.pearson.docussandra.persistence.QueryRepository;
 import com.pearson.docussandra.testhelper.Fixtures;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.bson.BSONObject;
 import org.json.simple.parser.ParseException;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -91,6 +98,62 @@ public class DocumentRepositoryImplTest
         f.deleteDocument(result);
     }
 
+    /**
+     * Test of createBulk method, of class DocumentRepositoryImpl.
+     */
+    @Test
+    public void testCreateBulk() throws Exception
+    {
+        System.out.println("createBulk");
+        f.createTestITables();
+        f.insertIndex(Fixtures.createTestIndexWithBulkDataHit());
+        List<Document> docs = Fixtures.getBulkDocuments();
+        for (Document doc : docs)
+        {
+            doc.setUuid(UUID.randomUUID());
+        }
+        DocumentRepository instance = new DocumentRepositoryImpl(f.getSession(), 4);
+        Map<Integer, Throwable> errors = instance.createBulk(docs);
+        assertTrue(errors.isEmpty());
+        for (Document doc : docs)
+        {
+            Document read = instance.read(doc.getId());
+            assertEquals(doc.getObject(), read.getObject());
+        }
+        //the index entries should be there too
+        QueryRepository queryRepo = new QueryRepositoryImpl(f.getSession());
+        QueryResponseWrapper result = queryRepo.query(Fixtures.createTestParsedQueryBulkData());
+        assertEquals(34, result.size());
+    }
+
+    /**
+     * Test of createBulk method, of class DocumentRepositoryImpl, when the
+     * index writes fail; the documents shouldn't be left behind.
+     */
+    @Test
+    public void testCreateBulkIndexWriteFails() throws Exception
+    {
+        System.out.println("createBulkIndexWriteFails");
+        f.createTestITables();
+        f.insertIndex(Fixtures.createTestIndexWithBulkDataHit());
+        List<Document> docs = Fixtures.getBulkDocuments();
+        for (Document doc : docs)
+        {
+            doc.setUuid(UUID.randomUUID());
+        }
+        DocumentRepository instance = new DocumentRepositoryImpl(f.getSession(), 4);
+        //write one so the iTable insert is prepared, then drop the iTable out from under it
+        assertTrue(instance.createBulk(docs.subList(0, 1)).isEmpty());
+        new ITableRepositoryImpl(f.getSession()).deleteITable(Fixtures.createTestIndexWithBulkDataHit());
+        List<Document> rest = docs.subList(1, docs.size());
+        Map<Integer, Throwable> errors = instance.createBulk(rest);
+        assertFalse(errors.isEmpty());
+        for (int i = 0; i < rest.size(); i++)
+        {
+            assertEquals(!errors.containsKey(i), instance.exists(rest.get(i).getId()));
+        }
+    }
+
     /**
      * Test of read method, of class DocumentRepositoryImpl.
      */
@@ -196,6 +259,33 @@ public class DocumentRepositoryImplTest
         f.deleteDocument(testDocument);
     }
 
+    /**
+     * Test of patch method, of class DocumentRepositoryImpl.
+     */
+    @Test
+    public void testPatch()
+    {
+        System.out.println("patch");
+        Document testDocument = Fixtures.createTestDocument();
+        f.insertDocument(testDocument);
+        DocumentRepository instance = new DocumentRepositoryImpl(f.getSession());
+        BSONObject patch = (BSONObject) JSON.parse("{\"greeting\": \"hola\", \"myindexedfield2\": null, \"count\": 1}");
+        Document result = instance.patch(instance.read(testDocument.getId()), patch);
+        assertEquals(testDocument.getUuid(), result.getUuid());
+        BSONObject read = instance.read(testDocument.getId()).getObject();
+        assertEquals("hola", read.get("greeting"));
+        assertEquals("thisismyfield", read.get("myindexedfield"));
+        assertFalse(read.containsField("myindexedfield2"));
+        assertEquals(1, read.get("count"));
+        //a patch that changes nothing writes nothing and hands back what is stored
+        Document stored = instance.read(testDocument.getId());
+        Document unchanged = instance.patch(stored, (BSONObject) JSON.parse("{\"greeting\": \"hola\"}"));
+        assertSame(stored, unchanged);
+        assertEquals(read, unchanged.getObject());
+        //cleanup the random uuid'ed doc
+        f.deleteDocument(testDocument);
+    }
+
     /**
      * Test of delete method, of class DocumentRepositoryImpl.
      */
@@ -291,6 +381,129 @@ public class DocumentRepositoryImplTest
         assertTrue(exceptionThrown);
     }
 
+    /**
+     * Test of getExpiredVersions method, of class DocumentRepositoryImpl.
+     */
+    @Test
+    public void testGetExpiredVersions()
+    {
+        System.out.println("getExpiredVersions");
+        long now = 1000000000L;
+        List<Date> versions = new ArrayList<>();
+        for (int i = 0; i < 5; i++)
+        {
+            versions.add(new Date(now - (i * 60000L)));//one a minute, newest first
+        }
+        assertTrue(DocumentRepositoryImpl.getExpiredVersions(versions, 0, 0, now).isEmpty());
+        assertEquals(versions.subList(2, 5), DocumentRepositoryImpl.getExpiredVersions(versions, 2, 0, now));
+        assertEquals(versions.subList(3, 5), DocumentRepositoryImpl.getExpiredVersions(versions, 0, 150, now));
+        assertEquals(versions.subList(2, 5), DocumentRepositoryImpl.getExpiredVersions(versions, 2, 150, now));
+        //the current version is kept no matter how old it is
+        assertEquals(versions.subList(1, 5), DocumentRepositoryImpl.getExpiredVersions(versions, 1, 1, now + 600000L));
+    }
+
+    /**
+     * Test that updates prune versions beyond the table's retention policy.
+     */
+    @Test
+    public void testVersionRetention() throws Exception
+    {
+        System.out.println("versionRetention");
+        testTable.setMaxVersions(2);
+        new TableRepositoryImpl(f.getSession()).update(testTable);
+        DocumentRepository instance = new DocumentRepositoryImpl(f.getSession());
+        Document testDocument = Fixtures.createTestDocument();
+        instance.create(testDocument);
+        for (int i = 0; i < 4; i++)
+        {
+            Thread.sleep(5);//make sure each version gets its own timestamp
+            Document update = Fixtures.createTestDocument();
+            update.setObjectAsString("{\"version\": " + i + "}");
+            instance.update(update);
+        }
+        Thread.sleep(1000);//pruning happens in the background
+        long versions = f.getSession().execute("select count(*) from " + testTable.toDbTable() + " where id = ?", testDocument.getUuid()).one().getLong(0);
+        assertEquals(2, versions);
+        assertEquals(3, instance.read(testDocument.getId()).getObject().get("version"));
+        f.deleteDocument(testDocument);
+    }
+
+    /**
+     * Test that updates prune versions older than the table's maximum version
+     * age.
+     */
+    @Test
+    public void testVersionAgeRetention() throws Exception
+    {
+        System.out.println("versionAgeRetention");
+        testTable.setMaxVersionAge(1);
+        new TableRepositoryImpl(f.getSession()).update(testTable);
+        DocumentRepository instance = new DocumentRepositoryImpl(f.getSession());
+        Document testDocument = Fixtures.createTestDocument();
+        instance.create(testDocument);
+        Thread.sleep(1500);//let the original version expire
+        Document update = Fixtures.createTestDocument();
+        update.setObjectAsString("{\"version\": 0}");
+        instance.update(update);
+        Thread.sleep(1000);//pruning happens in the background
+        long versions = f.getSession().execute("select count(*) from " + testTable.toDbTable() + " where id = ?", testDocument.getUuid()).one().getLong(0);
+        assertEquals(1, versions);
+        assertEquals(0, instance.read(testDocument.getId()).getObject().get("version"));
+        f.deleteDocument(testDocument);
+    }
+
+    /**
+     * Test of readVersions and readAsOf methods, of class
+     * DocumentRepositoryImpl.
+     */
+    @Test
+    public void testReadVersions() throws Exception
+    {
+        System.out.println("readVersions");
+        DocumentRepository instance = new DocumentRepositoryImpl(f.getSession());
+        Document testDocument = Fixtures.createTestDocument();
+        instance.create(testDocument);
+        List<Date> writtenAt = new ArrayList<>();
+        writtenAt.add(testDocument.getUpdatedAt());
+        for (int i = 0; i < 3; i++)
+        {
+            Thread.sleep(5);//make sure each version gets its own timestamp
+            Document update = Fixtures.createTestDocument();
+            update.setObjectAsString("{\"version\": " + i + "}");
+            writtenAt.add(instance.update(update).getUpdatedAt());
+        }
+        //page through them all, newest first
+        QueryResponseWrapper page = instance.readVersions(testDocument.getId(), null, null, 2, null);
+        assertEquals(2, page.size());
+        assertEquals(2, page.get(0).getObject().get("version"));
+        assertEquals(1, page.get(1).getObject().get("version"));
+        assertNotNull(page.getNextPageToken());
+        page = instance.readVersions(testDocument.getId(), null, null, 2, page.getNextPageToken());
+        assertEquals(2, page.size());
+        assertEquals(0, page.get(0).getObject().get("version"));
+        assertEquals("hello", page.get(1).getObject().get("greeting"));
+        assertNull(page.getNextPageToken());
+        //time range
+        page = instance.readVersions(testDocument.getId(), writtenAt.get(1), writtenAt.get(2), 10, null);
+        assertEquals(2, page.size());
+        assertEquals(1, page.get(0).getObject().get("version"));
+        assertEquals(0, page.get(1).getObject().get("version"));
+        //as of
+        Document asOf = instance.readAsOf(testDocument.getId(), new Date(writtenAt.get(2).getTime() + 1));
+        assertEquals(1, asOf.getObject().get("version"));
+        assertEquals("hello", instance.readAsOf(testDocument.getId(), writtenAt.get(0)).getObject().get("greeting"));
+        boolean exceptionThrown = false;
+        try
+        {
+            instance.readAsOf(testDocument.getId(), new Date(writtenAt.get(0).getTime() - 1));
+        } catch (ItemNotFoundException e)
+        {
+            exceptionThrown = true;
+        }
+        assertTrue(exceptionThrown);
+        f.deleteDocument(testDocument);
+    }
+
     /**
      * Test of exists method, of class DocumentRepositoryImpl.
      */
@@ -10,8 +10,11 @@ import com.pearson.docussandra.persistence.IndexStatusRepository;
 import com.pearson.docussandra.testhelper.Fixtures;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -111,6 +114,8 @@ public class IndexStatusRepositoryImplTest
         instance.create(entity);
         //update
         entity.setRecordsCompleted(10);
+        entity.setErrorCount(3);
+        entity.setDocsPerSecond(12.5);
         entity.setStatusLastUpdatedAt(new Date());
         IndexCreatedEvent result = instance.update(entity);
         assertStatusEqualEnough(entity, result);
@@ -120,7 +125,69 @@ public class IndexStatusRepositoryImplTest
     }
 
     /**
-     * Test of update method, of class IndexStatusRepositoryImpl.
+     * Test of saveCheckpoints, saveCheckpoint and readCheckpoints methods, of
+     * class IndexStatusRepositoryImpl.
+     */
+    @Test
+    public void testCheckpoints()
+    {
+        System.out.println("checkpoints");
+        IndexCreatedEvent entity = Fixtures.createTestIndexCreationStatus();
+        IndexStatusRepository instance = new IndexStatusRepositoryImpl(f.getSession());
+        instance.create(entity);
+        assertTrue(instance.readCheckpoints(entity.getUuid()).isEmpty());
+        Map<String, String> checkpoints = new HashMap<>();
+        checkpoints.put("-100:0", "");
+        checkpoints.put("0:100", "");
+        instance.saveCheckpoints(entity.getUuid(), checkpoints);
+        assertEquals(checkpoints, instance.readCheckpoints(entity.getUuid()));
+        instance.saveCheckpoint(entity.getUuid(), "0:100", "done");
+        checkpoints.put("0:100", "done");
+        assertEquals(checkpoints, instance.readCheckpoints(entity.getUuid()));
+        assertTrue(instance.readCheckpoints(UUID.randomUUID()).isEmpty());
+    }
+
+    /**
+     * Test of acquireLease, renewLease and releaseLease methods, of class
+     * IndexStatusRepositoryImpl.
+     */
+    @Test
+    public void testLeases()
+    {
+        System.out.println("leases");
+        IndexStatusRepository instance = new IndexStatusRepositoryImpl(f.getSession());
+        UUID uuid = UUID.randomUUID();
+        assertTrue(instance.acquireLease(uuid, "0:100", "nodeA", 60));
+        assertFalse(instance.acquireLease(uuid, "0:100", "nodeB", 60));
+        assertTrue(instance.acquireLease(uuid, "100:200", "nodeB", 60));//other ranges are still available
+        assertFalse(instance.renewLease(uuid, "0:100", "nodeB", 60));
+        assertTrue(instance.renewLease(uuid, "0:100", "nodeA", 60));
+        instance.releaseLease(uuid, "0:100", "nodeB");//not nodeB's; no effect
+        assertFalse(instance.acquireLease(uuid, "0:100", "nodeB", 60));
+        instance.releaseLease(uuid, "0:100", "nodeA");
+        assertTrue(instance.acquireLease(uuid, "0:100", "nodeB", 60));
+        assertFalse(instance.renewLease(uuid, "0:100", "nodeA", 60));
+    }
+
+    /**
+     * Test of acquireLease method, of class IndexStatusRepositoryImpl; a lease
+     * that isn't renewed can be taken by another node once it expires.
+     */
+    @Test
+    public void testLeaseExpires() throws Exception
+    {
+        System.out.println("leaseExpires");
+        IndexStatusRepository instance = new IndexStatusRepositoryImpl(f.getSession());
+        UUID uuid = UUID.randomUUID();
+        assertTrue(instance.acquireLease(uuid, "0:100", "nodeA", 1));
+        assertFalse(instance.acquireLease(uuid, "0:100", "nodeB", 60));
+        Thread.sleep(2000);
+        assertTrue(instance.acquireLease(uuid, "0:100", "nodeB", 60));
+    }
+
+    /**
+     * Test of saveFatalError and update methods, of class
+     * IndexStatusRepositoryImpl; a progress update doesn't clear a fatal error.
      */
     @Test
     public void testUpdateEntityWithFatalErrorField()
@@ -130,15 +197,18 @@ public class IndexStatusRepositoryImplTest
         IndexStatusRepository instance = new IndexStatusRepositoryImpl(f.getSession());
         //create
         instance.create(entity);
-        //update
+        //fail
+        instance.saveFatalError(entity.getUuid(), "Whoops! Something Went Wrong.");
+        //update progress from another node that hasn't seen the failure
         entity.setRecordsCompleted(10);
         entity.setStatusLastUpdatedAt(new Date());
-        entity.setFatalError("Whoops! Something Went Wrong.");
+        entity.setFatalError(null);
         IndexCreatedEvent result = instance.update(entity);
         assertStatusEqualEnough(entity, result);
         //fetch
         IndexCreatedEvent read = instance.read(entity.getUuid());
-        assertStatusEqualEnough(entity, read);
+        assertEquals(10, read.getRecordsCompleted());
+        assertEquals("Whoops! Something Went Wrong.", read.getFatalError());
     }
 
     /**
@@ -179,12 +249,16 @@ public class IndexStatusRepositoryImplTest
         entity.setStatusLastUpdatedAt(new Date());
         ArrayList<String> errors = new ArrayList<>();
         errors.add("Whoops! Something Went Wrong.");
-        entity.setErrors(errors);
+        instance.addErrors(entity.getUuid(), errors);
+        //another node adds its own
+        instance.addErrors(entity.getUuid(), Arrays.asList("Whoops! Something Else Went Wrong."));
+        entity.setErrors(null);//not written by update
         IndexCreatedEvent result = instance.update(entity);
         assertStatusEqualEnough(entity, result);
         //fetch
         IndexCreatedEvent read = instance.read(entity.getUuid());
         assertStatusEqualEnough(entity, read);
+        assertEquals(Arrays.asList("Whoops! Something Went Wrong.", "Whoops! Something Else Went Wrong."), read.getErrors());
     }
 
     /**
@@ -375,6 +449,8 @@ public class IndexStatusRepositoryImplTest
     {
         assertEquals(expected.getDateStarted(), actual.getDateStarted());
         assertEquals(expected.getRecordsCompleted(), actual.getRecordsCompleted());
+        assertEquals(expected.getErrorCount(), actual.getErrorCount());
+        assertEquals(expected.getDocsPerSecond(), actual.getDocsPerSecond(), 0.0);
         assertEquals(expected.getStatusLastUpdatedAt(), actual.getStatusLastUpdatedAt());
         assertEquals(expected.getId(), actual.getId());
         assertEquals(expected.getUuid(), actual.getUuid());
@@ -1,14 +1,24 @@
 
 package com.pearson.docussandra.persistence.impl;
 
+import com.pearson.docussandra.cache.CacheFactory;
+import com.pearson.docussandra.cache.QueryResultCache;
 import com.pearson.docussandra.domain.ParsedQuery;
 import com.pearson.docussandra.domain.objects.Document;
+import com.pearson.docussandra.domain.objects.Query;
+import com.pearson.docussandra.domain.objects.QueryExplanation;
 import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
+import com.pearson.docussandra.domain.objects.WhereClause;
 import com.pearson.docussandra.exception.IndexParseException;
 import com.pearson.docussandra.persistence.DocumentRepository;
 import com.pearson.docussandra.persistence.QueryRepository;
 import com.pearson.docussandra.testhelper.Fixtures;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 import org.bson.BSONObject;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -99,6 +109,65 @@ public class QueryRepositoryImplTest
         assertEquals(expected, actual);
     }
 
+    /**
+     * Test of query method, of class QueryDao, with a column projection.
+     */
+    @Test
+    public void testDoQueryWithColumns() throws IndexParseException
+    {
+        logger.debug("testDoQueryWithColumns");
+        Document doc = Fixtures.createTestDocument();
+        DocumentRepository docRepo = new DocumentRepositoryImpl(f.getSession());
+        docRepo.create(doc);
+        QueryRepositoryImpl instance = new QueryRepositoryImpl(f.getSession());
+        ParsedQuery query = Fixtures.createTestParsedQuery();
+        query.getQuery().setColumns(Arrays.asList("greeting", "myindexedfield2"));
+        QueryResponseWrapper result = instance.query(query, 10, 0);
+        assertTrue(result.size() == 1);
+        BSONObject actual = result.get(0).getObject();
+        assertEquals(2, actual.keySet().size());
+        assertEquals("hello", actual.get("greeting"));
+        assertEquals("my third field", actual.get("myindexedfield2"));
+        assertNotNull(result.get(0).getUuid());
+    }
+
+    /**
+     * Test of query method with the query result cache enabled, of class
+     * QueryRepositoryImpl.
+     */
+    @Test
+    public void testDoQueryWithResultCache() throws IndexParseException
+    {
+        System.out.println("testDoQueryWithResultCache");
+        QueryResultCache cache = QueryResultCache.getInstance();
+        CacheFactory.getCache(QueryResultCache.CACHE_NAME).removeAll();
+        cache.setEnabledTables(Collections.singletonList(Fixtures.DB + ".mytable"));
+        try
+        {
+            Document doc = Fixtures.createTestDocument();
+            DocumentRepository docRepo = new DocumentRepositoryImpl(f.getSession());
+            docRepo.create(doc);
+            QueryRepository instance = new QueryRepositoryImpl(f.getSession());
+            long hits = (Long) cache.getStats().get("hits");
+            QueryResponseWrapper result = instance.query(Fixtures.createTestParsedQuery(), 10, 0);
+            assertEquals(1, result.size());
+            assertEquals(hits, cache.getStats().get("hits"));
+            //same query again; should come out of the cache
+            result = instance.query(Fixtures.createTestParsedQuery(), 10, 0);
+            assertEquals(1, result.size());
+            assertEquals(hits + 1, cache.getStats().get("hits"));
+            assertEquals(doc.getObject(), result.get(0).getObject());
+            //a write to the bucket the query reads should invalidate it
+            docRepo.delete(doc);
+            result = instance.query(Fixtures.createTestParsedQuery(), 10, 0);
+            assertTrue(result.isEmpty());
+            assertEquals(hits + 1, cache.getStats().get("hits"));
+        } finally
+        {
+            cache.setEnabledTables(Collections.<String>emptyList());
+        }
+    }
+
     /**
      * Test of query method, of class QueryDao.
      */
@@ -198,7 +267,253 @@ public class QueryRepositoryImplTest
         assertTrue(result.get(2).getObjectAsString().contains("\"field2\" : \"this is some more random data\""));
         assertTrue(result.get(3).getObjectAsString().contains("\"field2\" : \"this is some random data\""));
         assertTrue(result.getNumAdditionalResults() == 0);
+    }
+
+    /**
+     * Test of queryAsync method, of class QueryRepositoryImpl.
+     */
+    @Test
+    public void testDoQueryAsyncWithPaging() throws Exception
+    {
+        System.out.println("testDoQueryAsyncWithPaging");
+        //put in an index that we can use with bulk data
+        f.insertIndex(Fixtures.createTestIndexWithBulkDataHit());
+        List<Document> docs = Fixtures.getBulkDocuments();
+        //put a bunch of test docs in
+        f.insertDocuments(docs);
+        //setup
+        QueryRepository instance = new QueryRepositoryImpl(f.getSession());
+        ParsedQuery query = Fixtures.createTestParsedQueryBulkData();
+        //let's get the first 5
+        QueryResponseWrapper result = instance.queryAsync(query, 5, 0).get();
+        assertNotNull(result);
+        assertTrue(result.size() == 5);
+        assertTrue(result.get(0).getObjectAsString().contains("\"field2\" : \"this is some more random data32\""));
+        assertTrue(result.get(4).getObjectAsString().contains("\"field2\" : \"this is some more random data28\""));
+        assertTrue(result.getNumAdditionalResults() == null);
+
+        //now lets get the last 4
+        result = instance.queryAsync(query, 5, 30).get();
+        assertNotNull(result);
+        assertTrue(result.size() == 4);
+        assertTrue(result.get(3).getObjectAsString().contains("\"field2\" : \"this is some random data\""));
+        assertTrue(result.getNumAdditionalResults() == 0);
+    }
+
+    /**
+     * Test of query method with page tokens, of class QueryRepositoryImpl.
+     */
+    @Test
+    public void testDoQueryWithPageTokens() throws Exception
+    {
+        System.out.println("testDoQueryWithPageTokens");
+        //put in an index that we can use with bulk data
+        f.insertIndex(Fixtures.createTestIndexWithBulkDataHit());
+        List<Document> docs = Fixtures.getBulkDocuments();
+        //put a bunch of test docs in
+        f.insertDocuments(docs);
+        //setup
+        QueryRepository instance = new QueryRepositoryImpl(f.getSession());
+        ParsedQuery query = Fixtures.createTestParsedQueryBulkData();
+        //let's get the first 5
+        QueryResponseWrapper result = instance.query(query, 5, (String) null);
+        assertNotNull(result);
+        assertTrue(result.size() == 5);
+        assertTrue(result.get(0).getObjectAsString().contains("\"field2\" : \"this is some more random data32\""));
+        assertTrue(result.getNumAdditionalResults() == null);
+        assertNotNull(result.getNextPageToken());
+
+        //now lets get the second 5 from the token
+        result = instance.query(query, 5, result.getNextPageToken());
+        assertNotNull(result);
+        assertTrue(result.size() == 5);
+        assertTrue(result.get(0).getObjectAsString().contains("\"field2\" : \"this is some more random data27\""));
+        assertTrue(result.get(4).getObjectAsString().contains("\"field2\" : \"this is some more random data23\""));
+        assertTrue(result.getNumAdditionalResults() == null);
+
+        //walk the rest of the pages
+        int total = 10;
+        while (result.getNextPageToken() != null)
+        {
+            result = instance.queryAsync(query, 5, result.getNextPageToken()).get();
+            total += result.size();
+        }
+        assertEquals(34, total);
+        assertTrue(result.getNumAdditionalResults() == 0);
+        assertTrue(result.get(result.size() - 1).getObjectAsString().contains("\"field2\" : \"this is some random data\""));
+    }
+
+    /**
+     * Values for the range query tests: the lowest and the highest live in
+     * the wrap around bucket, the rest are spread over several other buckets.
+     */
+    private static final int[] RANGE_VALUES = new int[]
+    {
+        -2147000000, -1000000000, -500000000, -100, 0, 100, 500000000, 1000000000, 2147000000
+    };
 
+    /**
+     * Inserts a document for each of RANGE_VALUES into the numeric test index.
+     */
+    private void insertRangeDocuments()
+    {
+        f.insertIndex(Fixtures.createTestIndexNumericField());
+        List<Document> docs = new ArrayList<>();
+        for (int value : RANGE_VALUES)
+        {
+            Document doc = new Document();
+            doc.setTable(Fixtures.DB, "mytable");
+            doc.setObjectAsString("{\"myindexedfield3\": \"" + value + "\"}");
+            doc.setUuid(UUID.randomUUID());
+            doc.setCreatedAt(new Date());
+            doc.setUpdatedAt(new Date());
+            docs.add(doc);
+        }
+        f.insertDocuments(docs);
+    }
+
+    /**
+     * Creates a query on the numeric test index.
+     */
+    private static ParsedQuery createRangeQuery(String where)
+    {
+        Query query = new Query();
+        query.setWhere(where);
+        query.setDatabase(Fixtures.DB);
+        query.setTable("mytable");
+        return new ParsedQuery(query, new WhereClause(where), Fixtures.createTestIndexNumericField());
+    }
+
+    /**
+     * Pulls the indexed value out of each document in a query response.
+     */
+    private static List<Integer> rangeValues(QueryResponseWrapper result)
+    {
+        List<Integer> values = new ArrayList<>();
+        for (Document doc : result)
+        {
+            values.add(Integer.parseInt(String.valueOf(doc.getObject().get("myindexedfield3"))));
+        }
+        return values;
+    }
+
+    /**
+     * Test of query method, of class QueryRepositoryImpl, with an ascending
+     * range that spans several buckets and the wrap around bucket.
+     */
+    @Test
+    public void testDoQueryRangeAscending() throws Exception
+    {
+        System.out.println("testDoQueryRangeAscending");
+        insertRangeDocuments();
+        QueryRepository instance = new QueryRepositoryImpl(f.getSession(), 2);//small windows, so reading stops partway through the buckets
+        ParsedQuery query = createRangeQuery("myindexedfield3 > -1500000000");
+        //everything in range, including the value past the last bucket
+        QueryResponseWrapper result = instance.query(query);
+        assertEquals(Arrays.asList(-1000000000, -500000000, -100, 0, 100, 500000000, 1000000000, 2147000000), rangeValues(result));
+        //a limit that is met partway through a window
+        result = instance.query(query, 3, 0);
+        assertEquals(Arrays.asList(-1000000000, -500000000, -100), rangeValues(result));
+        assertNull(result.getNumAdditionalResults());
+        result = instance.query(query, 3, 6);
+        assertEquals(Arrays.asList(1000000000, 2147000000), rangeValues(result));
+        assertEquals(0L, result.getNumAdditionalResults().longValue());
+    }
+
+    /**
+     * Test of query method, of class QueryRepositoryImpl, with a descending
+     * range that spans several buckets and the wrap around bucket.
+     */
+    @Test
+    public void testDoQueryRangeDescending() throws Exception
+    {
+        System.out.println("testDoQueryRangeDescending");
+        insertRangeDocuments();
+        QueryRepository instance = new QueryRepositoryImpl(f.getSession(), 2);//small windows, so reading stops partway through the buckets
+        ParsedQuery query = createRangeQuery("myindexedfield3 > -1500000000 ORDER BY myindexedfield3 DESC");
+        QueryResponseWrapper result = instance.query(query);
+        assertEquals(Arrays.asList(2147000000, 1000000000, 500000000, 100, 0, -100, -500000000, -1000000000), rangeValues(result));
+        //the highest value comes from the wrap around bucket; the limit has to cut off the low end
+        result = instance.query(query, 3, 0);
+        assertEquals(Arrays.asList(2147000000, 1000000000, 500000000), rangeValues(result));
+        assertNull(result.getNumAdditionalResults());
+        //closed range that starts in the wrap around bucket
+        query = createRangeQuery("myindexedfield3 <= 100 ORDER BY myindexedfield3 DESC");
+        result = instance.query(query, 4, 0);
+        assertEquals(Arrays.asList(100, 0, -100, -500000000), rangeValues(result));
+        result = instance.query(query, 4, 4);
+        assertEquals(Arrays.asList(-1000000000, -2147000000), rangeValues(result));
+        assertEquals(0L, result.getNumAdditionalResults().longValue());
+    }
+
+    /**
+     * Test of orderBuckets method, of class QueryRepositoryImpl.
+     */
+    @Test
+    public void testOrderBuckets()
+    {
+        System.out.println("orderBuckets");
+        List<Long> buckets = Arrays.asList(0L, 5L, 6L, 7L);
+        assertEquals(Arrays.asList(0L, 5L, 6L, 7L), QueryRepositoryImpl.orderBuckets(buckets, 0L, false));
+        //the wrap around bucket always goes first
+        assertEquals(Arrays.asList(0L, 7L, 6L, 5L), QueryRepositoryImpl.orderBuckets(buckets, 0L, true));
+        assertEquals(Arrays.asList(7L, 6L, 5L), QueryRepositoryImpl.orderBuckets(Arrays.asList(5L, 6L, 7L), 0L, true));
+    }
+
+    /**
+     * Test of explain method, of class QueryRepositoryImpl.
+     */
+    @Test
+    public void testExplain() throws Exception
+    {
+        System.out.println("testExplain");
+        f.insertIndex(Fixtures.createTestIndexWithBulkDataHit());
+        f.insertDocuments(Fixtures.getBulkDocuments());
+        QueryRepository instance = new QueryRepositoryImpl(f.getSession());
+        ParsedQuery query = Fixtures.createTestParsedQueryBulkData();
+        QueryExplanation result = instance.explain(query, 5, 30, false);
+        assertEquals(query.getIndex().getName(), result.getIndex());
+        assertEquals(query.getITable(), result.getITable());
+        assertEquals(1, result.getBuckets().size());
+        assertTrue(result.getCql().contains(query.getITable()));
+        assertEquals(34, result.getRowsRead());//all of them; 36 were allowed for
+        assertEquals(30, result.getRowsSkipped());
+        assertEquals(4, result.getRowsReturned());
+        assertTrue(result.getTraces().isEmpty());
+        //with tracing
+        result = instance.explain(query, 5, 0, true);
+        assertEquals(6, result.getRowsRead());
+        assertEquals(5, result.getRowsReturned());
+        assertFalse(result.getTraces().isEmpty());
+        assertFalse(result.getTraces().get(0).getEvents().isEmpty());
+    }
+
+    /**
+     * Test of explain method, of class QueryRepositoryImpl, with a range that
+     * spans several buckets; only the buckets that were needed are read,
+     * traced and counted.
+     */
+    @Test
+    public void testExplainRange() throws Exception
+    {
+        System.out.println("testExplainRange");
+        insertRangeDocuments();
+        QueryRepository instance = new QueryRepositoryImpl(f.getSession(), 2);//small windows, so reading stops partway through the buckets
+        ParsedQuery query = createRangeQuery("myindexedfield3 > -1500000000");
+        QueryExplanation result = instance.explain(query, 3, 0, true);
+        assertTrue(result.getBuckets().size() > 1);
+        assertEquals(0, result.getRowsSkipped());
+        assertEquals(3, result.getRowsReturned());
+        assertTrue(result.getRowsRead() >= 4);//enough to fill the limit, plus one to detect more results
+        assertTrue(result.getRowsRead() < 8);//but not every row in range
+        assertFalse(result.getTraces().isEmpty());
+        assertTrue(result.getTraces().size() < result.getBuckets().size());
+        //everything in range
+        result = instance.explain(query, 10, 2, false);
+        assertEquals(8, result.getRowsRead());
+        assertEquals(2, result.getRowsSkipped());
+        assertEquals(6, result.getRowsReturned());
+        assertTrue(result.getTraces().isEmpty());
     }
 
 }
@@ -268,4 +268,26 @@ public class TableRepositoryImplTest
         assertEquals(expResult, result);
     }
 
+    /**
+     * Test of estimateTableSize method, of class TableRepositoryImpl; a table
+     * too new to have size estimates falls back to counting its documents.
+     */
+    @Test
+    public void testEstimateTableSize()
+    {
+        System.out.println("estimateTableSize");
+        TableRepository instance = new TableRepositoryImpl(f.getSession());
+        Table testTable = Fixtures.createTestTable();
+        String database = testTable.getDatabaseName();
+        String tableName = testTable.getName();
+        f.insertTable(testTable);
+        long result = instance.estimateTableSize(database, tableName);
+        assertEquals(0L, result);
+
+        f.insertDocument(Fixtures.createTestDocument());
+        f.insertDocument(Fixtures.createTestDocument2());
+        result = instance.estimateTableSize(database, tableName);
+        assertEquals(instance.countTableSize(database, tableName), result);
+    }
+
 }
@@ -11,6 +11,7 @@ import com.pearson.docussandra.persistence.impl.IndexRepositoryImpl;
 import com.pearson.docussandra.testhelper.Fixtures;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -104,6 +105,23 @@ public class ParsedQueryFactoryTest
         assertEquals(expResult, result);
     }
 
+    /**
+     * Test of describeIndexCandidates method, of class ParsedQueryFactory.
+     */
+    @Test
+    public void testDescribeIndexCandidates()
+    {
+        System.out.println("testDescribeIndexCandidates");
+        Query toParse = Fixtures.createTestQuery2();
+        toParse.setWhere("myindexedfield1 = 'thisismyfield'");
+        Map<String, String> result = ParsedQueryFactory.describeIndexCandidates(Fixtures.DB, toParse, f.getSession());
+        assertEquals(ParsedQueryFactory.PARTIAL_MATCH, result.get(Fixtures.createTestIndexTwoField().getName()));
+        assertEquals(ParsedQueryFactory.NO_MATCH, result.get(Fixtures.createTestIndexOneField().getName()));
+        toParse.setWhere("myindexedfield1 = 'thisismyfield' AND myindexedfield2 = 'blah'");
+        result = ParsedQueryFactory.describeIndexCandidates(Fixtures.DB, toParse, f.getSession());
+        assertEquals(ParsedQueryFactory.EXACT_MATCH, result.get(Fixtures.createTestIndexTwoField().getName()));
+    }
+
     /**
      * Test of parseQuery method, of class QueryService.
      */
@@ -166,6 +184,29 @@ public class ParsedQueryFactoryTest
         assertEquals(expResult, result);
     }
 
+    /**
+     * Test that queries that only differ by their values share a cached
+     * template, but get their own values bound.
+     */
+    @Test
+    public void testGetParsedQuerySameShape() throws FieldNotIndexedException
+    {
+        System.out.println("testGetParsedQuerySameShape");
+        String db = Fixtures.DB;
+        CacheFactory.clearAllCaches();//kill the cache and make it re-create for the purposes of this test.
+        Query first = Fixtures.createTestQuery();
+        Query second = Fixtures.createTestQuery();
+        second.setWhere("myindexedfield = 'someotherfield'");
+        ParsedQuery firstResult = ParsedQueryFactory.getParsedQuery(db, first, f.getSession());
+        ParsedQuery secondResult = ParsedQueryFactory.getParsedQuery(db, second, f.getSession());
+        assertEquals(new ParsedQuery(second, new WhereClause(second.getWhere()), Fixtures.createTestIndexOneField()), secondResult);
+        assertNotEquals(firstResult.getWhereClause().getValues(), secondResult.getWhereClause().getValues());
+        assertEquals(firstResult.getWhereClause().getBoundStatementSyntax(), secondResult.getWhereClause().getBoundStatementSyntax());
+        assertSame(firstResult.getIndex(), secondResult.getIndex());
+        assertSame(firstResult.getQueryCql(), secondResult.getQueryCql());
+        assertSame(second, secondResult.getQuery());
+    }
+
     /**
      * Test of getParsedQuery method, of class QueryService.
      */
@@ -1,11 +1,15 @@
 
 package com.pearson.docussandra.service;
 
+import com.pearson.docussandra.domain.objects.BatchQueryResult;
 import com.pearson.docussandra.domain.objects.Document;
+import com.pearson.docussandra.domain.objects.Query;
+import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
 import com.pearson.docussandra.exception.FieldNotIndexedException;
 import com.pearson.docussandra.exception.IndexParseException;
 import com.pearson.docussandra.persistence.impl.*;
 import com.pearson.docussandra.testhelper.Fixtures;
+import java.util.Arrays;
 import java.util.List;
 import org.bson.BSONObject;
 import org.junit.AfterClass;
@@ -74,4 +78,53 @@ public class QueryServiceTest
         assertEquals(expected, actual);
     }
 
+    /**
+     * Test of batchQueryAsync method, of class QueryService.
+     */
+    @Test
+    public void testBatchQueryAsync() throws Exception
+    {
+        logger.debug("batchQueryAsync");
+        Document doc = Fixtures.createTestDocument();
+        DocumentRepositoryImpl docRepo = new DocumentRepositoryImpl(f.getSession());
+        docRepo.create(doc);
+        Query notIndexed = Fixtures.createTestQuery();
+        notIndexed.setWhere("notanindexedfield = 'blah'");
+        List<BatchQueryResult> results = instance.batchQueryAsync(Fixtures.DB, Arrays.asList(Fixtures.createTestQuery(), notIndexed, Fixtures.createTestQuery())).get();
+        assertEquals(3, results.size());
+        //the bad query shouldn't affect the others
+        assertFalse(results.get(0).isError());
+        assertEquals(200, results.get(0).getStatus());
+        assertEquals(1, results.get(0).getDocuments().size());
+        assertEquals(doc.getObject(), results.get(0).getDocuments().get(0).getObject());
+        assertTrue(results.get(1).isError());
+        assertEquals(400, results.get(1).getStatus());
+        assertNull(results.get(1).getDocuments());
+        assertFalse(results.get(2).isError());
+        assertEquals(1, results.get(2).getDocuments().size());
+    }
+
+    /**
+     * Test of queryAsync(Query, int, long, String) method, of class
+     * QueryService; offset paging unless a page token (possibly empty) is
+     * given.
+     */
+    @Test
+    public void testQueryAsyncPaging() throws Exception
+    {
+        logger.debug("queryAsyncPaging");
+        Document doc = Fixtures.createTestDocument();
+        DocumentRepositoryImpl docRepo = new DocumentRepositoryImpl(f.getSession());
+        docRepo.create(doc);
+        QueryResponseWrapper result = instance.queryAsync(Fixtures.createTestQuery(), 1, 0, null).get();
+        assertEquals(1, result.size());
+        assertEquals(0L, (long) result.getNumAdditionalResults());
+        assertNull(result.getNextPageToken());//offset paging hands out no tokens
+        result = instance.queryAsync(Fixtures.createTestQuery(), 10, 0, "").get();
+        assertEquals(1, result.size());
+        assertEquals(doc.getObject(), result.get(0).getObject());
+        result = instance.queryAsync(Fixtures.createTestQuery(), 10, 1, null).get();
+        assertTrue(result.isEmpty());
+    }
+
 }
@@ -19,6 +19,12 @@ import org.restexpress.plugin.hyperexpress.Linkable;
 public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifiable, Serializable, Linkable
 {
 
+    /**
+     * Most error messages kept as samples in errors; errorCount counts them
+     * all.
+     */
+    public static final int MAX_ERROR_SAMPLES = 10;
+
     /**
      * UUID for this object.
      */
@@ -51,7 +57,8 @@ public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifia
     private Index index;
 
     /**
-     * Total number of records that this index will have when complete.
+     * Total number of records that this index will have when complete. An
+     * estimate while indexing; exact once done.
      */
     private long totalRecords;
 
@@ -60,6 +67,12 @@ public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifia
      */
     private long recordsCompleted;
 
+    /**
+     * Recent rate at which records are being indexed, in records per second.
+     * Zero if not known yet.
+     */
+    private double docsPerSecond;
+
     /**
      * Fatal error message if an error has occurred in the creation of this
      * index. Will be null if no error has occurred yet. A fatal error will
@@ -71,10 +84,16 @@ public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifia
      * Error messages if a errors have occurred in the creation of this index.
      * Will be null if no errors have occurred yet. As opposed to a fatalError,
      * these errors are more like warnings; the index as a whole will still
-     * complete.
+     * complete. Only a sample of at most MAX_ERROR_SAMPLES is kept.
      */
     private List<String> errors;
 
+    /**
+     * Total number of errors that have occurred in the creation of this index,
+     * including those not kept in errors.
+     */
+    private long errorCount;
+
     /**
      * Default constructor for JSON deserialization only.
      */
@@ -144,7 +163,7 @@ public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifia
             percentComplete = 0;
         } else
         {
-            percentComplete = (double) ((double) getRecordsCompleted() / (double) getTotalRecords()) * 100d;
+            percentComplete = Math.min(100d, (double) ((double) getRecordsCompleted() / (double) getTotalRecords()) * 100d);//the total is an estimate, so we may overshoot it
         }
     }
 
@@ -157,6 +176,10 @@ public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifia
         } else if (duration == 0 || fatalError != null)//nothing to go off of OR we have an fatalError and it's never going to finish
         {
             eta = -1;
+        } else if (docsPerSecond > 0)
+        {
+            long recordsRemaining = Math.max(0, getTotalRecords() - getRecordsCompleted());
+            eta = (long) (recordsRemaining / docsPerSecond);
         } else
         {
             long recordsProcessed = getRecordsCompleted();
@@ -298,6 +321,48 @@ public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifia
         this.recordsCompleted = recordsCompleted;
     }
 
+    /**
+     * Recent rate at which records are being indexed, in records per second.
+     *
+     * @return the docsPerSecond; zero if not known yet
+     */
+    public double getDocsPerSecond()
+    {
+        return docsPerSecond;
+    }
+
+    /**
+     * Recent rate at which records are being indexed, in records per second.
+     *
+     * @param docsPerSecond the docsPerSecond to set
+     */
+    public void setDocsPerSecond(double docsPerSecond)
+    {
+        this.docsPerSecond = docsPerSecond;
+    }
+
+    /**
+     * Total number of errors that have occurred in the creation of this index,
+     * including those not kept in errors.
+     *
+     * @return the errorCount
+     */
+    public long getErrorCount()
+    {
+        return errorCount;
+    }
+
+    /**
+     * Total number of errors that have occurred in the creation of this index,
+     * including those not kept in errors.
+     *
+     * @param errorCount the errorCount to set
+     */
+    public void setErrorCount(long errorCount)
+    {
+        this.errorCount = errorCount;
+    }
+
     @Override
     public int hashCode()
     {
@@ -310,8 +375,10 @@ public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifia
         hash = 41 * hash + Objects.hashCode(this.index);
         hash = 41 * hash + (int) (this.totalRecords ^ (this.totalRecords >>> 32));
         hash = 41 * hash + (int) (this.recordsCompleted ^ (this.recordsCompleted >>> 32));
+        hash = 41 * hash + (int) (Double.doubleToLongBits(this.docsPerSecond) ^ (Double.doubleToLongBits(this.docsPerSecond) >>> 32));
         hash = 41 * hash + Objects.hashCode(this.fatalError);
         hash = 41 * hash + Objects.hashCode(this.errors);
+        hash = 41 * hash + (int) (this.errorCount ^ (this.errorCount >>> 32));
         return hash;
     }
 
@@ -359,6 +426,10 @@ public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifia
         {
             return false;
         }
+        if (Double.doubleToLongBits(this.docsPerSecond) != Double.doubleToLongBits(other.docsPerSecond))
+        {
+            return false;
+        }
         if (!Objects.equals(this.fatalError, other.fatalError))
         {
             return false;
@@ -367,13 +438,17 @@ public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifia
         {
             return false;
         }
+        if (this.errorCount != other.errorCount)
+        {
+            return false;
+        }
         return true;
     }
 
     @Override
     public String toString()
     {
-        return "IndexCreatedEvent{" + "id=" + id + ", dateStarted=" + dateStarted + ", statusLastUpdatedAt=" + statusLastUpdatedAt + ", eta=" + eta + ", percentComplete=" + percentComplete + ", index=" + index + ", totalRecords=" + totalRecords + ", recordsCompleted=" + recordsCompleted + ", fatalError=" + fatalError + ", errors=" + errors + '}';
+        return "IndexCreatedEvent{" + "id=" + id + ", dateStarted=" + dateStarted + ", statusLastUpdatedAt=" + statusLastUpdatedAt + ", eta=" + eta + ", percentComplete=" + percentComplete + ", index=" + index + ", totalRecords=" + totalRecords + ", recordsCompleted=" + recordsCompleted + ", docsPerSecond=" + docsPerSecond + ", fatalError=" + fatalError + ", errors=" + errors + ", errorCount=" + errorCount + '}';
     }
 
     /**
@@ -412,7 +487,7 @@ public class IndexCreatedEvent extends AbstractEvent<Index> implements Identifia
      * Error messages if a errors have occurred in the creation of this index.
      * Will be null if no errors have occurred yet. As opposed to a fatalError,
      * these errors are more like warnings; the index as a whole will still
-     * complete.
+     * complete. Only a sample of at most MAX_ERROR_SAMPLES is kept.
      *
      * @return the errors
      */
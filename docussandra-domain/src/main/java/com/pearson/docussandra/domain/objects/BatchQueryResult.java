@@ -0,0 +1,164 @@
+package com.pearson.docussandra.domain.objects;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a single query that was run as part of a batch. Holds either the
+ * query's results or the error it failed with; one failed query does not fail
+ * the rest of the batch.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class BatchQueryResult
+{
+
+    /**
+     * Table that was queried.
+     */
+    private String table;
+
+    /**
+     * Where clause of the query.
+     */
+    private String where;
+
+    /**
+     * HTTP status the query would have returned had it been run on its own.
+     */
+    private int status;
+
+    /**
+     * Documents the query returned; null if it failed.
+     */
+    private List<Document> documents;
+
+    /**
+     * Number of additional results that exist. Null if there are additional
+     * results, but the number is unknown, or if the query failed.
+     */
+    private Long numAdditionalResults;
+
+    /**
+     * Token for fetching the next page of results; null if there are no more
+     * results or the query failed.
+     */
+    private String nextPageToken;
+
+    /**
+     * Reason the query failed; null if it succeeded.
+     */
+    private String error;
+
+    /**
+     * Default constructor for JSON deserializing.
+     */
+    public BatchQueryResult()
+    {
+    }
+
+    /**
+     * Constructor for a query that succeeded.
+     *
+     * @param query Query that was run.
+     * @param status HTTP status for the results.
+     * @param response Results of the query.
+     */
+    public BatchQueryResult(Query query, int status, QueryResponseWrapper response)
+    {
+        this.table = query.getTable();
+        this.where = query.getWhere();
+        this.status = status;
+        this.documents = new ArrayList<>(response);
+        this.numAdditionalResults = response.getNumAdditionalResults();
+        this.nextPageToken = response.getNextPageToken();
+    }
+
+    /**
+     * Constructor for a query that failed.
+     *
+     * @param query Query that was run.
+     * @param status HTTP status for the failure.
+     * @param error Reason the query failed.
+     */
+    public BatchQueryResult(Query query, int status, String error)
+    {
+        this.table = query.getTable();
+        this.where = query.getWhere();
+        this.status = status;
+        this.error = error;
+    }
+
+    /**
+     * @return the table
+     */
+    public String getTable()
+    {
+        return table;
+    }
+
+    /**
+     * @return the where clause
+     */
+    public String getWhere()
+    {
+        return where;
+    }
+
+    /**
+     * @return the HTTP status the query would have returned had it been run
+     * on its own
+     */
+    public int getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return the documents the query returned; null if it failed
+     */
+    public List<Document> getDocuments()
+    {
+        return documents;
+    }
+
+    /**
+     * @return the number of additional results that exist; null if unknown
+     * or if the query failed
+     */
+    public Long getNumAdditionalResults()
+    {
+        return numAdditionalResults;
+    }
+
+    /**
+     * @return the token for fetching the next page of results; null if there
+     * are no more results or the query failed
+     */
+    public String getNextPageToken()
+    {
+        return nextPageToken;
+    }
+
+    /**
+     * @return the reason the query failed; null if it succeeded
+     */
+    public String getError()
+    {
+        return error;
+    }
+
+    /**
+     * @return True if the query failed.
+     */
+    public boolean isError()
+    {
+        return error != null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BatchQueryResult{" + "table=" + table + ", where=" + where + ", status=" + status + ", documents=" + (documents == null ? null : documents.size()) + ", error=" + error + '}';
+    }
+}
@@ -0,0 +1,168 @@
+package com.pearson.docussandra.domain.objects;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk document ingest: how many lines were read and documents
+ * created, and which lines failed and why.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class BulkIngestResult
+{
+
+    /**
+     * Maximum number of line errors that are reported individually; any
+     * further errors are only counted.
+     */
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    /**
+     * Number of non-blank lines read.
+     */
+    private long linesRead;
+
+    /**
+     * Number of documents created.
+     */
+    private long documentsCreated;
+
+    /**
+     * Total number of lines that failed.
+     */
+    private long errorCount;
+
+    /**
+     * The first MAX_REPORTED_ERRORS line errors.
+     */
+    private List<LineError> errors = new ArrayList<>();
+
+    /**
+     * Default constructor.
+     */
+    public BulkIngestResult()
+    {
+    }
+
+    /**
+     * Records that a line was read.
+     */
+    public void lineRead()
+    {
+        linesRead++;
+    }
+
+    /**
+     * Records that a document was created.
+     */
+    public void documentCreated()
+    {
+        documentsCreated++;
+    }
+
+    /**
+     * Records that a line failed.
+     *
+     * @param line Line number (starting at 1) that failed.
+     * @param error Reason the line failed.
+     */
+    public void addError(long line, String error)
+    {
+        errorCount++;
+        if (errors.size() < MAX_REPORTED_ERRORS)
+        {
+            errors.add(new LineError(line, error));
+        }
+    }
+
+    /**
+     * @return the number of non-blank lines read
+     */
+    public long getLinesRead()
+    {
+        return linesRead;
+    }
+
+    /**
+     * @return the number of documents created
+     */
+    public long getDocumentsCreated()
+    {
+        return documentsCreated;
+    }
+
+    /**
+     * @return the total number of lines that failed
+     */
+    public long getErrorCount()
+    {
+        return errorCount;
+    }
+
+    /**
+     * @return the first MAX_REPORTED_ERRORS line errors
+     */
+    public List<LineError> getErrors()
+    {
+        return errors;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "BulkIngestResult{" + "linesRead=" + linesRead + ", documentsCreated=" + documentsCreated + ", errorCount=" + errorCount + '}';
+    }
+
+    /**
+     * A line that could not be ingested.
+     */
+    public static class LineError
+    {
+
+        /**
+         * Line number, starting at 1.
+         */
+        private long line;
+
+        /**
+         * Reason the line failed.
+         */
+        private String error;
+
+        /**
+         * Default constructor for JSON deserializing.
+         */
+        public LineError()
+        {
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param line Line number, starting at 1.
+         * @param error Reason the line failed.
+         */
+        public LineError(long line, String error)
+        {
+            this.line = line;
+            this.error = error;
+        }
+
+        /**
+         * @return the line number, starting at 1
+         */
+        public long getLine()
+        {
+            return line;
+        }
+
+        /**
+         * @return the reason the line failed
+         */
+        public String getError()
+        {
+            return error;
+        }
+    }
+}
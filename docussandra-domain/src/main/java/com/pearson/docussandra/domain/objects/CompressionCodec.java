@@ -0,0 +1,69 @@
+package com.pearson.docussandra.domain.objects;
+
+/**
+ * How the documents of a table are compressed when they are stored. Each
+ * codec has a fixed id that is written in the header of every compressed
+ * blob, so documents written with different codecs (or none) can be read side
+ * by side; changing a table's codec only affects documents written after the
+ * change.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public enum CompressionCodec
+{
+
+    /**
+     * Documents are stored as plain BSON.
+     */
+    NONE(0),
+    /**
+     * Documents are compressed with deflate at its fastest setting.
+     */
+    DEFLATE(1),
+    /**
+     * Documents are compressed with snappy; faster than deflate, but doesn't
+     * compress as well.
+     */
+    SNAPPY(2),
+    /**
+     * Documents are compressed with LZ4's fast compressor; the fastest to read
+     * back.
+     */
+    LZ4(3);
+
+    /**
+     * Id written in the header of compressed blobs.
+     */
+    private final byte id;
+
+    private CompressionCodec(int id)
+    {
+        this.id = (byte) id;
+    }
+
+    /**
+     * @return the id written in the header of compressed blobs
+     */
+    public byte getId()
+    {
+        return id;
+    }
+
+    /**
+     * Looks up a codec by the id written in a blob's header.
+     *
+     * @param id Id to look up.
+     * @return The codec with that id, or null if there isn't one.
+     */
+    public static CompressionCodec forId(byte id)
+    {
+        for (CompressionCodec codec : values())
+        {
+            if (codec.id == id)
+            {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
@@ -42,15 +42,20 @@ public class Index
     //@ChildValidation
     private List<IndexField> fields;
 
-    //Note: not currently supported -- https://github.com/PearsonEducation/Docussandra/issues/10
     /**
      * Consider the index is only concerned with only a partial dataset. In this
      * case, instead of storing the entire BSON payload, we store only a
-     * subset--those listed in setIncludeOnly.
+     * subset--those listed in setIncludeOnly. Queries that only ask for these
+     * fields are answered from the iTable; others read the full documents.
      * https://github.com/PearsonEducation/Docussandra/issues/10
      */
     private List<String> includeOnly;
 
+    /**
+     * What the iTable stores for each document; defaults to a full copy.
+     */
+    private IndexStorageMode storageMode = IndexStorageMode.FULL;
+
     /**
      * Field indicating if this index should be presently considered active.
      */
@@ -208,6 +213,38 @@ public class Index
         this.active = isActive;
     }
 
+    /**
+     * Gets what the iTable stores for each document.
+     *
+     * @return The storage mode.
+     */
+    public IndexStorageMode getStorageMode()
+    {
+        return storageMode;
+    }
+
+    /**
+     * Sets what the iTable stores for each document. Can't be changed once
+     * the index has been created.
+     *
+     * @param storageMode The storage mode.
+     */
+    public void setStorageMode(IndexStorageMode storageMode)
+    {
+        this.storageMode = storageMode;
+    }
+
+    /**
+     * Returns true if the iTable only stores references to documents rather
+     * than copies of them.
+     *
+     * @return
+     */
+    public boolean isReferenceOnly()
+    {
+        return storageMode == IndexStorageMode.REFERENCE;
+    }
+
     @Override
     public void validate()
     {
@@ -245,6 +282,14 @@ public class Index
             }
         }
 
+        if (storageMode == null)
+        {
+            errors.add("'storageMode' must be one of FULL or REFERENCE, if included.");
+        } else if (storageMode == IndexStorageMode.REFERENCE && includeOnly != null)
+        {
+            errors.add("'includeOnly' cannot be used with a REFERENCE index; it doesn't store any of the document.");
+        }
+
         if (!errors.isEmpty())
         {
             throw new ValidationException(errors);
@@ -260,6 +305,7 @@ public class Index
         hash = 97 * hash + (this.isUnique ? 1 : 0);
         hash = 97 * hash + Objects.hashCode(this.fields);
         hash = 97 * hash + Objects.hashCode(this.includeOnly);
+        hash = 97 * hash + Objects.hashCode(this.storageMode);
         hash = 97 * hash + (this.active ? 1 : 0);
         return hash;
     }
@@ -296,6 +342,10 @@ public class Index
         {
             return false;
         }
+        if (this.storageMode != other.storageMode)
+        {
+            return false;
+        }
         if (this.active != other.active)
         {
             return false;
@@ -306,7 +356,7 @@ public class Index
     @Override
     public String toString()
     {
-        return "Index{" + "table=" + table + ", indexName=" + name + ", isUnique=" + isUnique + ", fields=" + fields + ", includeOnly=" + includeOnly + ", active=" + active + '}';
+        return "Index{" + "table=" + table + ", indexName=" + name + ", isUnique=" + isUnique + ", fields=" + fields + ", includeOnly=" + includeOnly + ", storageMode=" + storageMode + ", active=" + active + '}';
     }
 
 }
@@ -0,0 +1,20 @@
+package com.pearson.docussandra.domain.objects;
+
+/**
+ * What an index stores in its iTable for each document.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public enum IndexStorageMode
+{
+
+    /**
+     * A full copy of the document; queries are answered from the iTable alone.
+     */
+    FULL,
+    /**
+     * Only the document's id and indexed fields; queries look each document
+     * up in the document table. Cheaper to write and store, slower to read.
+     */
+    REFERENCE
+}
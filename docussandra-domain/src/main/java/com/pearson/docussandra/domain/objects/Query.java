@@ -29,10 +29,11 @@ public class Query
     private TableReference tables;
 
     /**
-     * Columns to query on.
+     * Columns (document fields) to return; dot notation selects fields in
+     * embedded documents. Null or empty returns the whole document.
      */
     //	@Required("Columns")
-    private List<String> columns;//TODO: https://github.com/PearsonEducation/Docussandra/issues/12
+    private List<String> columns;
 
     /**
      * Where clause of the Query.
@@ -48,6 +49,13 @@ public class Query
      */
     private int offset;
 
+    /**
+     * Opaque continuation token returned with the previous page of results.
+     * When set, the query resumes where that page left off instead of using
+     * the offset; an empty token asks for the first page of token paging.
+     */
+    private String pageToken;
+
     /**
      * Default constructor (needed for automatic serialization).
      */
@@ -189,10 +197,26 @@ public class Query
         this.offset = offset;
     }
 
+    /**
+     * @return the pageToken
+     */
+    public String getPageToken()
+    {
+        return pageToken;
+    }
+
+    /**
+     * @param pageToken the pageToken to set
+     */
+    public void setPageToken(String pageToken)
+    {
+        this.pageToken = pageToken;
+    }
+
     @Override
     public String toString()
     {
-        return "Query{" + "table=" + tables + ", columns=" + columns + ", where=" + where + ", limit=" + limit + ", offset=" + offset + '}';
+        return "Query{" + "table=" + tables + ", columns=" + columns + ", where=" + where + ", limit=" + limit + ", offset=" + offset + ", pageToken=" + pageToken + '}';
     }
 
 }
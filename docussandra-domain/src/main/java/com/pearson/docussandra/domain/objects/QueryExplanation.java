@@ -0,0 +1,401 @@
+package com.pearson.docussandra.domain.objects;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes how a query was planned and run: which index it used and why,
+ * which buckets it read, the CQL it sent, and how much of what it read from
+ * Cassandra was actually returned. Optionally includes a Cassandra trace of
+ * each statement.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class QueryExplanation
+{
+
+    /**
+     * Where clause of the query.
+     */
+    private String where;
+
+    /**
+     * Name of the index the query used.
+     */
+    private String index;
+
+    /**
+     * How the chosen index matched the query: EXACT if the index has exactly
+     * the queried fields, PARTIAL if it has extra fields.
+     */
+    private String indexMatch;
+
+    /**
+     * Every index on the table and whether it could serve the query (EXACT,
+     * PARTIAL or UNUSABLE), in the order they were considered.
+     */
+    private Map<String, String> candidateIndexes = new LinkedHashMap<>();
+
+    /**
+     * The iTable the query read.
+     */
+    private String iTable;
+
+    /**
+     * Buckets the query read.
+     */
+    private List<Long> buckets = new ArrayList<>();
+
+    /**
+     * CQL sent to Cassandra for each bucket.
+     */
+    private String cql;
+
+    /**
+     * Values bound to the CQL, after the bucket.
+     */
+    private List<String> boundValues = new ArrayList<>();
+
+    /**
+     * Limit the query was run with.
+     */
+    private int limit;
+
+    /**
+     * Offset the query was run with.
+     */
+    private long offset;
+
+    /**
+     * Rows read from Cassandra, across the buckets that the query actually
+     * read (a range query stops reading buckets once it has enough rows).
+     */
+    private long rowsRead;
+
+    /**
+     * Rows that would be returned to the client.
+     */
+    private long rowsReturned;
+
+    /**
+     * Rows that were read only to be skipped for the offset.
+     */
+    private long rowsSkipped;
+
+    /**
+     * Total time spent running the query's statements, in milliseconds.
+     */
+    private long elapsedMillis;
+
+    /**
+     * Cassandra trace of each statement that was run; empty unless tracing was
+     * requested.
+     */
+    private List<Trace> traces = new ArrayList<>();
+
+    /**
+     * Default constructor for JSON deserializing.
+     */
+    public QueryExplanation()
+    {
+    }
+
+    public String getWhere()
+    {
+        return where;
+    }
+
+    public void setWhere(String where)
+    {
+        this.where = where;
+    }
+
+    public String getIndex()
+    {
+        return index;
+    }
+
+    public void setIndex(String index)
+    {
+        this.index = index;
+    }
+
+    public String getIndexMatch()
+    {
+        return indexMatch;
+    }
+
+    public void setIndexMatch(String indexMatch)
+    {
+        this.indexMatch = indexMatch;
+    }
+
+    public Map<String, String> getCandidateIndexes()
+    {
+        return candidateIndexes;
+    }
+
+    public void setCandidateIndexes(Map<String, String> candidateIndexes)
+    {
+        this.candidateIndexes = candidateIndexes;
+    }
+
+    public String getITable()
+    {
+        return iTable;
+    }
+
+    public void setITable(String iTable)
+    {
+        this.iTable = iTable;
+    }
+
+    public List<Long> getBuckets()
+    {
+        return buckets;
+    }
+
+    public void setBuckets(List<Long> buckets)
+    {
+        this.buckets = buckets;
+    }
+
+    public String getCql()
+    {
+        return cql;
+    }
+
+    public void setCql(String cql)
+    {
+        this.cql = cql;
+    }
+
+    public List<String> getBoundValues()
+    {
+        return boundValues;
+    }
+
+    public void setBoundValues(List<String> boundValues)
+    {
+        this.boundValues = boundValues;
+    }
+
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    public void setLimit(int limit)
+    {
+        this.limit = limit;
+    }
+
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    public void setOffset(long offset)
+    {
+        this.offset = offset;
+    }
+
+    public long getRowsRead()
+    {
+        return rowsRead;
+    }
+
+    public void setRowsRead(long rowsRead)
+    {
+        this.rowsRead = rowsRead;
+    }
+
+    public long getRowsReturned()
+    {
+        return rowsReturned;
+    }
+
+    public void setRowsReturned(long rowsReturned)
+    {
+        this.rowsReturned = rowsReturned;
+    }
+
+    public long getRowsSkipped()
+    {
+        return rowsSkipped;
+    }
+
+    public void setRowsSkipped(long rowsSkipped)
+    {
+        this.rowsSkipped = rowsSkipped;
+    }
+
+    public long getElapsedMillis()
+    {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis)
+    {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public List<Trace> getTraces()
+    {
+        return traces;
+    }
+
+    public void setTraces(List<Trace> traces)
+    {
+        this.traces = traces;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "QueryExplanation{" + "where=" + where + ", index=" + index + ", indexMatch=" + indexMatch + ", iTable=" + iTable + ", buckets=" + buckets + ", cql=" + cql + ", rowsRead=" + rowsRead + ", rowsReturned=" + rowsReturned + ", rowsSkipped=" + rowsSkipped + ", elapsedMillis=" + elapsedMillis + '}';
+    }
+
+    /**
+     * Cassandra trace of a single statement.
+     */
+    public static class Trace
+    {
+
+        /**
+         * Trace session id; can be used to look the trace up in
+         * system_traces.
+         */
+        private String traceId;
+
+        /**
+         * Bucket the statement read.
+         */
+        private Long bucket;
+
+        /**
+         * Time the coordinator took for the statement, in microseconds.
+         */
+        private int durationMicros;
+
+        /**
+         * Steps the statement went through, in order.
+         */
+        private List<TraceEvent> events = new ArrayList<>();
+
+        /**
+         * Default constructor for JSON deserializing.
+         */
+        public Trace()
+        {
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param traceId Trace session id.
+         * @param bucket Bucket the statement read.
+         * @param durationMicros Time the coordinator took for the statement,
+         * in microseconds.
+         */
+        public Trace(String traceId, Long bucket, int durationMicros)
+        {
+            this.traceId = traceId;
+            this.bucket = bucket;
+            this.durationMicros = durationMicros;
+        }
+
+        public String getTraceId()
+        {
+            return traceId;
+        }
+
+        public Long getBucket()
+        {
+            return bucket;
+        }
+
+        public int getDurationMicros()
+        {
+            return durationMicros;
+        }
+
+        public List<TraceEvent> getEvents()
+        {
+            return events;
+        }
+    }
+
+    /**
+     * A single step of a Cassandra trace.
+     */
+    public static class TraceEvent
+    {
+
+        /**
+         * What happened.
+         */
+        private String description;
+
+        /**
+         * Node it happened on.
+         */
+        private String source;
+
+        /**
+         * Time since the node started on the statement, in microseconds.
+         */
+        private int sourceElapsedMicros;
+
+        /**
+         * Thread it happened on.
+         */
+        private String thread;
+
+        /**
+         * Default constructor for JSON deserializing.
+         */
+        public TraceEvent()
+        {
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param description What happened.
+         * @param source Node it happened on.
+         * @param sourceElapsedMicros Time since the node started on the
+         * statement, in microseconds.
+         * @param thread Thread it happened on.
+         */
+        public TraceEvent(String description, String source, int sourceElapsedMicros, String thread)
+        {
+            this.description = description;
+            this.source = source;
+            this.sourceElapsedMicros = sourceElapsedMicros;
+            this.thread = thread;
+        }
+
+        public String getDescription()
+        {
+            return description;
+        }
+
+        public String getSource()
+        {
+            return source;
+        }
+
+        public int getSourceElapsedMicros()
+        {
+            return sourceElapsedMicros;
+        }
+
+        public String getThread()
+        {
+            return thread;
+        }
+    }
+}
@@ -18,12 +18,20 @@ public class QueryResponseWrapper extends ArrayList<Document>
      */
     private final Long numAdditionalResults;
 
+    /**
+     * Opaque token that can be sent with the next query to fetch the next page
+     * of results. Null if there are no more results or paging was done by
+     * offset.
+     */
+    private final String nextPageToken;
+
     /**
      * Default constructor for JSON deserializing.
      */
     public QueryResponseWrapper()
     {
         this.numAdditionalResults = null;
+        this.nextPageToken = null;
     }
 
     /**
@@ -34,9 +42,24 @@ public class QueryResponseWrapper extends ArrayList<Document>
      * if there are additional results, but the number is unknown.
      */
     public QueryResponseWrapper(List<Document> responseData, Long numAdditionalResults)
+    {
+        this(responseData, numAdditionalResults, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param responseData The actual response data.
+     * @param numAdditionalResults Number of additional results that exist. Null
+     * if there are additional results, but the number is unknown.
+     * @param nextPageToken Token for fetching the next page of results; null if
+     * there are no more results.
+     */
+    public QueryResponseWrapper(List<Document> responseData, Long numAdditionalResults, String nextPageToken)
     {
         super(responseData);
         this.numAdditionalResults = numAdditionalResults;
+        this.nextPageToken = nextPageToken;
     }
 
     /**
@@ -50,4 +73,16 @@ public class QueryResponseWrapper extends ArrayList<Document>
         return numAdditionalResults;
     }
 
+    /**
+     * Opaque token that can be sent with the next query to fetch the next page
+     * of results. Null if there are no more results or paging was done by
+     * offset.
+     *
+     * @return the nextPageToken
+     */
+    public String getNextPageToken()
+    {
+        return nextPageToken;
+    }
+
 }
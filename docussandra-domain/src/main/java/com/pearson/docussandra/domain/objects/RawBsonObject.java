@@ -0,0 +1,247 @@
+package com.pearson.docussandra.domain.objects;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+
+/**
+ * BSONObject backed by the serialized BSON it was read from. Nothing is
+ * decoded until the object is actually accessed; a document that is only read
+ * from the database and written back out as JSON (see
+ * RawBsonObjectSerializer) never gets decoded at all.
+ * <p/>
+ * Once any field is accessed (or the object is modified) the whole document is
+ * decoded and the raw bytes are dropped, after which this behaves exactly like
+ * a BasicBSONObject.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class RawBsonObject extends BasicBSONObject
+{
+
+    /**
+     * The serialized document; null once it has been decoded.
+     */
+    private transient volatile ByteBuffer bytes;
+
+    /**
+     * Constructor.
+     *
+     * @param bytes Serialized BSON document, from its position to its limit.
+     * The buffer is not copied, so it must not be modified afterward.
+     */
+    public RawBsonObject(ByteBuffer bytes)
+    {
+        super();
+        this.bytes = bytes.slice();
+    }
+
+    /**
+     * @return True if this object has been decoded.
+     */
+    public boolean isDecoded()
+    {
+        return bytes == null;
+    }
+
+    /**
+     * Gets the serialized BSON, if this object has not been decoded yet.
+     *
+     * @return A view of the serialized document (not to be modified), or null
+     * if the object has been decoded (and possibly modified) since.
+     */
+    public ByteBuffer getBytes()
+    {
+        return bytes == null ? null : bytes.duplicate();
+    }
+
+    /**
+     * Decodes the serialized document into this object, if that has not been
+     * done yet. Safe to race with other readers, as query results can be
+     * cached and shared between requests.
+     */
+    private void decode()
+    {
+        if (bytes != null)
+        {
+            synchronized (this)
+            {
+                ByteBuffer toDecode = bytes;
+                if (toDecode != null)
+                {
+                    byte[] array = new byte[toDecode.remaining()];
+                    toDecode.duplicate().get(array);
+                    BSONObject decoded = BSON.decode(array);
+                    for (String key : decoded.keySet())
+                    {
+                        super.put(key, decoded.get(key));//not this.put; that would call back into here
+                    }
+                    bytes = null;//only once fully decoded, so readers never see a partial object
+                }
+            }
+        }
+    }
+
+    @Override
+    public Object get(String key)
+    {
+        decode();
+        return super.get(key);
+    }
+
+    @Override
+    public Object get(Object key)
+    {
+        decode();
+        return super.get(key);
+    }
+
+    @Override
+    public boolean containsField(String field)
+    {
+        decode();
+        return super.containsField(field);
+    }
+
+    @Override
+    public boolean containsKey(String key)
+    {
+        decode();
+        return super.containsKey(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        decode();
+        return super.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value)
+    {
+        decode();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public Object put(String key, Object value)
+    {
+        decode();
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map m)
+    {
+        decode();
+        super.putAll(m);
+    }
+
+    @Override
+    public void putAll(BSONObject o)
+    {
+        decode();
+        super.putAll(o);
+    }
+
+    @Override
+    public Object removeField(String key)
+    {
+        decode();
+        return super.removeField(key);
+    }
+
+    @Override
+    public Object remove(Object key)
+    {
+        decode();
+        return super.remove(key);
+    }
+
+    @Override
+    public void clear()
+    {
+        bytes = null;
+        super.clear();
+    }
+
+    @Override
+    public int size()
+    {
+        decode();
+        return super.size();
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        decode();
+        return super.isEmpty();
+    }
+
+    @Override
+    public Set<String> keySet()
+    {
+        decode();
+        return super.keySet();
+    }
+
+    @Override
+    public Collection<Object> values()
+    {
+        decode();
+        return super.values();
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet()
+    {
+        decode();
+        return super.entrySet();
+    }
+
+    @Override
+    public Map toMap()
+    {
+        decode();
+        return super.toMap();
+    }
+
+    @Override
+    public String toString()
+    {
+        decode();
+        return super.toString();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        decode();
+        return super.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        decode();
+        return super.equals(o);
+    }
+
+    /**
+     * Serializes as a plain BasicBSONObject; the raw bytes are not
+     * serializable.
+     *
+     * @return A decoded copy of this object.
+     */
+    private Object writeReplace()
+    {
+        decode();
+        return new BasicBSONObject(this);
+    }
+}
@@ -3,12 +3,16 @@ package com.pearson.docussandra.domain.objects;
 import com.pearson.docussandra.domain.Constants;
 import com.pearson.docussandra.domain.parent.Timestamped;
 import com.pearson.docussandra.domain.parent.Identifiable;
+import com.strategicgains.syntaxe.Validatable;
+import com.strategicgains.syntaxe.ValidationException;
 import com.strategicgains.syntaxe.annotation.ChildValidation;
 import com.strategicgains.syntaxe.annotation.RegexValidation;
 import com.strategicgains.syntaxe.annotation.Required;
 import com.strategicgains.syntaxe.annotation.StringValidation;
 import com.wordnik.swagger.annotations.ApiModel;
 import com.wordnik.swagger.annotations.ApiModelProperty;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import org.restexpress.plugin.hyperexpress.Linkable;
 
@@ -20,7 +24,7 @@ import org.restexpress.plugin.hyperexpress.Linkable;
 @ApiModel(value = "Table",
         description = "Model that defines a table including its name and description.")
 public class Table
-        extends Timestamped implements Linkable, Identifiable
+        extends Timestamped implements Linkable, Identifiable, Validatable
 {
 
     @ApiModelProperty(value = "The database's name",
@@ -47,6 +51,24 @@ public class Table
     // After delete or update, how long should the old versions live?
     private long deleteTtl = 0;
 
+    @ApiModelProperty(value = "Number of versions of each document to keep",
+            notes = "Older versions are pruned when a document is updated. 0 (the default) keeps every version.",
+            dataType = "int",
+            required = false)
+    private int maxVersions = 0;
+
+    @ApiModelProperty(value = "Age in seconds after which old versions of a document are removed",
+            notes = "Old versions are pruned when a document is updated; the current version is always kept. 0 (the default) keeps versions forever.",
+            dataType = "long",
+            required = false)
+    private long maxVersionAge = 0;
+
+    @ApiModelProperty(value = "How documents in this table are compressed when stored",
+            notes = "One of NONE (the default), DEFLATE, SNAPPY or LZ4. Changing it only affects documents written afterwards; documents written either way can be read.",
+            dataType = "String",
+            required = false)
+    private CompressionCodec compression = CompressionCodec.NONE;
+
     /**
      * Default constructor, needed for serialization.
      */
@@ -236,6 +258,9 @@ public class Table
         hash = 59 * hash + Objects.hashCode(this.description);
         hash = 59 * hash + (int) (this.getTtl() ^ (this.getTtl() >>> 32));
         hash = 59 * hash + (int) (this.getDeleteTtl() ^ (this.getDeleteTtl() >>> 32));
+        hash = 59 * hash + this.maxVersions;
+        hash = 59 * hash + (int) (this.maxVersionAge ^ (this.maxVersionAge >>> 32));
+        hash = 59 * hash + Objects.hashCode(this.compression);
         return hash;
     }
 
@@ -277,6 +302,18 @@ public class Table
         {
             return false;
         }
+        if (this.maxVersions != other.maxVersions)
+        {
+            return false;
+        }
+        if (this.maxVersionAge != other.maxVersionAge)
+        {
+            return false;
+        }
+        if (this.compression != other.compression)
+        {
+            return false;
+        }
         return true;
     }
 
@@ -312,4 +349,103 @@ public class Table
         this.deleteTtl = deleteTtl;
     }
 
+    /**
+     * Gets the number of versions of each document to keep.
+     *
+     * @return The number of versions to keep; 0 means keep every version.
+     */
+    public int getMaxVersions()
+    {
+        return maxVersions;
+    }
+
+    /**
+     * Sets the number of versions of each document to keep.
+     *
+     * @param maxVersions The number of versions to keep; 0 means keep every
+     * version.
+     */
+    public void setMaxVersions(int maxVersions)
+    {
+        this.maxVersions = maxVersions;
+    }
+
+    /**
+     * Gets the age after which old versions of a document are removed.
+     *
+     * @return Age in seconds; 0 means keep old versions forever.
+     */
+    public long getMaxVersionAge()
+    {
+        return maxVersionAge;
+    }
+
+    /**
+     * Sets the age after which old versions of a document are removed. The
+     * current version of a document is kept no matter how old it is.
+     *
+     * @param maxVersionAge Age in seconds; 0 means keep old versions forever.
+     */
+    public void setMaxVersionAge(long maxVersionAge)
+    {
+        this.maxVersionAge = maxVersionAge;
+    }
+
+    /**
+     * Gets how documents in this table are compressed when stored.
+     *
+     * @return The codec to compress with.
+     */
+    public CompressionCodec getCompression()
+    {
+        return compression;
+    }
+
+    /**
+     * Sets how documents in this table are compressed when stored. Documents
+     * that were already written keep their old compression until they are
+     * next updated.
+     *
+     * @param compression The codec to compress with.
+     */
+    public void setCompression(CompressionCodec compression)
+    {
+        this.compression = compression;
+    }
+
+    /**
+     * Returns true if old versions of documents in this table get pruned.
+     *
+     * @return
+     */
+    public boolean hasVersionRetention()
+    {
+        return maxVersions > 0 || maxVersionAge > 0;
+    }
+
+    /**
+     * Validates the version retention settings.
+     */
+    @Override
+    public void validate()
+    {
+        final List<String> errors = new ArrayList<>();
+        if (maxVersions < 0)
+        {
+            errors.add("'maxVersions' cannot be negative.");
+        }
+        if (maxVersionAge < 0)
+        {
+            errors.add("'maxVersionAge' cannot be negative.");
+        }
+        if (compression == null)
+        {
+            errors.add("'compression' must be one of NONE, DEFLATE, SNAPPY or LZ4, if included.");
+        }
+        if (!errors.isEmpty())
+        {
+            throw new ValidationException(errors);
+        }
+    }
+
 }
@@ -1,95 +1,76 @@
 package com.pearson.docussandra.domain.objects;
 
+import com.strategicgains.syntaxe.ValidationException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
  * Object that represents a CQL where clause to the extent that we need to
  * process it.
+ * <p/>
+ * The clause is parsed in a single pass: a small lexer hands tokens to a
+ * recursive descent parser, which builds the predicates and writes the bound
+ * statement syntax as it goes. Supported syntax:
+ * <pre>
+ * clause    := group (AND group)* [ORDER BY field [ASC|DESC] (, field [ASC|DESC])*]
+ * group     := '(' group (AND group)* ')' | predicate
+ * predicate := field (= | &lt; | &lt;= | &gt; | &gt;=) literal
+ *            | field IN '(' literal (, literal)* ')'
+ * literal   := 'quoted string' | number | true | false
+ * </pre>
+ * Quotes inside a string literal can be escaped either CQL style ('') or
+ * with a backslash (\'). Parentheses only group predicates; since every
+ * conjunction is an AND they are not carried over into the bound statement.
  *
  * @author https://github.com/JeffreyDeYoung
  */
 public class WhereClause
 {
 
-    private static final int FIELD = 0;
-    private static final int OPERATOR = 1;
-    private static final int VALUE = 2;
-    private static final int CONJUNCTION = 3;
-    private static final int END = 4;
-
     private final String whereClause;
 
     private String boundStatementSyntax = "";
 
     /**
-     * Field Names in a where clause. Corresponds to values.
+     * Field Names in a where clause, one per predicate. Corresponds to
+     * operators.
      */
     private ArrayList<String> fields = new ArrayList<>();
     /**
-     * Field Values in a where clause. Corresponds to fields.
+     * Field Values in a where clause, one per bind variable. Corresponds to
+     * bindFields (and to fields, unless there is an IN predicate).
      */
     private ArrayList<String> values = new ArrayList<>();
+    /**
+     * Operators in a where clause. Corresponds to fields.
+     */
+    private ArrayList<String> operators = new ArrayList<>();
+    /**
+     * Field Names for each bind variable in a where clause. Corresponds to
+     * values.
+     */
+    private ArrayList<String> bindFields = new ArrayList<>();
+    /**
+     * Predicates in a where clause, in the order they appear.
+     */
+    private ArrayList<WherePredicate> predicates = new ArrayList<>();
+    /**
+     * True if the clause orders its results descending. Cassandra only allows
+     * an ORDER BY that keeps or reverses the whole clustering order, so the
+     * direction of the first field is the direction of the results.
+     */
+    private boolean descending = false;
 
     public WhereClause(String whereClause)
     {
         this.whereClause = whereClause;
-        parse(whereClause);
-    }
-
-    //TODO: this will need improvment; handle exceptions https://github.com/PearsonEducation/Docussandra/issues/13
-    private void parse(String whereClause)
-    {
-
-        StringBuilder boundStatementBuilder = new StringBuilder();
-        //foo = 'fooish' AND bar < 'barish'... [ORDER BY] foo
-        String[] tokens = whereClause.split("\\Q \\E");
-        int currentOperator = FIELD;
-        for (int i = 0; i < tokens.length; i++)
+        if (whereClause == null)
         {
-            String token = tokens[i];
-            switch (currentOperator)
-            {
-                case FIELD:
-                    fields.add(token);
-                    boundStatementBuilder.append(token);
-                    currentOperator = OPERATOR;
-                    break;
-                case OPERATOR:
-                    boundStatementBuilder.append(token);
-                    currentOperator = VALUE;
-                    break;
-                case VALUE:
-                    boundStatementBuilder.append("?");
-                    StringBuilder sb = new StringBuilder();
-                    if (token.charAt(0) == '\'')
-                    {
-                        token = token.substring(1);//take out the quote
-                    }
-                    while (token.charAt(token.length() - 1) != '\'')
-                    {
-                        sb.append(token);
-                        sb.append(" ");//put the spaces back in
-                        token = tokens[++i];
-                    }
-                    token = token.substring(0, token.length() - 1);//take out the quote
-                    sb.append(token);//last token
-                    values.add(sb.toString());
-                    currentOperator = CONJUNCTION;
-                    break;
-                case CONJUNCTION:
-                    boundStatementBuilder.append(token);
-                    currentOperator = FIELD;
-                    //TODO: we could have CQL injection here; it pretty much just appends the end of the statement; should check specifically
-                    break;
-                default:// this should not run; defaults to conjunction
-                    boundStatementBuilder.append(token);
-                    break;
-            }
-            boundStatementBuilder.append(" ");//tokens need to be re-space seperated
+            throw new ValidationException("A where clause is required.");
         }
-        boundStatementSyntax = boundStatementBuilder.toString().trim();
-
+        new Parser(whereClause).parse();
     }
 
     public String getBoundStatementSyntax()
@@ -98,7 +79,8 @@ public class WhereClause
     }
 
     /**
-     * Field Names in a where clause. Corresponds to values.
+     * Field Names in a where clause, one per predicate. Corresponds to
+     * operators.
      *
      * @return the fields
      */
@@ -108,7 +90,8 @@ public class WhereClause
     }
 
     /**
-     * Field Values in a where clause. Corresponds to fields.
+     * Field Values in a where clause, one per bind variable. Corresponds to
+     * bindFields (and to fields, unless there is an IN predicate).
      *
      * @return the values
      */
@@ -117,6 +100,49 @@ public class WhereClause
         return values;
     }
 
+    /**
+     * Operators in a where clause. Corresponds to fields.
+     *
+     * @return the operators
+     */
+    public ArrayList<String> getOperators()
+    {
+        return operators;
+    }
+
+    /**
+     * Field Names for each bind variable in a where clause. Corresponds to
+     * values.
+     *
+     * @return the bindFields
+     */
+    public ArrayList<String> getBindFields()
+    {
+        return bindFields;
+    }
+
+    /**
+     * Predicates in a where clause, in the order they appear.
+     *
+     * @return the predicates
+     */
+    public List<WherePredicate> getPredicates()
+    {
+        return Collections.unmodifiableList(predicates);
+    }
+
+    /**
+     * True if the clause orders its results descending. Cassandra only allows
+     * an ORDER BY that keeps or reverses the whole clustering order, so the
+     * direction of the first field is the direction of the results.
+     *
+     * @return the descending
+     */
+    public boolean isDescending()
+    {
+        return descending;
+    }
+
     /**
      * @return the original where clause passed in. Use as a reference only.
      */
@@ -128,7 +154,7 @@ public class WhereClause
     @Override
     public String toString()
     {
-        return "WhereClause{" + "whereClause=" + whereClause + ", boundStatementSyntax=" + boundStatementSyntax + ", fields=" + fields + ", values=" + values + '}';
+        return "WhereClause{" + "whereClause=" + whereClause + ", boundStatementSyntax=" + boundStatementSyntax + ", fields=" + fields + ", operators=" + operators + ", values=" + values + '}';
     }
 
     @Override
@@ -173,4 +199,387 @@ public class WhereClause
         return true;
     }
 
+    //token types
+    private static final int EOF = 0;
+    private static final int IDENTIFIER = 1;
+    private static final int STRING = 2;
+    private static final int NUMBER = 3;
+    private static final int OPERATOR = 4;
+    private static final int OPEN_PAREN = 5;
+    private static final int CLOSE_PAREN = 6;
+    private static final int COMMA = 7;
+
+    /**
+     * Lexer and parser for a where clause. Populates the enclosing
+     * WhereClause.
+     */
+    private final class Parser
+    {
+
+        private final String in;
+        private final int length;
+        private final StringBuilder out;
+        /**
+         * Position of the next character to lex.
+         */
+        private int pos = 0;
+        /**
+         * Type of the current token.
+         */
+        private int type;
+        /**
+         * Text of the current token; for strings, the unescaped value.
+         */
+        private String text;
+        /**
+         * Position where the current token started; for error messages.
+         */
+        private int tokenStart;
+
+        Parser(String in)
+        {
+            this.in = in;
+            this.length = in.length();
+            this.out = new StringBuilder(length);
+            advance();
+        }
+
+        void parse()
+        {
+            parseConjunction(true);
+            if (isKeyword("ORDER"))
+            {
+                parseOrderBy();
+            }
+            if (type != EOF)
+            {
+                throw error("Unexpected '" + text + "'");
+            }
+            if (predicates.isEmpty())
+            {
+                throw error("At least one predicate is required");
+            }
+            boundStatementSyntax = out.toString();
+        }
+
+        private void parseConjunction(boolean first)
+        {
+            parseGroup(first ? null : "AND");
+            while (isKeyword("AND"))
+            {
+                advance();
+                parseGroup("AND");
+            }
+            if (isKeyword("OR"))
+            {
+                throw error("OR is not supported; predicates can only be joined with AND");
+            }
+        }
+
+        private void parseGroup(String conjunction)
+        {
+            if (type == OPEN_PAREN)
+            {
+                advance();
+                parseConjunction(conjunction == null);
+                expect(CLOSE_PAREN, "')'");
+            } else
+            {
+                parsePredicate(conjunction);
+            }
+        }
+
+        private void parsePredicate(String conjunction)
+        {
+            if (type != IDENTIFIER || isReserved())
+            {
+                throw error("Expected a field name");
+            }
+            String field = text;
+            advance();
+            String operator;
+            List<WhereLiteral> literals;
+            if (type == OPERATOR)
+            {
+                operator = text;
+                advance();
+                literals = Collections.singletonList(parseLiteral());
+            } else if (isKeyword("IN"))
+            {
+                operator = "IN";
+                advance();
+                expect(OPEN_PAREN, "'(' after IN");
+                literals = new ArrayList<>(4);
+                literals.add(parseLiteral());
+                while (type == COMMA)
+                {
+                    advance();
+                    literals.add(parseLiteral());
+                }
+                expect(CLOSE_PAREN, "')'");
+            } else
+            {
+                throw error("Expected an operator after '" + field + "'");
+            }
+            //write out the bound syntax
+            if (conjunction != null)
+            {
+                out.append(' ').append(conjunction).append(' ');
+            }
+            out.append(field).append(' ').append(operator);
+            if (literals.size() == 1 && !operator.equals("IN"))
+            {
+                out.append(" ?");
+            } else
+            {
+                out.append(" (");
+                for (int i = 0; i < literals.size(); i++)
+                {
+                    out.append(i == 0 ? "?" : ", ?");
+                }
+                out.append(')');
+            }
+            for (WhereLiteral literal : literals)
+            {
+                values.add(literal.getValue());
+                bindFields.add(field);
+            }
+            fields.add(field);
+            operators.add(operator);
+            predicates.add(new WherePredicate(conjunction, field, operator, literals));
+        }
+
+        private WhereLiteral parseLiteral()
+        {
+            WhereLiteral literal;
+            if (type == STRING)
+            {
+                literal = new WhereLiteral(text, WhereLiteral.Type.STRING);
+            } else if (type == NUMBER)
+            {
+                literal = new WhereLiteral(text, WhereLiteral.Type.NUMBER);
+            } else if (isKeyword("TRUE") || isKeyword("FALSE"))
+            {
+                literal = new WhereLiteral(text.toLowerCase(), WhereLiteral.Type.BOOLEAN);
+            } else
+            {
+                throw error("Expected a value");
+            }
+            advance();
+            return literal;
+        }
+
+        private void parseOrderBy()
+        {
+            advance();
+            if (!isKeyword("BY"))
+            {
+                throw error("Expected BY after ORDER");
+            }
+            advance();
+            out.append(" ORDER BY ");
+            boolean first = true;
+            do
+            {
+                if (type == COMMA)
+                {
+                    out.append(", ");
+                    advance();
+                }
+                if (type != IDENTIFIER || isReserved())
+                {
+                    throw error("Expected a field name to order by");
+                }
+                out.append(text);
+                advance();
+                if (isKeyword("ASC") || isKeyword("DESC"))
+                {
+                    if (first)
+                    {
+                        descending = isKeyword("DESC");
+                    }
+                    out.append(' ').append(text.toUpperCase());
+                    advance();
+                }
+                first = false;
+            } while (type == COMMA);
+        }
+
+        private void expect(int expected, String description)
+        {
+            if (type != expected)
+            {
+                throw error("Expected " + description);
+            }
+            advance();
+        }
+
+        private boolean isKeyword(String keyword)
+        {
+            return type == IDENTIFIER && keyword.equalsIgnoreCase(text);
+        }
+
+        private boolean isReserved()
+        {
+            return isKeyword("AND") || isKeyword("OR") || isKeyword("IN") || isKeyword("ORDER")
+                    || isKeyword("BY") || isKeyword("ASC") || isKeyword("DESC") || isKeyword("TRUE") || isKeyword("FALSE");
+        }
+
+        private ValidationException error(String message)
+        {
+            String near = tokenStart < length ? " at position " + tokenStart : " at end of input";
+            return new ValidationException("Invalid where clause: " + message + near + ": " + in);
+        }
+
+        /**
+         * Moves to the next token.
+         */
+        private void advance()
+        {
+            while (pos < length && Character.isWhitespace(in.charAt(pos)))
+            {
+                pos++;
+            }
+            tokenStart = pos;
+            if (pos >= length)
+            {
+                type = EOF;
+                text = null;
+                return;
+            }
+            char c = in.charAt(pos);
+            switch (c)
+            {
+                case '\'':
+                    type = STRING;
+                    text = readString();
+                    return;
+                case '(':
+                    pos++;
+                    type = OPEN_PAREN;
+                    text = "(";
+                    return;
+                case ')':
+                    pos++;
+                    type = CLOSE_PAREN;
+                    text = ")";
+                    return;
+                case ',':
+                    pos++;
+                    type = COMMA;
+                    text = ",";
+                    return;
+                case '=':
+                    pos++;
+                    type = OPERATOR;
+                    text = "=";
+                    return;
+                case '<':
+                case '>':
+                    pos++;
+                    if (pos < length && in.charAt(pos) == '=')
+                    {
+                        pos++;
+                        text = c == '<' ? "<=" : ">=";
+                    } else
+                    {
+                        text = c == '<' ? "<" : ">";
+                    }
+                    type = OPERATOR;
+                    return;
+                default:
+                    break;
+            }
+            if (isNumberStart(c))
+            {
+                pos++;
+                while (pos < length && isNumberPart(in.charAt(pos)))
+                {
+                    pos++;
+                }
+                type = NUMBER;
+                text = in.substring(tokenStart, pos);
+            } else if (Character.isLetter(c) || c == '_')
+            {
+                pos++;
+                while (pos < length && isIdentifierPart(in.charAt(pos)))
+                {
+                    pos++;
+                }
+                type = IDENTIFIER;
+                text = in.substring(tokenStart, pos);
+            } else
+            {
+                text = String.valueOf(c);
+                throw error("Unexpected '" + c + "'");
+            }
+        }
+
+        /**
+         * Reads a quoted string starting at the current position. Only
+         * allocates a builder if the string actually contains an escape.
+         */
+        private String readString()
+        {
+            pos++;//opening quote
+            StringBuilder sb = null;
+            int segmentStart = pos;
+            while (pos < length)
+            {
+                char c = in.charAt(pos);
+                if (c == '\\' && pos + 1 < length && (in.charAt(pos + 1) == '\'' || in.charAt(pos + 1) == '\\'))
+                {//backslash escape
+                    sb = appendSegment(sb, segmentStart, pos).append(in.charAt(pos + 1));
+                    pos += 2;
+                    segmentStart = pos;
+                } else if (c == '\'')
+                {
+                    if (pos + 1 < length && in.charAt(pos + 1) == '\'')
+                    {//CQL style doubled quote
+                        sb = appendSegment(sb, segmentStart, pos).append('\'');
+                        pos += 2;
+                        segmentStart = pos;
+                    } else
+                    {//closing quote
+                        String value = sb == null ? in.substring(segmentStart, pos) : appendSegment(sb, segmentStart, pos).toString();
+                        pos++;
+                        return value;
+                    }
+                } else
+                {
+                    pos++;
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private StringBuilder appendSegment(StringBuilder sb, int start, int end)
+        {
+            if (sb == null)
+            {
+                sb = new StringBuilder(end - start + 16);
+            }
+            return sb.append(in, start, end);
+        }
+
+        private boolean isNumberStart(char c)
+        {
+            if (Character.isDigit(c))
+            {
+                return true;
+            }
+            return (c == '-' || c == '.') && pos + 1 < length && Character.isDigit(in.charAt(pos + 1));
+        }
+
+        private boolean isNumberPart(char c)
+        {
+            return Character.isDigit(c) || c == '.' || c == 'e' || c == 'E'
+                    || ((c == '-' || c == '+') && (in.charAt(pos - 1) == 'e' || in.charAt(pos - 1) == 'E'));
+        }
+
+        private boolean isIdentifierPart(char c)
+        {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$';
+        }
+    }
 }
@@ -0,0 +1,109 @@
+package com.pearson.docussandra.domain.objects;
+
+import java.util.Objects;
+
+/**
+ * A literal value from a where clause, along with the kind of literal it was
+ * written as.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class WhereLiteral
+{
+
+    /**
+     * The kinds of literals that a where clause can contain.
+     */
+    public enum Type
+    {
+
+        /**
+         * A quoted string, eg: 'foo'.
+         */
+        STRING,
+        /**
+         * An unquoted number, eg: 42 or -1.5.
+         */
+        NUMBER,
+        /**
+         * An unquoted true or false.
+         */
+        BOOLEAN
+    }
+
+    /**
+     * Value of the literal, with any quotes and escapes removed.
+     */
+    private final String value;
+
+    /**
+     * The kind of literal this was written as.
+     */
+    private final Type type;
+
+    /**
+     * Constructor.
+     *
+     * @param value Value of the literal, with any quotes and escapes removed.
+     * @param type The kind of literal this was written as.
+     */
+    public WhereLiteral(String value, Type type)
+    {
+        this.value = value;
+        this.type = type;
+    }
+
+    /**
+     * Value of the literal, with any quotes and escapes removed.
+     *
+     * @return the value
+     */
+    public String getValue()
+    {
+        return value;
+    }
+
+    /**
+     * The kind of literal this was written as.
+     *
+     * @return the type
+     */
+    public Type getType()
+    {
+        return type;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WhereLiteral{" + "value=" + value + ", type=" + type + '}';
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 3;
+        hash = 59 * hash + Objects.hashCode(this.value);
+        hash = 59 * hash + Objects.hashCode(this.type);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == null)
+        {
+            return false;
+        }
+        if (getClass() != obj.getClass())
+        {
+            return false;
+        }
+        final WhereLiteral other = (WhereLiteral) obj;
+        if (!Objects.equals(this.value, other.value))
+        {
+            return false;
+        }
+        return this.type == other.type;
+    }
+}
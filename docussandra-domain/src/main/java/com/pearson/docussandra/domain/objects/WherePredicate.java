@@ -0,0 +1,137 @@
+package com.pearson.docussandra.domain.objects;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A single predicate in a where clause, eg: <code>foo = 'bar'</code> or
+ * <code>foo IN ('bar', 'baz')</code>.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class WherePredicate
+{
+
+    /**
+     * Conjunction joining this predicate to the one before it; null for the
+     * first predicate.
+     */
+    private final String conjunction;
+
+    /**
+     * Field that this predicate is on.
+     */
+    private final String field;
+
+    /**
+     * Operator for this predicate (=, &lt;, &lt;=, &gt;, &gt;= or IN).
+     */
+    private final String operator;
+
+    /**
+     * Literal(s) the field is compared to; only IN has more than one.
+     */
+    private final List<WhereLiteral> literals;
+
+    /**
+     * Constructor.
+     *
+     * @param conjunction Conjunction joining this predicate to the one before
+     * it; null for the first predicate.
+     * @param field Field that this predicate is on.
+     * @param operator Operator for this predicate.
+     * @param literals Literal(s) the field is compared to.
+     */
+    public WherePredicate(String conjunction, String field, String operator, List<WhereLiteral> literals)
+    {
+        this.conjunction = conjunction;
+        this.field = field;
+        this.operator = operator;
+        this.literals = literals;
+    }
+
+    /**
+     * Conjunction joining this predicate to the one before it; null for the
+     * first predicate.
+     *
+     * @return the conjunction
+     */
+    public String getConjunction()
+    {
+        return conjunction;
+    }
+
+    /**
+     * Field that this predicate is on.
+     *
+     * @return the field
+     */
+    public String getField()
+    {
+        return field;
+    }
+
+    /**
+     * Operator for this predicate (=, &lt;, &lt;=, &gt;, &gt;= or IN).
+     *
+     * @return the operator
+     */
+    public String getOperator()
+    {
+        return operator;
+    }
+
+    /**
+     * Literal(s) the field is compared to; only IN has more than one.
+     *
+     * @return the literals
+     */
+    public List<WhereLiteral> getLiterals()
+    {
+        return literals;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "WherePredicate{" + "conjunction=" + conjunction + ", field=" + field + ", operator=" + operator + ", literals=" + literals + '}';
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int hash = 7;
+        hash = 41 * hash + Objects.hashCode(this.conjunction);
+        hash = 41 * hash + Objects.hashCode(this.field);
+        hash = 41 * hash + Objects.hashCode(this.operator);
+        hash = 41 * hash + Objects.hashCode(this.literals);
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == null)
+        {
+            return false;
+        }
+        if (getClass() != obj.getClass())
+        {
+            return false;
+        }
+        final WherePredicate other = (WherePredicate) obj;
+        if (!Objects.equals(this.conjunction, other.conjunction))
+        {
+            return false;
+        }
+        if (!Objects.equals(this.field, other.field))
+        {
+            return false;
+        }
+        if (!Objects.equals(this.operator, other.operator))
+        {
+            return false;
+        }
+        return Objects.equals(this.literals, other.literals);
+    }
+}
@@ -0,0 +1,129 @@
+package com.pearson.docussandra.domain.seralization;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import org.bson.BSON;
+import org.bson.BSONObject;
+
+/**
+ * Low level helpers for walking serialized BSON in place. All positions are
+ * absolute indexes into the buffer, and buffers are expected to be little
+ * endian.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class BsonReader
+{
+
+    private BsonReader()
+    {
+    }
+
+    /**
+     * Finds the end of a null terminated string.
+     *
+     * @param in Buffer to read.
+     * @param pos Position of the first byte of the string.
+     * @return The position of the terminating 0x00.
+     */
+    public static int cstringEnd(ByteBuffer in, int pos)
+    {
+        while (in.get(pos) != 0)
+        {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Reads a UTF-8 string.
+     *
+     * @param in Buffer to read.
+     * @param start Position of the first byte of the string.
+     * @param end Position just past the last byte of the string.
+     * @return The string.
+     */
+    public static String readString(ByteBuffer in, int start, int end)
+    {
+        if (in.hasArray())
+        {
+            return new String(in.array(), in.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+        {
+            bytes[i] = in.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Determines the encoded length of a BSON element value from its type.
+     *
+     * @param in Buffer to read.
+     * @param type BSON type of the element.
+     * @param pos Position of the first byte of the value.
+     * @return The number of bytes the value takes up.
+     */
+    public static int valueLength(ByteBuffer in, byte type, int pos)
+    {
+        switch (type)
+        {
+            case BSON.NUMBER:
+            case BSON.DATE:
+            case BSON.TIMESTAMP:
+            case BSON.NUMBER_LONG:
+                return 8;
+            case BSON.STRING:
+            case BSON.CODE:
+            case BSON.SYMBOL:
+                return 4 + in.getInt(pos);
+            case BSON.OBJECT:
+            case BSON.ARRAY:
+            case BSON.CODE_W_SCOPE:
+                return in.getInt(pos);
+            case BSON.BINARY:
+                return 4 + 1 + in.getInt(pos);
+            case BSON.UNDEFINED:
+            case BSON.NULL:
+            case BSON.MINKEY:
+            case BSON.MAXKEY:
+                return 0;
+            case BSON.OID:
+                return 12;
+            case BSON.BOOLEAN:
+                return 1;
+            case BSON.REGEX:
+                return cstringEnd(in, cstringEnd(in, pos) + 1) + 1 - pos;
+            case BSON.REF:
+                return 4 + in.getInt(pos) + 12;
+            case BSON.NUMBER_INT:
+                return 4;
+            default:
+                throw new IllegalArgumentException("Unsupported BSON type: " + type);
+        }
+    }
+
+    /**
+     * Decodes a single element with the regular BSON decoder, for types that
+     * are not worth handling by hand.
+     *
+     * @param in Buffer to read.
+     * @param elementStart Position of the element's type byte.
+     * @param elementEnd Position just past the element's value.
+     * @param name Name of the element.
+     * @return The decoded value.
+     */
+    public static Object decodeElement(ByteBuffer in, int elementStart, int elementEnd, String name)
+    {
+        ByteBuffer doc = ByteBuffer.allocate(4 + elementEnd - elementStart + 1).order(ByteOrder.LITTLE_ENDIAN);
+        doc.putInt(doc.capacity());
+        ByteBuffer element = in.duplicate();
+        element.limit(elementEnd).position(elementStart);
+        doc.put(element);
+        doc.put((byte) 0);
+        BSONObject decoded = BSON.decode(doc.array());
+        return decoded.get(name);
+    }
+}
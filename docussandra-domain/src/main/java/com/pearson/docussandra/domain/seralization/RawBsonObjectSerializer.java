@@ -0,0 +1,106 @@
+package com.pearson.docussandra.domain.seralization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.pearson.docussandra.domain.objects.RawBsonObject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.bson.BSON;
+
+/**
+ * Writes a RawBsonObject as JSON by transcoding its serialized BSON straight to
+ * the generator, without decoding it into Java objects first. Produces the
+ * same JSON as serializing the decoded document as a map would. Objects that
+ * have already been decoded are serialized as a regular map.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class RawBsonObjectSerializer
+        extends JsonSerializer<RawBsonObject>
+{
+
+    @Override
+    public void serialize(RawBsonObject object, JsonGenerator json, SerializerProvider provider)
+            throws IOException, JsonProcessingException
+    {
+        ByteBuffer bytes = object.getBytes();
+        if (bytes == null)
+        {
+            provider.defaultSerializeValue(object.toMap(), json);
+            return;
+        }
+        writeDocument(bytes.order(ByteOrder.LITTLE_ENDIAN), 0, false, json, provider);
+    }
+
+    private void writeDocument(ByteBuffer in, int start, boolean isArray, JsonGenerator json, SerializerProvider provider)
+            throws IOException
+    {
+        int end = start + in.getInt(start) - 1;//position of the trailing 0x00
+        if (isArray)
+        {
+            json.writeStartArray();
+        } else
+        {
+            json.writeStartObject();
+        }
+        int pos = start + 4;
+        while (pos < end)
+        {
+            int elementStart = pos;
+            byte type = in.get(pos++);
+            int nameEnd = BsonReader.cstringEnd(in, pos);
+            String name = isArray ? null : BsonReader.readString(in, pos, nameEnd);
+            pos = nameEnd + 1;
+            int valueEnd = pos + BsonReader.valueLength(in, type, pos);
+            if (name != null)
+            {
+                json.writeFieldName(name);
+            }
+            switch (type)
+            {
+                case BSON.STRING:
+                    json.writeString(BsonReader.readString(in, pos + 4, valueEnd - 1));
+                    break;
+                case BSON.NUMBER:
+                    json.writeNumber(in.getDouble(pos));
+                    break;
+                case BSON.NUMBER_INT:
+                    json.writeNumber(in.getInt(pos));
+                    break;
+                case BSON.NUMBER_LONG:
+                    json.writeNumber(in.getLong(pos));
+                    break;
+                case BSON.BOOLEAN:
+                    json.writeBoolean(in.get(pos) != 0);
+                    break;
+                case BSON.NULL:
+                    json.writeNull();
+                    break;
+                case BSON.OBJECT:
+                    writeDocument(in, pos, false, json, provider);
+                    break;
+                case BSON.ARRAY:
+                    writeDocument(in, pos, true, json, provider);
+                    break;
+                case BSON.DATE:
+                    provider.defaultSerializeDateValue(in.getLong(pos), json);
+                    break;
+                default://rare types; let the regular decoder and serializers deal with them
+                    String elementName = name != null ? name : BsonReader.readString(in, elementStart + 1, nameEnd);
+                    provider.defaultSerializeValue(BsonReader.decodeElement(in, elementStart, valueEnd, elementName), json);
+                    break;
+            }
+            pos = valueEnd;
+        }
+        if (isArray)
+        {
+            json.writeEndArray();
+        } else
+        {
+            json.writeEndObject();
+        }
+    }
+}
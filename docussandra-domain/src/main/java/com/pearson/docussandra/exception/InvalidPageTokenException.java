@@ -0,0 +1,35 @@
+package com.pearson.docussandra.exception;
+
+/**
+ * Thrown when a query continuation (page) token cannot be decoded, or does not
+ * belong to the query it was submitted with.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class InvalidPageTokenException
+        extends RepositoryException
+{
+
+    private static final long serialVersionUID = 3146815253418734583L;
+
+    public InvalidPageTokenException()
+    {
+    }
+
+    /**
+     * @param message
+     */
+    public InvalidPageTokenException(String message)
+    {
+        super(message);
+    }
+
+    /**
+     * @param message
+     * @param cause
+     */
+    public InvalidPageTokenException(String message, Throwable cause)
+    {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,98 @@
+package com.pearson.docussandra.docussandra.domain;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.mongodb.util.JSON;
+import com.pearson.docussandra.domain.objects.RawBsonObject;
+import com.pearson.docussandra.domain.seralization.RawBsonObjectSerializer;
+import java.nio.ByteBuffer;
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class RawBsonObjectTest
+{
+
+    private static final String DOC = "{\"greeting\":\"hello \\\"world\\\" é\", \"count\": 5, \"big\": 12345678901, \"ratio\": 0.5, \"flag\": true, \"nothing\": null,"
+            + " \"when\": {\"$date\": \"2015-06-01T12:00:00.000Z\"}, \"oid\": {\"$oid\": \"5571c4d2e4b0e3a3c2a1b0f1\"},"
+            + " \"tags\": [\"a\", 2, {\"nested\": false}], \"address\": {\"city\": \"Denver\", \"geo\": {\"lat\": 39.7, \"lon\": -104.9}}}";
+
+    private ObjectMapper mapper;
+
+    public RawBsonObjectTest()
+    {
+    }
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+    }
+
+    @AfterClass
+    public static void tearDownClass()
+    {
+    }
+
+    @Before
+    public void setUp()
+    {
+        mapper = new ObjectMapper();
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(RawBsonObject.class, new RawBsonObjectSerializer());
+        mapper.registerModule(module);
+    }
+
+    @After
+    public void tearDown()
+    {
+    }
+
+    private static BSONObject parse()
+    {
+        return BSON.decode(BSON.encode((BSONObject) JSON.parse(DOC)));
+    }
+
+    /**
+     * Test that serializing a RawBsonObject gives the same JSON as serializing
+     * the decoded object, without decoding it.
+     */
+    @Test
+    public void testSerializeMatchesDecoded() throws Exception
+    {
+        System.out.println("testSerializeMatchesDecoded");
+        BSONObject decoded = parse();
+        RawBsonObject raw = new RawBsonObject(ByteBuffer.wrap(BSON.encode(decoded)));
+        String expected = mapper.writeValueAsString(decoded);
+        String actual = mapper.writeValueAsString(raw);
+        assertEquals(expected, actual);
+        assertFalse(raw.isDecoded());
+    }
+
+    /**
+     * Test that a RawBsonObject decodes on access and can then be modified.
+     */
+    @Test
+    public void testDecodeOnAccess() throws Exception
+    {
+        System.out.println("testDecodeOnAccess");
+        BSONObject decoded = parse();
+        RawBsonObject raw = new RawBsonObject(ByteBuffer.wrap(BSON.encode(decoded)));
+        assertFalse(raw.isDecoded());
+        assertEquals("Denver", ((BSONObject) raw.get("address")).get("city"));
+        assertTrue(raw.isDecoded());
+        assertNull(raw.getBytes());
+        assertEquals(decoded, raw);
+        assertEquals(raw, decoded);
+        raw.put("greeting", "bye");
+        assertTrue(mapper.writeValueAsString(raw).contains("\"greeting\":\"bye\""));
+    }
+}
@@ -0,0 +1,136 @@
+package com.pearson.docussandra.docussandra.domain;
+
+import com.pearson.docussandra.domain.objects.WhereClause;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the single pass WhereClause parser against the split based parser
+ * it replaced. Not run as part of the unit tests; run the main method (from
+ * the test classpath) to get time and, through the GC profiler,
+ * gc.alloc.rate.norm (bytes allocated per parse) for each.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WhereClauseBenchmark
+{
+
+    @Param(
+            {
+                "myindexedfield = 'thisisastring'",
+                "myindexedfield1 = 'this is a string' AND myindexedfield2 = 'this is another string' ORDER BY myindexedfield2",
+                "myindexedfield1 = 'a' AND myindexedfield2 >= 'b' AND myindexedfield3 < 'c' AND myindexedfield4 = 'd'"
+            })
+    public String where;
+
+    @Benchmark
+    public WhereClause singlePass()
+    {
+        return new WhereClause(where);
+    }
+
+    @Benchmark
+    public LegacyWhereClause splitBased()
+    {
+        return new LegacyWhereClause(where);
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+                .include(WhereClauseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+    /**
+     * The previous WhereClause parser, kept here as the baseline.
+     */
+    public static class LegacyWhereClause
+    {
+
+        private static final int FIELD = 0;
+        private static final int OPERATOR = 1;
+        private static final int VALUE = 2;
+        private static final int CONJUNCTION = 3;
+
+        private String boundStatementSyntax;
+        private ArrayList<String> fields = new ArrayList<>();
+        private ArrayList<String> values = new ArrayList<>();
+
+        public LegacyWhereClause(String whereClause)
+        {
+            StringBuilder boundStatementBuilder = new StringBuilder();
+            String[] tokens = whereClause.split("\\Q \\E");
+            int currentOperator = FIELD;
+            for (int i = 0; i < tokens.length; i++)
+            {
+                String token = tokens[i];
+                switch (currentOperator)
+                {
+                    case FIELD:
+                        fields.add(token);
+                        boundStatementBuilder.append(token);
+                        currentOperator = OPERATOR;
+                        break;
+                    case OPERATOR:
+                        boundStatementBuilder.append(token);
+                        currentOperator = VALUE;
+                        break;
+                    case VALUE:
+                        boundStatementBuilder.append("?");
+                        StringBuilder sb = new StringBuilder();
+                        if (token.charAt(0) == '\'')
+                        {
+                            token = token.substring(1);
+                        }
+                        while (token.charAt(token.length() - 1) != '\'')
+                        {
+                            sb.append(token);
+                            sb.append(" ");
+                            token = tokens[++i];
+                        }
+                        token = token.substring(0, token.length() - 1);
+                        sb.append(token);
+                        values.add(sb.toString());
+                        currentOperator = CONJUNCTION;
+                        break;
+                    case CONJUNCTION:
+                    default:
+                        boundStatementBuilder.append(token);
+                        currentOperator = FIELD;
+                        break;
+                }
+                boundStatementBuilder.append(" ");
+            }
+            boundStatementSyntax = boundStatementBuilder.toString().trim();
+        }
+
+        public String getBoundStatementSyntax()
+        {
+            return boundStatementSyntax;
+        }
+    }
+}
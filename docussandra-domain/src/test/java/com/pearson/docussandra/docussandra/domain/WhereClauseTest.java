@@ -1,6 +1,8 @@
 package com.pearson.docussandra.docussandra.domain;
 
 import com.pearson.docussandra.domain.objects.WhereClause;
+import com.pearson.docussandra.domain.objects.WhereLiteral;
+import com.strategicgains.syntaxe.ValidationException;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -64,6 +66,7 @@ public class WhereClauseTest
     {
         WhereClause wc = new WhereClause("blah = 'blah' AND foo = 'bar' ORDER BY foo");
         assertEquals("blah = ? AND foo = ? ORDER BY foo", wc.getBoundStatementSyntax());
+        assertFalse(wc.isDescending());
         assertEquals("blah", wc.getFields().get(0));
         assertEquals("foo", wc.getFields().get(1));
         assertEquals("blah", wc.getValues().get(0));
@@ -100,4 +103,83 @@ public class WhereClauseTest
         assertEquals("blah blah", wc.getValues().get(0));
         assertEquals("bar bar bar", wc.getValues().get(1));
     }
+
+    @Test
+    public void testItOperators()
+    {
+        WhereClause wc = new WhereClause("blah >= 'blah' AND foo < 'bar bar'");
+        assertEquals("blah >= ? AND foo < ?", wc.getBoundStatementSyntax());
+        assertEquals(">=", wc.getOperators().get(0));
+        assertEquals("<", wc.getOperators().get(1));
+        assertEquals("bar bar", wc.getValues().get(1));
+    }
+
+    @Test
+    public void testItIn()
+    {
+        WhereClause wc = new WhereClause("blah IN ('one', 'two', 'three') AND foo = 'bar'");
+        assertEquals("blah IN (?, ?, ?) AND foo = ?", wc.getBoundStatementSyntax());
+        assertEquals(2, wc.getFields().size());
+        assertEquals("IN", wc.getOperators().get(0));
+        assertEquals(4, wc.getValues().size());
+        assertEquals("three", wc.getValues().get(2));
+        assertEquals("blah", wc.getBindFields().get(2));
+        assertEquals("foo", wc.getBindFields().get(3));
+        assertEquals(3, wc.getPredicates().get(0).getLiterals().size());
+    }
+
+    @Test
+    public void testItParentheses()
+    {
+        WhereClause wc = new WhereClause("(blah = 'blah' AND (foo > 'bar')) ORDER BY foo DESC");
+        assertEquals("blah = ? AND foo > ? ORDER BY foo DESC", wc.getBoundStatementSyntax());
+        assertTrue(wc.isDescending());
+        assertEquals("blah", wc.getFields().get(0));
+        assertEquals("foo", wc.getFields().get(1));
+        assertEquals("AND", wc.getPredicates().get(1).getConjunction());
+    }
+
+    @Test
+    public void testItEscapedQuotes()
+    {
+        WhereClause wc = new WhereClause("blah = 'it''s' AND foo = 'isn\\'t'");
+        assertEquals("blah = ? AND foo = ?", wc.getBoundStatementSyntax());
+        assertEquals("it's", wc.getValues().get(0));
+        assertEquals("isn't", wc.getValues().get(1));
+    }
+
+    @Test
+    public void testItTypedLiterals()
+    {
+        WhereClause wc = new WhereClause("blah >= 42 AND foo = -1.5 AND bar = true");
+        assertEquals("blah >= ? AND foo = ? AND bar = ?", wc.getBoundStatementSyntax());
+        assertEquals("42", wc.getValues().get(0));
+        assertEquals(WhereLiteral.Type.NUMBER, wc.getPredicates().get(0).getLiterals().get(0).getType());
+        assertEquals("-1.5", wc.getValues().get(1));
+        assertEquals(WhereLiteral.Type.BOOLEAN, wc.getPredicates().get(2).getLiterals().get(0).getType());
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testItUnterminatedString()
+    {
+        new WhereClause("blah = 'blah");
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testItOr()
+    {
+        new WhereClause("blah = 'blah' OR foo = 'bar'");
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testItUnbalancedParentheses()
+    {
+        new WhereClause("(blah = 'blah' AND foo = 'bar'");
+    }
+
+    @Test(expected = ValidationException.class)
+    public void testItMissingValue()
+    {
+        new WhereClause("blah = AND foo = 'bar'");
+    }
 }
@@ -0,0 +1,73 @@
+package com.pearson.docussandra.plugininterfaces;
+
+import com.pearson.docussandra.domain.objects.Document;
+
+/**
+ * A single document mutation, as handed to a NotifierPlugin in a batch.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class Notification
+{
+
+    /**
+     * Type of mutation that occurred.
+     */
+    private final NotifierPlugin.MutateType type;
+
+    /**
+     * Document in its post-mutation state; null for a delete.
+     */
+    private final Document document;
+
+    /**
+     * When the mutation occurred, in milliseconds since the epoch.
+     */
+    private final long timestamp;
+
+    /**
+     * Constructor.
+     *
+     * @param type Type of mutation that occurred.
+     * @param document Document in its post-mutation state; null for a delete.
+     * @param timestamp When the mutation occurred, in milliseconds since the
+     * epoch.
+     */
+    public Notification(NotifierPlugin.MutateType type, Document document, long timestamp)
+    {
+        this.type = type;
+        this.document = document;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return the type of mutation that occurred
+     */
+    public NotifierPlugin.MutateType getType()
+    {
+        return type;
+    }
+
+    /**
+     * @return the document in its post-mutation state; null for a delete, be
+     * sure to check for null
+     */
+    public Document getDocument()
+    {
+        return document;
+    }
+
+    /**
+     * @return when the mutation occurred, in milliseconds since the epoch
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Notification{" + "type=" + type + ", document=" + document + ", timestamp=" + timestamp + '}';
+    }
+}
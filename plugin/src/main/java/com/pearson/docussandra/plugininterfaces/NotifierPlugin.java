@@ -1,12 +1,19 @@
 package com.pearson.docussandra.plugininterfaces;
 
 import com.pearson.docussandra.domain.objects.Document;
+import java.util.List;
 
 /**
  * Interface that gets called anytime a document gets mutated. We <b>warned</b>:
  * This could happen quite frequently, and if you are not careful you could
  * substantially reduce the performance of Docussandra.
  * 
+ * Notifications are delivered asynchronously, after the mutation has been
+ * written, on a thread dedicated to this plugin; they are delivered in the
+ * order the mutations occurred. A plugin that can deliver several
+ * notifications more cheaply than one at a time (for example, to a message
+ * bus) can override getMaxBatchSize() and doNotifyBatch().
+ * 
  * Although this is an abstract class, it should be treated like an interface.
  * 
  * All implementing classes should be thread safe and provide a no argument constructor.
@@ -38,4 +45,32 @@ public abstract class NotifierPlugin implements Plugin
      * mutation was a delete, be sure to check for null.
      */
     public abstract void doNotify(MutateType type, Document document);
+
+    /**
+     * Called with several notifications at once, oldest first, when more
+     * than one is waiting and getMaxBatchSize() allows it. By default calls
+     * doNotify() for each of them.
+     *
+     * @param notifications Notifications to deliver, oldest first; never more
+     * than getMaxBatchSize() of them.
+     */
+    public void doNotifyBatch(List<Notification> notifications)
+    {
+        for (Notification notification : notifications)
+        {
+            doNotify(notification.getType(), notification.getDocument());
+        }
+    }
+
+    /**
+     * Gets the largest number of notifications this plugin wants to receive
+     * in one call to doNotifyBatch(). By default 1, meaning doNotify() is
+     * called for each notification.
+     *
+     * @return The largest batch size this plugin accepts.
+     */
+    public int getMaxBatchSize()
+    {
+        return 1;
+    }
 }
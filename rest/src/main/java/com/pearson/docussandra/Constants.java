@@ -20,6 +20,25 @@ public class Constants
         public static final String INDEX_STATUS = "status_id";
         public static final String DOCUMENT_ID = "documentId";
         public static final String QUERY_ID = "queryId";
+        public static final String PAGE_TOKEN = "pageToken";
+        public static final String EXPLAIN = "explain";
+        public static final String TRACE = "trace";
+        public static final String AS_OF = "asOf";
+        public static final String FROM = "from";
+        public static final String TO = "to";
+        public static final String LIMIT = "limit";
+        public static final String MAX_DOCS_PER_SECOND = "maxDocsPerSecond";
+        public static final String MAX_IN_FLIGHT_WRITES = "maxInFlightWrites";
+        public static final String TARGET_P99_MILLIS = "targetP99Millis";
+    }
+
+    /**
+     * These define custom HTTP headers used in responses.
+     */
+    public static class Headers
+    {
+
+        public static final String NEXT_PAGE_TOKEN = "X-Next-Page-Token";
     }
 
     /**
@@ -40,6 +59,8 @@ public class Constants
         public static final String TABLE = "table.single";
         public static final String DOCUMENTS = "document.collection";
         public static final String DOCUMENT = "document.single";
+        public static final String DOCUMENTS_BULK = "document.bulk";
+        public static final String DOCUMENT_VERSIONS = "document.versions";
         public static final String INDEXES = "index.collection";
         public static final String INDEX = "index.single";
         public static final String INDEX_STATUS = "index.status";
@@ -47,7 +68,11 @@ public class Constants
         public static final String INDEX_TABLE_STATUS = "index.status.collection";
         public static final String QUERIES = "query.collection";
         public static final String QUERY = "query.single";
+        public static final String QUERY_BATCH = "query.batch";
         public static final String HEALTH = "health";
         public static final String BUILD_INFO = "build.info";
+        public static final String QUERY_CACHE = "query.cache";
+        public static final String NOTIFIERS = "notifiers";
+        public static final String INDEX_BUILD_THROTTLE = "index.build.throttle";
     }
 }
@@ -29,6 +29,7 @@ import com.pearson.docussandra.cache.CacheFactory;
 import com.pearson.docussandra.config.Configuration;
 import com.pearson.docussandra.exception.DuplicateItemException;
 import com.pearson.docussandra.exception.InvalidObjectIdException;
+import com.pearson.docussandra.exception.InvalidPageTokenException;
 import com.pearson.docussandra.exception.ItemNotFoundException;
 import com.pearson.docussandra.plugins.PluginHolder;
 import com.pearson.docussandra.plugins.PluginUtils;
@@ -261,7 +262,8 @@ public class Main
                 .mapException(ItemNotFoundException.class, NotFoundException.class)
                 .mapException(DuplicateItemException.class, ConflictException.class)
                 .mapException(ValidationException.class, BadRequestException.class)
-                .mapException(InvalidObjectIdException.class, BadRequestException.class);
+                .mapException(InvalidObjectIdException.class, BadRequestException.class)
+                .mapException(InvalidPageTokenException.class, BadRequestException.class);
     }
 
     private static Configuration loadEnvironment(String[] args)
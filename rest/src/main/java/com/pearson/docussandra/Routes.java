@@ -2,6 +2,7 @@ package com.pearson.docussandra;
 
 import static io.netty.handler.codec.http.HttpMethod.DELETE;
 import static io.netty.handler.codec.http.HttpMethod.GET;
+import static io.netty.handler.codec.http.HttpMethod.PATCH;
 import static io.netty.handler.codec.http.HttpMethod.POST;
 import static io.netty.handler.codec.http.HttpMethod.PUT;
 
@@ -30,6 +31,19 @@ public abstract class Routes
         server.uri("/admin/index_status", config.getIndexStatusController())
                 .action("readAll", GET)
                 .name(Constants.Routes.INDEX_STATUS_ALL);
+        //index build throttle settings and current state via GET; change the settings via PUT
+        server.uri("/admin/index_status/throttle", config.getIndexBuildThrottleController())
+                .action("getThrottle", GET)
+                .action("updateThrottle", PUT)
+                .name(Constants.Routes.INDEX_BUILD_THROTTLE);
+        //query result cache statistics via GET
+        server.uri("/admin/query_cache", config.getQueryCacheController())
+                .action("getStats", GET)
+                .name(Constants.Routes.QUERY_CACHE);
+        //notifier plugin queue depth and delivery lag via GET
+        server.uri("/admin/notifiers", config.getNotifierController())
+                .action("getStats", GET)
+                .name(Constants.Routes.NOTIFIERS);
 
         /**
          * route to get all the database information
@@ -47,6 +61,14 @@ public abstract class Routes
                 .method(GET, DELETE, PUT, POST)
                 .name(Constants.Routes.DATABASE);
 
+        /**
+         * route to run several queries against the {database} at once
+         */
+        server.uri("/databases/{database}/queries/_batch", config.getQueryController())
+                .alias("/d/{database}/q/_batch")
+                .action("batchQuery", POST)
+                .name(Constants.Routes.QUERY_BATCH);
+
         /**
          * route to get info on all the tables
          */
@@ -71,6 +93,15 @@ public abstract class Routes
                 .method(POST)
                 .name(Constants.Routes.DOCUMENTS);
 
+        /**
+         * route to create documents in the table in bulk from newline
+         * delimited JSON
+         */
+        server.uri("/databases/{database}/tables/{table}/documents/_bulk", config.getDocumentController())
+                .alias("/d/{database}/t/{table}/d/_bulk")
+                .action("bulkCreate", POST)
+                .name(Constants.Routes.DOCUMENTS_BULK);
+
         /**
          * route to get info on all the indexes in the table
          */
@@ -104,13 +135,23 @@ public abstract class Routes
                 .name(Constants.Routes.INDEX_TABLE_STATUS);
 
         /**
-         * route to operate on the documents in the tables
+         * route to operate on the documents in the tables; PATCH takes a JSON
+         * merge patch
          */
         server.uri("/databases/{database}/tables/{table}/documents/{documentId}", config.getDocumentController())
                 .alias("/d/{database}/t/{table}/d/{documentId}")
                 .method(GET, PUT, DELETE)
+                .action("patch", PATCH)
                 .name(Constants.Routes.DOCUMENT);
 
+        /**
+         * route to page through the past versions of a document
+         */
+        server.uri("/databases/{database}/tables/{table}/documents/{documentId}/versions", config.getDocumentController())
+                .alias("/d/{database}/t/{table}/d/{documentId}/v")
+                .action("readVersions", GET)
+                .name(Constants.Routes.DOCUMENT_VERSIONS);
+
         /**
          * route to search for things in the tables
          */
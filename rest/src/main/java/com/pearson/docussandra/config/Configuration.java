@@ -2,9 +2,13 @@ package com.pearson.docussandra.config;
 
 import com.datastax.driver.core.Session;
 import com.pearson.docussandra.Utils;
+import com.pearson.docussandra.cache.MetadataRegistry;
+import com.pearson.docussandra.cache.QueryResultCache;
 import com.pearson.docussandra.controller.BuildInfoController;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.jar.Manifest;
 
@@ -14,11 +18,18 @@ import org.restexpress.util.Environment;
 import com.pearson.docussandra.controller.DatabaseController;
 import com.pearson.docussandra.controller.DocumentController;
 import com.pearson.docussandra.controller.HealthCheckController;
+import com.pearson.docussandra.controller.IndexBuildThrottleController;
 import com.pearson.docussandra.controller.IndexController;
 import com.pearson.docussandra.controller.IndexStatusController;
+import com.pearson.docussandra.controller.NotifierController;
+import com.pearson.docussandra.controller.QueryCacheController;
 import com.pearson.docussandra.controller.QueryController;
 import com.pearson.docussandra.controller.TableController;
+import com.pearson.docussandra.handler.IndexBackfill;
+import com.pearson.docussandra.handler.IndexBuildCoordinator;
+import com.pearson.docussandra.handler.IndexBuildThrottle;
 import com.pearson.docussandra.handler.IndexCreatedHandler;
+import com.pearson.docussandra.handler.NotifierDispatcher;
 import com.pearson.docussandra.persistence.DatabaseRepository;
 import com.pearson.docussandra.persistence.DocumentRepository;
 import com.pearson.docussandra.persistence.IndexRepository;
@@ -56,6 +67,19 @@ public class Configuration
     private static final String REPLICATION_PROPERTY = "replication.string";
     private static final String BASE_URL_PROPERTY = "base.url";
     private static final String EXECUTOR_THREAD_POOL_SIZE = "executor.threadPool.size";
+    private static final String QUERY_BUCKET_CONCURRENCY = "query.bucket.concurrency";
+    private static final String QUERY_CACHE_TABLES = "query.cache.tables";
+    private static final String BULK_WRITE_CONCURRENCY = "bulk.write.concurrency";
+    private static final String NOTIFIER_QUEUE_SIZE = "notifier.queue.size";
+    private static final String NOTIFIER_OVERFLOW_POLICY = "notifier.overflow.policy";
+    private static final String NOTIFIER_SPILL_DIRECTORY = "notifier.spill.directory";
+    private static final String METADATA_REFRESH_SECONDS = "metadata.refresh.seconds";
+    private static final String INDEX_BACKFILL_SCAN_CONCURRENCY = "index.backfill.scan.concurrency";
+    private static final String INDEX_BACKFILL_WRITE_CONCURRENCY = "index.backfill.write.concurrency";
+    private static final String INDEX_BACKFILL_MAX_DOCS_PER_SECOND = "index.backfill.max.docs.per.second";
+    private static final String INDEX_BACKFILL_TARGET_P99_MILLIS = "index.backfill.target.p99.millis";
+    private static final String INDEX_BUILD_LEASE_SECONDS = "index.build.lease.seconds";
+    private static final String INDEX_BUILD_COORDINATION_SECONDS = "index.build.coordination.seconds";
 
     /**
      * @return the documentService
@@ -77,6 +101,19 @@ public class Configuration
     private String baseUrl;
     private String replicationFactorString;
     private int executorThreadPoolSize;
+    private int queryBucketConcurrency;
+    private String queryCacheTables;
+    private int bulkWriteConcurrency;
+    private int notifierQueueSize;
+    private NotifierDispatcher.OverflowPolicy notifierOverflowPolicy;
+    private String notifierSpillDirectory;
+    private long metadataRefreshSeconds;
+    private int indexBackfillScanConcurrency;
+    private int indexBackfillWriteConcurrency;
+    private double indexBackfillMaxDocsPerSecond;
+    private long indexBackfillTargetP99Millis;
+    private int indexBuildLeaseSeconds;
+    private long indexBuildCoordinationSeconds;
     private MetricsConfig metricsSettings;
     private Manifest manifest;
 
@@ -88,6 +125,9 @@ public class Configuration
     private QueryController queryController;
     private HealthCheckController healthController;
     private BuildInfoController buildInfoController;
+    private QueryCacheController queryCacheController;
+    private NotifierController notifierController;
+    private IndexBuildThrottleController indexBuildThrottleController;
 
     private static DocumentService documentService;
     private static QueryService queryService;
@@ -105,6 +145,19 @@ public class Configuration
         this.port = Integer.parseInt(p.getProperty(PORT_PROPERTY, "0"));
         this.baseUrl = p.getProperty(BASE_URL_PROPERTY, "http://localhost:" + String.valueOf(port));
         this.executorThreadPoolSize = Integer.parseInt(p.getProperty(EXECUTOR_THREAD_POOL_SIZE, DEFAULT_EXECUTOR_THREAD_POOL_SIZE));
+        this.queryBucketConcurrency = Integer.parseInt(p.getProperty(QUERY_BUCKET_CONCURRENCY, String.valueOf(QueryRepositoryImpl.DEFAULT_MAX_CONCURRENT_BUCKET_QUERIES)));
+        this.queryCacheTables = p.getProperty(QUERY_CACHE_TABLES, "");
+        this.bulkWriteConcurrency = Integer.parseInt(p.getProperty(BULK_WRITE_CONCURRENCY, String.valueOf(DocumentRepositoryImpl.DEFAULT_MAX_IN_FLIGHT_BULK_WRITES)));
+        this.notifierQueueSize = Integer.parseInt(p.getProperty(NOTIFIER_QUEUE_SIZE, String.valueOf(NotifierDispatcher.DEFAULT_QUEUE_SIZE)));
+        this.notifierOverflowPolicy = NotifierDispatcher.OverflowPolicy.valueOf(p.getProperty(NOTIFIER_OVERFLOW_POLICY, NotifierDispatcher.OverflowPolicy.BLOCK.name()).trim().toUpperCase());
+        this.notifierSpillDirectory = p.getProperty(NOTIFIER_SPILL_DIRECTORY, System.getProperty("java.io.tmpdir"));
+        this.metadataRefreshSeconds = Long.parseLong(p.getProperty(METADATA_REFRESH_SECONDS, String.valueOf(MetadataRegistry.DEFAULT_REFRESH_SECONDS)));
+        this.indexBackfillScanConcurrency = Integer.parseInt(p.getProperty(INDEX_BACKFILL_SCAN_CONCURRENCY, String.valueOf(IndexBackfill.DEFAULT_SCAN_CONCURRENCY)));
+        this.indexBackfillWriteConcurrency = Integer.parseInt(p.getProperty(INDEX_BACKFILL_WRITE_CONCURRENCY, String.valueOf(IndexBuildThrottle.DEFAULT_MAX_IN_FLIGHT_WRITES)));
+        this.indexBackfillMaxDocsPerSecond = Double.parseDouble(p.getProperty(INDEX_BACKFILL_MAX_DOCS_PER_SECOND, String.valueOf(IndexBuildThrottle.DEFAULT_MAX_DOCS_PER_SECOND)));
+        this.indexBackfillTargetP99Millis = Long.parseLong(p.getProperty(INDEX_BACKFILL_TARGET_P99_MILLIS, String.valueOf(IndexBuildThrottle.DEFAULT_TARGET_P99_MILLIS)));
+        this.indexBuildLeaseSeconds = Integer.parseInt(p.getProperty(INDEX_BUILD_LEASE_SECONDS, String.valueOf(IndexBackfill.DEFAULT_LEASE_SECONDS)));
+        this.indexBuildCoordinationSeconds = Long.parseLong(p.getProperty(INDEX_BUILD_COORDINATION_SECONDS, String.valueOf(IndexBuildCoordinator.DEFAULT_PERIOD_SECONDS)));
         this.metricsSettings = new MetricsConfig(p);
         this.replicationFactorString = p.getProperty(REPLICATION_PROPERTY, "{ 'class' : 'SimpleStrategy', 'replication_factor' : 1}");
         try
@@ -143,15 +196,19 @@ public class Configuration
         }
         DatabaseRepository databaseRepository = new DatabaseRepositoryImpl(dbConfig.getSession());
         TableRepository tableRepository = new TableRepositoryImpl(dbConfig.getSession());
-        DocumentRepository documentRepository = new DocumentRepositoryImpl(dbConfig.getSession());
+        DocumentRepository documentRepository = new DocumentRepositoryImpl(dbConfig.getSession(), bulkWriteConcurrency);
         IndexRepository indexRepository = new IndexRepositoryImpl(dbConfig.getSession());
-        QueryRepository queryRepository = new QueryRepositoryImpl(dbConfig.getSession());
+        QueryRepository queryRepository = new QueryRepositoryImpl(dbConfig.getSession(), queryBucketConcurrency);
+        QueryResultCache.getInstance().setEnabledTables(Arrays.asList(queryCacheTables.split(",")));
         IndexStatusRepository indexStatusRepository = new IndexStatusRepositoryImpl(dbConfig.getSession());
+        MetadataRegistry.getInstance().load(databaseRepository, tableRepository, indexRepository);
+        MetadataRegistry.getInstance().startRefresh(databaseRepository, tableRepository, indexRepository, metadataRefreshSeconds);
 
         DatabaseService databaseService = new DatabaseService(databaseRepository);
         TableService tableService = new TableService(databaseRepository, tableRepository);
 
-        documentService = new DocumentService(tableRepository, documentRepository, PluginHolder.getInstance().getNotifierPlugins());
+        NotifierDispatcher notifierDispatcher = new NotifierDispatcher(PluginHolder.getInstance().getNotifierPlugins(), notifierQueueSize, notifierOverflowPolicy, new File(notifierSpillDirectory));
+        documentService = new DocumentService(tableRepository, documentRepository, notifierDispatcher);
         IndexService indexService = new IndexService(tableRepository, indexRepository, indexStatusRepository);
 
         queryService = new QueryService(databaseRepository, tableRepository, queryRepository);
@@ -164,12 +221,22 @@ public class Configuration
         queryController = new QueryController(getQueryService());
         healthController = new HealthCheckController();
         buildInfoController = new BuildInfoController();
+        queryCacheController = new QueryCacheController();
+        notifierController = new NotifierController(notifierDispatcher);
+        IndexBuildThrottle indexBuildThrottle = new IndexBuildThrottle(indexBackfillMaxDocsPerSecond, indexBackfillWriteConcurrency, indexBackfillTargetP99Millis);
+        indexBuildThrottle.start(dbConfig.getSession());
+        indexBuildThrottleController = new IndexBuildThrottleController(indexBuildThrottle);
         // TODO: create service and repository implementations for these...
 //		entitiesController = new EntitiesController(SampleUuidEntityService);
+        IndexCreatedHandler indexCreatedHandler = new IndexCreatedHandler(indexRepository, indexStatusRepository, documentRepository, indexBackfillScanConcurrency, indexBuildThrottle, indexBuildLeaseSeconds);
         EventBus bus = new LocalEventBusBuilder()
-                .subscribe(new IndexCreatedHandler(indexRepository, indexStatusRepository, documentRepository))
+                .subscribe(indexCreatedHandler)
                 .build();
         DomainEvents.addBus("local", bus);
+        if (indexBuildCoordinationSeconds > 0)
+        {
+            new IndexBuildCoordinator(indexRepository, indexStatusRepository, indexCreatedHandler).start(indexBuildCoordinationSeconds);
+        }
 
     }
 
@@ -308,6 +375,30 @@ public class Configuration
         return buildInfoController;
     }
 
+    /**
+     * @return the queryCacheController
+     */
+    public QueryCacheController getQueryCacheController()
+    {
+        return queryCacheController;
+    }
+
+    /**
+     * @return the notifierController
+     */
+    public NotifierController getNotifierController()
+    {
+        return notifierController;
+    }
+
+    /**
+     * @return the indexBuildThrottleController
+     */
+    public IndexBuildThrottleController getIndexBuildThrottleController()
+    {
+        return indexBuildThrottleController;
+    }
+
     /**
      * CassandraConfig object that we can get a session separate from the
      * keyspace.
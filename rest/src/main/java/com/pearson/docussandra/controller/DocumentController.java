@@ -11,16 +11,24 @@ import org.restexpress.exception.BadRequestException;
 
 import com.pearson.docussandra.Constants;
 import com.pearson.docussandra.ServiceUtils;
+import com.pearson.docussandra.domain.objects.BulkIngestResult;
 import com.pearson.docussandra.domain.objects.Database;
 import com.pearson.docussandra.domain.objects.Document;
 import com.pearson.docussandra.domain.objects.Identifier;
 import com.pearson.docussandra.domain.objects.LinkableDocument;
+import com.pearson.docussandra.domain.objects.QueryResponseWrapper;
 import com.pearson.docussandra.exception.IndexParseException;
 import com.pearson.docussandra.service.DocumentService;
 import com.strategicgains.hyperexpress.HyperExpress;
 import com.strategicgains.hyperexpress.builder.TokenResolver;
 import com.strategicgains.hyperexpress.builder.UrlBuilder;
+import io.netty.buffer.ByteBufInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Date;
 import java.util.UUID;
+import javax.xml.bind.DatatypeConverter;
 
 /**
  * Controller for manipulating and reading Documents.
@@ -35,6 +43,17 @@ public class DocumentController
      */
     private static final UrlBuilder LOCATION_BUILDER = new UrlBuilder();
 
+    /**
+     * Number of versions returned by a versions request if no limit is
+     * given.
+     */
+    private static final int DEFAULT_VERSIONS_LIMIT = 20;
+
+    /**
+     * Largest limit a versions request may ask for.
+     */
+    private static final int MAX_VERSIONS_LIMIT = 1000;
+
     /**
      * DocumentService for this controller.
      */
@@ -95,6 +114,31 @@ public class DocumentController
         }
     }
 
+    /**
+     * Entry point for a bulk Document create request. The body is newline
+     * delimited JSON, one document per line.
+     *
+     * @param request
+     * @param response
+     * @return Counts of lines read and documents created, and the errors of
+     * lines that failed.
+     * @throws IOException If the body can't be read.
+     */
+    @ApiOperation(value = "bulk create documents",
+            notes = "This method creates a document for every line of newline delimited JSON in the request body, and reports the lines that failed",
+            response = BulkIngestResult.class)
+    public BulkIngestResult bulkCreate(Request request, Response response) throws IOException
+    {
+        String database = request.getHeader(Constants.Url.DATABASE, "No database provided");
+        String table = request.getHeader(Constants.Url.TABLE, "No table provided");
+        if (request.getBody() == null || !request.getBody().isReadable())
+        {
+            throw new BadRequestException("No document data provided");
+        }
+        BufferedReader lines = new BufferedReader(new InputStreamReader(new ByteBufInputStream(request.getBody()), ContentType.CHARSET));
+        return documentService.bulkCreate(database, table, lines);
+    }
+
     /**
      * Entry point for a Document read request.
      *
@@ -103,7 +147,7 @@ public class DocumentController
      * @return The requested document.
      */
     @ApiOperation(value = "read document",
-            notes = "This will return the details of the document provided in the route",
+            notes = "This will return the details of the document provided in the route; add asOf (epoch milliseconds or ISO-8601) to the query string to get the version that was current at that time",
             response = Document.class)
     @ApiModelRequest(model = Document.class, required = true, modelName = "Document")
     public Document read(Request request, Response response)
@@ -111,7 +155,9 @@ public class DocumentController
         String database = request.getHeader(Constants.Url.DATABASE, "No database provided");
         String table = request.getHeader(Constants.Url.TABLE, "No table provided");
         String id = request.getHeader(Constants.Url.DOCUMENT_ID, "No document ID supplied");
-        Document document = documentService.read(database, table, new Identifier(database, table, UUID.fromString(id)));
+        Identifier identifier = new Identifier(database, table, UUID.fromString(id));
+        Date asOf = getTimestamp(request, Constants.Url.AS_OF);
+        Document document = asOf == null ? documentService.read(database, table, identifier) : documentService.readAsOf(database, table, identifier, asOf);
 
         // enrich the entity with links, etc. here...
         HyperExpress.bind(Constants.Url.DOCUMENT_ID, document.getUuid().toString());
@@ -119,6 +165,78 @@ public class DocumentController
         return new LinkableDocument(document);
     }
 
+    /**
+     * Entry point for a Document versions request. Returns the versions of the
+     * document newest first, optionally limited to a time range.
+     *
+     * @param request
+     * @param response
+     * @return A page of the document's versions.
+     */
+    @ApiOperation(value = "read document versions",
+            notes = "Returns the versions of the document, newest first. Takes from and to (epoch milliseconds or ISO-8601, both inclusive), limit, and pageToken (from the " + Constants.Headers.NEXT_PAGE_TOKEN + " header of the previous page) on the query string",
+            response = Document.class)
+    public Document[] readVersions(Request request, Response response)
+    {
+        String database = request.getHeader(Constants.Url.DATABASE, "No database provided");
+        String table = request.getHeader(Constants.Url.TABLE, "No table provided");
+        String id = request.getHeader(Constants.Url.DOCUMENT_ID, "No document ID supplied");
+        Date from = getTimestamp(request, Constants.Url.FROM);
+        Date to = getTimestamp(request, Constants.Url.TO);
+        int limit = DEFAULT_VERSIONS_LIMIT;
+        String limitParam = request.getHeader(Constants.Url.LIMIT);
+        if (limitParam != null)
+        {
+            try
+            {
+                limit = Integer.parseInt(limitParam);
+            } catch (NumberFormatException e)
+            {
+                throw new BadRequestException("Invalid " + Constants.Url.LIMIT + ": " + limitParam);
+            }
+            if (limit < 1 || limit > MAX_VERSIONS_LIMIT)
+            {
+                throw new BadRequestException(Constants.Url.LIMIT + " must be between 1 and " + MAX_VERSIONS_LIMIT);
+            }
+        }
+        QueryResponseWrapper versions = documentService.readVersions(database, table, new Identifier(database, table, UUID.fromString(id)), from, to, limit, request.getHeader(Constants.Url.PAGE_TOKEN));
+        if (versions.getNextPageToken() != null)
+        {
+            response.addHeader(Constants.Headers.NEXT_PAGE_TOKEN, versions.getNextPageToken());
+        }
+        return versions.toArray(new Document[0]);
+    }
+
+    /**
+     * Reads an optional timestamp from the query string, given either as
+     * milliseconds since the epoch or in ISO-8601 format.
+     *
+     * @param request Request to read from.
+     * @param name Name of the parameter.
+     * @return The timestamp, or null if the parameter wasn't provided.
+     */
+    private static Date getTimestamp(Request request, String name)
+    {
+        String value = request.getHeader(name);
+        if (value == null || value.isEmpty())
+        {
+            return null;
+        }
+        try
+        {
+            return new Date(Long.parseLong(value));
+        } catch (NumberFormatException e)
+        {
+            try
+            {
+                return DatatypeConverter.parseDateTime(value).getTime();
+            } catch (IllegalArgumentException ex)
+            {
+                throw new BadRequestException("Invalid " + name + "; expected milliseconds since the epoch or an ISO-8601 timestamp: " + value);
+            }
+        }
+    }
+
 //	public List<Document> readAll(Request request, Response response)
 //	{
 //		String database = request.getHeader(Constants.Url.DATABASE, "No database provided");
@@ -165,6 +283,42 @@ public class DocumentController
         response.setResponseNoContent();
     }
 
+    /**
+     * Entry point for a Document patch request. The body is a JSON merge patch
+     * (RFC 7386): fields in it replace the document's fields, and a null
+     * removes a field.
+     *
+     * @param request
+     * @param response
+     * @return The patched document.
+     */
+    @ApiOperation(value = "patch a document",
+            notes = "This route applies a JSON merge patch (RFC 7386) to the document, so only the fields that change need to be sent",
+            response = Document.class)
+    public Document patch(Request request, Response response)
+    {
+        String database = request.getHeader(Constants.Url.DATABASE, "No database provided");
+        String table = request.getHeader(Constants.Url.TABLE, "No table provided");
+        String id = request.getHeader(Constants.Url.DOCUMENT_ID, "No document ID supplied");
+        String data = request.getBody().toString(ContentType.CHARSET);
+
+        if (data == null || data.isEmpty())
+        {
+            throw new BadRequestException("No patch data provided");
+        }
+
+        try
+        {
+            Document patched = documentService.patch(database, table, new Identifier(database, table, UUID.fromString(id)), data);
+            HyperExpress.bind(Constants.Url.DOCUMENT_ID, patched.getUuid().toString());
+            return new LinkableDocument(patched);
+        } catch (IndexParseException e)
+        {
+            ServiceUtils.setBadRequestExceptionToResponse(e, response);
+            return null;
+        }
+    }
+
     /**
      * Entry point for a Document delete request.
      *
@@ -0,0 +1,69 @@
+package com.pearson.docussandra.controller;
+
+import com.pearson.docussandra.Constants;
+import com.pearson.docussandra.handler.IndexBuildThrottle;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.Map;
+import org.restexpress.Request;
+import org.restexpress.Response;
+import org.restexpress.exception.BadRequestException;
+
+/**
+ * Displays and changes the index build throttle on
+ * /admin/index_status/throttle. Settings are changed with a PUT, passing any
+ * of maxDocsPerSecond, maxInFlightWrites and targetP99Millis on the query
+ * string; those not passed are left as they are.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class IndexBuildThrottleController
+{
+
+    private final IndexBuildThrottle throttle;
+
+    public IndexBuildThrottleController(IndexBuildThrottle throttle)
+    {
+        this.throttle = throttle;
+    }
+
+    public Map<String, Object> getThrottle(Request request, Response response)
+    {
+        response.setResponseStatus(HttpResponseStatus.OK);
+        return throttle.getStats();
+    }
+
+    public Map<String, Object> updateThrottle(Request request, Response response)
+    {
+        double maxDocsPerSecond = throttle.getMaxDocsPerSecond();
+        int maxInFlightWrites = throttle.getMaxInFlightWrites();
+        long targetP99Millis = throttle.getTargetP99Millis();
+        String param = Constants.Url.MAX_DOCS_PER_SECOND;
+        try
+        {
+            if (request.getHeader(param) != null)
+            {
+                maxDocsPerSecond = Double.parseDouble(request.getHeader(param));
+            }
+            param = Constants.Url.MAX_IN_FLIGHT_WRITES;
+            if (request.getHeader(param) != null)
+            {
+                maxInFlightWrites = Integer.parseInt(request.getHeader(param));
+            }
+            param = Constants.Url.TARGET_P99_MILLIS;
+            if (request.getHeader(param) != null)
+            {
+                targetP99Millis = Long.parseLong(request.getHeader(param));
+            }
+            throttle.update(maxDocsPerSecond, maxInFlightWrites, targetP99Millis);
+        } catch (NumberFormatException e)
+        {
+            throw new BadRequestException("Invalid " + param + ": " + request.getHeader(param));
+        } catch (IllegalArgumentException e)
+        {
+            throw new BadRequestException(e.getMessage());
+        }
+        response.setResponseStatus(HttpResponseStatus.OK);
+        return throttle.getStats();
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.pearson.docussandra.controller;
+
+import com.pearson.docussandra.handler.NotifierDispatcher;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.Map;
+import org.restexpress.Request;
+import org.restexpress.Response;
+
+/**
+ * Displays notifier plugin queue depth and delivery lag on /admin/notifiers.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class NotifierController
+{
+
+    private final NotifierDispatcher notifierDispatcher;
+
+    public NotifierController(NotifierDispatcher notifierDispatcher)
+    {
+        this.notifierDispatcher = notifierDispatcher;
+    }
+
+    public Map<String, Object> getStats(Request request, Response response)
+    {
+        response.setResponseStatus(HttpResponseStatus.OK);
+        return notifierDispatcher.getStats();
+    }
+
+}
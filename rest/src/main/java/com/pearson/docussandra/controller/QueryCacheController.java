@@ -0,0 +1,23 @@
+package com.pearson.docussandra.controller;
+
+import com.pearson.docussandra.cache.QueryResultCache;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.Map;
+import org.restexpress.Request;
+import org.restexpress.Response;
+
+/**
+ * Displays query result cache statistics on /admin/query_cache.
+ *
+ * @author https://github.com/JeffreyDeYoung
+ */
+public class QueryCacheController
+{
+
+    public Map<String, Object> getStats(Request request, Response response)
+    {
+        response.setResponseStatus(HttpResponseStatus.OK);
+        return QueryResultCache.getInstance().getStats();
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.pearson.docussandra.controller;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.pearson.docussandra.exception.ItemNotFoundException;
 import com.strategicgains.restexpress.plugin.swagger.annotations.ApiModelRequest;
 import com.wordnik.swagger.annotations.ApiOperation;
@@ -8,6 +10,7 @@ import org.restexpress.Response;
 
 import com.pearson.docussandra.Constants;
 import com.pearson.docussandra.ServiceUtils;
+import com.pearson.docussandra.domain.objects.BatchQueryResult;
 import com.pearson.docussandra.domain.objects.Document;
 import com.pearson.docussandra.domain.objects.LinkableDocument;
 import com.pearson.docussandra.domain.objects.Query;
@@ -18,7 +21,11 @@ import com.pearson.docussandra.service.QueryService;
 import com.strategicgains.hyperexpress.HyperExpress;
 import com.strategicgains.hyperexpress.builder.TokenBinder;
 import com.strategicgains.hyperexpress.builder.TokenResolver;
+import com.strategicgains.syntaxe.ValidationException;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import org.restexpress.common.query.QueryRange;
 import org.restexpress.query.QueryRanges;
 import org.slf4j.Logger;
@@ -36,6 +43,10 @@ public class QueryController
 {
 
     private static final int DEFAULT_LIMIT = 20;
+    /**
+     * Maximum number of queries that can be sent in one batch.
+     */
+    private static final int MAX_BATCH_QUERIES = 100;
     private static final String ACCEPT_HEADER = "Accept";
     private static final String HAL_HEADER_VALUE = "application/hal+json";
     private Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -49,10 +60,10 @@ public class QueryController
     }
 
     @ApiOperation(value = "search for queries in the database",
-            notes = "please provide what you want to search for in the database in the request body",
+            notes = "please provide what you want to search for in the database in the request body; page with an offset, or pass pageToken (empty for the first page) to page by the token returned in the " + Constants.Headers.NEXT_PAGE_TOKEN + " header; add explain=true to the query string to get a description of how the query is run instead of its results (and trace=true to include a Cassandra trace)",
             response = Document.class)
     @ApiModelRequest(model = Document.class, required = true, modelName = "Document")
-    public Document[] query(Request request, Response response) throws IndexParseException
+    public Object query(Request request, Response response) throws IndexParseException
     {
 //        Set<String> headers = request.getHeaderNames();
 //        for(String header : headers){
@@ -91,9 +102,23 @@ public class QueryController
                 range.setOffset(offset);
             }
         }
+        String pageToken = toQuery.getPageToken();
+        if (pageToken == null)
+        {
+            pageToken = request.getHeader(Constants.Url.PAGE_TOKEN);
+        }
         try
         {
-            QueryResponseWrapper queryResponse = service.query(toQuery, limit, offset);
+            if (Boolean.parseBoolean(request.getHeader(Constants.Url.EXPLAIN)))
+            {
+                return service.explain(toQuery, limit, offset, Boolean.parseBoolean(request.getHeader(Constants.Url.TRACE)));
+            }
+            ListenableFuture<QueryResponseWrapper> future = service.queryAsync(toQuery, limit, offset, pageToken);
+            QueryResponseWrapper queryResponse = awaitResponse(future);
+            if (queryResponse.getNextPageToken() != null)
+            {
+                response.addHeader(Constants.Headers.NEXT_PAGE_TOKEN, queryResponse.getNextPageToken());
+            }
             if (queryResponse.isEmpty())
             {
                 response.setCollectionResponse(range, 0, 0);
@@ -150,4 +175,66 @@ public class QueryController
             throw e;
         }
     }
+
+    @ApiOperation(value = "run several queries at once",
+            notes = "please provide an array of queries in the request body; each query names its own table and is paged by its own limit and offset or pageToken",
+            response = BatchQueryResult.class)
+    public BatchQueryResult[] batchQuery(Request request, Response response)
+    {
+        String database = request.getHeader(Constants.Url.DATABASE, "No database provided");
+        Query[] queries = request.getBodyAs(Query[].class, "Queries not provided");
+        if (queries.length > MAX_BATCH_QUERIES)
+        {
+            throw new ValidationException("A batch may contain at most " + MAX_BATCH_QUERIES + " queries; got: " + queries.length);
+        }
+        List<BatchQueryResult> results;
+        try
+        {
+            results = awaitResponse(service.batchQueryAsync(database, Arrays.asList(queries)));
+        } catch (IndexParseException | FieldNotIndexedException e)
+        {//batchQueryAsync reports these in each query's result, but just in case
+            ServiceUtils.setBadRequestExceptionToResponse(e, response);
+            return null;
+        }
+        logger.debug("Batch of " + queries.length + " queries run against: " + database);
+        return results.toArray(new BatchQueryResult[0]);
+    }
+
+    /**
+     * Waits for an asynchronous query to complete. RestExpress (as of 0.11)
+     * serializes whatever the controller returns, on the thread that called
+     * it, and has no way to finish a response later; so this is the one place
+     * where the async query pipeline is resolved, and it parks an executor
+     * thread while it does. Query throughput is therefore still bounded by
+     * executor.threadPool.size. The async pipeline underneath keeps the
+     * driver's I/O threads free and lets a batch's queries run at once.
+     *
+     * @param future Future for the query response.
+     * @return The completed query response.
+     * @throws IndexParseException If the query failed because a value couldn't
+     * be converted to its indexed field's type.
+     * @throws FieldNotIndexedException If the query failed because a field
+     * isn't indexed.
+     */
+    private <T> T awaitResponse(ListenableFuture<T> future) throws IndexParseException, FieldNotIndexedException
+    {
+        try
+        {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof IndexParseException)
+            {//unwrapped so the caller can turn it into a 400, as it does when the query fails up front
+                throw (IndexParseException) cause;
+            } else if (cause instanceof FieldNotIndexedException)
+            {
+                throw (FieldNotIndexedException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package com.pearson.docussandra.serialization;
 
+import com.pearson.docussandra.domain.objects.RawBsonObject;
+import com.pearson.docussandra.domain.seralization.RawBsonObjectSerializer;
 import com.pearson.docussandra.domain.seralization.UuidDeserializer;
 import com.pearson.docussandra.domain.seralization.UuidSerializer;
 import java.util.UUID;
@@ -23,6 +25,7 @@ public class JsonSerializationProcessor
         super.initializeModule(module);
         module.addDeserializer(UUID.class, new UuidDeserializer());
         module.addSerializer(UUID.class, new UuidSerializer());
+        module.addSerializer(RawBsonObject.class, new RawBsonObjectSerializer());
         module.addDeserializer(HalResource.class, new HalResourceDeserializer());
         module.addSerializer(HalResource.class, new HalResourceSerializer());
         addSupportedMediaTypes(StringUtils.join(",", ContentType.HAL_JSON, ContentType.SIREN));